@@ -0,0 +1,129 @@
+package com.liuhang.langchain4j;
+
+import com.liuhang.langchain4j.http.SharedHttpClient;
+import com.liuhang.langchain4j.model.AdaptiveRateLimiter;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiChatModelName;
+import dev.langchain4j.model.openai.OpenAiModerationModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 模型注册表：ApiKeys.model 的扩展
+ *
+ * 之前每个例子都自己 OpenAiChatModel.builder()，各自一个 HTTP 客户端和连接池，代理也各自设置一遍。
+ * 这里统一：
+ *      代理只在这里配置一次
+ *      所有模型（普通、流式、审核）共用一个 SharedHttpClient，HTTP/2 多路复用、连接保持复用
+ *      同名模型只创建一次，chat("gpt-4o-mini") 每次拿到同一个实例
+ *      chat / streaming 拿到的 OpenAI 模型共用一个 AdaptiveRateLimiter（按账号的 RPM / TPM 配额），
+ *      收到 429 由限流器排队重试，模型自身不再立即重试
+ *      需要特殊参数（responseFormat、strictJsonSchema、temperature 等）时用 openAi() / openAiStreaming() / zhipu() 拿到预先配好的 builder，
+ *      模型是新的，HTTP 客户端仍然共用
+ * 连接池的统计见 http()，限流的统计见 openAiLimiter()。
+ */
+public final class ModelRegistry {
+
+    //我在国内，需要配置 HTTP 代理才能访问 OpenAI，我用的clash代理，端口可以在clash配置中查看
+    private static final String PROXY_HOST = "127.0.0.1";
+    private static final int PROXY_PORT = 7890;
+
+    private static final String OPENAI_API_KEY = System.getenv("OPENAI_API_KEY");
+    private static final String ZHIPU_API_KEY = System.getenv("ZHIPU_API_KEY");
+    private static final String ZHIPU_BASE_URL = "https://open.bigmodel.cn/api/paas/v4/";
+
+    private static final SharedHttpClient HTTP;
+    // OpenAI tier 1 账号 gpt-4o-mini 的配额
+    private static final AdaptiveRateLimiter OPENAI_LIMITER = AdaptiveRateLimiter.builder()
+            .requestsPerMinute(500)
+            .tokensPerMinute(200_000)
+            .build();
+    private static final Map<String, Object> MODELS = new ConcurrentHashMap<>();
+
+    static {
+        // 仍然没有走注册表的模型（自己 new 的 HTTP 客户端）靠系统属性使用代理
+        System.setProperty("http.proxyHost", PROXY_HOST);
+        System.setProperty("http.proxyPort", String.valueOf(PROXY_PORT));
+        System.setProperty("https.proxyHost", PROXY_HOST);
+        System.setProperty("https.proxyPort", String.valueOf(PROXY_PORT));
+        HTTP = SharedHttpClient.create(ProxySelector.of(new InetSocketAddress(PROXY_HOST, PROXY_PORT)), Duration.ofSeconds(15));
+    }
+
+    private ModelRegistry() {
+    }
+
+    public static SharedHttpClient http() {
+        return HTTP;
+    }
+
+    public static AdaptiveRateLimiter openAiLimiter() {
+        return OPENAI_LIMITER;
+    }
+
+    public static ChatModel chat(OpenAiChatModelName modelName) {
+        return chat(modelName.toString());
+    }
+
+    /**
+     * OpenAI 的 ChatModel，同名只创建一次，经过限流器
+     */
+    public static ChatModel chat(String modelName) {
+        return (ChatModel) MODELS.computeIfAbsent("chat:" + modelName, key -> OPENAI_LIMITER.chatModel(openAi().modelName(modelName).maxRetries(0).build()));
+    }
+
+    public static StreamingChatModel streaming(OpenAiChatModelName modelName) {
+        return streaming(modelName.toString());
+    }
+
+    public static StreamingChatModel streaming(String modelName) {
+        return (StreamingChatModel) MODELS.computeIfAbsent("streaming:" + modelName, key -> OPENAI_LIMITER.streamingChatModel(openAiStreaming().modelName(modelName).build()));
+    }
+
+    public static OpenAiModerationModel moderation(String modelName) {
+        return (OpenAiModerationModel) MODELS.computeIfAbsent("moderation:" + modelName, key -> OpenAiModerationModel.builder()
+                .httpClientBuilder(HTTP.langchain4jBuilder())
+                .apiKey(OPENAI_API_KEY)
+                .modelName(modelName)
+                .build());
+    }
+
+    /**
+     * 智谱的 OpenAI 兼容接口，例如 zhipu("glm-4-flash")
+     */
+    public static ChatModel zhipu(String modelName) {
+        return (ChatModel) MODELS.computeIfAbsent("zhipu:" + modelName, key -> zhipu().modelName(modelName).build());
+    }
+
+    /**
+     * 配好智谱 API Key、地址和共享 HTTP 客户端的 builder，用于需要额外参数（例如 temperature）的模型；结果不缓存
+     */
+    public static OpenAiChatModel.OpenAiChatModelBuilder zhipu() {
+        return OpenAiChatModel.builder()
+                .httpClientBuilder(HTTP.langchain4jBuilder())
+                .apiKey(ZHIPU_API_KEY)
+                .baseUrl(ZHIPU_BASE_URL);
+    }
+
+    /**
+     * 配好 API Key 和共享 HTTP 客户端的 builder，用于需要额外参数的模型；结果不缓存，
+     * 需要限流时自己包一层 openAiLimiter().chatModel(..)
+     */
+    public static OpenAiChatModel.OpenAiChatModelBuilder openAi() {
+        return OpenAiChatModel.builder()
+                .httpClientBuilder(HTTP.langchain4jBuilder())
+                .apiKey(OPENAI_API_KEY);
+    }
+
+    public static OpenAiStreamingChatModel.OpenAiStreamingChatModelBuilder openAiStreaming() {
+        return OpenAiStreamingChatModel.builder()
+                .httpClientBuilder(HTTP.langchain4jBuilder())
+                .apiKey(OPENAI_API_KEY);
+    }
+}
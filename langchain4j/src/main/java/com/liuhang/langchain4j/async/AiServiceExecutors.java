@@ -0,0 +1,87 @@
+package com.liuhang.langchain4j.async;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 执行阻塞 AI 服务调用的线程
+ *
+ * Assistant.chat、CustomerService.chat 这类方法要阻塞整个 LLM 往返（几秒），期间占着一个线程；
+ * 工具执行和 ChatMemoryStore 的读写也都在调用线程上完成。
+ *
+ * perTask 每个任务一个线程，不排队也不会因为线程池满而拒绝：
+ *      运行在 JDK 21+ 时用虚拟线程，阻塞的 HTTP 调用只挂起虚拟线程，几万个在途调用只需要几个载体线程
+ *      项目编译目标是 Java 17，没法直接引用虚拟线程的 API，所以通过反射创建；
+ *      JDK 17 上退回为栈很小（256KB）的守护平台线程，同样一个调用一个线程，只是每个线程更贵
+ * 在虚拟线程上注意：synchronized 里阻塞会占住载体线程（JDK 21~23），按会话加锁请用 SessionLocks（ReentrantLock）。
+ */
+public final class AiServiceExecutors {
+
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+
+    private static final boolean VIRTUAL_THREADS = detectVirtualThreads();
+
+    private static volatile ExecutorService shared;
+
+    private AiServiceExecutors() {
+    }
+
+    /**
+     * 当前 JVM 是否支持虚拟线程
+     */
+    public static boolean virtualThreadsAvailable() {
+        return VIRTUAL_THREADS;
+    }
+
+    /**
+     * 进程内共享的 perTask 执行器，AsyncAiServices 默认使用它
+     */
+    public static ExecutorService shared() {
+        ExecutorService executor = shared;
+        if (executor == null) {
+            synchronized (AiServiceExecutors.class) {
+                executor = shared;
+                if (executor == null) {
+                    executor = perTask("ai-service");
+                    shared = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 每个任务一个新线程的执行器，线程名为 name-序号
+     */
+    public static ExecutorService perTask(String name) {
+        if (VIRTUAL_THREADS) {
+            try {
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                builder = builderType.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+                ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+                return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("failed to create virtual thread executor", e);
+            }
+        }
+        AtomicLong sequence = new AtomicLong();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(null, r, name + "-" + sequence.getAndIncrement(), PLATFORM_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static boolean detectVirtualThreads() {
+        // JDK 19、20 里虚拟线程是预览特性，没开 --enable-preview 时 ofVirtual 会抛异常
+        try {
+            Thread.class.getMethod("ofVirtual").invoke(null);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.liuhang.langchain4j.async;
+
+import dev.langchain4j.service.TokenStream;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+/**
+ * AI 服务方法的异步版本
+ *
+ * 声明一个和同步接口同名同参数、但返回 CompletableFuture 或 Flow.Publisher 的接口，例如：
+ *      interface AsyncAssistant {
+ *          CompletableFuture<String> chat(String sessionId, String userMessage);
+ *          Flow.Publisher<String> stream(String sessionId, String userMessage);
+ *      }
+ *      AsyncAssistant async = AsyncAiServices.create(AsyncAssistant.class, assistant);
+ * 每次调用在 AiServiceExecutors 的线程（JDK 21+ 为虚拟线程）上执行同步方法，
+ * AiServices 在同一个线程里完成提示词渲染、ChatMemoryStore 读写、模型调用和工具执行。
+ * 返回 Flow.Publisher<String>（或 ChatPublisher）的方法对应返回 TokenStream 的同步方法，
+ * 在调用线程上拿到 TokenStream，订阅时才开始流式调用，见 ChatPublisher。
+ * @MemoryId、@UserMessage 等注解只需要写在同步接口上；异步接口里的 default 方法照常执行，可以组合其他异步方法。
+ */
+public final class AsyncAiServices {
+
+    private AsyncAiServices() {
+    }
+
+    public static <A> A create(Class<A> asyncType, Object service) {
+        return create(asyncType, service, AiServiceExecutors.shared());
+    }
+
+    /**
+     * @param service AiServices 创建的同步服务，或者任何实现了对应同步方法的对象
+     */
+    public static <A> A create(Class<A> asyncType, Object service, Executor executor) {
+        Map<Method, Method> targets = new HashMap<>();
+        for (Method method : asyncType.getMethods()) {
+            if (method.isDefault() || method.getDeclaringClass() == Object.class) {
+                continue;
+            }
+            Class<?> returnType = method.getReturnType();
+            if (returnType != CompletableFuture.class && returnType != Flow.Publisher.class && returnType != ChatPublisher.class) {
+                throw new IllegalArgumentException(asyncType.getSimpleName() + "." + method.getName() + " must return CompletableFuture or Flow.Publisher");
+            }
+            Method target = synchronousMethod(service, method);
+            if (returnType != CompletableFuture.class && target.getReturnType() != TokenStream.class) {
+                throw new IllegalArgumentException(target + " must return TokenStream to back " + method);
+            }
+            targets.put(method, target);
+        }
+        Object proxy = Proxy.newProxyInstance(asyncType.getClassLoader(), new Class<?>[]{asyncType}, (self, method, args) -> {
+            Method target = targets.get(method);
+            if (target == null) {
+                if (method.isDefault()) {
+                    return InvocationHandler.invokeDefault(self, method, args);
+                }
+                if (method.getDeclaringClass() == Object.class) {
+                    return method.invoke(service, args);
+                }
+                throw new UnsupportedOperationException(method.toString());
+            }
+            if (method.getReturnType() != CompletableFuture.class) {
+                return ChatPublisher.of((TokenStream) invoke(target, service, args));
+            }
+            return CompletableFuture.supplyAsync(() -> invoke(target, service, args), executor);
+        });
+        return asyncType.cast(proxy);
+    }
+
+    /**
+     * 在共享执行器上执行任意阻塞调用，例如 supplyAsync(() -> chatBot.reply(text))
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, AiServiceExecutors.shared());
+    }
+
+    /**
+     * 优先用服务实现的接口上的方法：AiServices 返回的是动态代理，代理类本身所在的包不对外开放
+     */
+    private static Method synchronousMethod(Object service, Method asyncMethod) {
+        for (Class<?> type = service.getClass(); type != null; type = type.getSuperclass()) {
+            for (Class<?> candidate : type.getInterfaces()) {
+                try {
+                    Method method = candidate.getMethod(asyncMethod.getName(), asyncMethod.getParameterTypes());
+                    method.setAccessible(true);
+                    return method;
+                } catch (NoSuchMethodException ignored) {
+                    // 继续找下一个接口
+                }
+            }
+        }
+        try {
+            Method method = service.getClass().getMethod(asyncMethod.getName(), asyncMethod.getParameterTypes());
+            method.setAccessible(true);
+            return method;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("no synchronous method matching " + asyncMethod, e);
+        }
+    }
+
+    private static Object invoke(Method target, Object service, Object[] args) {
+        try {
+            return target.invoke(service, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new CompletionException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
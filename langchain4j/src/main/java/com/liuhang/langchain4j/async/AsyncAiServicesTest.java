@@ -0,0 +1,126 @@
+package com.liuhang.langchain4j.async;
+
+import com.liuhang.langchain4j.Assistant;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一万个同时在途的对话：每个调用一个线程 和 固定大小的线程池对比
+ *
+ * 小堆运行：-Xmx64m
+ */
+public class AsyncAiServicesTest {
+
+    interface AsyncAssistant {
+
+        CompletableFuture<String> chat(String sessionId, String userMessage);
+
+        default CompletableFuture<String> greet(String sessionId) {
+            return chat(sessionId, "Hello");
+        }
+    }
+
+    /**
+     * 假的同步 AI 服务：读写 ChatMemoryStore，执行一次 50ms 的工具调用，模型往返 latencyMillis，全程阻塞调用线程
+     */
+    static class FakeAssistant implements Assistant {
+
+        private final ChatMemoryStore store = new InMemoryChatMemoryStore();
+        private final long latencyMillis;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger peakInFlight = new AtomicInteger();
+
+        FakeAssistant(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public String chat(String sessionId, String userMessage) {
+            peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                List<ChatMessage> messages = new ArrayList<>(store.getMessages(sessionId));
+                messages.add(UserMessage.from(userMessage));
+                store.updateMessages(sessionId, messages);
+                sleep(50);
+                sleep(latencyMillis);
+                String answer = "reply to " + userMessage;
+                messages.add(AiMessage.from(answer));
+                store.updateMessages(sessionId, messages);
+                return answer;
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void tenThousandConversations() {
+        System.out.println("虚拟线程: " + AiServiceExecutors.virtualThreadsAvailable());
+        FakeAssistant assistant = new FakeAssistant(1000);
+        AsyncAssistant async = AsyncAiServices.create(AsyncAssistant.class, assistant);
+        run("每个调用一个线程", async, assistant, 10_000);
+    }
+
+    /**
+     * 200 个线程的固定线程池：同时只有 200 个对话在途，其余排队
+     */
+    @Test
+    public void fixedPoolForComparison() {
+        ExecutorService pool = Executors.newFixedThreadPool(200);
+        FakeAssistant assistant = new FakeAssistant(1000);
+        AsyncAssistant async = AsyncAiServices.create(AsyncAssistant.class, assistant, pool);
+        run("200 线程的固定线程池", async, assistant, 2_000);
+        pool.shutdown();
+    }
+
+    /**
+     * 异步接口里的 default 方法照常执行，不需要同步服务里有对应的方法
+     */
+    @Test
+    public void defaultMethods() {
+        AsyncAssistant async = AsyncAiServices.create(AsyncAssistant.class, new FakeAssistant(10));
+        System.out.println(async.greet("session-1").join());
+    }
+
+    private static void run(String name, AsyncAssistant async, FakeAssistant assistant, int conversations) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        threads.resetPeakThreadCount();
+
+        long start = System.nanoTime();
+        List<CompletableFuture<String>> replies = new ArrayList<>(conversations);
+        for (int i = 0; i < conversations; i++) {
+            replies.add(async.chat("session-" + i, "Hello #" + i));
+        }
+        long submitted = System.nanoTime();
+        replies.forEach(CompletableFuture::join);
+        long finished = System.nanoTime();
+
+        System.out.printf("%s: %d 个对话, 提交 %.0fms, 全部完成 %.0fms, 最多同时在途 %d, 线程峰值 %d, 堆已用 %dMB / 最大 %dMB%n",
+                name, conversations, (submitted - start) / 1e6, (finished - start) / 1e6, assistant.peakInFlight.get(),
+                threads.getPeakThreadCount(), memory.getHeapMemoryUsage().getUsed() / 1024 / 1024,
+                memory.getHeapMemoryUsage().getMax() / 1024 / 1024);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.liuhang.langchain4j.async;
+
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import dev.langchain4j.service.TokenStream;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 把一次流式调用变成 Flow.Publisher<String>，每个元素是一段部分响应
+ *
+ * 之前的写法要自己实现 StreamingChatResponseHandler，再用 CountDownLatch、CompletableFuture 或 Thread.sleep 等它结束。
+ * 这里：
+ *      订阅时才发起调用；按订阅者 request(n) 的数量下发，completion() 拿到最终的 ChatResponse（含 tokenUsage）
+ *      上游推得比订阅者消费得快时，先放进容量为 bufferSize 的缓冲区；缓冲区满了就阻塞上游的回调线程，
+ *      HTTP 客户端停止读取响应体，TCP / HTTP2 的流控让服务端也停下来，堆里最多只有 bufferSize 段文本
+ *      上游停滞超过 stallTimeout（订阅者一直不 request）就取消调用并报错
+ *      cancel() 通过 StreamingHandle 中止上游的 HTTP 流，不再产生 token
+ * 只能订阅一次。
+ *
+ *      ChatPublisher.of(model, "Tell me a joke").forEach(System.out::print).join();
+ */
+public class ChatPublisher implements Flow.Publisher<String> {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64;
+    public static final Duration DEFAULT_STALL_TIMEOUT = Duration.ofSeconds(60);
+
+    private final Consumer<StreamingChatResponseHandler> upstream;
+    private final int bufferSize;
+    private final Duration stallTimeout;
+    private final CompletableFuture<ChatResponse> completion = new CompletableFuture<>();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * @param upstream 用给定的 handler 发起一次流式调用
+     */
+    public ChatPublisher(Consumer<StreamingChatResponseHandler> upstream, int bufferSize, Duration stallTimeout) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.upstream = upstream;
+        this.bufferSize = bufferSize;
+        this.stallTimeout = stallTimeout;
+    }
+
+    public static ChatPublisher of(StreamingChatModel model, String userMessage) {
+        return of(model, ChatRequest.builder().messages(UserMessage.from(userMessage)).build());
+    }
+
+    public static ChatPublisher of(StreamingChatModel model, ChatRequest chatRequest) {
+        return new ChatPublisher(handler -> model.chat(chatRequest, handler), DEFAULT_BUFFER_SIZE, DEFAULT_STALL_TIMEOUT);
+    }
+
+    /**
+     * AI 服务返回的 TokenStream，订阅时才 start()
+     */
+    public static ChatPublisher of(TokenStream tokenStream) {
+        return new ChatPublisher(handler -> tokenStream
+                .onPartialResponseWithContext(handler::onPartialResponse)
+                .onCompleteResponse(handler::onCompleteResponse)
+                .onError(handler::onError)
+                .start(), DEFAULT_BUFFER_SIZE, DEFAULT_STALL_TIMEOUT);
+    }
+
+    /**
+     * 完成信号：所有部分响应都交给订阅者之后完成，值是完整的 ChatResponse；出错或被取消时异常结束
+     */
+    public CompletableFuture<ChatResponse> completion() {
+        return completion;
+    }
+
+    /**
+     * 订阅并逐段交给 action，返回 completion()
+     */
+    public CompletableFuture<ChatResponse> forEach(Consumer<String> action) {
+        subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+            private int received;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(bufferSize);
+            }
+
+            @Override
+            public void onNext(String item) {
+                action.accept(item);
+                // 消费掉一半再补，避免每段都 request(1)
+                if (++received == bufferSize / 2 + 1) {
+                    received = 0;
+                    subscription.request(bufferSize / 2 + 1);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return completion;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("ChatPublisher can only be subscribed once"));
+            return;
+        }
+        Bridge bridge = new Bridge(subscriber);
+        subscriber.onSubscribe(bridge);
+        if (!bridge.cancelled) {
+            try {
+                upstream.accept(bridge);
+            } catch (RuntimeException e) {
+                bridge.onError(e);
+            }
+        }
+    }
+
+    /**
+     * 既是上游的 handler 也是下游的 Subscription；drain 用 wip 计数保证同一时刻只有一个线程在下发
+     */
+    private class Bridge implements StreamingChatResponseHandler, Flow.Subscription {
+
+        private final Flow.Subscriber<? super String> subscriber;
+        private final ArrayBlockingQueue<String> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile StreamingHandle handle;
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile ChatResponse response;
+        private volatile Throwable error;
+        private boolean terminated;
+
+        Bridge(Flow.Subscriber<? super String> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void onPartialResponse(String partialResponse) {
+            offer(partialResponse);
+        }
+
+        @Override
+        public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+            handle = context.streamingHandle();
+            if (cancelled) {
+                handle.cancel();
+                return;
+            }
+            offer(partialResponse.text());
+        }
+
+        @Override
+        public void onCompleteResponse(ChatResponse completeResponse) {
+            finish(completeResponse, null);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            finish(null, throwable);
+        }
+
+        /**
+         * 上游结束；缓冲的部分响应下发完以后才通知订阅者和 completion()
+         */
+        private void finish(ChatResponse completeResponse, Throwable throwable) {
+            if (finished.compareAndSet(false, true)) {
+                response = completeResponse;
+                error = throwable;
+                done = true;
+                drain();
+            }
+        }
+
+        /**
+         * 在上游的回调线程上执行，缓冲区满时在这里阻塞
+         */
+        private void offer(String partial) {
+            if (cancelled || done || partial == null || partial.isEmpty()) {
+                return;
+            }
+            long deadline = System.nanoTime() + stallTimeout.toNanos();
+            try {
+                while (!buffer.offer(partial, 50, TimeUnit.MILLISECONDS)) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (System.nanoTime() >= deadline) {
+                        cancelUpstream();
+                        finish(null, new IllegalStateException("subscriber did not request more partial responses within " + stallTimeout));
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelUpstream();
+                finish(null, e);
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                // Reactive Streams 3.9：非正数的 request 以 onError 结束，缓冲的部分响应不再下发
+                cancelUpstream();
+                buffer.clear();
+                finish(null, new IllegalArgumentException("request must be positive, got " + n));
+                return;
+            }
+            requested.accumulateAndGet(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                cancelUpstream();
+                completion.completeExceptionally(new CancellationException("subscriber cancelled"));
+                drain();
+            }
+        }
+
+        private void cancelUpstream() {
+            StreamingHandle current = handle;
+            if (current != null && !current.isCancelled()) {
+                current.cancel();
+            }
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (terminated) {
+                    buffer.clear();
+                    return;
+                }
+                long want = requested.get();
+                long emitted = 0;
+                while (!cancelled) {
+                    boolean finished = done;
+                    String item = emitted == want ? null : buffer.poll();
+                    if (finished && buffer.isEmpty() && item == null) {
+                        terminate();
+                        break;
+                    }
+                    if (item == null) {
+                        break;
+                    }
+                    subscriber.onNext(item);
+                    emitted++;
+                }
+                if (cancelled) {
+                    buffer.clear();
+                }
+                if (emitted != 0 && want != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void terminate() {
+            terminated = true;
+            if (error != null) {
+                subscriber.onError(error);
+                completion.completeExceptionally(error);
+            } else {
+                subscriber.onComplete();
+                completion.complete(response);
+            }
+        }
+    }
+}
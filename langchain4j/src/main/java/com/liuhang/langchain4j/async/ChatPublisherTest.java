@@ -0,0 +1,221 @@
+package com.liuhang.langchain4j.async;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 慢消费者的背压、取消时中止上游，用一个不停推 token 的假模型代替 OpenAI
+ */
+public class ChatPublisherTest {
+
+    /**
+     * 假流式模型：在自己的线程上尽快推 tokens 个 token，像 HTTP 客户端一样支持 StreamingHandle.cancel()
+     */
+    static class FakeStreamingModel implements StreamingChatModel {
+
+        private final int tokens;
+        final AtomicInteger produced = new AtomicInteger();
+
+        FakeStreamingModel(int tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+            Thread thread = new Thread(() -> {
+                boolean[] cancelled = new boolean[1];
+                StreamingHandle handle = new StreamingHandle() {
+                    @Override
+                    public void cancel() {
+                        cancelled[0] = true;
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return cancelled[0];
+                    }
+                };
+                for (int i = 0; i < tokens; i++) {
+                    if (cancelled[0]) {
+                        return;
+                    }
+                    produced.incrementAndGet();
+                    handler.onPartialResponse(new PartialResponse("token" + i + " "), new PartialResponseContext(handle));
+                }
+                handler.onCompleteResponse(ChatResponse.builder()
+                        .aiMessage(AiMessage.from("done"))
+                        .tokenUsage(new TokenUsage(10, tokens))
+                        .build());
+            }, "fake-http");
+            thread.start();
+        }
+    }
+
+    /**
+     * 每 1ms 处理一段：直接用 handler 时上游推多快就堆多少；经过 ChatPublisher 时最多堆 bufferSize 段
+     */
+    @Test
+    public void slowConsumerIsBounded() throws InterruptedException {
+        FakeStreamingModel model = new FakeStreamingModel(2000);
+        ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>();
+        AtomicInteger peak = new AtomicInteger();
+        model.chat(ChatRequest.builder().build(), new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                pending.add(partialResponse);
+                peak.accumulateAndGet(pending.size(), Math::max);
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+            }
+
+            @Override
+            public void onError(Throwable error) {
+            }
+        });
+        int consumed = 0;
+        while (consumed < 2000) {
+            if (pending.poll() != null) {
+                consumed++;
+                sleep(1);
+            }
+        }
+        System.out.println("直接用 handler: 最多堆积 " + peak.get() + " 段");
+
+        // 订阅者把每段交给自己的工作线程处理，处理完再 request(1)
+        FakeStreamingModel bounded = new FakeStreamingModel(2000);
+        AtomicInteger received = new AtomicInteger();
+        AtomicInteger peakBuffered = new AtomicInteger();
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        ChatPublisher publisher = ChatPublisher.of(bounded, "Tell me a joke");
+        long start = System.nanoTime();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(String item) {
+                worker.execute(() -> {
+                    peakBuffered.accumulateAndGet(bounded.produced.get() - received.incrementAndGet(), Math::max);
+                    sleep(1);
+                    subscription.request(1);
+                });
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throwable.printStackTrace();
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        ChatResponse response = publisher.completion().join();
+        worker.shutdown();
+        worker.awaitTermination(5, TimeUnit.SECONDS);
+        System.out.printf("ChatPublisher(bufferSize=%d): 收到 %d 段, 上游最多领先 %d 段, %.0fms, %s%n",
+                ChatPublisher.DEFAULT_BUFFER_SIZE, received.get(), peakBuffered.get(), (System.nanoTime() - start) / 1e6,
+                response.tokenUsage());
+    }
+
+    /**
+     * 拿到 10 段就取消：上游在下一次回调时收到 cancel，不再继续生成
+     */
+    @Test
+    public void cancelStopsUpstream() {
+        FakeStreamingModel model = new FakeStreamingModel(100_000);
+        ChatPublisher publisher = ChatPublisher.of(model, "Tell me a long story");
+        AtomicInteger received = new AtomicInteger();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(String item) {
+                if (received.incrementAndGet() == 10) {
+                    subscription.cancel();
+                } else {
+                    subscription.request(1);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        publisher.completion().handle((response, error) -> {
+            System.out.println("完成信号: " + error);
+            return null;
+        }).join();
+        sleep(200);
+        System.out.printf("收到 %d 段后取消, 上游一共生成 %d 段（总共 100000）%n", received.get(), model.produced.get());
+    }
+
+    /**
+     * forEach 一行消费，完成信号里带 tokenUsage；第二次订阅直接报错
+     */
+    @Test
+    public void forEachAndSingleSubscription() {
+        ChatPublisher publisher = ChatPublisher.of(new FakeStreamingModel(20), "Tell me a joke");
+        ChatResponse response = publisher.forEach(System.out::print).join();
+        System.out.println("\n" + response.tokenUsage());
+
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+            }
+
+            @Override
+            public void onNext(String item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                System.out.println("第二次订阅: " + throwable.getMessage());
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
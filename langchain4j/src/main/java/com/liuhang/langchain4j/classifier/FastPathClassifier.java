@@ -0,0 +1,81 @@
+package com.liuhang.langchain4j.classifier;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 先本地判断、没把握再问 LLM 的分类器
+ *
+ * MilesOfSmiles.handle 每次都要先等 greetingExpert.isGreeting 的一次 LLM 往返，哪怕输入就是 "Hello"。
+ * 这里把若干本地分类器按顺序排成几级（例如 正则规则 -> 逻辑回归），
+ * 某一级的置信度达到 threshold 就直接用它的结论，否则交给下一级，都没把握时才调用 fallback（原来的 AI 服务方法）。
+ */
+public class FastPathClassifier implements Predicate<String> {
+
+    private final List<TextClassifier> stages;
+    private final double threshold;
+    private final Predicate<String> fallback;
+
+    private final LongAdder[] decided;
+    private final LongAdder deferred = new LongAdder();
+
+    /**
+     * @param stages    本地分类器，按顺序尝试
+     * @param threshold 置信度达到多少才在本地做决定，越高越保守
+     * @param fallback  原来的 LLM 分类，例如 greetingExpert::isGreeting
+     */
+    public FastPathClassifier(List<TextClassifier> stages, double threshold, Predicate<String> fallback) {
+        this.stages = List.copyOf(stages);
+        this.threshold = threshold;
+        this.fallback = fallback;
+        this.decided = new LongAdder[stages.size()];
+        for (int i = 0; i < decided.length; i++) {
+            decided[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public boolean test(String text) {
+        for (int i = 0; i < stages.size(); i++) {
+            Prediction prediction = stages.get(i).classify(text);
+            if (!prediction.isAbstain() && prediction.confidence() >= threshold) {
+                decided[i].increment();
+                return prediction.positive();
+            }
+        }
+        deferred.increment();
+        return fallback.test(text);
+    }
+
+    /**
+     * 第 stage 级在本地做出决定的次数
+     */
+    public long decidedBy(int stage) {
+        return decided[stage].sum();
+    }
+
+    public long decidedLocally() {
+        long sum = 0;
+        for (LongAdder adder : decided) {
+            sum += adder.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * 交给 LLM 的次数
+     */
+    public long deferred() {
+        return deferred.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("FastPathClassifier{");
+        for (int i = 0; i < stages.size(); i++) {
+            sb.append(stages.get(i).getClass().getSimpleName()).append('=').append(decidedBy(i)).append(", ");
+        }
+        return sb.append("llm=").append(deferred()).append('}').toString();
+    }
+}
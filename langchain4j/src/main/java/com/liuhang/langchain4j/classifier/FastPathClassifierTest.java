@@ -0,0 +1,100 @@
+package com.liuhang.langchain4j.classifier;
+
+import com.liuhang.langchain4j.ModelRegistry;
+import com.liuhang.langchain4j.classifier.HashedNgramLogisticRegression.Sample;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.UserMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * 评估本地快速通道：省掉了多少次 LLM 调用，准确率相比只用 LLM 变化多少
+ */
+public class FastPathClassifierTest {
+
+    interface GreetingExpert {
+
+        @UserMessage("Is the following text a greeting? Text: {{it}}")
+        boolean isGreeting(String text);
+    }
+
+    /**
+     * 没有出现在训练样本里的标注数据
+     */
+    static final List<Sample> LABELLED = List.of(
+            new Sample("hello!", true), new Sample("Hi everyone", true), new Sample("hey hey", true),
+            new Sample("Good morning team!", true), new Sample("Hello, is anybody there?", true),
+            new Sample("Hi, I have a question", true), new Sample("你好！", true), new Sample("哈喽，大家好", true),
+            new Sample("Howdy partner", true), new Sample("Hey, good to see you", true), new Sample("嗨，在吗", true),
+            new Sample("Good evening", true), new Sample("hello hello", true), new Sample("Hi Miles of Smiles", true),
+            new Sample("What services do you offer for families?", false), new Sample("How can I get a refund for my ticket?", false),
+            new Sample("My order arrived broken", false), new Sample("Can I pay with PayPal?", false),
+            new Sample("Which cities do you operate in?", false), new Sample("I forgot my password", false),
+            new Sample("Cancel my subscription please", false), new Sample("退货流程是什么？", false),
+            new Sample("发票怎么开", false), new Sample("你们周末营业吗？", false), new Sample("Thanks a lot", false),
+            new Sample("Where can I find the user manual?", false), new Sample("The website is very slow today", false),
+            new Sample("Do you have vegetarian options?", false), new Sample("Book a table for two", false),
+            new Sample("See you later", false));
+
+    /**
+     * 用一个准确率约 95% 的假 LLM 代替真实模型，不需要网络
+     */
+    @Test
+    public void harnessWithFakeLlm() {
+        AtomicInteger index = new AtomicInteger();
+        Predicate<String> fakeLlm = text -> {
+            boolean truth = LABELLED.stream().filter(s -> s.text().equals(text)).findFirst().map(Sample::positive).orElse(false);
+            // 每 20 次答错一次
+            return index.incrementAndGet() % 20 == 0 ? !truth : truth;
+        };
+        evaluate(fakeLlm);
+    }
+
+    /**
+     * 实际使用：用 ConnectAIService 里的 glm-4-flash 做兜底
+     */
+    @Test
+    public void harnessWithGlm4Flash() {
+        ChatModel flash = ModelRegistry.zhipu("glm-4-flash");
+        GreetingExpert greetingExpert = AiServices.create(GreetingExpert.class, flash);
+        evaluate(greetingExpert::isGreeting);
+    }
+
+    private static void evaluate(Predicate<String> llm) {
+        AtomicInteger llmCalls = new AtomicInteger();
+        Predicate<String> countingLlm = text -> {
+            llmCalls.incrementAndGet();
+            return llm.test(text);
+        };
+
+        int llmOnlyCorrect = 0;
+        for (Sample sample : LABELLED) {
+            if (countingLlm.test(sample.text()) == sample.positive()) {
+                llmOnlyCorrect++;
+            }
+        }
+        int llmOnlyCalls = llmCalls.getAndSet(0);
+
+        FastPathClassifier fastPath = GreetingClassifiers.fastPath(countingLlm);
+        int fastPathCorrect = 0;
+        for (Sample sample : LABELLED) {
+            boolean predicted = fastPath.test(sample.text());
+            if (predicted == sample.positive()) {
+                fastPathCorrect++;
+            } else {
+                System.out.println("判断错误: " + sample.text());
+            }
+        }
+
+        int n = LABELLED.size();
+        System.out.printf("只用 LLM: 调用 %d 次, 准确率 %.1f%%%n", llmOnlyCalls, 100.0 * llmOnlyCorrect / n);
+        System.out.printf("快速通道: 调用 %d 次（省掉 %.0f%%）, 准确率 %.1f%%（变化 %+.1f%%）%n",
+                llmCalls.get(), 100.0 * (llmOnlyCalls - llmCalls.get()) / llmOnlyCalls,
+                100.0 * fastPathCorrect / n, 100.0 * (fastPathCorrect - llmOnlyCorrect) / n);
+        System.out.println(fastPath);
+    }
+}
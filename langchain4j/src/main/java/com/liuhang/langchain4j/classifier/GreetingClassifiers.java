@@ -0,0 +1,62 @@
+package com.liuhang.langchain4j.classifier;
+
+import com.liuhang.langchain4j.classifier.HashedNgramLogisticRegression.Sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * ConnectAIService.GreetingExpert 的本地快速通道：正则规则 + 用内置样本训练的逻辑回归
+ */
+public final class GreetingClassifiers {
+
+    private static final String GREETING_WORDS = "hi|hello|hey|hiya|howdy|greetings|yo|good\\s+(morning|afternoon|evening|day)"
+            + "|你好|您好|嗨|哈喽|哈啰|早上好|早安|下午好|晚上好|大家好";
+
+    private GreetingClassifiers() {
+    }
+
+    /**
+     * 只有一句问候（可以带称呼和标点）算问候；以问号结尾的长句一般是提问
+     */
+    public static RegexClassifier rules() {
+        return new RegexClassifier()
+                .rule("\\s*(" + GREETING_WORDS + ")[\\s,，!！.。~]*(there|all|everyone|guys|team|朋友们?|各位)?[\\s!！.。~😊]*", true, 0.99)
+                .rule("(?!\\s*(" + GREETING_WORDS + ")\\b).{20,}[?？]\\s*", false, 0.97);
+    }
+
+    public static HashedNgramLogisticRegression model() {
+        return new HashedNgramLogisticRegression().train(trainingSamples(), 30, 0.5, 1e-5);
+    }
+
+    /**
+     * 规则 -> 逻辑回归 -> LLM
+     */
+    public static FastPathClassifier fastPath(Predicate<String> llm) {
+        return new FastPathClassifier(List.of(rules(), model()), 0.9, llm);
+    }
+
+    static List<Sample> trainingSamples() {
+        List<Sample> samples = new ArrayList<>();
+        for (String text : List.of(
+                "Hello", "Hi", "Hey", "Hi there", "Hello there!", "Hey, how are you?", "Good morning", "Good evening everyone",
+                "Howdy", "Greetings", "Hi, nice to meet you", "Hello, how's it going?", "Hey there, what's up?", "Morning!",
+                "Hi team", "Hello again", "Yo", "Hiya", "Good afternoon, hope you are well", "Hello, anyone there?",
+                "你好", "您好", "嗨", "哈喽", "早上好", "晚上好", "大家好", "你好呀", "您好，请问在吗", "早安，今天过得怎么样")) {
+            samples.add(new Sample(text, true));
+        }
+        for (String text : List.of(
+                "Which services do you provide?", "How much does the premium plan cost?", "I want to cancel my order",
+                "My package has not arrived yet", "Can I change my delivery address?", "What are your opening hours?",
+                "The payment gateway is down", "Please reset my password", "Do you ship to Canada?", "I need a refund",
+                "Tell me a joke", "How do I contact support?", "Is there a discount for students?", "Where is my invoice?",
+                "Translate this into French", "The app crashes when I log in", "What is the weather like today?",
+                "Can you recommend a hotel?", "Help", "Thanks for your help", "Bye",
+                "你们提供哪些服务", "我要退款", "订单什么时候发货", "怎么修改收货地址", "会员多少钱", "客服电话是多少",
+                "登录不上去了", "帮我翻译这段话", "谢谢", "再见")) {
+            samples.add(new Sample(text, false));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,111 @@
+package com.liuhang.langchain4j.classifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 基于哈希 n-gram 特征的逻辑回归
+ *
+ * 特征：词的一元、二元组和字符三元组（对中文同样有效），哈希到固定维度（hashing trick），不需要维护词表；
+ * 每个特征取值 1 / sqrt(特征数)，这样长短不同的文本得分尺度一致。
+ * 用带 L2 正则的 SGD 训练，几百条样本在毫秒级完成，预测就是一遍加法和一次 sigmoid。
+ */
+public class HashedNgramLogisticRegression implements TextClassifier {
+
+    private final int mask;
+    private final float[] weights;
+    private float bias;
+
+    public HashedNgramLogisticRegression() {
+        this(18);
+    }
+
+    /**
+     * @param bits 特征维度为 2^bits
+     */
+    public HashedNgramLogisticRegression(int bits) {
+        this.weights = new float[1 << bits];
+        this.mask = weights.length - 1;
+    }
+
+    public record Sample(String text, boolean positive) {
+    }
+
+    /**
+     * @param epochs       遍历样本的轮数
+     * @param learningRate SGD 步长
+     * @param l2           L2 正则系数
+     */
+    public HashedNgramLogisticRegression train(List<Sample> samples, int epochs, double learningRate, double l2) {
+        List<Sample> shuffled = new ArrayList<>(samples);
+        Random random = new Random(42);
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            Collections.shuffle(shuffled, random);
+            for (Sample sample : shuffled) {
+                int[] features = features(sample.text);
+                float value = (float) (1 / Math.sqrt(features.length));
+                double gradient = probability(features, value) - (sample.positive ? 1 : 0);
+                for (int feature : features) {
+                    weights[feature] -= (float) (learningRate * (gradient * value + l2 * weights[feature]));
+                }
+                bias -= (float) (learningRate * gradient);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 属于正类的概率
+     */
+    public double probability(String text) {
+        int[] features = features(text);
+        return probability(features, (float) (1 / Math.sqrt(features.length)));
+    }
+
+    @Override
+    public Prediction classify(String text) {
+        double p = probability(text);
+        return new Prediction(p >= 0.5, Math.max(p, 1 - p));
+    }
+
+    private double probability(int[] features, float value) {
+        double z = bias;
+        for (int feature : features) {
+            z += weights[feature] * value;
+        }
+        return 1 / (1 + Math.exp(-z));
+    }
+
+    private int[] features(String text) {
+        String normalized = text.toLowerCase(Locale.ROOT).trim();
+        String[] words = normalized.split("[^\\p{L}\\p{N}]+");
+        List<Integer> features = new ArrayList<>();
+        String previous = "^";
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            features.add(hash("w:" + word));
+            features.add(hash("b:" + previous + " " + word));
+            previous = word;
+        }
+        features.add(hash("b:" + previous + " $"));
+        String padded = "^" + normalized + "$";
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            features.add(hash("c:" + padded.substring(i, i + 3)));
+        }
+        int[] result = new int[features.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = features.get(i);
+        }
+        return result;
+    }
+
+    private int hash(String feature) {
+        int h = feature.hashCode() * 0x9e3779b9;
+        return (h ^ (h >>> 15)) & mask;
+    }
+}
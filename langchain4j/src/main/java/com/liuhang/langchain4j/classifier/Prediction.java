@@ -0,0 +1,20 @@
+package com.liuhang.langchain4j.classifier;
+
+/**
+ * 分类结果
+ *
+ * @param positive   是否属于正类（例如“是问候语”）
+ * @param confidence 置信度，0.5 表示完全不确定，0 表示放弃判断
+ */
+public record Prediction(boolean positive, double confidence) {
+
+    private static final Prediction ABSTAIN = new Prediction(false, 0);
+
+    public static Prediction abstain() {
+        return ABSTAIN;
+    }
+
+    public boolean isAbstain() {
+        return confidence == 0;
+    }
+}
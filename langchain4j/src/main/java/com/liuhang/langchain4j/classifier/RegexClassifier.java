@@ -0,0 +1,36 @@
+package com.liuhang.langchain4j.classifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 词法 / 正则规则层：按顺序匹配，第一条匹配的规则给出结论，都不匹配就放弃判断
+ */
+public class RegexClassifier implements TextClassifier {
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * @param regex      忽略大小写，需要匹配整段文本
+     * @param positive   匹配时的结论
+     * @param confidence 匹配时的置信度
+     */
+    public RegexClassifier rule(String regex, boolean positive, double confidence) {
+        rules.add(new Rule(Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL), positive, confidence));
+        return this;
+    }
+
+    @Override
+    public Prediction classify(String text) {
+        for (Rule rule : rules) {
+            if (rule.pattern.matcher(text).matches()) {
+                return new Prediction(rule.positive, rule.confidence);
+            }
+        }
+        return Prediction.abstain();
+    }
+
+    private record Rule(Pattern pattern, boolean positive, double confidence) {
+    }
+}
@@ -0,0 +1,13 @@
+package com.liuhang.langchain4j.classifier;
+
+/**
+ * 本地文本二分类器，FastPathClassifier 的一级
+ */
+@FunctionalInterface
+public interface TextClassifier {
+
+    /**
+     * 没有把握时返回 Prediction.abstain()，交给下一级
+     */
+    Prediction classify(String text);
+}
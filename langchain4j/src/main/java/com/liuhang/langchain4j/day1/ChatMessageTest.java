@@ -1,9 +1,9 @@
 package com.liuhang.langchain4j.day1;
 
+import com.liuhang.langchain4j.ModelRegistry;
 import dev.langchain4j.data.message.*;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.response.ChatResponse;
-import dev.langchain4j.model.openai.OpenAiChatModel;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
@@ -29,17 +29,7 @@ class ChatMessageTest {
      */
     @Test
     void test1() {
-        String apiKey = System.getenv("OPENAI_API_KEY");
-        //我在国内，需要配置 HTTP 代理才能访问 OpenAI，我用的clash代理，端口可以在clash配置中查看
-        System.setProperty("http.proxyHost", "127.0.0.1");
-        System.setProperty("http.proxyPort", "7890");
-        System.setProperty("https.proxyHost", "127.0.0.1");
-        System.setProperty("https.proxyPort", "7890");
-
-        OpenAiChatModel model = OpenAiChatModel.builder()
-                .apiKey(apiKey)
-                .modelName("gpt-4o-mini")
-                .build();
+        ChatModel model = ModelRegistry.chat("gpt-4o-mini");
 
         UserMessage firstUserMessage = UserMessage.from("Hello, my name is Klaus");
         AiMessage firstAiMessage = model.chat(firstUserMessage).aiMessage(); // Hi Klaus, how can I help you?
@@ -60,16 +50,8 @@ class ChatMessageTest {
      */
     @Test
     public void testMultimodalChat() {
-        String apiKey = System.getenv("OPENAI_API_KEY");
-        //我在国内，需要配置 HTTP 代理才能访问 OpenAI，我用的clash代理，端口可以在clash配置中查看
-        System.setProperty("http.proxyHost", "127.0.0.1");
-        System.setProperty("http.proxyPort", "7890");
-        System.setProperty("https.proxyHost", "127.0.0.1");
-        System.setProperty("https.proxyPort", "7890");
-
         // 1. 初始化支持多模态的模型（必须是支持图片的模型，如 gpt-4o-mini）
-        ChatModel chatModel = OpenAiChatModel.builder()
-                .apiKey(apiKey)
+        ChatModel chatModel = ModelRegistry.openAi()
                 .modelName("gpt-4o-mini") // 关键：该模型支持图片输入
                 .temperature(0.7)
                 .build();
@@ -1,9 +1,10 @@
 package com.liuhang.langchain4j.day2;
 
 import com.liuhang.langchain4j.Assistant;
+import com.liuhang.langchain4j.ModelRegistry;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
-import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
 import org.junit.jupiter.api.Test;
@@ -19,17 +20,8 @@ public class ChatMemoryTest {
      */
     @Test
     public void test1() {
-        //我在国内，需要配置 HTTP 代理才能访问 OpenAI，我用的clash代理，端口可以在clash配置中查看
-        System.setProperty("http.proxyHost", "127.0.0.1");
-        System.setProperty("http.proxyPort", "7890");
-        System.setProperty("https.proxyHost", "127.0.0.1");
-        System.setProperty("https.proxyPort", "7890");
-
         // 1) OpenAI 模型
-        OpenAiChatModel model = OpenAiChatModel.builder()
-                .apiKey(System.getenv("OPENAI_API_KEY"))
-                .modelName("gpt-4o-mini")
-                .build();
+        ChatModel model = ModelRegistry.chat("gpt-4o-mini");
 
         // 2) 用于保存所有 session 的记忆
         InMemoryChatMemoryStore memoryStore = new InMemoryChatMemoryStore();
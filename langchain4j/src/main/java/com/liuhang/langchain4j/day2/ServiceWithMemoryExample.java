@@ -1,10 +1,9 @@
 package com.liuhang.langchain4j.day2;
 
-import com.liuhang.langchain4j.ApiKeys;
+import com.liuhang.langchain4j.ModelRegistry;
 import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatModel;
-import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.service.AiServices;
 
 import static dev.langchain4j.model.openai.OpenAiChatModelName.GPT_4_O_MINI;
@@ -20,10 +19,7 @@ public class ServiceWithMemoryExample {
 
         ChatMemory chatMemory = MessageWindowChatMemory.withMaxMessages(10);
 
-        ChatModel model = OpenAiChatModel.builder()
-                .apiKey(ApiKeys.OPENAI_API_KEY)
-                .modelName(GPT_4_O_MINI)
-                .build();
+        ChatModel model = ModelRegistry.chat(GPT_4_O_MINI);
 
         Assistant assistant = AiServices.builder(Assistant.class)
                 .chatModel(model)
@@ -1,11 +1,13 @@
 package com.liuhang.langchain4j.day2;
 
-import com.liuhang.langchain4j.ApiKeys;
+import com.liuhang.langchain4j.ModelRegistry;
+import com.liuhang.langchain4j.memory.ChatMessagesCodec;
+import com.liuhang.langchain4j.memory.GroupCommitter;
+import com.liuhang.langchain4j.memory.SessionLocks;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatModel;
-import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.MemoryId;
 import dev.langchain4j.service.UserMessage;
@@ -13,12 +15,14 @@ import dev.langchain4j.store.memory.chat.ChatMemoryStore;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import static dev.langchain4j.data.message.ChatMessageDeserializer.messagesFromJson;
 import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
 import static dev.langchain4j.model.openai.OpenAiChatModelName.GPT_4_O_MINI;
+import static org.mapdb.Serializer.BYTE_ARRAY;
 import static org.mapdb.Serializer.INTEGER;
 import static org.mapdb.Serializer.STRING;
 
@@ -35,6 +39,12 @@ public class ServiceWithPersistentMemoryForEachUserExample {
     public static void main(String[] args) {
 
         PersistentChatMemoryStore store = new PersistentChatMemoryStore();
+        // 高并发场景下可以改用组提交：最多攒 100 条更新或 10ms 提交一次
+        // PersistentChatMemoryStore store = new PersistentChatMemoryStore(10, 100, true);
+        // 以紧凑的二进制格式 + 压缩存储，旧的 JSON 数据会在读取时自动迁移
+        // PersistentChatMemoryStore store = new PersistentChatMemoryStore(new BinaryChatMessagesCodec(true, 512));
+        // 活跃会话很多时，可以在前面加一层堆内缓存（最多缓存 10000 条消息），每轮读取就不必再反序列化
+        // ChatMemoryStore store = new TieredChatMemoryStore(new PersistentChatMemoryStore(), 10_000);
 
         ChatMemoryProvider chatMemoryProvider = memoryId -> MessageWindowChatMemory.builder()
                 .id(memoryId)
@@ -42,10 +52,7 @@ public class ServiceWithPersistentMemoryForEachUserExample {
                 .chatMemoryStore(store)
                 .build();
 
-        ChatModel model = OpenAiChatModel.builder()
-                .apiKey(ApiKeys.OPENAI_API_KEY)
-                .modelName(GPT_4_O_MINI)
-                .build();
+        ChatModel model = ModelRegistry.chat(GPT_4_O_MINI);
 
         Assistant assistant = AiServices.builder(Assistant.class)
                 .chatModel(model)
@@ -64,26 +71,129 @@ public class ServiceWithPersistentMemoryForEachUserExample {
     // You can create your own implementation of ChatMemoryStore and store chat memory whenever you'd like
     static class PersistentChatMemoryStore implements ChatMemoryStore {
 
-        private final DB db = DBMaker.fileDB("multi-user-chat-memory.db").transactionEnable().make();
-        private final Map<Integer, String> map = db.hashMap("messages", INTEGER, STRING).createOrOpen();
+        private final DB db;
+        // 原来的 JSON 字符串格式
+        private final Map<Integer, String> map;
+        // 配置了 codec 时使用的 byte[] 格式
+        private final Map<Integer, byte[]> binaryMap;
+        // 为 null 时沿用 JSON 字符串格式
+        private final ChatMessagesCodec codec;
+        // 为 null 时每次更新都同步 db.commit()，否则交给 GroupCommitter 合并提交
+        private final GroupCommitter committer;
+        // 配置了 codec 时，同一会话的 迁移、更新、删除 互斥：迁移是先读 JSON 再写二进制，不加锁会用旧数据覆盖并发的更新，或把刚删除的会话写回去
+        private final SessionLocks locks = new SessionLocks();
+
+        PersistentChatMemoryStore() {
+            this(null, openDb(), null);
+        }
+
+        /**
+         * 以 byte[] 存储，编码格式由 codec 决定（例如 BinaryChatMessagesCodec）。
+         * 读取到旧的 JSON 数据时会自动转换成新格式写回。
+         */
+        PersistentChatMemoryStore(ChatMessagesCodec codec) {
+            this(codec, openDb(), null);
+        }
+
+        /**
+         * 组提交模式
+         *
+         * @param maxDelayMillis 一条更新最多等待多久就会被提交（write-behind 模式下即最多可能丢失的时间窗口）
+         * @param maxBatchSize   攒够多少条更新立即提交
+         * @param waitForDurable commit 是否阻塞到落盘
+         */
+        PersistentChatMemoryStore(long maxDelayMillis, int maxBatchSize, boolean waitForDurable) {
+            this(null, maxDelayMillis, maxBatchSize, waitForDurable);
+        }
+
+        PersistentChatMemoryStore(ChatMessagesCodec codec, long maxDelayMillis, int maxBatchSize, boolean waitForDurable) {
+            this(codec, openDb(), maxDelayMillis, maxBatchSize, waitForDurable);
+        }
+
+        private PersistentChatMemoryStore(ChatMessagesCodec codec, DB db, long maxDelayMillis, int maxBatchSize, boolean waitForDurable) {
+            this(codec, db, new GroupCommitter(db, maxDelayMillis, maxBatchSize, waitForDurable).flushOnShutdown());
+        }
+
+        private PersistentChatMemoryStore(ChatMessagesCodec codec, DB db, GroupCommitter committer) {
+            this.db = db;
+            this.map = db.hashMap("messages", INTEGER, STRING).createOrOpen();
+            this.binaryMap = codec == null ? null : db.hashMap("messages-bin", INTEGER, BYTE_ARRAY).createOrOpen();
+            this.codec = codec;
+            this.committer = committer;
+        }
 
         @Override
         public List<ChatMessage> getMessages(Object memoryId) {
-            String json = map.get((int) memoryId);
-            return messagesFromJson(json);
+            if (codec == null) {
+                String json = map.get((int) memoryId);
+                return messagesFromJson(json);
+            }
+
+            byte[] bytes = binaryMap.get((int) memoryId);
+            if (bytes != null) {
+                return codec.decode(bytes);
+            }
+
+            // 旧的 JSON 数据，读到时顺便迁移成新格式；拿到锁后重新读，期间可能已被更新或删除
+            List<ChatMessage> messages = locks.call(memoryId, () -> {
+                byte[] current = binaryMap.get((int) memoryId);
+                if (current != null) {
+                    return codec.decode(current);
+                }
+                String json = map.get((int) memoryId);
+                if (json == null) {
+                    return null;
+                }
+                List<ChatMessage> migrated = messagesFromJson(json);
+                binaryMap.put((int) memoryId, codec.encode(migrated));
+                map.remove((int) memoryId);
+                return migrated;
+            });
+            if (messages == null) {
+                return new ArrayList<>();
+            }
+            commit();
+            return messages;
         }
 
         @Override
         public void updateMessages(Object memoryId, List<ChatMessage> messages) {
-            String json = messagesToJson(messages);
-            map.put((int) memoryId, json);
-            db.commit();
+            if (codec == null) {
+                String json = messagesToJson(messages);
+                map.put((int) memoryId, json);
+            } else {
+                byte[] encoded = codec.encode(messages);
+                locks.run(memoryId, () -> {
+                    binaryMap.put((int) memoryId, encoded);
+                    map.remove((int) memoryId);
+                });
+            }
+            commit();
         }
 
         @Override
         public void deleteMessages(Object memoryId) {
-            map.remove((int) memoryId);
-            db.commit();
+            if (binaryMap == null) {
+                map.remove((int) memoryId);
+            } else {
+                locks.run(memoryId, () -> {
+                    map.remove((int) memoryId);
+                    binaryMap.remove((int) memoryId);
+                });
+            }
+            commit();
+        }
+
+        private void commit() {
+            if (committer == null) {
+                db.commit();
+            } else {
+                committer.commit();
+            }
+        }
+
+        private static DB openDb() {
+            return DBMaker.fileDB("multi-user-chat-memory.db").transactionEnable().make();
         }
     }
 }
@@ -1,20 +1,22 @@
 package com.liuhang.langchain4j.day3;
 
-import com.liuhang.langchain4j.ApiKeys;
+import com.liuhang.langchain4j.ModelRegistry;
+import com.liuhang.langchain4j.async.ChatPublisher;
 import com.liuhang.langchain4j.day2.ServiceWithMemoryExample;
 import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.chat.response.ChatResponse;
-import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
 import dev.langchain4j.model.openai.OpenAiChatModel;
-import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import dev.langchain4j.model.output.Response;
 import dev.langchain4j.service.AiServices;
 import org.junit.jupiter.api.Test;
 
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static dev.langchain4j.model.LambdaStreamingResponseHandler.onPartialResponse;
 import static dev.langchain4j.model.LambdaStreamingResponseHandler.onPartialResponseAndError;
@@ -34,46 +36,51 @@ public class StreamingChatTest {
      * 当发生错误时：调用 onError(Throwable error)。
      * 以下是如何使用 StreamingChatLanguageModel 实现流式传输的示例：
      * @param args
-     * @throws InterruptedException
      */
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) {
 
-        OpenAiStreamingChatModel model = OpenAiStreamingChatModel.builder()
-                .apiKey(ApiKeys.OPENAI_API_KEY)
-                .modelName(GPT_4_O_MINI)
-                .build();
+        StreamingChatModel model = ModelRegistry.streaming(GPT_4_O_MINI);
 
         String userMessage = "Tell me a joke";
 
-        // 创建一个倒计时锁存器，初始值为1
-        CountDownLatch latch = new CountDownLatch(1);
+        // 不再需要 CountDownLatch：ChatPublisher 把流式响应变成 Flow.Publisher，completion() 就是完成信号
+        ChatPublisher publisher = ChatPublisher.of(model, userMessage);
+        publisher.subscribe(new Flow.Subscriber<>() {
 
-        model.chat(userMessage, new StreamingChatResponseHandler() {
+            private Flow.Subscription subscription;
 
             @Override
-            public void onPartialResponse(String partialResponse) {
-                System.out.print(partialResponse); // 流式输出，不换行
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1); // 按需拉取，处理完一段再要下一段
             }
 
             @Override
-            public void onCompleteResponse(ChatResponse completeResponse) {
-                System.out.println("\n--- 流式响应完成 ---");
-                System.out.println("最终完整响应: " + completeResponse);
-                latch.countDown(); // 完成，释放锁
+            public void onNext(String partialResponse) {
+                System.out.print(partialResponse); // 流式输出，不换行
+                subscription.request(1);
             }
 
             @Override
             public void onError(Throwable error) {
                 System.err.println("发生错误: " + error.getMessage());
                 error.printStackTrace();
-                latch.countDown(); // 出错也要释放，避免主线程永久阻塞
+            }
+
+            @Override
+            public void onComplete() {
+                System.out.println("\n--- 流式响应完成 ---");
             }
         });
 
-        // 主线程等待，直到 latch 被 countDown()
-        boolean finished = latch.await(60, TimeUnit.SECONDS); // 最多等60秒
-        if (!finished) {
+        try {
+            // 主线程等待完成信号，最多等60秒
+            ChatResponse completeResponse = publisher.completion().get(60, TimeUnit.SECONDS);
+            System.out.println("最终完整响应: " + completeResponse);
+        } catch (TimeoutException e) {
             System.err.println("超时：流式响应未在60秒内完成。");
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("发生错误: " + e.getMessage());
         }
 
         System.out.println("\n主线程继续执行...");
@@ -82,18 +89,57 @@ public class StreamingChatTest {
     /**
      * 更紧凑的流式传输响应的方式是使用 LambdaStreamingResponseHandler 类。
      * 这个工具类提供了使用 lambda 表达式创建 StreamingChatResponseHandler 的静态方法。
-     * 使用 lambda 流式传输响应的方式非常简单。
-     * @throws InterruptedException
+     * 使用 lambda 流式传输响应的方式非常简单，但要自己等待流结束（之前用 Thread.sleep(5000) 硬等）。
+     * ChatPublisher.forEach 同样一行，返回的 CompletableFuture 在流结束时完成，join() 即可。
      */
     @Test
-    public void test2() throws InterruptedException {
-        OpenAiStreamingChatModel model = OpenAiStreamingChatModel.builder()
-                .apiKey(ApiKeys.OPENAI_API_KEY)
-                .modelName(GPT_4_O_MINI)
-                .build();
-        model.chat("Tell me a joke", onPartialResponse(System.out::print));
+    public void test2() {
+        StreamingChatModel model = ModelRegistry.streaming(GPT_4_O_MINI);
+//        model.chat("Tell me a joke", onPartialResponse(System.out::print));
 //        model.chat("Tell me a joke", onPartialResponseAndError(System.out::print, Throwable::printStackTrace));
-        Thread.sleep(5000);
+        ChatResponse response = ChatPublisher.of(model, "Tell me a joke").forEach(System.out::print).join();
+        System.out.println("\n" + response.tokenUsage());
+    }
+
+    /**
+     * 只要前面一部分：拿够了就 cancel()，通过 StreamingHandle 中止上游的 HTTP 流，不再为后面的 token 付费
+     */
+    @Test
+    public void test3() {
+        StreamingChatModel model = ModelRegistry.streaming(GPT_4_O_MINI);
+        StringBuilder firstSentence = new StringBuilder();
+        ChatPublisher publisher = ChatPublisher.of(model, "Tell me a long story about Java");
+        publisher.subscribe(new Flow.Subscriber<>() {
+
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(String partialResponse) {
+                firstSentence.append(partialResponse);
+                if (partialResponse.contains(".")) {
+                    subscription.cancel();
+                } else {
+                    subscription.request(1);
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                error.printStackTrace();
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        publisher.completion().handle((response, error) -> null).join();
+        System.out.println(firstSentence);
     }
 
 }
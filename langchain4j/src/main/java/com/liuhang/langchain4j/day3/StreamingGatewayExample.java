@@ -0,0 +1,27 @@
+package com.liuhang.langchain4j.day3;
+
+import com.liuhang.langchain4j.ModelRegistry;
+import com.liuhang.langchain4j.http.StreamingGateway;
+
+import java.io.IOException;
+
+import static dev.langchain4j.model.openai.OpenAiChatModelName.GPT_4_O_MINI;
+
+/**
+ * 把流式响应通过 SSE 推给浏览器或 curl
+ *
+ * 启动后：curl -N "http://127.0.0.1:8080/chat?message=Tell%20me%20a%20joke"
+ * 部分响应攒成帧再写（最多 256 个字符或 50ms 一帧），最后一个 done 事件带首 token 延迟和 tokens/s。
+ */
+public class StreamingGatewayExample {
+
+    public static void main(String[] args) throws IOException {
+        StreamingGateway gateway = StreamingGateway.builder()
+                .model(ModelRegistry.streaming(GPT_4_O_MINI))
+                .address("127.0.0.1", 8080)
+                .build()
+                .start();
+        System.out.println("SSE 网关已启动: http://127.0.0.1:" + gateway.port() + "/chat?message=...");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(gateway)));
+    }
+}
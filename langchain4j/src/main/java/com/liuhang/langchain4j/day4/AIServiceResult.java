@@ -2,10 +2,16 @@ package com.liuhang.langchain4j.day4;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.liuhang.langchain4j.ApiKeys;
+import com.liuhang.langchain4j.ModelRegistry;
+import com.liuhang.langchain4j.async.AsyncAiServices;
+import com.liuhang.langchain4j.async.ChatPublisher;
+import com.liuhang.langchain4j.json.StreamingJson;
+import com.liuhang.langchain4j.json.StructuredOutput;
+import com.liuhang.langchain4j.prompt.MethodPrompt;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.chat.response.ChatResponse;
 import dev.langchain4j.model.openai.OpenAiChatModel;
-import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import dev.langchain4j.model.output.FinishReason;
 import dev.langchain4j.model.output.TokenUsage;
 import dev.langchain4j.model.output.structured.Description;
@@ -14,13 +20,14 @@ import dev.langchain4j.service.*;
 import dev.langchain4j.service.tool.ToolExecution;
 import org.junit.jupiter.api.Test;
 
+import java.lang.reflect.Method;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeoutException;
 
-import static com.liuhang.langchain4j.ApiKeys.OPENAI_API_KEY;
 import static dev.langchain4j.model.chat.Capability.RESPONSE_FORMAT_JSON_SCHEMA;
 import static dev.langchain4j.model.openai.OpenAiChatModelName.GPT_4_O_MINI;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -168,8 +175,7 @@ public class AIServiceResult {
     }
     @Test
     public void test4(){
-        OpenAiChatModel model = OpenAiChatModel.builder()
-                .apiKey(OPENAI_API_KEY)
+        OpenAiChatModel model = ModelRegistry.openAi()
                 .modelName(GPT_4_O_MINI)
                 .responseFormat("json_object")  // ← 强制纯 JSON
                 .build();
@@ -216,8 +222,7 @@ public class AIServiceResult {
      */
     @Test
     public void test5(){
-        OpenAiChatModel model = OpenAiChatModel.builder()
-                .apiKey(OPENAI_API_KEY)
+        OpenAiChatModel model = ModelRegistry.openAi()
                 .modelName(GPT_4_O_MINI)
                 .supportedCapabilities(RESPONSE_FORMAT_JSON_SCHEMA)
                 .strictJsonSchema(true)
@@ -227,6 +232,8 @@ public class AIServiceResult {
     /**
      * 流式处理
      * AI 服务可以使用 TokenStream 返回类型逐个令牌流式处理响应：
+     * 不用再自己把 TokenStream 接到 CompletableFuture 上，ChatPublisher.of(tokenStream) 订阅时才 start()，
+     * forEach 返回的 CompletableFuture 就是完成信号
      */
     @Test
     public void test6() throws InterruptedException, ExecutionException, TimeoutException {
@@ -234,23 +241,15 @@ public class AIServiceResult {
             TokenStream chat(String message);
         }
 
-        OpenAiStreamingChatModel model = OpenAiStreamingChatModel.builder()
-                .apiKey(System.getenv("OPENAI_API_KEY"))
-                .modelName(GPT_4_O_MINI)
-                .build();
+        StreamingChatModel model = ModelRegistry.streaming(GPT_4_O_MINI);
 
         Assistant assistant = AiServices.create(Assistant.class, model);
 
         TokenStream tokenStream = assistant.chat("Tell me a joke");
 
-        CompletableFuture<ChatResponse> futureResponse = new CompletableFuture<>();
-
-        tokenStream.onPartialResponse(System.out::print)
-                .onCompleteResponse(futureResponse::complete)
-                .onError(futureResponse::completeExceptionally)
-                .start();
-
-        ChatResponse chatResponse = futureResponse.get(30, SECONDS);
+        ChatResponse chatResponse = ChatPublisher.of(tokenStream)
+                .forEach(System.out::print)
+                .get(30, SECONDS);
         System.out.println("\n" + chatResponse);
     }
 
@@ -268,10 +267,124 @@ public class AIServiceResult {
      *
      *   Flux<String> chat(String message);
      * }
+     *
+     * 不引入 Reactor 时用 JDK 自带的 Flow.Publisher：AsyncAiServices 把返回 TokenStream 的方法包装成 Flow.Publisher<String>，
+     * 支持按需拉取（request(n)）、取消（中止上游的 HTTP 流）和有界缓冲。
+     * 项目里有 Reactor 时，JdkFlowAdapter.flowPublisherToFlux(publisher) 就能转成 Flux。
+     */
+    @Test
+    public void test7() {
+        interface Assistant {
+            TokenStream chat(String message);
+        }
+        interface ReactiveAssistant {
+            Flow.Publisher<String> chat(String message);
+        }
+
+        Assistant assistant = AiServices.create(Assistant.class, ModelRegistry.streaming(GPT_4_O_MINI));
+        ReactiveAssistant reactive = AsyncAiServices.create(ReactiveAssistant.class, assistant);
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        reactive.chat("Tell me a joke").subscribe(new Flow.Subscriber<>() {
+
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(8);
+            }
+
+            @Override
+            public void onNext(String item) {
+                System.out.print(item);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        done.join();
+    }
+
+    /**
+     * 结构化输出的流式版本
+     * 返回 Person 时要等整个 JSON 生成完才开始解析；改成返回 TokenStream，
+     * StreamingJson.bind 边收边解析，每个字段一结束就拿到填了一部分的 Person，
+     * 例如拿到 address.city 就可以先去查邮编，不用等整段生成完。
+     */
+    interface StreamingPersonExtractor {
+        @SystemMessage("""
+        Extract person data as pure JSON only.
+        Include fields: firstName, lastName, birthDate (format: "yyyy-MM-dd"),
+        address (with street, streetNumber, city).
+        DO NOT use markdown, DO NOT add any other text.
+        Output the JSON object directly.
+        """)
+        @UserMessage("Extract information about a person from {{it}}")
+        TokenStream extractPersonFrom(String text);
+    }
+
+    @Test
+    public void test8() {
+        StreamingChatModel model = ModelRegistry.openAiStreaming()
+                .modelName(GPT_4_O_MINI)
+                .responseFormat("json_object")  // ← 强制纯 JSON
+                .build();
+
+        StreamingPersonExtractor personExtractor = AiServices.create(StreamingPersonExtractor.class, model);
+
+        String text = """
+            In 1968, amidst the fading echoes of Independence Day,
+            a child named John arrived under the calm evening sky.
+            This newborn, bearing the surname Doe, marked the start of a new journey.
+            He was welcomed into the world at 345 Whispering Pines Avenue
+            a quaint street nestled in the heart of Springfield
+            an abode that echoed with the gentle hum of suburban dreams and aspirations.
+            """;
+
+        Person person = StreamingJson.bind(personExtractor.extractPersonFrom(text), Person.class,
+                (path, partial) -> System.out.println(path + " 已生成")).join();
+
+        System.out.println(person);
+    }
+
+    /**
+     * 预编译的结构化输出
+     * AiServices 每次调用都要对返回类型 Person 反射一遍：生成 JSON schema 或格式说明，响应回来再用 Jackson 反射着填字段。
+     * StructuredOutput.forMethod 按方法只编译一次，之后每次调用只剩解析：
+     * 模型支持 RESPONSE_FORMAT_JSON_SCHEMA 时带上 schema（@Description 写进 description），否则把格式说明追加到用户消息，
+     * 响应里的 ```json 和说明文字会被跳过。
+     * 提示由 MethodPrompt 按方法预编译的模板渲染，不再每次调用都用正则解析 {{it}}。
      */
     @Test
-    public void test7(){
+    public void test9() throws NoSuchMethodException {
+        ChatModel model = ModelRegistry.openAi()
+                .modelName(GPT_4_O_MINI)
+                .supportedCapabilities(RESPONSE_FORMAT_JSON_SCHEMA)
+                .strictJsonSchema(true)
+                .build();
+
+        Method method = PersonExtractor.class.getMethod("extractPersonFrom", String.class);
+        StructuredOutput<?> output = StructuredOutput.forMethod(method);
+        System.out.println(output.jsonSchema());
+
+        String text = """
+            In 1968, amidst the fading echoes of Independence Day,
+            a child named John arrived under the calm evening sky.
+            This newborn, bearing the surname Doe, marked the start of a new journey.
+            """;
+        // @SystemMessage / @UserMessage 模板同样按方法只解析一次
+        Person person = (Person) output.chat(model, MethodPrompt.of(method).messages(new Object[]{text}));
 
+        System.out.println(person);
     }
 
 }
@@ -1,10 +1,11 @@
 package com.liuhang.langchain4j.day4;
 
 import com.liuhang.langchain4j.ApiKeys;
+import com.liuhang.langchain4j.ModelRegistry;
+import com.liuhang.langchain4j.memory.InterningChatMemoryStore;
 import dev.langchain4j.memory.chat.ChatMemoryProvider;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatModel;
-import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.service.*;
 import dev.langchain4j.store.memory.chat.ChatMemoryStore;
 import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
@@ -26,10 +27,7 @@ public class AIServiceTest {
      */
     @Test
     public void baseService(){
-        ChatModel model = OpenAiChatModel.builder()
-                .apiKey(ApiKeys.OPENAI_API_KEY)
-                .modelName(GPT_4_O_MINI)
-                .build();
+        ChatModel model = ModelRegistry.chat(GPT_4_O_MINI);
         Assistant assistant = AiServices.create(Assistant.class, model);
         String answer = assistant.chat("Hello");
         System.out.println(answer); // Hello, how can I help you?
@@ -92,7 +90,8 @@ public class AIServiceTest {
     public void test3(){
 
         // 1. 创建 ChatMemoryStore（存储所有用户的记忆）
-        ChatMemoryStore store = new InMemoryChatMemoryStore();
+        // 所有用户共用几条系统提示，用 InterningChatMemoryStore 包一层，每条提示的正文只存一份
+        ChatMemoryStore store = new InterningChatMemoryStore(new InMemoryChatMemoryStore());
 
         // 2. 创建 ChatMemoryProvider（根据 memoryId 提供 ChatMemory 实例）
         ChatMemoryProvider memoryProvider = memoryId ->
@@ -1,13 +1,16 @@
 package com.liuhang.langchain4j.day4;
 
 import com.liuhang.langchain4j.Assistant;
+import com.liuhang.langchain4j.memory.ExpiringChatMemoryStore;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.MemoryId;
 import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.memory.ChatMemoryAccess;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.List;
 
 import static com.liuhang.langchain4j.ApiKeys.model;
@@ -53,9 +56,33 @@ public class ChatMemoryTest {
      * }
      *
      * 这使得可以访问单个对话的 ChatMemory 实例，并在对话终止时删除它。
+     *
+     * 对话何时"终止"往往没有明确信号，这里用 ExpiringChatMemoryStore 自动处理：
+     * 会话空闲超过 ttl（或超过全局会话数上限）时被淘汰，在淘汰回调里调用 evictChatMemory，
+     * 把 AI 服务内部缓存的 ChatMemory 实例也一起释放掉。
      */
     @Test
     public void test3(){
+        interface Assistant extends ChatMemoryAccess {
+            String chat(@MemoryId int memoryId, @UserMessage String message);
+        }
+
+        ExpiringChatMemoryStore store = ExpiringChatMemoryStore.builder()
+                .ttl(Duration.ofMinutes(10))
+                .maxSessions(100_000)
+                .build();
+
+        Assistant assistant = AiServices.builder(Assistant.class)
+                .chatModel(model)
+                .chatMemoryProvider(store.chatMemoryProvider(10))
+                .build();
+        store.addEvictionListener((memoryId, messages, cause) -> assistant.evictChatMemory(memoryId));
+
+        String answerToKlaus = assistant.chat(1, "Hello, my name is Klaus");
+        System.out.println(answerToKlaus);
 
+        // 对话明确结束时也可以手动删除
+        assistant.evictChatMemory(1);
+        store.deleteMessages(1);
     }
 }
@@ -1,15 +1,24 @@
 package com.liuhang.langchain4j.day4;
 
 import com.liuhang.langchain4j.ApiKeys;
+import com.liuhang.langchain4j.ModelRegistry;
+import com.liuhang.langchain4j.classifier.FastPathClassifier;
+import com.liuhang.langchain4j.classifier.GreetingClassifiers;
+import com.liuhang.langchain4j.model.RoutingChatModel;
+import com.liuhang.langchain4j.model.SemanticCache;
+import com.liuhang.langchain4j.model.SpeculativeRouter;
 import dev.langchain4j.community.model.dashscope.QwenChatModel;
 import dev.langchain4j.community.model.dashscope.QwenModelName;
 import dev.langchain4j.model.chat.ChatModel;
-import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.SystemMessage;
 import dev.langchain4j.service.UserMessage;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+
 /**
  * 链接多个 AI 服务
  *
@@ -30,23 +39,50 @@ public class ConnectAIService {
         String reply(String userMessage);
     }
 
-    static class MilesOfSmiles {
+    static class MilesOfSmiles implements AutoCloseable {
+
+        private static final String GREETING = "Greetings from Miles of Smiles! How can I make your day better?";
 
         private final GreetingExpert greetingExpert;
         private final ChatBot chatBot;
+        private final SpeculativeRouter<String, String> router;
 
         MilesOfSmiles(GreetingExpert greetingExpert, ChatBot chatBot) {
+            this(greetingExpert, chatBot, false);
+        }
+
+        /**
+         * @param speculative 为 true 时 isGreeting 和 reply 同时发出，是问候就丢弃 reply 的结果，见 SpeculativeRouter。
+         *                    本地快速通道几毫秒内能判断的输入不投机
+         */
+        MilesOfSmiles(GreetingExpert greetingExpert, ChatBot chatBot, boolean speculative) {
             this.greetingExpert = greetingExpert;
             this.chatBot = chatBot;
+            this.router = !speculative ? null : SpeculativeRouter.<String, String>builder()
+                    .classifier(greetingExpert::isGreeting)
+                    .onMatch(userMessage -> GREETING)
+                    .otherwise(chatBot::reply)
+                    .speculateAfter(Duration.ofMillis(20))
+                    .build();
         }
 
         public String handle(String userMessage) {
+            if (router != null) {
+                return router.route(userMessage);
+            }
             if (greetingExpert.isGreeting(userMessage)) {
-                return "Greetings from Miles of Smiles! How can I make your day better?";
+                return GREETING;
             } else {
                 return chatBot.reply(userMessage);
             }
         }
+
+        @Override
+        public void close() {
+            if (router != null) {
+                router.close();
+            }
+        }
     }
 
 
@@ -62,24 +98,47 @@ public class ConnectAIService {
     public static void main(String[] args) {
 
         // 创建通义千问模型实例（以 qwen-max 为例）
-        ChatModel model = OpenAiChatModel.builder()
-                .apiKey(System.getenv("ZHIPU_API_KEY")) // 智谱 API Key
-                .modelName("glm-4-flash")               // 或 glm-4 / glm-4-air
+        ChatModel model = ModelRegistry.zhipu()   // 和 ApiKeys.model 共用 HTTP 客户端
+                .modelName("glm-4-flash")            // 或 glm-4 / glm-4-air
                 .temperature(0.7)
                 .build();
 
-        GreetingExpert greetingExpert = AiServices.create(GreetingExpert.class, model);
+        // 两个服务都交给路由：按实时的延迟、错误率和成本挑后端，慢请求向另一个后端对冲
+        RoutingChatModel router = RoutingChatModel.builder()
+                .backend("glm-4-flash", model, 0, 0)
+                .backend("gpt-4o-mini", ApiKeys.model, 0.15, 0.6)
+                .build();
+
+        GreetingExpert greetingExpert = AiServices.create(GreetingExpert.class, router);
         ChatBot chatBot = AiServices.builder(ChatBot.class)
-                .chatModel(ApiKeys.model)
+                .chatModel(router)
                 .build();
 
-        MilesOfSmiles milesOfSmiles = new MilesOfSmiles(greetingExpert, chatBot);
+        // 意思相近的输入（"Hello"、"hello!"、"hi there"）复用之前的判断和回答，省掉重复的模型调用
+        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        SemanticCache<Boolean> greetingCache = SemanticCache.<Boolean>builder().embeddingModel(embeddingModel).threshold(0.85).build();
+        SemanticCache<String> replyCache = SemanticCache.<String>builder().embeddingModel(embeddingModel).threshold(0.92).build();
+        // 明显的问候 / 提问先由本地的正则规则和逻辑回归判断，没把握时才走缓存和 LLM
+        FastPathClassifier greetingFastPath = GreetingClassifiers.fastPath(text -> greetingCache.get(text, greetingExpert::isGreeting));
+        GreetingExpert cachedGreetingExpert = greetingFastPath::test;
+        ChatBot cachedChatBot = userMessage -> replyCache.get(userMessage, chatBot::reply);
+
+        MilesOfSmiles milesOfSmiles = new MilesOfSmiles(cachedGreetingExpert, cachedChatBot, true);
 
         String greeting = milesOfSmiles.handle("Hello");
         System.out.println(greeting); // Greetings from Miles of Smiles! How can I make your day better?
+        System.out.println(milesOfSmiles.handle("hello!")); // 命中缓存，不再调用 glm-4-flash
 
         String answer = milesOfSmiles.handle("Which services do you provide?");
         System.out.println(answer); // At Miles of Smiles, we provide a wide range of services ...
+        System.out.println(milesOfSmiles.router);
+        System.out.println(router);
+        System.out.println(greetingFastPath);
+        System.out.println(greetingCache);
+        System.out.println(replyCache);
+        System.out.println(ModelRegistry.http());
+        milesOfSmiles.close();
+        router.close();
     }
 
     @Test
@@ -1,8 +1,7 @@
 package com.liuhang.langchain4j.day4;
 
-import com.liuhang.langchain4j.ApiKeys;
+import com.liuhang.langchain4j.ModelRegistry;
 import dev.langchain4j.model.chat.ChatModel;
-import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.model.openai.OpenAiModerationModel;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.service.Moderate;
@@ -24,15 +23,10 @@ public class ServiceWithAutoModerationExample {
 
     public static void main(String[] args) {
 
-        OpenAiModerationModel moderationModel = OpenAiModerationModel.builder()
-                .apiKey(ApiKeys.OPENAI_API_KEY)
-                .modelName("omni-moderation-latest")
-                .build();
+        // 审核模型和聊天模型共用 ModelRegistry 的 HTTP 客户端
+        OpenAiModerationModel moderationModel = ModelRegistry.moderation("omni-moderation-latest");
 
-        ChatModel chatModel = OpenAiChatModel.builder()
-                .apiKey(ApiKeys.OPENAI_API_KEY)
-                .modelName(GPT_4_O_MINI)
-                .build();
+        ChatModel chatModel = ModelRegistry.chat(GPT_4_O_MINI);
 
         Chat chat = AiServices.builder(Chat.class)
                 .chatModel(chatModel)
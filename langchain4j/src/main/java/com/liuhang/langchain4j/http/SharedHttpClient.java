@@ -0,0 +1,412 @@
+package com.liuhang.langchain4j.http;
+
+import dev.langchain4j.http.client.HttpClientBuilder;
+import dev.langchain4j.http.client.jdk.JdkHttpClient;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.net.Authenticator;
+import java.net.CookieHandler;
+import java.net.ProxySelector;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内共享的 HTTP 客户端
+ *
+ * 每个 OpenAiChatModel.builder() / OpenAiStreamingChatModel.builder() 默认都新建一个 JDK HttpClient，
+ * 各自有连接池，同一个 api.openai.com 要各做一次 TCP + TLS 握手。
+ *
+ * 这里只建一个 java.net.http.HttpClient（HTTP/2 优先，同一主机的请求在一条连接上多路复用；HTTP/1.1 时连接保持复用），
+ * langchain4jBuilder() 返回给模型 builder 的 httpClientBuilder：每个模型得到自己的 JdkHttpClient（读超时各自生效），
+ * 底层都是这一个客户端。模型 builder 设置的连接超时被忽略，以创建时的配置为准。
+ *
+ * 同时统计请求数、在途请求数（流式响应读完 body 才算结束）、HTTP 版本和收到的字节数。
+ * JDK 不公开连接池本身的状态，连接数只能从 HTTP/2 比例和共享的模型数间接看出。
+ */
+public class SharedHttpClient extends java.net.http.HttpClient {
+
+    private final java.net.http.HttpClient delegate;
+
+    private final AtomicInteger models = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder errorResponses = new LongAdder();
+    private final LongAdder http2Responses = new LongAdder();
+    private final LongAdder http1Responses = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder headerNanos = new LongAdder();
+
+    private SharedHttpClient(java.net.http.HttpClient delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param proxy 例如 ProxySelector.of(new InetSocketAddress("127.0.0.1", 7890))，不需要代理时传 null
+     */
+    public static SharedHttpClient create(ProxySelector proxy, Duration connectTimeout) {
+        java.net.http.HttpClient.Builder builder = java.net.http.HttpClient.newBuilder()
+                .version(Version.HTTP_2)
+                .followRedirects(Redirect.NORMAL)
+                .connectTimeout(connectTimeout);
+        if (proxy != null) {
+            builder.proxy(proxy);
+        }
+        return new SharedHttpClient(builder.build());
+    }
+
+    /**
+     * 传给 OpenAiChatModel.builder().httpClientBuilder(...) 等，得到的模型都共用这个客户端
+     */
+    public HttpClientBuilder langchain4jBuilder() {
+        return new Langchain4jBuilder();
+    }
+
+    @Override
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        Exchange exchange = new Exchange();
+        try {
+            return delegate.send(request, exchange.wrap(handler));
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            exchange.finish(true);
+            throw e;
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        Exchange exchange = new Exchange();
+        return delegate.sendAsync(request, exchange.wrap(handler)).whenComplete((response, error) -> {
+            if (error != null) {
+                exchange.finish(true);
+            }
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                                            HttpResponse.PushPromiseHandler<T> pushPromiseHandler) {
+        Exchange exchange = new Exchange();
+        return delegate.sendAsync(request, exchange.wrap(handler), pushPromiseHandler).whenComplete((response, error) -> {
+            if (error != null) {
+                exchange.finish(true);
+            }
+        });
+    }
+
+    @Override
+    public WebSocket.Builder newWebSocketBuilder() {
+        return delegate.newWebSocketBuilder();
+    }
+
+    @Override
+    public Optional<CookieHandler> cookieHandler() {
+        return delegate.cookieHandler();
+    }
+
+    @Override
+    public Optional<Duration> connectTimeout() {
+        return delegate.connectTimeout();
+    }
+
+    @Override
+    public Redirect followRedirects() {
+        return delegate.followRedirects();
+    }
+
+    @Override
+    public Optional<ProxySelector> proxy() {
+        return delegate.proxy();
+    }
+
+    @Override
+    public SSLContext sslContext() {
+        return delegate.sslContext();
+    }
+
+    @Override
+    public SSLParameters sslParameters() {
+        return delegate.sslParameters();
+    }
+
+    @Override
+    public Optional<Authenticator> authenticator() {
+        return delegate.authenticator();
+    }
+
+    @Override
+    public Version version() {
+        return delegate.version();
+    }
+
+    @Override
+    public Optional<Executor> executor() {
+        return delegate.executor();
+    }
+
+    /**
+     * 共用这个客户端的模型数
+     */
+    public int models() {
+        return models.get();
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int peakInFlight() {
+        return peakInFlight.get();
+    }
+
+    /**
+     * 没有拿到响应（连接失败、超时、被中断）的请求数
+     */
+    public long failures() {
+        return failures.sum();
+    }
+
+    /**
+     * 状态码 >= 400 的响应数
+     */
+    public long errorResponses() {
+        return errorResponses.sum();
+    }
+
+    /**
+     * 走 HTTP/2 的响应比例
+     */
+    public double http2Ratio() {
+        long total = http2Responses.sum() + http1Responses.sum();
+        return total == 0 ? 0 : (double) http2Responses.sum() / total;
+    }
+
+    public long bytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * 从发出请求到收到响应头的平均耗时（毫秒）
+     */
+    public double averageHeaderMillis() {
+        long responses = http2Responses.sum() + http1Responses.sum();
+        return responses == 0 ? 0 : headerNanos.sum() / 1_000_000.0 / responses;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SharedHttpClient{models=%d, requests=%d, inFlight=%d, peakInFlight=%d, failures=%d, errorResponses=%d, http2=%.0f%%, avgHeader=%.1fms, received=%dKB}",
+                models(), requests(), inFlight(), peakInFlight(), failures(), errorResponses(), http2Ratio() * 100,
+                averageHeaderMillis(), bytesReceived() / 1024);
+    }
+
+    /**
+     * 一次请求：从发出到 body 读完（或失败）算在途
+     */
+    private class Exchange {
+
+        private final long start = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        Exchange() {
+            requests.increment();
+            int current = inFlight.incrementAndGet();
+            peakInFlight.accumulateAndGet(current, Math::max);
+        }
+
+        <T> HttpResponse.BodyHandler<T> wrap(HttpResponse.BodyHandler<T> handler) {
+            return responseInfo -> {
+                headerNanos.add(System.nanoTime() - start);
+                (responseInfo.version() == Version.HTTP_2 ? http2Responses : http1Responses).increment();
+                if (responseInfo.statusCode() >= 400) {
+                    errorResponses.increment();
+                }
+                return new CountingSubscriber<>(handler.apply(responseInfo), this);
+            };
+        }
+
+        void finish(boolean failed) {
+            if (finished.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                if (failed) {
+                    failures.increment();
+                }
+            }
+        }
+    }
+
+    private class CountingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final Exchange exchange;
+
+        CountingSubscriber(HttpResponse.BodySubscriber<T> delegate, Exchange exchange) {
+            this.delegate = delegate;
+            this.exchange = exchange;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        /**
+         * 调用方中途取消（例如关闭 ofInputStream 的流）时不会再有 onComplete / onError，在 cancel 里结束这次请求
+         */
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    exchange.finish(false);
+                    subscription.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                bytesReceived.add(buffer.remaining());
+            }
+            delegate.onNext(buffers);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            exchange.finish(true);
+            delegate.onError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            exchange.finish(false);
+            delegate.onComplete();
+        }
+    }
+
+    /**
+     * 给 langchain4j 用的 builder：每次 build 得到一个新的 JdkHttpClient，但底层是同一个客户端
+     */
+    private class Langchain4jBuilder implements HttpClientBuilder {
+
+        private Duration connectTimeout;
+        private Duration readTimeout;
+
+        @Override
+        public Duration connectTimeout() {
+            return connectTimeout;
+        }
+
+        @Override
+        public HttpClientBuilder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        @Override
+        public Duration readTimeout() {
+            return readTimeout;
+        }
+
+        @Override
+        public HttpClientBuilder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        @Override
+        public JdkHttpClient build() {
+            models.incrementAndGet();
+            return JdkHttpClient.builder()
+                    .httpClientBuilder(new FixedBuilder())
+                    .readTimeout(readTimeout)
+                    .build();
+        }
+    }
+
+    /**
+     * JdkHttpClient 只接受 java.net.http.HttpClient.Builder：配置都忽略，build 返回共享的客户端
+     */
+    private class FixedBuilder implements java.net.http.HttpClient.Builder {
+
+        @Override
+        public Builder cookieHandler(CookieHandler cookieHandler) {
+            return this;
+        }
+
+        @Override
+        public Builder connectTimeout(Duration duration) {
+            return this;
+        }
+
+        @Override
+        public Builder sslContext(SSLContext sslContext) {
+            return this;
+        }
+
+        @Override
+        public Builder sslParameters(SSLParameters sslParameters) {
+            return this;
+        }
+
+        @Override
+        public Builder executor(Executor executor) {
+            return this;
+        }
+
+        @Override
+        public Builder followRedirects(Redirect policy) {
+            return this;
+        }
+
+        @Override
+        public Builder version(Version version) {
+            return this;
+        }
+
+        @Override
+        public Builder priority(int priority) {
+            return this;
+        }
+
+        @Override
+        public Builder proxy(ProxySelector proxySelector) {
+            return this;
+        }
+
+        @Override
+        public Builder authenticator(Authenticator authenticator) {
+            return this;
+        }
+
+        @Override
+        public java.net.http.HttpClient build() {
+            return SharedHttpClient.this;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.liuhang.langchain4j.http;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+/**
+ * 每个模型一个 HTTP 客户端和共享一个客户端的连接数对比，用本地的 HttpServer 代替 OpenAI
+ */
+public class SharedHttpClientTest {
+
+    /**
+     * 本地假服务：/chat 直接返回一小段 JSON，/stream 每 20ms 写一个 SSE 事件；按客户端端口统计 TCP 连接数
+     */
+    static HttpServer server(Set<Integer> connections) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/chat", exchange -> {
+            connections.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "{\"choices\":[{\"message\":{\"content\":\"Hello World\"}}]}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/stream", exchange -> {
+            connections.add(exchange.getRemoteAddress().getPort());
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 10; i++) {
+                    out.write(("data: {\"delta\":\"token" + i + "\"}\n\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    Thread.sleep(20);
+                }
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * 20 个模型各发 10 次请求：各自的客户端要建 20 条连接，共享的客户端复用同一条
+     */
+    @Test
+    public void separateClientsVersusShared() throws Exception {
+        Set<Integer> connections = ConcurrentHashMap.newKeySet();
+        HttpServer server = server(connections);
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/chat");
+        HttpRequest request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString("{}")).build();
+
+        long start = System.nanoTime();
+        for (int model = 0; model < 20; model++) {
+            HttpClient own = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+            for (int i = 0; i < 10; i++) {
+                own.send(request, HttpResponse.BodyHandlers.ofString());
+            }
+        }
+        System.out.printf("每个模型一个客户端: %d 条连接, %.0fms%n", connections.size(), (System.nanoTime() - start) / 1e6);
+
+        connections.clear();
+        SharedHttpClient shared = SharedHttpClient.create(null, Duration.ofSeconds(5));
+        start = System.nanoTime();
+        for (int model = 0; model < 20; model++) {
+            shared.langchain4jBuilder().build();
+            for (int i = 0; i < 10; i++) {
+                shared.send(request, HttpResponse.BodyHandlers.ofString());
+            }
+        }
+        System.out.printf("共享客户端: %d 条连接, %.0fms%n", connections.size(), (System.nanoTime() - start) / 1e6);
+        System.out.println(shared);
+        server.stop(0);
+    }
+
+    /**
+     * 流式响应读完 body 才算结束，在途数反映真实的并发流
+     */
+    @Test
+    public void concurrentStreams() throws Exception {
+        Set<Integer> connections = ConcurrentHashMap.newKeySet();
+        HttpServer server = server(connections);
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/stream");
+        SharedHttpClient shared = SharedHttpClient.create(null, Duration.ofSeconds(5));
+
+        List<CompletableFuture<Integer>> streams = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            streams.add(shared.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofInputStream())
+                    .thenApply(response -> {
+                        try (InputStream body = response.body()) {
+                            return body.readAllBytes().length;
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }));
+        }
+        Thread.sleep(100);
+        System.out.println("读取中: " + shared);
+        streams.forEach(CompletableFuture::join);
+        System.out.println("读完后: " + shared);
+        System.out.println("TCP 连接数: " + connections.size());
+        server.stop(0);
+    }
+
+    /**
+     * 读了一部分就关闭 body：订阅被取消，不会再有 onComplete / onError，在途数也要归零
+     */
+    @Test
+    public void cancelledStreams() throws Exception {
+        HttpServer server = server(ConcurrentHashMap.newKeySet());
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/stream");
+        SharedHttpClient shared = SharedHttpClient.create(null, Duration.ofSeconds(5));
+
+        for (int i = 0; i < 10; i++) {
+            HttpResponse<InputStream> response = shared.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                body.read(new byte[16]);
+            }
+        }
+        System.out.println("关闭后: " + shared);
+        server.stop(0);
+    }
+}
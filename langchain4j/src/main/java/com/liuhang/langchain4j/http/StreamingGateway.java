@@ -0,0 +1,426 @@
+package com.liuhang.langchain4j.http;
+
+import com.liuhang.langchain4j.async.AiServiceExecutors;
+import com.liuhang.langchain4j.async.ChatPublisher;
+import com.liuhang.langchain4j.model.LatencyStats;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 本地流式网关：用 JDK 自带的 HttpServer 把多个 StreamingChatModel 的流以 SSE 推给客户端
+ *
+ * onPartialResponse 每次只有一两个字，逐段写给客户端就是逐段一次 write + flush（一次系统调用、一个 TCP 包）。
+ * 这里每个流一个写线程，把部分响应攒成帧再写：
+ *      攒够 maxFrameChars 个字符立即写
+ *      第一段进来后最多等 maxFrameDelay，不管攒了多少都写，保证首字延迟不被拉长太多
+ *      流结束时写剩下的，再写一个 done 事件（首 token 延迟、tokens/s）
+ * 上游和写线程之间用 ChatPublisher：缓冲区和待写的帧各最多攒 maxPendingPartials 段，客户端读得慢时上游跟着慢下来；
+ * 客户端断开时取消上游的流。
+ *
+ * 请求：GET /chat?message=...，或者 POST /chat，body 是用户消息
+ * 响应：text/event-stream，每帧一个 data 事件，最后一个 event: done
+ * 写线程来自 AiServiceExecutors.perTask（JDK 21+ 为虚拟线程），上万个流同时在途不需要上万个平台线程。
+ *
+ * 只做了 SSE：JDK 的 HttpServer 不支持 WebSocket 升级。
+ */
+public class StreamingGateway {
+
+    private final StreamingChatModel model;
+    private final int maxFrameChars;
+    private final long maxFrameDelayNanos;
+    private final int maxPendingPartials;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final LongAdder streams = new LongAdder();
+    private final LongAdder failedStreams = new LongAdder();
+    private final LongAdder partials = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LatencyStats timeToFirstToken = new LatencyStats();
+    private final LongAdder completedStreams = new LongAdder();
+    private final LongAdder tokensPerSecondSum = new LongAdder();
+
+    private StreamingGateway(Builder builder) throws IOException {
+        this.model = builder.model;
+        this.maxFrameChars = builder.maxFrameChars;
+        this.maxFrameDelayNanos = builder.maxFrameDelay.toNanos();
+        this.maxPendingPartials = builder.maxPendingPartials;
+        this.executor = AiServiceExecutors.perTask("sse-gateway");
+        this.server = HttpServer.create(new InetSocketAddress(builder.host, builder.port), builder.backlog);
+        this.server.setExecutor(executor);
+        this.server.createContext(builder.path, this::handle);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public StreamingGateway start() {
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * 实际监听的端口，builder 里端口设为 0 时由系统分配
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public int activeStreams() {
+        return activeStreams.get();
+    }
+
+    /**
+     * 写出的 message 帧数，不含 done / error 事件
+     */
+    public long frames() {
+        return frames.sum();
+    }
+
+    public long partials() {
+        return partials.sum();
+    }
+
+    /**
+     * 首 token 延迟：从收到请求到第一段部分响应
+     */
+    public LatencyStats timeToFirstToken() {
+        return timeToFirstToken;
+    }
+
+    @Override
+    public String toString() {
+        long frames = this.frames.sum();
+        long completed = completedStreams.sum();
+        return String.format("StreamingGateway{streams=%d, active=%d, failed=%d, partials=%d, frames=%d, partialsPerFrame=%.1f, bytes=%d, ttft=%s, tokensPerSecond=%d}",
+                streams.sum(), activeStreams.get(), failedStreams.sum(), partials.sum(), frames,
+                frames == 0 ? 0 : (double) partials.sum() / frames, bytesWritten.sum(), timeToFirstToken,
+                completed == 0 ? 0 : tokensPerSecondSum.sum() / completed);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long receivedAt = System.nanoTime();
+        String message = message(exchange);
+        if (message == null || message.isBlank()) {
+            exchange.sendResponseHeaders(400, -1);
+            exchange.close();
+            return;
+        }
+        streams.increment();
+        activeStreams.incrementAndGet();
+        ChatRequest chatRequest = ChatRequest.builder().messages(UserMessage.from(message)).build();
+        ChatPublisher publisher = new ChatPublisher(handler -> model.chat(chatRequest, handler), maxPendingPartials, ChatPublisher.DEFAULT_STALL_TIMEOUT);
+        Stream stream = new Stream(publisher, receivedAt);
+        try {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            publisher.subscribe(stream);
+            try (OutputStream out = exchange.getResponseBody()) {
+                stream.writeTo(out);
+            }
+        } catch (IOException e) {
+            // 客户端断开
+            failedStreams.increment();
+            stream.cancel();
+        } finally {
+            activeStreams.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private static String message(HttpExchange exchange) throws IOException {
+        if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            try (InputStream body = exchange.getRequestBody()) {
+                return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("message=")) {
+                return URLDecoder.decode(parameter.substring("message=".length()), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 一个 SSE 流：上游线程 onNext 往 pending 里攒，写线程 writeTo 按大小或时间取出一帧写出去
+     */
+    private class Stream implements Flow.Subscriber<String> {
+
+        private final ChatPublisher publisher;
+        private final long receivedAt;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition ready = lock.newCondition();
+        private final StringBuilder pending = new StringBuilder();
+        private Flow.Subscription subscription;
+        // 以下字段由 lock 保护
+        private int pendingPartials;
+        private long pendingSince;
+        private long firstTokenAt;
+        private int receivedPartials;
+        private boolean finished;
+        private Throwable error;
+
+        Stream(ChatPublisher publisher, long receivedAt) {
+            this.publisher = publisher;
+            this.receivedAt = receivedAt;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(maxPendingPartials);
+        }
+
+        @Override
+        public void onNext(String partial) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                if (firstTokenAt == 0) {
+                    firstTokenAt = now;
+                    timeToFirstToken.record(now - receivedAt);
+                }
+                if (pending.length() == 0) {
+                    pendingSince = now;
+                }
+                pending.append(partial);
+                pendingPartials++;
+                receivedPartials++;
+                // 攒够一帧，或者这是第一段（让写线程开始计时）
+                if (pending.length() >= maxFrameChars || pendingPartials == 1) {
+                    ready.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            finish(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            finish(null);
+        }
+
+        private void finish(Throwable throwable) {
+            lock.lock();
+            try {
+                finished = true;
+                error = throwable;
+                ready.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void cancel() {
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        /**
+         * 在写线程上执行，直到流结束
+         */
+        void writeTo(OutputStream out) throws IOException {
+            while (true) {
+                String frame;
+                int framePartials;
+                boolean last;
+                lock.lock();
+                try {
+                    while (true) {
+                        long waited = System.nanoTime() - pendingSince;
+                        if (pending.length() > 0
+                                && (finished || pending.length() >= maxFrameChars || waited >= maxFrameDelayNanos)) {
+                            break;
+                        }
+                        if (pending.length() == 0 && finished) {
+                            break;
+                        }
+                        if (pending.length() == 0) {
+                            ready.await();
+                        } else {
+                            ready.awaitNanos(maxFrameDelayNanos - waited);
+                        }
+                    }
+                    frame = pending.toString();
+                    framePartials = pendingPartials;
+                    pending.setLength(0);
+                    pendingPartials = 0;
+                    last = finished;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("gateway stopped", e);
+                } finally {
+                    lock.unlock();
+                }
+                if (!frame.isEmpty()) {
+                    write(out, "message", frame);
+                    frames.increment();
+                    partials.add(framePartials);
+                    if (!last) {
+                        subscription.request(framePartials);
+                    }
+                }
+                if (last) {
+                    writeDone(out);
+                    return;
+                }
+            }
+        }
+
+        private void writeDone(OutputStream out) throws IOException {
+            lock.lock();
+            try {
+                if (error != null) {
+                    failedStreams.increment();
+                    write(out, "error", String.valueOf(error.getMessage()));
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            long now = System.nanoTime();
+            double ttftMillis = firstTokenAt == 0 ? 0 : (firstTokenAt - receivedAt) / 1e6;
+            double seconds = firstTokenAt == 0 ? 0 : (now - firstTokenAt) / 1e9;
+            long tokens = receivedPartials;
+            // onComplete 之后 completion() 紧接着完成，这里不会等太久
+            ChatResponse response = publisher.completion().join();
+            if (response != null && response.tokenUsage() != null && response.tokenUsage().outputTokenCount() != null) {
+                tokens = response.tokenUsage().outputTokenCount();
+            }
+            long rate = seconds == 0 ? 0 : Math.round(tokens / seconds);
+            completedStreams.increment();
+            tokensPerSecondSum.add(rate);
+            write(out, "done", String.format("{\"ttftMillis\":%.1f,\"tokens\":%d,\"tokensPerSecond\":%d}", ttftMillis, tokens, rate));
+        }
+
+        /**
+         * 一帧一次 write + flush；多行文本每行一个 data 字段
+         */
+        private void write(OutputStream out, String event, String data) throws IOException {
+            StringBuilder sse = new StringBuilder(data.length() + 32);
+            if (!"message".equals(event)) {
+                sse.append("event: ").append(event).append('\n');
+            }
+            int start = 0;
+            for (int i = 0; i <= data.length(); i++) {
+                if (i == data.length() || data.charAt(i) == '\n') {
+                    sse.append("data: ").append(data, start, i).append('\n');
+                    start = i + 1;
+                }
+            }
+            sse.append('\n');
+            byte[] bytes = sse.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(bytes);
+            out.flush();
+            bytesWritten.add(bytes.length);
+        }
+    }
+
+    public static class Builder {
+
+        private StreamingChatModel model;
+        private String host = "127.0.0.1";
+        private int port = 8080;
+        private int backlog = 1024;
+        private String path = "/chat";
+        private int maxFrameChars = 256;
+        private Duration maxFrameDelay = Duration.ofMillis(50);
+        private int maxPendingPartials = 256;
+
+        public Builder model(StreamingChatModel model) {
+            this.model = model;
+            return this;
+        }
+
+        /**
+         * 监听地址，默认 127.0.0.1:8080；端口为 0 时由系统分配
+         */
+        public Builder address(String host, int port) {
+            this.host = host;
+            this.port = port;
+            return this;
+        }
+
+        public Builder backlog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        public Builder path(String path) {
+            this.path = path;
+            return this;
+        }
+
+        /**
+         * 一帧最多攒多少字符，默认 256；设为 1 就是每段部分响应写一次
+         */
+        public Builder maxFrameChars(int maxFrameChars) {
+            this.maxFrameChars = maxFrameChars;
+            return this;
+        }
+
+        /**
+         * 一帧最多等多久，默认 50ms
+         */
+        public Builder maxFrameDelay(Duration maxFrameDelay) {
+            this.maxFrameDelay = maxFrameDelay;
+            return this;
+        }
+
+        /**
+         * 每个流最多攒多少段还没写出去的部分响应，默认 256
+         */
+        public Builder maxPendingPartials(int maxPendingPartials) {
+            this.maxPendingPartials = maxPendingPartials;
+            return this;
+        }
+
+        public StreamingGateway build() throws IOException {
+            if (model == null) {
+                throw new IllegalArgumentException("model must be set");
+            }
+            if (maxFrameChars <= 0 || maxPendingPartials <= 0) {
+                throw new IllegalArgumentException("maxFrameChars and maxPendingPartials must be positive");
+            }
+            return new StreamingGateway(this);
+        }
+    }
+}
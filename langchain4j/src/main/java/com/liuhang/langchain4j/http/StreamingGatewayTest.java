@@ -0,0 +1,130 @@
+package com.liuhang.langchain4j.http;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 网关压测：500 个并发 SSE 流，逐段写 和 攒成帧再写 对比，用本地的假流式模型代替 OpenAI
+ */
+public class StreamingGatewayTest {
+
+    /**
+     * 假流式模型：首 token 前等 firstTokenMillis，之后每 intervalMillis 推一个三个字符的 token，共 tokens 个
+     */
+    static class FakeStreamingModel implements StreamingChatModel {
+
+        private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+        private final int tokens;
+        private final long firstTokenMillis;
+        private final long intervalMillis;
+
+        FakeStreamingModel(int tokens, long firstTokenMillis, long intervalMillis) {
+            this.tokens = tokens;
+            this.firstTokenMillis = firstTokenMillis;
+            this.intervalMillis = intervalMillis;
+        }
+
+        @Override
+        public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+            AtomicInteger sent = new AtomicInteger();
+            AtomicBoolean cancelled = new AtomicBoolean();
+            StreamingHandle handle = new StreamingHandle() {
+                @Override
+                public void cancel() {
+                    cancelled.set(true);
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return cancelled.get();
+                }
+            };
+            Runnable[] next = new Runnable[1];
+            next[0] = () -> {
+                if (cancelled.get()) {
+                    return;
+                }
+                int i = sent.getAndIncrement();
+                if (i == tokens) {
+                    handler.onCompleteResponse(ChatResponse.builder()
+                            .aiMessage(AiMessage.from("done"))
+                            .tokenUsage(new TokenUsage(10, tokens))
+                            .build());
+                    return;
+                }
+                handler.onPartialResponse(new PartialResponse(i % 20 == 19 ? "ok\n" : "ok "), new PartialResponseContext(handle));
+                scheduler.schedule(next[0], intervalMillis, TimeUnit.MILLISECONDS);
+            };
+            scheduler.schedule(next[0], firstTokenMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void coalescingUnderLoad() throws Exception {
+        FakeStreamingModel model = new FakeStreamingModel(200, 100, 5);
+        run("逐段写", model, 1, Duration.ZERO);
+        run("攒成帧(64 字符 / 20ms)", model, 64, Duration.ofMillis(20));
+        run("攒成帧(256 字符 / 50ms)", model, 256, Duration.ofMillis(50));
+    }
+
+    private static void run(String name, StreamingChatModel model, int maxFrameChars, Duration maxFrameDelay) throws Exception {
+        StreamingGateway gateway = StreamingGateway.builder()
+                .model(model)
+                .address("127.0.0.1", 0)
+                .maxFrameChars(maxFrameChars)
+                .maxFrameDelay(maxFrameDelay)
+                .build()
+                .start();
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        URI uri = URI.create("http://127.0.0.1:" + gateway.port() + "/chat?message=Tell%20me%20a%20joke");
+        AtomicLong dataLines = new AtomicLong();
+        AtomicInteger done = new AtomicInteger();
+
+        com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpuStart = os.getProcessCpuTime();
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> streams = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            streams.add(client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofLines())
+                    .thenAccept(response -> response.body().forEach(line -> {
+                        if (line.startsWith("data: ")) {
+                            dataLines.incrementAndGet();
+                        } else if (line.equals("event: done")) {
+                            done.incrementAndGet();
+                        }
+                    })));
+        }
+        CompletableFuture.allOf(streams.toArray(new CompletableFuture<?>[0])).join();
+        long wall = System.nanoTime() - start;
+        long cpu = os.getProcessCpuTime() - cpuStart;
+
+        System.out.printf("%s: 500 个流完成 %d, %.0fms, CPU %.0fms, 写了 %d 帧, 客户端收到 %d 行%n",
+                name, done.get(), wall / 1e6, cpu / 1e6, gateway.frames(), dataLines.get());
+        System.out.println("    " + gateway);
+        gateway.stop();
+    }
+}
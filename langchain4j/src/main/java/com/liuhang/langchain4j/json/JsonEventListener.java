@@ -0,0 +1,27 @@
+package com.liuhang.langchain4j.json;
+
+/**
+ * StreamingJsonParser 的事件
+ *
+ * path 是从根开始的路径，例如 address.city、tags[0]，根为空串；
+ * name 是对象成员的键，数组元素为 null。
+ */
+public interface JsonEventListener {
+
+    /**
+     * 一个标量值结束：String、Long、Double、Boolean 或 null
+     */
+    void onValue(String path, String name, Object value);
+
+    default void onStartObject(String path, String name) {
+    }
+
+    default void onEndObject(String path) {
+    }
+
+    default void onStartArray(String path, String name) {
+    }
+
+    default void onEndArray(String path) {
+    }
+}
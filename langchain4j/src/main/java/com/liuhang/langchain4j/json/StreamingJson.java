@@ -0,0 +1,70 @@
+package com.liuhang.langchain4j.json;
+
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.service.TokenStream;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * 结构化输出的流式版本：AI 服务方法返回 TokenStream，边生成边解析
+ *
+ *      interface PersonExtractor {
+ *          @SystemMessage("Extract person data as pure JSON only ...")
+ *          TokenStream extractPersonFrom(String text);
+ *      }
+ *      Person person = StreamingJson.bind(extractor.extractPersonFrom(text), Person.class,
+ *              (path, partial) -> System.out.println(path + " -> " + partial)).join();
+ * 每个字段一结束就回调，下游可以在生成结束之前开始工作。
+ */
+public final class StreamingJson {
+
+    private StreamingJson() {
+    }
+
+    /**
+     * 启动 TokenStream，把部分响应喂给解析器；流结束时 JSON 必须已经闭合，解析出错时取消流
+     *
+     * @return 流结束时完成，值为完整的 ChatResponse
+     */
+    public static CompletableFuture<ChatResponse> parse(TokenStream tokenStream, JsonEventListener listener) {
+        StreamingJsonParser parser = new StreamingJsonParser(listener);
+        CompletableFuture<ChatResponse> future = new CompletableFuture<>();
+        tokenStream
+                .onPartialResponseWithContext((partial, context) -> {
+                    if (future.isDone()) {
+                        context.streamingHandle().cancel();
+                        return;
+                    }
+                    try {
+                        parser.feed(partial.text());
+                    } catch (RuntimeException e) {
+                        // 格式已经错了，后面的 token 没有用，停掉上游
+                        future.completeExceptionally(e);
+                        context.streamingHandle().cancel();
+                    }
+                })
+                .onCompleteResponse(response -> {
+                    try {
+                        parser.finish();
+                        future.complete(response);
+                    } catch (RuntimeException e) {
+                        future.completeExceptionally(e);
+                    }
+                })
+                .onError(future::completeExceptionally)
+                .start();
+        return future;
+    }
+
+    /**
+     * 边生成边填充 type 的实例
+     *
+     * @param onField 每个字段赋值后调用，参数是字段路径和还没填完的对象；不需要时传 null
+     * @return 流结束时完成，值为填好的对象
+     */
+    public static <T> CompletableFuture<T> bind(TokenStream tokenStream, Class<T> type, BiConsumer<String, T> onField) {
+        StreamingObjectBinder<T> binder = new StreamingObjectBinder<>(type, onField);
+        return parse(tokenStream, binder).thenApply(response -> binder.result());
+    }
+}
@@ -0,0 +1,291 @@
+package com.liuhang.langchain4j.json;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 增量 JSON 解析器：模型吐出一段就 feed 一段，每个字段一结束就发事件
+ *
+ * 结构化输出的 AI 服务要等整个响应到齐才交给 Jackson 解析；流式调用时这里边收边解析：
+ *      每个字符只看一次，不保留已经解析过的文本，只缓存当前这一个键或标量
+ *      字段的值一结束（字符串的右引号、数字后面的逗号或括号）就调用 JsonEventListener.onValue
+ *      根之前的内容（```json、说明文字）和根结束之后的内容都忽略；
+ *      根只从行首（前面只有空白）或 ``` 代码块开头的 { / [ 开始，说明文字里的 "Here is [the] JSON" 不算
+ * 不是完整的校验器：格式错误时抛 IllegalStateException，带出错的位置。
+ */
+public class StreamingJsonParser {
+
+    private enum State {
+        BEFORE_ROOT, VALUE, KEY_OR_END, KEY, COLON, COMMA_OR_END, STRING, ESCAPE, UNICODE, LITERAL, DONE
+    }
+
+    private static final class Container {
+
+        final boolean object;
+        final String path;
+        String key;
+        int index = -1;
+
+        Container(boolean object, String path) {
+            this.object = object;
+            this.path = path;
+        }
+    }
+
+    private final JsonEventListener listener;
+    private final Deque<Container> stack = new ArrayDeque<>();
+    private final StringBuilder token = new StringBuilder();
+    private State state = State.BEFORE_ROOT;
+    // 字符串结束后回到哪里：键还是值
+    private boolean inKey;
+    private int unicode;
+    private int unicodeDigits;
+    private long position;
+    // 根之前：当前行到目前为止只有空白 / 刚过 ``` 和语言标记 / 连续的反引号数
+    private boolean lineStart = true;
+    private boolean afterFence;
+    private boolean fenceTagEnded;
+    private int backticks;
+
+    public StreamingJsonParser(JsonEventListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 根对象或根数组已经结束
+     */
+    public boolean isDone() {
+        return state == State.DONE;
+    }
+
+    public void feed(CharSequence chunk) {
+        for (int i = 0; i < chunk.length(); i++) {
+            accept(chunk.charAt(i));
+            position++;
+        }
+    }
+
+    /**
+     * 输入结束；根还没闭合时抛异常
+     */
+    public void finish() {
+        if (state != State.DONE) {
+            throw new IllegalStateException("incomplete JSON at position " + position + ", state " + state);
+        }
+    }
+
+    private void accept(char c) {
+        switch (state) {
+            case BEFORE_ROOT -> beforeRoot(c);
+            case DONE -> {
+            }
+            case VALUE -> value(c);
+            case KEY_OR_END -> {
+                if (c == '"') {
+                    inKey = true;
+                    token.setLength(0);
+                    state = State.STRING;
+                } else if (c == '}') {
+                    endContainer(true);
+                } else if (!Character.isWhitespace(c)) {
+                    throw unexpected(c);
+                }
+            }
+            case COLON -> {
+                if (c == ':') {
+                    state = State.VALUE;
+                } else if (!Character.isWhitespace(c)) {
+                    throw unexpected(c);
+                }
+            }
+            case COMMA_OR_END -> commaOrEnd(c);
+            case STRING -> {
+                if (c == '"') {
+                    endString();
+                } else if (c == '\\') {
+                    state = State.ESCAPE;
+                } else {
+                    token.append(c);
+                }
+            }
+            case ESCAPE -> {
+                state = State.STRING;
+                switch (c) {
+                    case 'n' -> token.append('\n');
+                    case 't' -> token.append('\t');
+                    case 'r' -> token.append('\r');
+                    case 'b' -> token.append('\b');
+                    case 'f' -> token.append('\f');
+                    case 'u' -> {
+                        unicode = 0;
+                        unicodeDigits = 0;
+                        state = State.UNICODE;
+                    }
+                    default -> token.append(c);
+                }
+            }
+            case UNICODE -> {
+                int digit = Character.digit(c, 16);
+                if (digit < 0) {
+                    throw unexpected(c);
+                }
+                unicode = unicode * 16 + digit;
+                if (++unicodeDigits == 4) {
+                    token.append((char) unicode);
+                    state = State.STRING;
+                }
+            }
+            case LITERAL -> {
+                if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                    endLiteral();
+                    commaOrEnd(c);
+                } else {
+                    token.append(c);
+                }
+            }
+        }
+    }
+
+    private void beforeRoot(char c) {
+        if ((c == '{' || c == '[') && (lineStart || afterFence)) {
+            startContainer(c == '{', "", null);
+        } else if (c == '\n') {
+            lineStart = true;
+            afterFence = false;
+            backticks = 0;
+        } else if (c == '`') {
+            lineStart = false;
+            if (++backticks == 3) {
+                afterFence = true;
+                fenceTagEnded = false;
+            }
+        } else if (Character.isWhitespace(c)) {
+            backticks = 0;
+            fenceTagEnded = afterFence;
+        } else {
+            // ```json 的语言标记之后还能开始根，其他文字之后不行
+            afterFence = afterFence && !fenceTagEnded && Character.isLetterOrDigit(c);
+            lineStart = false;
+            backticks = 0;
+        }
+    }
+
+    private void value(char c) {
+        if (Character.isWhitespace(c)) {
+            return;
+        }
+        Container parent = stack.peek();
+        if (c == ']' && parent != null && !parent.object && parent.index == -1) {
+            // 空数组
+            endContainer(false);
+            return;
+        }
+        if (parent != null && !parent.object) {
+            parent.index++;
+        }
+        if (c == '{' || c == '[') {
+            startContainer(c == '{', childPath(parent), parent == null || !parent.object ? null : parent.key);
+        } else if (c == '"') {
+            inKey = false;
+            token.setLength(0);
+            state = State.STRING;
+        } else if (c == '-' || (c >= '0' && c <= '9') || c == 't' || c == 'f' || c == 'n') {
+            token.setLength(0);
+            token.append(c);
+            state = State.LITERAL;
+        } else {
+            throw unexpected(c);
+        }
+    }
+
+    private void commaOrEnd(char c) {
+        Container current = stack.peek();
+        if (c == ',') {
+            state = current.object ? State.KEY_OR_END : State.VALUE;
+        } else if (c == '}' && current.object) {
+            endContainer(true);
+        } else if (c == ']' && !current.object) {
+            endContainer(false);
+        } else if (!Character.isWhitespace(c)) {
+            throw unexpected(c);
+        } else {
+            state = State.COMMA_OR_END;
+        }
+    }
+
+    private void startContainer(boolean object, String path, String name) {
+        stack.push(new Container(object, path));
+        if (object) {
+            listener.onStartObject(path, name);
+            state = State.KEY_OR_END;
+        } else {
+            listener.onStartArray(path, name);
+            state = State.VALUE;
+        }
+    }
+
+    private void endContainer(boolean object) {
+        Container container = stack.pop();
+        if (object) {
+            listener.onEndObject(container.path);
+        } else {
+            listener.onEndArray(container.path);
+        }
+        state = stack.isEmpty() ? State.DONE : State.COMMA_OR_END;
+    }
+
+    private void endString() {
+        Container parent = stack.peek();
+        if (inKey) {
+            parent.key = token.toString();
+            state = State.COLON;
+        } else {
+            emit(parent, token.toString());
+            state = State.COMMA_OR_END;
+        }
+    }
+
+    private void endLiteral() {
+        String literal = token.toString();
+        Object value = switch (literal) {
+            case "true" -> Boolean.TRUE;
+            case "false" -> Boolean.FALSE;
+            case "null" -> null;
+            default -> number(literal);
+        };
+        emit(stack.peek(), value);
+    }
+
+    private void emit(Container parent, Object value) {
+        listener.onValue(childPath(parent), parent.object ? parent.key : null, value);
+    }
+
+    private Object number(String literal) {
+        try {
+            if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0) {
+                return Long.parseLong(literal);
+            }
+            return Double.parseDouble(literal);
+        } catch (NumberFormatException e) {
+            try {
+                return Double.parseDouble(literal);
+            } catch (NumberFormatException ignored) {
+                throw new IllegalStateException("invalid literal '" + literal + "' before position " + position);
+            }
+        }
+    }
+
+    private static String childPath(Container parent) {
+        if (parent == null) {
+            return "";
+        }
+        if (parent.object) {
+            return parent.path.isEmpty() ? parent.key : parent.path + "." + parent.key;
+        }
+        return parent.path + "[" + parent.index + "]";
+    }
+
+    private IllegalStateException unexpected(char c) {
+        return new IllegalStateException("unexpected '" + c + "' at position " + position + ", state " + state);
+    }
+}
@@ -0,0 +1,205 @@
+package com.liuhang.langchain4j.json;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按模型吐 token 的节奏（每次 1~4 个字符）喂 JSON，看字段事件何时出来，以及和每次重新解析整段的开销对比
+ */
+public class StreamingJsonParserTest {
+
+    static class Person {
+        String firstName;
+        String lastName;
+        LocalDate birthDate;
+        Address address;
+
+        @Override
+        public String toString() {
+            return "Person { firstName = \"" + firstName + "\", lastName = \"" + lastName + "\", birthDate = " + birthDate
+                    + ", address = " + address + " }";
+        }
+    }
+
+    static class Address {
+        String street;
+        Integer streetNumber;
+        String city;
+
+        @Override
+        public String toString() {
+            return "Address { street = \"" + street + "\", streetNumber = " + streetNumber + ", city = \"" + city + "\" }";
+        }
+    }
+
+    enum Priority {
+        CRITICAL, HIGH, LOW
+    }
+
+    static class Ticket {
+        String title;
+        Priority priority;
+        double score;
+        boolean resolved;
+        List<String> tags;
+        Set<Integer> ids;
+        List<Address> addresses;
+        String missing;
+
+        @Override
+        public String toString() {
+            return "Ticket { title = \"" + title + "\", priority = " + priority + ", score = " + score + ", resolved = " + resolved
+                    + ", tags = " + tags + ", ids = " + ids + ", addresses = " + addresses + ", missing = " + missing + " }";
+        }
+    }
+
+    static final String PERSON_JSON = """
+            ```json
+            {
+              "firstName": "John",
+              "lastName": "Doe",
+              "birthDate": "1968-07-04",
+              "address": {
+                "street": "Whispering Pines Avenue",
+                "streetNumber": 345,
+                "city": "Springfield"
+              }
+            }
+            ```""";
+
+    static List<String> chunks(String json) {
+        List<String> chunks = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < json.length(); ) {
+            int end = Math.min(json.length(), i + 1 + random.nextInt(4));
+            chunks.add(json.substring(i, end));
+            i = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * 每个字段一结束就拿到填了一部分的 Person
+     */
+    @Test
+    public void bindsFieldsAsTheyClose() {
+        List<String> chunks = chunks(PERSON_JSON);
+        StreamingObjectBinder<Person> binder = new StreamingObjectBinder<>(Person.class, null);
+        int[] chunkIndex = new int[1];
+        StreamingObjectBinder<Person> printing = new StreamingObjectBinder<>(Person.class,
+                (path, partial) -> System.out.printf("第 %d/%d 段: %s -> %s%n", chunkIndex[0] + 1, chunks.size(), path, partial));
+        StreamingJsonParser parser = new StreamingJsonParser(printing);
+        for (; chunkIndex[0] < chunks.size(); chunkIndex[0]++) {
+            parser.feed(chunks.get(chunkIndex[0]));
+        }
+        parser.finish();
+        System.out.println("结果: " + printing.result());
+
+        StreamingJsonParser plain = new StreamingJsonParser(binder);
+        plain.feed(PERSON_JSON);
+        plain.finish();
+        System.out.println("一次喂完: " + binder.result());
+    }
+
+    /**
+     * 转义、unicode、枚举、数组、集合、对象数组、null、空数组和不认识的字段
+     */
+    @Test
+    public void bindsCollectionsAndEscapes() {
+        String json = """
+                {"title":"Payment \\"gateway\\" down \\u4e2d\\u6587\\nsecond line","priority":"critical","score":9.5e-1,
+                 "resolved":false,"tags":["payments","outage"],"ids":[1,2,2,3],"extra":{"nested":[1,{"x":null}]},
+                 "addresses":[{"street":"Main","streetNumber":1,"city":"A"},{"street":"Second","city":"B"}],
+                 "missing":null,"empty":[]}""";
+        StreamingObjectBinder<Ticket> binder = new StreamingObjectBinder<>(Ticket.class, null);
+        StreamingJsonParser parser = new StreamingJsonParser(binder);
+        chunks(json).forEach(parser::feed);
+        parser.finish();
+        System.out.println(binder.result());
+
+        List<String> events = new ArrayList<>();
+        StreamingJsonParser paths = new StreamingJsonParser((path, name, value) -> events.add(path + "=" + value));
+        paths.feed(json);
+        System.out.println(events);
+    }
+
+    /**
+     * 流还没结束时 finish 报错；格式错误报出位置
+     */
+    @Test
+    public void rejectsIncompleteAndMalformed() {
+        StreamingJsonParser incomplete = new StreamingJsonParser((path, name, value) -> {
+        });
+        incomplete.feed("{\"firstName\": \"Jo");
+        try {
+            incomplete.finish();
+        } catch (IllegalStateException e) {
+            System.out.println("不完整: " + e.getMessage());
+        }
+        StreamingJsonParser malformed = new StreamingJsonParser((path, name, value) -> {
+        });
+        try {
+            malformed.feed("{\"firstName\" \"John\"}");
+        } catch (IllegalStateException e) {
+            System.out.println("格式错误: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 说明文字里的括号不是根：只认行首或 ``` 之后的 { / [
+     */
+    @Test
+    public void ignoresBracketsInProse() {
+        for (String text : List.of(
+                "Here is [the] JSON you asked for:\n  {\"city\": \"Springfield\"}",
+                "Sure! The result {see below}:\n```json\n{\"city\": \"Springfield\"}\n```",
+                "```json {\"city\": \"Springfield\"}```",
+                "Result: {\"city\": \"Springfield\"}")) {
+            List<String> events = new ArrayList<>();
+            StreamingJsonParser parser = new StreamingJsonParser((path, name, value) -> events.add(path + "=" + value));
+            chunks(text).forEach(parser::feed);
+            System.out.println(events + ", 根已闭合: " + parser.isDone());
+        }
+    }
+
+    /**
+     * 想在流式过程中拿到半成品，不增量解析就只能每来一段把攒下的整段重新解析一遍：O(n²)
+     */
+    @Test
+    public void incrementalVersusReparse() {
+        StringBuilder big = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < 200; i++) {
+            big.append(i == 0 ? "" : ",").append("{\"street\":\"Whispering Pines Avenue\",\"streetNumber\":").append(i)
+                    .append(",\"city\":\"Springfield\"}");
+        }
+        String json = big.append("]}").toString();
+        List<String> chunks = chunks(json);
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int[] fields = new int[1];
+            StreamingJsonParser parser = new StreamingJsonParser((path, name, value) -> fields[0]++);
+            chunks.forEach(parser::feed);
+            parser.finish();
+            long incremental = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            StringBuilder received = new StringBuilder();
+            int reparsedFields = 0;
+            for (String chunk : chunks) {
+                received.append(chunk);
+                int[] count = new int[1];
+                new StreamingJsonParser((path, name, value) -> count[0]++).feed(received);
+                reparsedFields = count[0];
+            }
+            long reparse = System.nanoTime() - start;
+            System.out.printf("%d 字符 / %d 段, 增量解析 %.2fms (%d 个字段), 每段重新解析 %.2fms (%d 个字段)%n",
+                    json.length(), chunks.size(), incremental / 1e6, fields[0], reparse / 1e6, reparsedFields);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.liuhang.langchain4j.json;
+
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.function.BiConsumer;
+
+/**
+ * 把 StreamingJsonParser 的事件直接填进 POJO：每个字段一结束就赋值，并把半成品交给 onField
+ *
+ * 例如 Person { firstName, lastName, birthDate, address { street, streetNumber, city } }：
+ * 收到 "firstName":"John" 就能拿到 firstName 已填好的 Person，不用等 address 生成完。
+ *
+ * 支持的字段类型：String、基本类型及包装类、BigDecimal、LocalDate / LocalDateTime / LocalTime、枚举、
+ * 嵌套的 POJO、List / Set（元素为以上类型）。不认识的字段和类型不匹配的值跳过，和 @JsonIgnoreProperties(ignoreUnknown = true) 一样。
+ * POJO 需要无参构造器；非静态内部类和局部类（例如写在测试类里的 Person）的外部实例传 null。
+ * 根类型是 List / Set 时，既接受根数组，也接受 StructuredOutput 要求的 {"values": [...]}。
+ * 怎么创建实例、怎么给字段赋值都由 TypeCodec 编译好，每个类型只反射一次。
+ */
+public class StreamingObjectBinder<T> implements JsonEventListener {
+
+    private final TypeCodec codec;
+    private final BiConsumer<String, T> onField;
+    private final Deque<Slot> stack = new ArrayDeque<>();
+    private T root;
+
+    /**
+     * @param onField 每个标量字段赋值后调用，参数是字段路径和（还没填完的）根对象；不需要时传 null
+     */
+    public StreamingObjectBinder(Class<T> type, BiConsumer<String, T> onField) {
+        this(TypeCodec.of(type), onField);
+    }
+
+    /**
+     * 泛型的根类型，例如 List&lt;String&gt;
+     */
+    public StreamingObjectBinder(Type type, BiConsumer<String, T> onField) {
+        this(TypeCodec.of(type), onField);
+    }
+
+    StreamingObjectBinder(TypeCodec codec, BiConsumer<String, T> onField) {
+        this.codec = codec;
+        this.onField = onField;
+    }
+
+    /**
+     * 根对象；根还没开始时为 null
+     */
+    public T result() {
+        return root;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onStartObject(String path, String name) {
+        if (stack.isEmpty()) {
+            if (codec instanceof TypeCodec.ObjectCodec object) {
+                root = (T) object.newInstance();
+                stack.push(new Slot(root, object));
+            } else {
+                // 根是集合时外面包的一层 {"values": [...]}
+                stack.push(codec instanceof TypeCodec.CollectionCodec ? Slot.WRAPPER : Slot.SKIP);
+            }
+            return;
+        }
+        if (!(childCodec(name) instanceof TypeCodec.ObjectCodec object)) {
+            stack.push(Slot.SKIP);
+            return;
+        }
+        Object child = object.newInstance();
+        assign(name, child);
+        stack.push(new Slot(child, object));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onStartArray(String path, String name) {
+        Slot parent = stack.peek();
+        if ((parent == null || parent == Slot.WRAPPER) && root == null && codec instanceof TypeCodec.CollectionCodec collection) {
+            root = (T) collection.newInstance();
+            stack.push(new Slot(root, collection));
+            return;
+        }
+        if (!(childCodec(name) instanceof TypeCodec.CollectionCodec collection)) {
+            stack.push(Slot.SKIP);
+            return;
+        }
+        Collection<Object> child = collection.newInstance();
+        assign(name, child);
+        stack.push(new Slot(child, collection));
+    }
+
+    @Override
+    public void onEndObject(String path) {
+        stack.pop();
+    }
+
+    @Override
+    public void onEndArray(String path) {
+        stack.pop();
+    }
+
+    @Override
+    public void onValue(String path, String name, Object value) {
+        if (!(childCodec(name) instanceof TypeCodec.ScalarCodec scalar)) {
+            return;
+        }
+        Object converted = scalar.convert(value);
+        if (converted == null && (value != null || scalar.isPrimitive())) {
+            return;
+        }
+        assign(name, converted);
+        if (onField != null) {
+            onField.accept(path, root);
+        }
+    }
+
+    /**
+     * 当前容器里名为 name 的成员（数组里为元素）的编解码方案，不认识时为 null
+     */
+    private TypeCodec childCodec(String name) {
+        Slot slot = stack.peek();
+        if (slot == null || slot.codec == null) {
+            return null;
+        }
+        if (slot.codec instanceof TypeCodec.CollectionCodec collection) {
+            return collection.element;
+        }
+        TypeCodec.Property property = ((TypeCodec.ObjectCodec) slot.codec).property(name);
+        return property == null ? null : property.codec();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void assign(String name, Object value) {
+        Slot slot = stack.peek();
+        if (slot.codec instanceof TypeCodec.CollectionCodec) {
+            ((Collection<Object>) slot.target).add(value);
+        } else {
+            ((TypeCodec.ObjectCodec) slot.codec).property(name).set(slot.target, value);
+        }
+    }
+
+    /**
+     * 栈里的一层：正在填的对象或集合；codec 为 null 时整层跳过
+     */
+    private record Slot(Object target, TypeCodec codec) {
+
+        static final Slot SKIP = new Slot(null, null);
+        static final Slot WRAPPER = new Slot(null, null);
+    }
+}
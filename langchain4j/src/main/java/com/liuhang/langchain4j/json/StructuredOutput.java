@@ -0,0 +1,226 @@
+package com.liuhang.langchain4j.json;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ResponseFormat;
+import dev.langchain4j.model.chat.request.ResponseFormatType;
+import dev.langchain4j.model.chat.request.json.JsonObjectSchema;
+import dev.langchain4j.model.chat.request.json.JsonSchema;
+import dev.langchain4j.service.Result;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static dev.langchain4j.model.chat.Capability.RESPONSE_FORMAT_JSON_SCHEMA;
+
+/**
+ * AI 服务方法返回类型的结构化输出方案：JSON schema、格式说明和反序列化器，每个方法只编译一次
+ *
+ * AiServices 每次调用都要对返回类型做一遍反射：生成 JSON schema 或追加在用户消息后面的格式说明，
+ * 响应回来再交给 Jackson 反射着填字段。返回类型在方法声明时就定了，这里按方法缓存：
+ *      PersonExtractor.extractPersonFrom -> Person 的 schema（@Description 写进 description）和编译好的 TypeCodec
+ *      Result&lt;List&lt;String&gt;&gt; generateOutlineFor -> 去掉 Result，schema 为 {"values": [string]}
+ *      SentimentAnalyzer.isPositive / PriorityAnalyzer.analyzePriority -> 纯文本回答，直接转成 boolean / 枚举
+ * 解析走 StreamingJsonParser + StreamingObjectBinder，能跳过 ```json 和前后的说明文字。
+ * 没有接进 AiServices：AiServices 仍然用自己的 schema 和 Jackson，要用这里的缓存得像 AIServiceResult.test9 那样直接调用 chat / parse。
+ *
+ *      StructuredOutput<?> output = StructuredOutput.forMethod(PersonExtractor.class.getMethod("extractPersonFrom", String.class));
+ *      Person person = (Person) output.chat(model, List.of(UserMessage.from("Extract information about a person from " + text)));
+ */
+public final class StructuredOutput<T> {
+
+    private static final Map<Method, StructuredOutput<?>> BY_METHOD = new ConcurrentHashMap<>();
+    private static final Map<Type, StructuredOutput<?>> BY_TYPE = new ConcurrentHashMap<>();
+
+    private final Type type;
+    private final TypeCodec codec;
+    private final JsonSchema jsonSchema;
+    private final String formatInstructions;
+
+    private StructuredOutput(Type type, TypeCodec codec) {
+        this.type = type;
+        this.codec = codec;
+        this.jsonSchema = jsonSchema(type, codec);
+        this.formatInstructions = formatInstructions(codec);
+    }
+
+    /**
+     * AI 服务方法的返回类型，Result&lt;T&gt; 取 T；按方法缓存
+     */
+    public static StructuredOutput<?> forMethod(Method method) {
+        StructuredOutput<?> output = BY_METHOD.get(method);
+        if (output == null) {
+            output = forType(returnType(method));
+            BY_METHOD.putIfAbsent(method, output);
+        }
+        return output;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> StructuredOutput<T> forType(Class<T> type) {
+        return (StructuredOutput<T>) forType((Type) type);
+    }
+
+    /**
+     * 按类型缓存
+     */
+    public static StructuredOutput<?> forType(Type type) {
+        StructuredOutput<?> output = BY_TYPE.get(type);
+        if (output == null) {
+            output = new StructuredOutput<>(type, TypeCodec.of(type));
+            StructuredOutput<?> previous = BY_TYPE.putIfAbsent(type, output);
+            if (previous != null) {
+                output = previous;
+            }
+        }
+        return output;
+    }
+
+    /**
+     * 不走缓存，每次都重新反射：相当于每次调用都重新处理返回类型，用来对比开销
+     */
+    public static StructuredOutput<?> compile(Type type) {
+        return new StructuredOutput<>(type, TypeCodec.compile(type));
+    }
+
+    static Type returnType(Method method) {
+        Type type = method.getGenericReturnType();
+        if (type instanceof ParameterizedType parameterized && parameterized.getRawType() == Result.class) {
+            return parameterized.getActualTypeArguments()[0];
+        }
+        return type;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    /**
+     * 对象和集合的 JSON schema，根是集合时包成 {"values": [...]}；标量和 String 为 null，按纯文本回答
+     */
+    public JsonSchema jsonSchema() {
+        return jsonSchema;
+    }
+
+    /**
+     * 模型不支持 JSON schema 时追加在最后一条用户消息后面的格式说明；String 为空串
+     */
+    public String formatInstructions() {
+        return formatInstructions;
+    }
+
+    /**
+     * 把模型的回答转成返回类型
+     *
+     * @throws IllegalArgumentException 回答不是要求的格式
+     */
+    @SuppressWarnings("unchecked")
+    public T parse(String text) {
+        if (codec instanceof TypeCodec.ScalarCodec scalar) {
+            if (scalar.isString()) {
+                return (T) text;
+            }
+            Object value = scalar.convert(strip(text));
+            if (value == null) {
+                throw new IllegalArgumentException("cannot parse '" + text + "' as " + type.getTypeName());
+            }
+            return (T) value;
+        }
+        StreamingObjectBinder<T> binder = new StreamingObjectBinder<>(codec, null);
+        StreamingJsonParser parser = new StreamingJsonParser(binder);
+        try {
+            parser.feed(text);
+            parser.finish();
+        } catch (IllegalStateException e) {
+            throw new IllegalArgumentException("cannot parse response as " + type.getTypeName() + ": " + e.getMessage(), e);
+        }
+        return binder.result();
+    }
+
+    /**
+     * 模型声明支持 RESPONSE_FORMAT_JSON_SCHEMA 时带上 schema，否则把格式说明追加到最后一条用户消息
+     */
+    public ChatRequest request(ChatModel model, List<ChatMessage> messages) {
+        if (jsonSchema != null && model.supportedCapabilities().contains(RESPONSE_FORMAT_JSON_SCHEMA)) {
+            return ChatRequest.builder()
+                    .messages(messages)
+                    .responseFormat(ResponseFormat.builder().type(ResponseFormatType.JSON).jsonSchema(jsonSchema).build())
+                    .build();
+        }
+        if (formatInstructions.isEmpty()) {
+            return ChatRequest.builder().messages(messages).build();
+        }
+        List<ChatMessage> withInstructions = new ArrayList<>(messages);
+        for (int i = withInstructions.size() - 1; i >= 0; i--) {
+            if (withInstructions.get(i) instanceof UserMessage user && user.hasSingleText()) {
+                withInstructions.set(i, UserMessage.from(user.singleText() + formatInstructions));
+                break;
+            }
+        }
+        return ChatRequest.builder().messages(withInstructions).build();
+    }
+
+    public T chat(ChatModel model, List<ChatMessage> messages) {
+        return parse(model.chat(request(model, messages)).aiMessage().text());
+    }
+
+    private static String strip(String text) {
+        String stripped = text.strip();
+        while (!stripped.isEmpty() && "\"'`.。".indexOf(stripped.charAt(stripped.length() - 1)) >= 0) {
+            stripped = stripped.substring(0, stripped.length() - 1);
+        }
+        while (!stripped.isEmpty() && "\"'`".indexOf(stripped.charAt(0)) >= 0) {
+            stripped = stripped.substring(1);
+        }
+        return stripped.strip();
+    }
+
+    private static JsonSchema jsonSchema(Type type, TypeCodec codec) {
+        TypeCodec.SchemaContext context = new TypeCodec.SchemaContext();
+        JsonObjectSchema.Builder root;
+        if (codec instanceof TypeCodec.ObjectCodec object) {
+            root = object.schemaBuilder(null, context);
+        } else if (codec instanceof TypeCodec.CollectionCodec) {
+            root = JsonObjectSchema.builder()
+                    .addProperty("values", codec.schema(null, context))
+                    .required(List.of("values"))
+                    .additionalProperties(false);
+        } else {
+            return null;
+        }
+        if (!context.definitions().isEmpty()) {
+            root.definitions(context.definitions());
+        }
+        return JsonSchema.builder().name(schemaName(type)).rootElement(root.build()).build();
+    }
+
+    private static String schemaName(Type type) {
+        if (type instanceof ParameterizedType parameterized) {
+            return schemaName(parameterized.getRawType()) + "_of_" + schemaName(parameterized.getActualTypeArguments()[0]);
+        }
+        return type instanceof Class<?> c ? c.getSimpleName() : "Object";
+    }
+
+    private static String formatInstructions(TypeCodec codec) {
+        if (codec instanceof TypeCodec.ScalarCodec scalar) {
+            if (scalar.isString()) {
+                return "";
+            }
+            if (scalar.isEnum()) {
+                return "\nYou must answer strictly with one of these enums:\n" + String.join("\n", scalar.enumValues());
+            }
+            return "\nYou must answer strictly in the following format: " + scalar.jsonType();
+        }
+        if (codec instanceof TypeCodec.CollectionCodec) {
+            return "\nYou must answer strictly in the following JSON format: {\n\"values\": " + codec.format(null, new TypeCodec.SchemaContext()) + "\n}";
+        }
+        return "\nYou must answer strictly in the following JSON format: " + codec.format(null, new TypeCodec.SchemaContext());
+    }
+}
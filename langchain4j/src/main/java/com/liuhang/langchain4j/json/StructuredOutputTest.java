@@ -0,0 +1,221 @@
+package com.liuhang.langchain4j.json;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.structured.Description;
+import dev.langchain4j.service.Result;
+import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.output.ServiceOutputParser;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * AIServiceResult 里几种返回类型的 schema、格式说明和解析，以及每次调用都重新反射和按方法缓存的开销对比
+ */
+public class StructuredOutputTest {
+
+    static class Person {
+        @Description("first name of a person")
+        String firstName;
+        String lastName;
+        LocalDate birthDate;
+        Address address;
+
+        @Override
+        public String toString() {
+            return "Person { firstName = \"" + firstName + "\", lastName = \"" + lastName + "\", birthDate = " + birthDate
+                    + ", address = " + address + " }";
+        }
+    }
+
+    @Description("an address")
+    static class Address {
+        String street;
+        Integer streetNumber;
+        String city;
+
+        @Override
+        public String toString() {
+            return "Address { street = \"" + street + "\", streetNumber = " + streetNumber + ", city = \"" + city + "\" }";
+        }
+    }
+
+    enum Priority {
+        CRITICAL, HIGH, LOW
+    }
+
+    @Description("a node of a category tree")
+    static class Tree {
+        String name;
+        List<Tree> children;
+
+        @Override
+        public String toString() {
+            return name + (children == null || children.isEmpty() ? "" : children.toString());
+        }
+    }
+
+    interface PersonExtractor {
+        @UserMessage("Extract information about a person from {{it}}")
+        Person extractPersonFrom(String text);
+    }
+
+    interface Assistant {
+        @UserMessage("Generate an outline for the article on the following topic: {{it}}")
+        Result<List<String>> generateOutlineFor(String topic);
+    }
+
+    interface SentimentAnalyzer {
+        @UserMessage("Does {{it}} has a positive sentiment?")
+        boolean isPositive(String text);
+    }
+
+    interface PriorityAnalyzer {
+        @UserMessage("Analyze the priority of the following issue: {{it}}")
+        Priority analyzePriority(String issueDescription);
+    }
+
+    static final String PERSON_JSON = """
+            ```json
+            {"firstName": "John", "lastName": "Doe", "birthDate": "1968-07-04",
+             "address": {"street": "Whispering Pines Avenue", "streetNumber": 345, "city": "Springfield"}}
+            ```""";
+
+    static Method method(Class<?> type) {
+        return type.getDeclaredMethods()[0];
+    }
+
+    @Test
+    public void schemasAndInstructions() {
+        for (Class<?> service : List.of(PersonExtractor.class, Assistant.class, SentimentAnalyzer.class, PriorityAnalyzer.class)) {
+            StructuredOutput<?> output = StructuredOutput.forMethod(method(service));
+            System.out.println(service.getSimpleName() + " -> " + output.type().getTypeName());
+            System.out.println("  schema: " + output.jsonSchema());
+            System.out.println("  格式说明: " + output.formatInstructions().replace("\n", "\n    "));
+        }
+    }
+
+    /**
+     * 自引用的类型：schema 只展开一层，children 的元素引用 definitions 里的 Tree
+     */
+    @Test
+    public void recursiveTypes() {
+        StructuredOutput<Tree> output = StructuredOutput.forType(Tree.class);
+        System.out.println("schema: " + output.jsonSchema());
+        System.out.println("格式说明: " + output.formatInstructions());
+        System.out.println(output.parse("""
+                {"name": "Electronics", "children": [
+                  {"name": "Phones", "children": [{"name": "Android", "children": []}]},
+                  {"name": "Laptops", "children": []}]}"""));
+    }
+
+    @Test
+    public void parsesAnswers() {
+        System.out.println(StructuredOutput.forMethod(method(PersonExtractor.class)).parse(PERSON_JSON));
+        StructuredOutput<?> outline = StructuredOutput.forMethod(method(Assistant.class));
+        System.out.println(outline.parse("{\"values\": [\"Introduction\", \"History of Java\", \"Conclusion\"]}"));
+        System.out.println(outline.parse("[\"Introduction\", \"Conclusion\"]"));
+        System.out.println(StructuredOutput.forMethod(method(SentimentAnalyzer.class)).parse(" true\n"));
+        System.out.println(StructuredOutput.forMethod(method(PriorityAnalyzer.class)).parse("`critical`."));
+        try {
+            StructuredOutput.forMethod(method(PriorityAnalyzer.class)).parse("It is urgent");
+        } catch (IllegalArgumentException e) {
+            System.out.println("无法解析: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 支持 JSON schema 的模型收到 responseFormat，不支持的收到追加了格式说明的用户消息
+     */
+    @Test
+    public void requestsDependOnCapabilities() {
+        for (boolean supportsSchema : new boolean[]{true, false}) {
+            ChatModel model = new ChatModel() {
+                @Override
+                public ChatResponse doChat(ChatRequest chatRequest) {
+                    List<ChatMessage> messages = chatRequest.messages();
+                    String last = ((dev.langchain4j.data.message.UserMessage) messages.get(messages.size() - 1)).singleText();
+                    System.out.println("responseFormat = " + (chatRequest.responseFormat() == null ? null
+                            : chatRequest.responseFormat().jsonSchema()) + "\n最后一条消息: " + last);
+                    return ChatResponse.builder().aiMessage(AiMessage.from(PERSON_JSON)).build();
+                }
+
+                @Override
+                public Set<Capability> supportedCapabilities() {
+                    return supportsSchema ? Set.of(Capability.RESPONSE_FORMAT_JSON_SCHEMA) : Set.of();
+                }
+            };
+            Person person = StructuredOutput.forType(Person.class)
+                    .chat(model, List.of(dev.langchain4j.data.message.UserMessage.from("Extract information about a person from John Doe")));
+            System.out.println(person);
+        }
+    }
+
+    /**
+     * JMH 风格：先预热再计时，每轮 ops 次，结果累加进 sink 防止被优化掉
+     * AiServices：langchain4j 自己的 ServiceOutputParser，每次调用生成 schema（JsonSchemas.jsonSchemaFrom）和格式说明，
+     *      再用 Jackson 反序列化，作为基线
+     * 每次编译：每次调用都反射一遍返回类型，生成 schema、格式说明和反序列化器，再解析
+     * 按方法缓存：只解析
+     */
+    @Test
+    public void perCallOverhead() {
+        int ops = 20_000;
+        List<Method> methods = List.of(method(PersonExtractor.class), method(Assistant.class),
+                method(SentimentAnalyzer.class), method(PriorityAnalyzer.class));
+        List<String> answers = List.of(PERSON_JSON, "{\"values\": [\"Introduction\", \"History\", \"Conclusion\"]}", "true", "CRITICAL");
+        List<Type> types = methods.stream().map(StructuredOutput::returnType).toList();
+        ServiceOutputParser parser = new ServiceOutputParser();
+        long sink = 0;
+        for (int round = 0; round < 8; round++) {
+            boolean warmup = round < 3;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                int k = i % methods.size();
+                Type type = types.get(k);
+                sink += parser.jsonSchema(type).isPresent() ? 1 : 0;
+                sink += parser.outputFormatInstructions(type).length() + parser.parseText(type, answers.get(k)).hashCode();
+            }
+            long aiServices = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                int k = i % methods.size();
+                StructuredOutput<?> output = StructuredOutput.compile(StructuredOutput.returnType(methods.get(k)));
+                sink += output.formatInstructions().length() + output.parse(answers.get(k)).hashCode();
+            }
+            long compiled = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                int k = i % methods.size();
+                StructuredOutput<?> output = StructuredOutput.forMethod(methods.get(k));
+                sink += output.formatInstructions().length() + output.parse(answers.get(k)).hashCode();
+            }
+            long cached = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                int k = i % methods.size();
+                sink += StructuredOutput.compile(StructuredOutput.returnType(methods.get(k))).formatInstructions().length();
+            }
+            long schemaOnly = System.nanoTime() - start;
+
+            if (!warmup) {
+                System.out.printf("AiServices %.0f ns/op, 每次编译 %.0f ns/op (其中 schema/说明/反序列化器 %.0f ns/op), 按方法缓存 %.0f ns/op%n",
+                        (double) aiServices / ops, (double) compiled / ops, (double) schemaOnly / ops, (double) cached / ops);
+            }
+        }
+        System.out.println("sink = " + sink);
+    }
+}
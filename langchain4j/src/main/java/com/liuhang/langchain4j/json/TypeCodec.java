@@ -0,0 +1,458 @@
+package com.liuhang.langchain4j.json;
+
+import dev.langchain4j.model.chat.request.json.JsonArraySchema;
+import dev.langchain4j.model.chat.request.json.JsonBooleanSchema;
+import dev.langchain4j.model.chat.request.json.JsonEnumSchema;
+import dev.langchain4j.model.chat.request.json.JsonIntegerSchema;
+import dev.langchain4j.model.chat.request.json.JsonNumberSchema;
+import dev.langchain4j.model.chat.request.json.JsonObjectSchema;
+import dev.langchain4j.model.chat.request.json.JsonReferenceSchema;
+import dev.langchain4j.model.chat.request.json.JsonSchemaElement;
+import dev.langchain4j.model.chat.request.json.JsonStringSchema;
+import dev.langchain4j.model.output.structured.Description;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 一个 Java 类型编译好的 JSON 绑定方案：怎么创建实例、每个字段怎么赋值、标量怎么转换、对应的 JSON schema
+ *
+ * 反射只在编译时做一次：
+ *      构造器和字段的 setter 编译成 MethodHandle，调用时不再查找字段、不再判断字段类型
+ *      标量的转换函数按字段类型选好，调用时直接执行
+ *      嵌套的 POJO、List / Set 的元素类型各自编译一次，自引用的类型（树形结构）共用同一个实例
+ *      自引用的类型在 schema 里展开一层，里面的引用用 JsonReferenceSchema 指向 definitions；格式说明里写成 "same format as Tree"
+ * of(type) 按类型缓存，compile(type) 每次重新编译（用来对比每次调用都反射的开销）。
+ */
+public abstract class TypeCodec {
+
+    private static final Map<Type, TypeCodec> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 不支持的类型（Map、Object 等）：对应的 JSON 值跳过
+     */
+    static final TypeCodec UNKNOWN = new TypeCodec() {
+        @Override
+        JsonSchemaElement schema(String description, SchemaContext context) {
+            return JsonStringSchema.builder().description(description).build();
+        }
+
+        @Override
+        String format(String description, SchemaContext context) {
+            return "(" + prefix(description) + "type: string)";
+        }
+    };
+
+    public static TypeCodec of(Type type) {
+        TypeCodec codec = CACHE.get(type);
+        if (codec == null) {
+            codec = compile(type);
+            TypeCodec previous = CACHE.putIfAbsent(type, codec);
+            if (previous != null) {
+                codec = previous;
+            }
+        }
+        return codec;
+    }
+
+    public static TypeCodec compile(Type type) {
+        return compileType(type, new HashMap<>());
+    }
+
+    /**
+     * 这个类型对应的 JSON schema 节点，自引用类型的定义收集到 context 里
+     */
+    abstract JsonSchemaElement schema(String description, SchemaContext context);
+
+    /**
+     * 给不支持 JSON schema 的模型看的格式说明，和 AiServices 追加在用户消息后面的格式一样
+     */
+    abstract String format(String description, SchemaContext context);
+
+    private static TypeCodec compileType(Type type, Map<Type, TypeCodec> compiling) {
+        TypeCodec existing = compiling.get(type);
+        if (existing != null) {
+            return existing;
+        }
+        if (type instanceof WildcardType wildcard) {
+            return compileType(wildcard.getUpperBounds()[0], compiling);
+        }
+        Class<?> raw = type instanceof ParameterizedType parameterized ? (Class<?>) parameterized.getRawType()
+                : type instanceof Class<?> c ? c : Object.class;
+        ScalarCodec scalar = ScalarCodec.of(raw);
+        if (scalar != null) {
+            return scalar;
+        }
+        if (Collection.class.isAssignableFrom(raw)) {
+            Type element = type instanceof ParameterizedType parameterized ? parameterized.getActualTypeArguments()[0] : Object.class;
+            return new CollectionCodec(Set.class.isAssignableFrom(raw), compileType(element, compiling));
+        }
+        if (raw == Object.class || Map.class.isAssignableFrom(raw) || raw.isInterface() || raw.isArray()
+                || Modifier.isAbstract(raw.getModifiers())) {
+            return UNKNOWN;
+        }
+        ObjectCodec object = new ObjectCodec(raw);
+        compiling.put(type, object);
+        object.compileProperties(compiling);
+        return object;
+    }
+
+    static String prefix(String description) {
+        return description == null ? "" : description + "; ";
+    }
+
+    static String description(Description annotation) {
+        return annotation == null ? null : String.join(" ", annotation.value());
+    }
+
+    /**
+     * 一次 schema / 格式说明的生成：记录正在展开的 POJO，再次遇到时说明类型自引用，改成引用
+     */
+    static final class SchemaContext {
+
+        private final Set<ObjectCodec> expanding = new HashSet<>();
+        private final Map<ObjectCodec, String> references = new HashMap<>();
+        private final Map<String, JsonSchemaElement> definitions = new LinkedHashMap<>();
+
+        boolean isExpanding(ObjectCodec codec) {
+            return expanding.contains(codec);
+        }
+
+        /**
+         * 引用名取类名，重名时加序号
+         */
+        String reference(ObjectCodec codec) {
+            String name = references.get(codec);
+            if (name == null) {
+                name = codec.type.getSimpleName();
+                for (int i = 2; references.containsValue(name); i++) {
+                    name = codec.type.getSimpleName() + i;
+                }
+                references.put(codec, name);
+            }
+            return name;
+        }
+
+        /**
+         * 自引用类型的定义，放进根对象的 definitions；没有时为空
+         */
+        Map<String, JsonSchemaElement> definitions() {
+            return definitions;
+        }
+    }
+
+    /**
+     * 标量：字符串、数字、布尔、枚举、日期时间
+     */
+    static final class ScalarCodec extends TypeCodec {
+
+        private final Class<?> type;
+        private final Function<Object, Object> converter;
+        private final String jsonType;
+        private final String pattern;
+
+        private ScalarCodec(Class<?> type, String jsonType, String pattern, Function<Object, Object> converter) {
+            this.type = type;
+            this.jsonType = jsonType;
+            this.pattern = pattern;
+            this.converter = converter;
+        }
+
+        static ScalarCodec of(Class<?> type) {
+            if (type == String.class || type == CharSequence.class) {
+                return new ScalarCodec(type, "string", null, String::valueOf);
+            }
+            if (type == int.class || type == Integer.class) {
+                return new ScalarCodec(type, "integer", null, v -> v instanceof Number n ? n.intValue() : Integer.valueOf(text(v)));
+            }
+            if (type == long.class || type == Long.class) {
+                return new ScalarCodec(type, "integer", null, v -> v instanceof Number n ? n.longValue() : Long.valueOf(text(v)));
+            }
+            if (type == short.class || type == Short.class) {
+                return new ScalarCodec(type, "integer", null, v -> v instanceof Number n ? n.shortValue() : Short.valueOf(text(v)));
+            }
+            if (type == byte.class || type == Byte.class) {
+                return new ScalarCodec(type, "integer", null, v -> v instanceof Number n ? n.byteValue() : Byte.valueOf(text(v)));
+            }
+            if (type == BigInteger.class) {
+                return new ScalarCodec(type, "integer", null, v -> new BigInteger(text(v)));
+            }
+            if (type == double.class || type == Double.class) {
+                return new ScalarCodec(type, "number", null, v -> v instanceof Number n ? n.doubleValue() : Double.valueOf(text(v)));
+            }
+            if (type == float.class || type == Float.class) {
+                return new ScalarCodec(type, "number", null, v -> v instanceof Number n ? n.floatValue() : Float.valueOf(text(v)));
+            }
+            if (type == BigDecimal.class) {
+                return new ScalarCodec(type, "number", null, v -> new BigDecimal(text(v)));
+            }
+            if (type == boolean.class || type == Boolean.class) {
+                return new ScalarCodec(type, "boolean", null, v -> v instanceof Boolean ? v : Boolean.valueOf(text(v)));
+            }
+            if (type == char.class || type == Character.class) {
+                return new ScalarCodec(type, "string", null, v -> text(v).charAt(0));
+            }
+            if (type == LocalDate.class) {
+                return new ScalarCodec(type, "string", "yyyy-MM-dd", v -> LocalDate.parse(text(v)));
+            }
+            if (type == LocalDateTime.class) {
+                return new ScalarCodec(type, "string", "yyyy-MM-ddTHH:mm:ss", v -> LocalDateTime.parse(text(v)));
+            }
+            if (type == LocalTime.class) {
+                return new ScalarCodec(type, "string", "HH:mm:ss", v -> LocalTime.parse(text(v)));
+            }
+            if (type.isEnum()) {
+                Map<String, Object> constants = new HashMap<>();
+                for (Object constant : type.getEnumConstants()) {
+                    constants.put(((Enum<?>) constant).name().toUpperCase(), constant);
+                }
+                return new ScalarCodec(type, "enum", null, v -> constants.get(text(v).toUpperCase()));
+            }
+            return null;
+        }
+
+        private static String text(Object value) {
+            return value.toString().trim();
+        }
+
+        boolean isPrimitive() {
+            return type.isPrimitive();
+        }
+
+        boolean isString() {
+            return type == String.class || type == CharSequence.class;
+        }
+
+        boolean isEnum() {
+            return type.isEnum();
+        }
+
+        List<String> enumValues() {
+            return Arrays.stream(type.getEnumConstants()).map(constant -> ((Enum<?>) constant).name()).toList();
+        }
+
+        String jsonType() {
+            return pattern != null ? pattern : jsonType;
+        }
+
+        /**
+         * 转换不了（类型不匹配、格式错误）返回 null
+         */
+        Object convert(Object value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return converter.apply(value);
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        @Override
+        JsonSchemaElement schema(String description, SchemaContext context) {
+            String full = pattern == null ? description : prefix(description) + "format: " + pattern;
+            return switch (jsonType) {
+                case "integer" -> JsonIntegerSchema.builder().description(full).build();
+                case "number" -> JsonNumberSchema.builder().description(full).build();
+                case "boolean" -> JsonBooleanSchema.builder().description(full).build();
+                case "enum" -> JsonEnumSchema.builder().description(full).enumValues(enumValues()).build();
+                default -> JsonStringSchema.builder().description(full).build();
+            };
+        }
+
+        @Override
+        String format(String description, SchemaContext context) {
+            if (type.isEnum()) {
+                return "(" + prefix(description) + "one of [" + String.join(", ", enumValues()) + "])";
+            }
+            return "(" + prefix(description) + "type: " + jsonType() + ")";
+        }
+    }
+
+    /**
+     * List / Set
+     */
+    static final class CollectionCodec extends TypeCodec {
+
+        private final boolean set;
+        final TypeCodec element;
+
+        CollectionCodec(boolean set, TypeCodec element) {
+            this.set = set;
+            this.element = element;
+        }
+
+        Collection<Object> newInstance() {
+            return set ? new LinkedHashSet<>() : new ArrayList<>();
+        }
+
+        @Override
+        JsonSchemaElement schema(String description, SchemaContext context) {
+            return JsonArraySchema.builder().description(description).items(element.schema(null, context)).build();
+        }
+
+        @Override
+        String format(String description, SchemaContext context) {
+            return "(" + prefix(description) + "array of " + element.format(null, context) + ")";
+        }
+    }
+
+    /**
+     * POJO：构造器和每个字段的 setter 都是编译好的 MethodHandle
+     */
+    static final class ObjectCodec extends TypeCodec {
+
+        private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+        private final Class<?> type;
+        private final String description;
+        private final MethodHandle constructor;
+        private final Map<String, Property> properties = new LinkedHashMap<>();
+
+        ObjectCodec(Class<?> type) {
+            this.type = type;
+            this.description = description(type.getAnnotation(Description.class));
+            this.constructor = constructor(type);
+        }
+
+        private static MethodHandle constructor(Class<?> type) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                for (Constructor<?> candidate : type.getDeclaredConstructors()) {
+                    Class<?>[] parameters = candidate.getParameterTypes();
+                    if (parameters.length == 0) {
+                        return lookup.unreflectConstructor(candidate).asType(MethodType.methodType(Object.class));
+                    }
+                }
+                for (Constructor<?> candidate : type.getDeclaredConstructors()) {
+                    Class<?>[] parameters = candidate.getParameterTypes();
+                    // 非静态内部类和局部类：外部实例传 null
+                    if (parameters.length == 1 && parameters[0] == type.getEnclosingClass()) {
+                        return MethodHandles.insertArguments(lookup.unreflectConstructor(candidate), 0, (Object) null)
+                                .asType(MethodType.methodType(Object.class));
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("cannot access constructor of " + type.getName(), e);
+            }
+            throw new IllegalArgumentException(type.getName() + " needs a no-arg constructor");
+        }
+
+        private void compileProperties(Map<Type, TypeCodec> compiling) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                List<Class<?>> hierarchy = new ArrayList<>();
+                for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                    hierarchy.add(0, c);
+                }
+                for (Class<?> c : hierarchy) {
+                    for (Field field : c.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (field.isSynthetic() || Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)
+                                || Modifier.isFinal(modifiers)) {
+                            continue;
+                        }
+                        MethodHandle setter = MethodHandles.privateLookupIn(c, lookup).unreflectSetter(field).asType(SETTER);
+                        properties.put(field.getName(), new Property(field.getName(), compileType(field.getGenericType(), compiling),
+                                setter, description(field.getAnnotation(Description.class))));
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("cannot access fields of " + type.getName(), e);
+            }
+        }
+
+        Object newInstance() {
+            try {
+                return (Object) constructor.invokeExact();
+            } catch (Throwable e) {
+                throw new IllegalStateException("cannot instantiate " + type.getName(), e);
+            }
+        }
+
+        Property property(String name) {
+            return properties.get(name);
+        }
+
+        @Override
+        JsonSchemaElement schema(String description, SchemaContext context) {
+            if (context.isExpanding(this)) {
+                return JsonReferenceSchema.builder().reference(context.reference(this)).build();
+            }
+            return schemaBuilder(description, context).build();
+        }
+
+        /**
+         * 展开一层；展开过程中引用了自己时，把展开的结果登记为定义
+         */
+        JsonObjectSchema.Builder schemaBuilder(String description, SchemaContext context) {
+            context.expanding.add(this);
+            JsonObjectSchema.Builder builder = JsonObjectSchema.builder()
+                    .description(description != null ? description : this.description);
+            for (Property property : properties.values()) {
+                builder.addProperty(property.name, property.codec.schema(property.description, context));
+            }
+            builder.required(new ArrayList<>(properties.keySet())).additionalProperties(false);
+            context.expanding.remove(this);
+            String reference = context.references.get(this);
+            if (reference != null && !context.definitions.containsKey(reference)) {
+                context.definitions.put(reference, builder.build());
+            }
+            return builder;
+        }
+
+        @Override
+        String format(String description, SchemaContext context) {
+            if (context.isExpanding(this)) {
+                return "(" + prefix(description) + "same format as " + type.getSimpleName() + ")";
+            }
+            context.expanding.add(this);
+            StringBuilder format = new StringBuilder("{\n");
+            for (Property property : properties.values()) {
+                format.append('"').append(property.name).append("\": ").append(property.codec.format(property.description, context)).append(",\n");
+            }
+            if (!properties.isEmpty()) {
+                format.setLength(format.length() - 2);
+                format.append('\n');
+            }
+            context.expanding.remove(this);
+            return format.append('}').toString();
+        }
+    }
+
+    record Property(String name, TypeCodec codec, MethodHandle setter, String description) {
+
+        void set(Object target, Object value) {
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException("cannot set " + name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messagesFromJson;
+import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
+import static org.mapdb.Serializer.INT_ARRAY;
+import static org.mapdb.Serializer.STRING;
+
+/**
+ * 追加写（append-only）的持久化聊天记忆
+ *
+ * PersistentChatMemoryStore 每轮都会用 messagesToJson 把整段历史重新序列化并覆盖 MapDB 中的值，
+ * 对话越长，单次写入越慢，MapDB 文件也会被反复整块改写。
+ *
+ * 这里改为每个 memoryId 维护：
+ *      快照（snapshot）：某一时刻完整消息列表的 JSON
+ *      增量日志（log）：快照之后的每一次变更，只记录"删掉了哪一段"和"追加了哪些消息"
+ * 读取时用"快照 + 依次重放日志"还原当前列表；日志条数达到阈值后，由后台线程写入新快照并删除旧日志（compaction）。
+ *
+ * MessageWindowChatMemory 每轮的变化只有两种：尾部追加新消息，窗口满时从头部（SystemMessage 之后）淘汰旧消息，
+ * 所以一条日志只需要记录 (公共前缀长度, 删除条数, 追加的消息)，写入成本只和本轮新增消息有关，与历史长度无关。
+ *
+ * 堆里最多保留 maxSessions 个会话的消息列表，按 LRU 淘汰；被淘汰的会话再次访问时重新用"快照 + 日志"还原。
+ * 正在压缩的会话不淘汰，压缩结束后再参与淘汰。
+ */
+public class AppendOnlyChatMemoryStore implements ChatMemoryStore, AutoCloseable {
+
+    private static final int DEFAULT_COMPACT_THRESHOLD = 64;
+    private static final int DEFAULT_MAX_SESSIONS = 10_000;
+
+    private final DB db;
+    // memoryId -> 快照 JSON
+    private final Map<String, String> snapshots;
+    // memoryId#seq -> 日志条目，格式为 "前缀长度,删除条数\n追加消息的 JSON"
+    private final Map<String, String> logs;
+    // memoryId -> [日志起始序号, 日志结束序号)
+    private final Map<String, int[]> logRanges;
+
+    // 访问顺序的 LRU，由自身保护
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "chat-memory-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final int compactThreshold;
+    private final int maxSessions;
+
+    public AppendOnlyChatMemoryStore(String file) {
+        this(file, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    /**
+     * @param file             MapDB 文件路径
+     * @param compactThreshold 单个会话累计多少条日志后触发后台压缩
+     */
+    public AppendOnlyChatMemoryStore(String file, int compactThreshold) {
+        this(DBMaker.fileDB(file).transactionEnable().make(), compactThreshold);
+    }
+
+    public AppendOnlyChatMemoryStore(DB db, int compactThreshold) {
+        this(db, compactThreshold, DEFAULT_MAX_SESSIONS);
+    }
+
+    /**
+     * @param maxSessions 堆里最多缓存多少个会话的消息列表
+     */
+    public AppendOnlyChatMemoryStore(DB db, int compactThreshold, int maxSessions) {
+        if (compactThreshold < 1) {
+            throw new IllegalArgumentException("compactThreshold must be positive: " + compactThreshold);
+        }
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("maxSessions must be positive: " + maxSessions);
+        }
+        this.db = db;
+        this.snapshots = db.hashMap("snapshots", STRING, STRING).createOrOpen();
+        this.logs = db.hashMap("logs", STRING, STRING).createOrOpen();
+        this.logRanges = db.hashMap("log-ranges", STRING, INT_ARRAY).createOrOpen();
+        this.compactThreshold = compactThreshold;
+        this.maxSessions = maxSessions;
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        while (true) {
+            Session session = session(memoryId);
+            synchronized (session) {
+                if (!session.evicted) {
+                    return new ArrayList<>(session.messages);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        while (true) {
+            Session session = session(memoryId);
+            boolean needCompaction;
+            synchronized (session) {
+                if (session.evicted) {
+                    continue;
+                }
+                needCompaction = update(session, messages);
+            }
+            if (needCompaction) {
+                compactor.execute(() -> compact(session));
+            }
+            return;
+        }
+    }
+
+    /**
+     * 持有会话锁时调用，返回是否需要压缩
+     */
+    private boolean update(Session session, List<ChatMessage> messages) {
+        List<ChatMessage> old = session.messages;
+
+        // 1. 公共前缀（通常就是开头的 SystemMessage）
+        int prefix = 0;
+        int max = Math.min(old.size(), messages.size());
+        while (prefix < max && old.get(prefix).equals(messages.get(prefix))) {
+            prefix++;
+        }
+
+        // 2. 前缀之后从旧列表里删掉多少条，剩下的部分才能和新列表对齐
+        int removed = 0;
+        while (!alignsAfterRemoval(old, messages, prefix, removed)) {
+            removed++;
+        }
+
+        // 3. 对齐之后剩下的就是本轮新增的消息
+        int kept = old.size() - prefix - removed;
+        List<ChatMessage> appended = messages.subList(prefix + kept, messages.size());
+        if (removed == 0 && appended.isEmpty()) {
+            return false;
+        }
+
+        logs.put(logKey(session.key, session.logEnd), prefix + "," + removed + "\n" + messagesToJson(appended));
+        session.logEnd++;
+        logRanges.put(session.key, new int[]{session.logStart, session.logEnd});
+        db.commit();
+
+        session.messages = new ArrayList<>(messages);
+        boolean needCompaction = !session.compacting && session.logEnd - session.logStart >= compactThreshold;
+        if (needCompaction) {
+            session.compacting = true;
+        }
+        return needCompaction;
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        while (true) {
+            Session session = session(memoryId);
+            synchronized (session) {
+                if (session.evicted) {
+                    continue;
+                }
+                removeLogs(session.key, session.logStart, session.logEnd);
+                snapshots.remove(session.key);
+                logRanges.remove(session.key);
+                db.commit();
+
+                session.messages = new ArrayList<>();
+                session.logStart = 0;
+                session.logEnd = 0;
+                session.generation++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * 等待已提交的压缩任务执行完，然后关闭 MapDB；等待时被中断就不再等，恢复中断标记后照样关闭
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        db.close();
+    }
+
+    /**
+     * 当前会话还没有被压缩进快照的日志条数（便于观察压缩效果）
+     */
+    public int pendingLogSize(Object memoryId) {
+        while (true) {
+            Session session = session(memoryId);
+            synchronized (session) {
+                if (!session.evicted) {
+                    return session.logEnd - session.logStart;
+                }
+            }
+        }
+    }
+
+    /**
+     * 当前缓存在堆里的会话数
+     */
+    public int cachedSessions() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    /**
+     * 把当前消息列表写成新快照，再删除已被快照覆盖的日志。
+     * 序列化整段历史放在会话锁之外进行，压缩期间同一会话的新写入照常追加到日志尾部，不受影响。
+     * 不管成功还是失败都清掉 compacting，失败的会话下次写入达到阈值时会再试。
+     */
+    private void compact(Session session) {
+        try {
+            List<ChatMessage> messages;
+            int upTo;
+            int generation;
+            synchronized (session) {
+                messages = new ArrayList<>(session.messages);
+                upTo = session.logEnd;
+                generation = session.generation;
+            }
+
+            String json = messagesToJson(messages);
+
+            synchronized (session) {
+                // 压缩期间会话被删除了，快照已经过时
+                if (session.generation != generation) {
+                    return;
+                }
+                snapshots.put(session.key, json);
+                removeLogs(session.key, session.logStart, upTo);
+                session.logStart = upTo;
+                logRanges.put(session.key, new int[]{session.logStart, session.logEnd});
+                db.commit();
+            }
+        } finally {
+            synchronized (session) {
+                session.compacting = false;
+            }
+        }
+    }
+
+    /**
+     * 缓存里没有时从磁盘还原。还原在 sessions 锁里进行，保证同一个会话在堆里最多只有一个 Session：
+     * 被淘汰的 Session 先标记 evicted（它的写入都已 commit），之后才可能重新加载
+     */
+    private Session session(Object memoryId) {
+        String key = String.valueOf(memoryId);
+        synchronized (sessions) {
+            Session session = sessions.get(key);
+            if (session == null) {
+                session = load(key);
+                sessions.put(key, session);
+                evictEldest(key);
+            }
+            return session;
+        }
+    }
+
+    /**
+     * 持有 sessions 锁时调用。淘汰最久没访问的会话，正在压缩的跳过
+     */
+    private void evictEldest(String keep) {
+        Iterator<Session> it = sessions.values().iterator();
+        while (sessions.size() > maxSessions && it.hasNext()) {
+            Session eldest = it.next();
+            if (eldest.key.equals(keep)) {
+                continue;
+            }
+            synchronized (eldest) {
+                if (eldest.compacting) {
+                    continue;
+                }
+                eldest.evicted = true;
+            }
+            it.remove();
+        }
+    }
+
+    /**
+     * 会话第一次被访问时，从磁盘还原：快照 + 依次重放日志
+     */
+    private Session load(String key) {
+        Session session = new Session(key);
+        String snapshot = snapshots.get(key);
+        if (snapshot != null) {
+            session.messages.addAll(messagesFromJson(snapshot));
+        }
+        int[] range = logRanges.get(key);
+        if (range != null) {
+            session.logStart = range[0];
+            session.logEnd = range[1];
+            for (int seq = range[0]; seq < range[1]; seq++) {
+                replay(session.messages, logs.get(logKey(key, seq)));
+            }
+        }
+        return session;
+    }
+
+    private static void replay(List<ChatMessage> messages, String entry) {
+        int newline = entry.indexOf('\n');
+        int comma = entry.indexOf(',');
+        int prefix = Integer.parseInt(entry.substring(0, comma));
+        int removed = Integer.parseInt(entry.substring(comma + 1, newline));
+        messages.subList(prefix, prefix + removed).clear();
+        messages.addAll(messagesFromJson(entry.substring(newline + 1)));
+    }
+
+    private static boolean alignsAfterRemoval(List<ChatMessage> old, List<ChatMessage> messages, int prefix, int removed) {
+        int from = prefix + removed;
+        int kept = old.size() - from;
+        if (kept > messages.size() - prefix) {
+            return false;
+        }
+        for (int i = 0; i < kept; i++) {
+            if (!old.get(from + i).equals(messages.get(prefix + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void removeLogs(String key, int from, int to) {
+        for (int seq = from; seq < to; seq++) {
+            logs.remove(logKey(key, seq));
+        }
+    }
+
+    private static String logKey(String key, int seq) {
+        return key + "#" + seq;
+    }
+
+    private static class Session {
+
+        final String key;
+        List<ChatMessage> messages = new ArrayList<>();
+        int logStart;
+        int logEnd;
+        // 每次 deleteMessages 加一，用来识别过时的压缩任务
+        int generation;
+        boolean compacting;
+        // 已从缓存淘汰，拿到它的线程要重新取
+        boolean evicted;
+
+        Session(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
+import static org.mapdb.Serializer.INTEGER;
+import static org.mapdb.Serializer.STRING;
+
+/**
+ * 追加写聊天记忆的写入成本对比
+ */
+public class AppendOnlyChatMemoryStoreTest {
+
+    private static final int TURNS = 2000;
+    private static final int BUCKET = 200;
+
+    /**
+     * 不使用窗口，历史一直增长，每 200 轮打印一次平均单轮写入耗时：
+     *      整体覆盖（PersistentChatMemoryStore 的写法）：耗时随历史长度线性上升
+     *      追加写：耗时基本保持不变
+     */
+    @Test
+    public void benchmark() throws Exception {
+        File fullFile = tempFile("full-rewrite");
+        File appendFile = tempFile("append-only");
+
+        DB db = DBMaker.fileDB(fullFile).transactionEnable().make();
+        Map<Integer, String> map = db.hashMap("messages", INTEGER, STRING).createOrOpen();
+        AppendOnlyChatMemoryStore store = new AppendOnlyChatMemoryStore(appendFile.getPath());
+
+        List<ChatMessage> history = new ArrayList<>();
+        history.add(SystemMessage.from("You are a helpful assistant."));
+
+        long fullNanos = 0;
+        long appendNanos = 0;
+        System.out.println("历史长度\t整体覆盖(μs/轮)\t追加写(μs/轮)");
+        for (int turn = 1; turn <= TURNS; turn++) {
+            history.add(UserMessage.from("Question number " + turn + ", please answer it in detail."));
+            history.add(AiMessage.from("Answer number " + turn + ": here is a reasonably long answer text."));
+
+            long start = System.nanoTime();
+            map.put(1, messagesToJson(history));
+            db.commit();
+            fullNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            store.updateMessages(1, history);
+            appendNanos += System.nanoTime() - start;
+
+            if (turn % BUCKET == 0) {
+                System.out.printf("%d\t%d\t%d%n", history.size(), fullNanos / BUCKET / 1000, appendNanos / BUCKET / 1000);
+                fullNanos = 0;
+                appendNanos = 0;
+            }
+        }
+        db.close();
+        store.close();
+
+        // 重新打开，验证 快照 + 日志重放 能还原出完整历史
+        try (AppendOnlyChatMemoryStore reopened = new AppendOnlyChatMemoryStore(appendFile.getPath())) {
+            List<ChatMessage> restored = reopened.getMessages(1);
+            System.out.println("还原是否一致: " + restored.equals(history) + "，未压缩日志条数: " + reopened.pendingLogSize(1));
+        }
+    }
+
+    /**
+     * 配合 MessageWindowChatMemory 的滑动窗口：头部淘汰 + 尾部追加，同样只记录增量
+     */
+    @Test
+    public void window() throws Exception {
+        File file = tempFile("window");
+        List<ChatMessage> window = new ArrayList<>();
+        window.add(SystemMessage.from("You are a helpful assistant."));
+
+        try (AppendOnlyChatMemoryStore store = new AppendOnlyChatMemoryStore(file.getPath(), 8)) {
+            for (int turn = 1; turn <= 50; turn++) {
+                window.add(UserMessage.from("Q" + turn));
+                window.add(AiMessage.from("A" + turn));
+                while (window.size() > 10) {
+                    window.remove(1);
+                }
+                store.updateMessages("user-001", window);
+            }
+        }
+
+        try (AppendOnlyChatMemoryStore reopened = new AppendOnlyChatMemoryStore(file.getPath(), 8)) {
+            System.out.println(reopened.getMessages("user-001").equals(window));
+        }
+    }
+
+    /**
+     * 堆里只缓存 16 个会话，200 个会话交替写入：被淘汰的会话再次访问时从 快照 + 日志 还原
+     */
+    @Test
+    public void boundedSessions() throws Exception {
+        File file = tempFile("bounded");
+        Map<Integer, List<ChatMessage>> expected = new HashMap<>();
+        try (AppendOnlyChatMemoryStore store = new AppendOnlyChatMemoryStore(DBMaker.fileDB(file).transactionEnable().make(), 4, 16)) {
+            for (int turn = 1; turn <= 10; turn++) {
+                for (int user = 0; user < 200; user++) {
+                    List<ChatMessage> history = expected.computeIfAbsent(user, id -> new ArrayList<>());
+                    history.add(UserMessage.from("Q" + turn + " from " + user));
+                    history.add(AiMessage.from("A" + turn));
+                    store.updateMessages(user, history);
+                }
+            }
+            boolean consistent = true;
+            for (int user = 0; user < 200; user++) {
+                consistent &= store.getMessages(user).equals(expected.get(user));
+            }
+            System.out.println("还原是否一致: " + consistent + "，堆里缓存的会话数: " + store.cachedSessions());
+        }
+    }
+
+    private static File tempFile(String name) throws IOException {
+        File file = File.createTempFile(name, ".db");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,350 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messageFromJson;
+import static dev.langchain4j.data.message.ChatMessageSerializer.messageToJson;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 紧凑的二进制消息列表格式
+ *
+ * 布局：
+ *      magic(2 字节 'C' 'M') | 版本(1 字节) | 标志位(1 字节，bit0 = 已压缩) | 正文
+ *      压缩时正文为：varint 原始长度 + Deflate 数据
+ *      正文：varint 消息条数，随后逐条为 类型标记(1 字节) + 字段
+ *
+ * 类型标记：
+ *      SYSTEM  文本
+ *      USER    名字 + 文本
+ *      AI      文本 + varint 工具调用个数 + 每个调用的 id/name/arguments
+ *      TOOL    id + toolName + 文本
+ *      JSON    其他情况（多模态 UserMessage、带思考过程的 AiMessage、CustomMessage 等）退回到单条消息的 JSON
+ * 字符串统一为 varint 长度 + UTF-8 字节；可能为 null 的字段（名字、AI 文本、工具调用的各字段）长度写成 len + 1，0 表示 null。
+ *
+ * 是否能走紧凑格式，通过"用紧凑字段重建出的消息 equals 原消息"来判断，
+ * 这样 ChatMessage 以后新增了字段也不会在编码时悄悄丢失。
+ */
+public class BinaryChatMessagesCodec implements ChatMessagesCodec {
+
+    static final byte MAGIC_0 = 'C';
+    static final byte MAGIC_1 = 'M';
+    static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 4;
+    private static final int FLAG_COMPRESSED = 1;
+
+    private static final byte TAG_JSON = 0;
+    private static final byte TAG_SYSTEM = 1;
+    private static final byte TAG_USER = 2;
+    private static final byte TAG_AI = 3;
+    private static final byte TAG_TOOL_EXECUTION_RESULT = 4;
+
+    private static final int DEFAULT_COMPRESS_THRESHOLD = 512;
+
+    private final boolean compress;
+    private final int compressThreshold;
+
+    /**
+     * 不压缩
+     */
+    public BinaryChatMessagesCodec() {
+        this(false, DEFAULT_COMPRESS_THRESHOLD);
+    }
+
+    /**
+     * @param compress          是否启用 Deflate 块压缩
+     * @param compressThreshold 正文超过多少字节才压缩（太短的正文压缩后反而更大）
+     */
+    public BinaryChatMessagesCodec(boolean compress, int compressThreshold) {
+        this.compress = compress;
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * 判断一段字节是否是本格式（用于和旧的 JSON 数据区分）
+     */
+    public static boolean isBinary(byte[] bytes) {
+        return bytes.length >= HEADER_SIZE && bytes[0] == MAGIC_0 && bytes[1] == MAGIC_1;
+    }
+
+    @Override
+    public byte[] encode(List<ChatMessage> messages) {
+        Output out = new Output(64 + messages.size() * 64);
+        out.writeByte(MAGIC_0);
+        out.writeByte(MAGIC_1);
+        out.writeByte(VERSION);
+        out.writeByte(0);
+
+        out.writeVarInt(messages.size());
+        for (ChatMessage message : messages) {
+            writeMessage(out, message);
+        }
+
+        int bodyLength = out.size - HEADER_SIZE;
+        if (!compress || bodyLength < compressThreshold) {
+            return out.toByteArray();
+        }
+        return compressed(out.buf, bodyLength);
+    }
+
+    @Override
+    public List<ChatMessage> decode(byte[] bytes) {
+        if (!isBinary(bytes)) {
+            throw new IllegalArgumentException("Not a binary chat message list");
+        }
+        if (bytes[2] != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary chat message version: " + bytes[2]);
+        }
+        Input in = new Input(bytes, HEADER_SIZE);
+        if ((bytes[3] & FLAG_COMPRESSED) != 0) {
+            in = new Input(inflate(in), 0);
+        }
+
+        int count = in.readVarInt();
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(readMessage(in));
+        }
+        return messages;
+    }
+
+    private static void writeMessage(Output out, ChatMessage message) {
+        if (message instanceof SystemMessage systemMessage && systemMessage.equals(SystemMessage.from(systemMessage.text()))) {
+            out.writeByte(TAG_SYSTEM);
+            out.writeString(systemMessage.text());
+            return;
+        }
+        if (message instanceof UserMessage userMessage && userMessage.hasSingleText()
+                && userMessage.equals(userMessage(userMessage.name(), userMessage.singleText()))) {
+            out.writeByte(TAG_USER);
+            out.writeNullableString(userMessage.name());
+            out.writeString(userMessage.singleText());
+            return;
+        }
+        if (message instanceof AiMessage aiMessage && aiMessage.equals(compactAiMessage(aiMessage))) {
+            out.writeByte(TAG_AI);
+            out.writeNullableString(aiMessage.text());
+            List<ToolExecutionRequest> requests = aiMessage.toolExecutionRequests();
+            out.writeVarInt(requests.size());
+            for (ToolExecutionRequest request : requests) {
+                out.writeNullableString(request.id());
+                out.writeNullableString(request.name());
+                out.writeNullableString(request.arguments());
+            }
+            return;
+        }
+        if (message instanceof ToolExecutionResultMessage resultMessage && resultMessage.equals(
+                ToolExecutionResultMessage.from(resultMessage.id(), resultMessage.toolName(), resultMessage.text()))) {
+            out.writeByte(TAG_TOOL_EXECUTION_RESULT);
+            out.writeNullableString(resultMessage.id());
+            out.writeNullableString(resultMessage.toolName());
+            out.writeString(resultMessage.text());
+            return;
+        }
+        out.writeByte(TAG_JSON);
+        out.writeString(messageToJson(message));
+    }
+
+    private static ChatMessage readMessage(Input in) {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_SYSTEM:
+                return SystemMessage.from(in.readString());
+            case TAG_USER: {
+                String name = in.readNullableString();
+                return userMessage(name, in.readString());
+            }
+            case TAG_AI: {
+                String text = in.readNullableString();
+                int count = in.readVarInt();
+                List<ToolExecutionRequest> requests = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    requests.add(ToolExecutionRequest.builder()
+                            .id(in.readNullableString())
+                            .name(in.readNullableString())
+                            .arguments(in.readNullableString())
+                            .build());
+                }
+                return aiMessage(text, requests);
+            }
+            case TAG_TOOL_EXECUTION_RESULT:
+                return ToolExecutionResultMessage.from(in.readNullableString(), in.readNullableString(), in.readString());
+            case TAG_JSON:
+                return messageFromJson(in.readString());
+            default:
+                throw new IllegalArgumentException("Unknown chat message tag: " + tag);
+        }
+    }
+
+    private static UserMessage userMessage(String name, String text) {
+        return name == null ? UserMessage.from(text) : UserMessage.from(name, text);
+    }
+
+    private static AiMessage compactAiMessage(AiMessage message) {
+        List<ToolExecutionRequest> requests = message.toolExecutionRequests();
+        if (requests == null || (message.text() == null && requests.isEmpty())) {
+            return null;
+        }
+        return aiMessage(message.text(), requests);
+    }
+
+    private static AiMessage aiMessage(String text, List<ToolExecutionRequest> requests) {
+        if (requests.isEmpty()) {
+            return AiMessage.from(text);
+        }
+        return text == null ? AiMessage.from(requests) : AiMessage.from(text, requests);
+    }
+
+    private static byte[] compressed(byte[] buf, int bodyLength) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(buf, HEADER_SIZE, bodyLength);
+            deflater.finish();
+            Output out = new Output(HEADER_SIZE + 5 + bodyLength / 2);
+            out.writeByte(MAGIC_0);
+            out.writeByte(MAGIC_1);
+            out.writeByte(VERSION);
+            out.writeByte(FLAG_COMPRESSED);
+            out.writeVarInt(bodyLength);
+            while (!deflater.finished()) {
+                out.ensureCapacity(4096);
+                out.size += deflater.deflate(out.buf, out.size, out.buf.length - out.size);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(Input in) {
+        int length = in.readVarInt();
+        byte[] body = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(in.buf, in.pos, in.buf.length - in.pos);
+            int n = 0;
+            while (n < length) {
+                int read = inflater.inflate(body, n, length - n);
+                if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalArgumentException("Truncated compressed chat message list");
+                }
+                n += read;
+            }
+            return body;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted compressed chat message list", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class Output {
+
+        byte[] buf;
+        int size;
+
+        Output(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        void ensureCapacity(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            buf[size++] = (byte) b;
+        }
+
+        void writeVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarInt(bytes.length);
+            writeBytes(bytes);
+        }
+
+        void writeNullableString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarInt(bytes.length + 1);
+            writeBytes(bytes);
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+    }
+
+    private static final class Input {
+
+        final byte[] buf;
+        int pos;
+
+        Input(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        byte readByte() {
+            return buf[pos++];
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = buf[pos++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        String readString() {
+            return readString(readVarInt());
+        }
+
+        String readNullableString() {
+            int length = readVarInt();
+            return length == 0 ? null : readString(length - 1);
+        }
+
+        private String readString(int length) {
+            String value = new String(buf, pos, length, UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ImageContent;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.TextContent;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 二进制编解码：往返一致性、体积和耗时对比
+ */
+public class BinaryChatMessagesCodecTest {
+
+    /**
+     * 四种消息类型 + 退回 JSON 的多模态消息，编码后再解码应与原列表一致
+     */
+    @Test
+    public void roundTrip() {
+        List<ChatMessage> messages = List.of(
+                SystemMessage.from("You are a helpful assistant."),
+                UserMessage.from("Klaus", "What is 1+2 and 3*4?"),
+                AiMessage.from(List.of(
+                        ToolExecutionRequest.builder().id("call_1").name("add").arguments("{\"a\":1,\"b\":2}").build(),
+                        ToolExecutionRequest.builder().id("call_2").name("multiply").arguments("{\"a\":3,\"b\":4}").build())),
+                ToolExecutionResultMessage.from("call_1", "add", "3"),
+                ToolExecutionResultMessage.from("call_2", "multiply", "12"),
+                AiMessage.from("1+2 等于 3，3*4 等于 12。"),
+                UserMessage.from(List.of(
+                        TextContent.from("Describe the following image in detail"),
+                        ImageContent.from("https://picsum.photos/id/40/800/600")))
+        );
+
+        for (ChatMessagesCodec codec : List.of(new BinaryChatMessagesCodec(), new BinaryChatMessagesCodec(true, 0))) {
+            byte[] bytes = codec.encode(messages);
+            System.out.println(codec.decode(bytes).equals(messages) + ", " + bytes.length + " bytes");
+        }
+    }
+
+    @Test
+    public void benchmark() {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(SystemMessage.from("You are a polite chatbot of a company called Miles of Smiles."));
+        for (int i = 0; i < 15; i++) {
+            messages.add(UserMessage.from("Which services do you provide? I am asking for the " + i + "th time."));
+            messages.add(AiMessage.from("At Miles of Smiles, we provide a wide range of services, including travel planning, "
+                    + "car rentals and customer support. Let me know if you have any other questions."));
+        }
+
+        for (int round = 0; round < 2; round++) { // 第一轮为预热
+            run("JSON", new JsonChatMessagesCodec(), messages);
+            run("二进制", new BinaryChatMessagesCodec(), messages);
+            run("二进制+压缩", new BinaryChatMessagesCodec(true, 512), messages);
+        }
+    }
+
+    private static void run(String name, ChatMessagesCodec codec, List<ChatMessage> messages) {
+        int iterations = 20_000;
+        byte[] bytes = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes = codec.encode(messages);
+        }
+        long encodeNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            codec.decode(bytes);
+        }
+        long decodeNanos = System.nanoTime() - start;
+
+        System.out.printf("%s: %d bytes, encode %.2fμs, decode %.2fμs%n", name,
+                bytes.length, encodeNanos / 1000.0 / iterations, decodeNanos / 1000.0 / iterations);
+    }
+}
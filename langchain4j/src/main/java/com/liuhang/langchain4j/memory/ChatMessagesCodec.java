@@ -0,0 +1,15 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+
+import java.util.List;
+
+/**
+ * 聊天消息列表的编解码器，决定消息列表以什么格式存到磁盘上
+ */
+public interface ChatMessagesCodec {
+
+    byte[] encode(List<ChatMessage> messages);
+
+    List<ChatMessage> decode(byte[] bytes);
+}
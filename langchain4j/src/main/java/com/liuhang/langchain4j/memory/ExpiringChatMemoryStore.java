@@ -0,0 +1,453 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会自动过期的内存聊天记忆
+ *
+ * InMemoryChatMemoryStore 只增不减，配合 chatMemoryProvider 使用时，不手动删除会话就会一直占着堆。
+ * 这里给每个会话设置空闲过期时间（idle TTL），并限制全局会话数和消息总数：
+ *      空闲超过 ttl 的会话由时间轮（timing wheel）淘汰：每个 tick 只处理落在当前槽里的会话，不扫描整个 map；
+ *              读写会话时只更新它的过期时间，不移动槽位，等到槽位被处理时再按新的过期时间重新挂到后面的槽里
+ *      超过 maxSessions 或 maxMessages 时，按最近最少使用（LRU）淘汰
+ * 被淘汰的会话会通知 EvictionListener，可以在回调里落盘，或调用 ChatMemoryAccess.evictChatMemory 释放 AI 服务里缓存的 ChatMemory。
+ * 配置了 spillStore 时，被淘汰的会话自动写入 spillStore，之后再访问会从 spillStore 读回来。
+ * 写 spillStore 在锁外进行，写完之前这个会话标记为 spilling，对它的读写删都等写完再继续（其他会话不受影响），
+ * 不会出现"内存里已经没有、spillStore 里还没有"的窗口；写失败时会话放回内存，不丢历史。
+ * 回调抛出的异常不影响淘汰，次数和最近一次异常可以通过 listenerFailureCount / lastListenerFailure 查看。
+ */
+public class ExpiringChatMemoryStore implements ChatMemoryStore, AutoCloseable {
+
+    public enum RemovalCause {
+        /**
+         * 空闲超过 ttl
+         */
+        EXPIRED,
+        /**
+         * 超过会话数或消息总数上限
+         */
+        SIZE
+    }
+
+    @FunctionalInterface
+    public interface EvictionListener {
+
+        void onEviction(Object memoryId, List<ChatMessage> messages, RemovalCause cause);
+    }
+
+    private final long ttlNanos;
+    private final int maxSessions;
+    private final long maxMessages;
+    private final long tickNanos;
+    private final ChatMemoryStore spillStore;
+    private final List<EvictionListener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder listenerFailures = new LongAdder();
+    private volatile RuntimeException lastListenerFailure;
+
+    // 以下字段由 this 保护
+    private final Map<Object, Entry> entries = new HashMap<>();
+    // 已经从 entries 移除、正在写入 spillStore 的会话
+    private final Set<Object> spilling = new HashSet<>();
+    // LRU 双向链表的哨兵，head.lruNext 是最久未使用的会话
+    private final Entry lru = new Entry(null);
+    private final Entry[] wheel;
+    private final int mask;
+    private final long startNanos = System.nanoTime();
+    private long currentTick;
+    private long totalMessages;
+
+    private final ScheduledExecutorService ticker;
+
+    private ExpiringChatMemoryStore(Builder builder) {
+        this.ttlNanos = builder.ttl.toNanos();
+        this.maxSessions = builder.maxSessions;
+        this.maxMessages = builder.maxMessages;
+        this.tickNanos = builder.tickDuration.toNanos();
+        this.spillStore = builder.spillStore;
+
+        int size = Integer.highestOneBit(Math.max(2, builder.wheelSize) - 1) << 1;
+        this.wheel = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Entry(null);
+        }
+        this.mask = size - 1;
+        lru.lruPrev = lru.lruNext = lru;
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "chat-memory-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public void addEvictionListener(EvictionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 每个 memoryId 一个窗口记忆，消息都存放在本 store 中
+     */
+    public ChatMemoryProvider chatMemoryProvider(int maxMessagesPerSession) {
+        return memoryId -> MessageWindowChatMemory.builder()
+                .id(memoryId)
+                .maxMessages(maxMessagesPerSession)
+                .chatMemoryStore(this)
+                .build();
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        List<Evicted> evicted = new ArrayList<>();
+        try {
+            synchronized (this) {
+                awaitSpill(memoryId);
+                Entry entry = entries.get(memoryId);
+                if (entry != null) {
+                    long now = System.nanoTime();
+                    if (entry.expiresAt - now <= 0) {
+                        // 已过期但时间轮还没走到，直接在这里淘汰
+                        evicted.add(remove(entry, RemovalCause.EXPIRED));
+                    } else {
+                        touch(entry, now);
+                        return entry.messages;
+                    }
+                }
+            }
+        } finally {
+            notifyListeners(evicted);
+        }
+
+        if (spillStore == null) {
+            return new ArrayList<>();
+        }
+        List<ChatMessage> spilled = spillStore.getMessages(memoryId);
+        if (!spilled.isEmpty()) {
+            updateMessages(memoryId, spilled);
+            spillStore.deleteMessages(memoryId);
+        }
+        return spilled;
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        List<Evicted> evicted = new ArrayList<>();
+        synchronized (this) {
+            awaitSpill(memoryId);
+            Entry entry = put(memoryId, List.copyOf(messages));
+
+            while ((entries.size() > maxSessions || totalMessages > maxMessages) && lru.lruNext != entry) {
+                evicted.add(remove(lru.lruNext, RemovalCause.SIZE));
+            }
+        }
+        notifyListeners(evicted);
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        synchronized (this) {
+            awaitSpill(memoryId);
+            Entry entry = entries.get(memoryId);
+            if (entry != null) {
+                remove(entry, null);
+            }
+        }
+        if (spillStore != null) {
+            spillStore.deleteMessages(memoryId);
+        }
+    }
+
+    public synchronized int sessionCount() {
+        return entries.size();
+    }
+
+    public synchronized long messageCount() {
+        return totalMessages;
+    }
+
+    public long listenerFailureCount() {
+        return listenerFailures.sum();
+    }
+
+    /**
+     * 最近一次写 spillStore 或 EvictionListener 回调抛出的异常，没有时为 null
+     */
+    public RuntimeException lastListenerFailure() {
+        return lastListenerFailure;
+    }
+
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * 时间轮前进到当前时间：依次处理经过的每个槽
+     */
+    private void advance() {
+        List<Evicted> evicted = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            long targetTick = (now - startNanos) / tickNanos;
+            while (currentTick < targetTick) {
+                currentTick++;
+                Entry bucket = wheel[(int) (currentTick & mask)];
+                // 先把整条链摘下来再逐个处理，重新挂回来的会话不会在这一轮被重复处理
+                Entry entry = bucket.wheelNext;
+                bucket.wheelPrev = bucket.wheelNext = bucket;
+                while (entry != bucket) {
+                    Entry next = entry.wheelNext;
+                    entry.wheelPrev = entry.wheelNext = entry;
+                    if (entry.remainingRounds > 0) {
+                        entry.remainingRounds--;
+                        append(bucket, entry);
+                    } else if (entry.expiresAt - now <= 0) {
+                        evicted.add(remove(entry, RemovalCause.EXPIRED));
+                    } else {
+                        // 期间被访问过，按新的过期时间挂到后面的槽里
+                        schedule(entry);
+                    }
+                    entry = next;
+                }
+            }
+        }
+        notifyListeners(evicted);
+    }
+
+    /**
+     * 新建或覆盖会话，并刷新它的过期时间
+     */
+    private Entry put(Object memoryId, List<ChatMessage> messages) {
+        long now = System.nanoTime();
+        Entry entry = entries.get(memoryId);
+        if (entry == null) {
+            entry = new Entry(memoryId);
+            entries.put(memoryId, entry);
+            linkLast(entry);
+            entry.expiresAt = now + ttlNanos;
+            schedule(entry);
+        } else {
+            totalMessages -= entry.messages.size();
+            touch(entry, now);
+        }
+        entry.messages = messages;
+        totalMessages += messages.size();
+        return entry;
+    }
+
+    /**
+     * 持有 this 时调用：这个会话正在写入 spillStore 时等它写完
+     */
+    private void awaitSpill(Object memoryId) {
+        boolean interrupted = false;
+        while (spilling.contains(memoryId)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void touch(Entry entry, long now) {
+        entry.expiresAt = now + ttlNanos;
+        unlinkLru(entry);
+        linkLast(entry);
+    }
+
+    private Evicted remove(Entry entry, RemovalCause cause) {
+        entries.remove(entry.key);
+        unlinkLru(entry);
+        unschedule(entry);
+        totalMessages -= entry.messages.size();
+        if (cause != null && spillStore != null) {
+            spilling.add(entry.key);
+        }
+        return new Evicted(entry.key, entry.messages, cause);
+    }
+
+    private void schedule(Entry entry) {
+        long deadlineTick = (entry.expiresAt - startNanos + tickNanos - 1) / tickNanos;
+        long ticks = Math.max(deadlineTick, currentTick + 1);
+        entry.remainingRounds = (ticks - currentTick - 1) / wheel.length;
+        append(wheel[(int) (ticks & mask)], entry);
+    }
+
+    private static void append(Entry bucket, Entry entry) {
+        entry.wheelPrev = bucket.wheelPrev;
+        entry.wheelNext = bucket;
+        bucket.wheelPrev.wheelNext = entry;
+        bucket.wheelPrev = entry;
+    }
+
+    private static void unschedule(Entry entry) {
+        entry.wheelPrev.wheelNext = entry.wheelNext;
+        entry.wheelNext.wheelPrev = entry.wheelPrev;
+        entry.wheelPrev = entry.wheelNext = entry;
+    }
+
+    private void linkLast(Entry entry) {
+        entry.lruPrev = lru.lruPrev;
+        entry.lruNext = lru;
+        lru.lruPrev.lruNext = entry;
+        lru.lruPrev = entry;
+    }
+
+    private static void unlinkLru(Entry entry) {
+        entry.lruPrev.lruNext = entry.lruNext;
+        entry.lruNext.lruPrev = entry.lruPrev;
+    }
+
+    /**
+     * 锁外调用：先写 spillStore（写完才解除 spilling 标记），再通知回调
+     */
+    private void notifyListeners(List<Evicted> evicted) {
+        for (Evicted e : evicted) {
+            if (e.cause == null) {
+                continue;
+            }
+            if (spillStore != null) {
+                spill(e);
+            }
+            for (EvictionListener listener : listeners) {
+                try {
+                    listener.onEviction(e.memoryId, e.messages, e.cause);
+                } catch (RuntimeException ex) {
+                    // 回调失败不能影响时间轮继续运转
+                    failed(ex);
+                }
+            }
+        }
+    }
+
+    private void spill(Evicted e) {
+        boolean spilled = false;
+        try {
+            spillStore.updateMessages(e.memoryId, e.messages);
+            spilled = true;
+        } catch (RuntimeException ex) {
+            failed(ex);
+        } finally {
+            synchronized (this) {
+                spilling.remove(e.memoryId);
+                // 没写进去就放回内存，等下次淘汰再试
+                if (!spilled && !entries.containsKey(e.memoryId)) {
+                    put(e.memoryId, e.messages);
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private void failed(RuntimeException error) {
+        listenerFailures.increment();
+        lastListenerFailure = error;
+    }
+
+    private static final class Entry {
+
+        final Object key;
+        List<ChatMessage> messages = List.of();
+        long expiresAt;
+        long remainingRounds;
+        Entry lruPrev;
+        Entry lruNext;
+        Entry wheelPrev = this;
+        Entry wheelNext = this;
+
+        Entry(Object key) {
+            this.key = key;
+        }
+    }
+
+    private record Evicted(Object memoryId, List<ChatMessage> messages, RemovalCause cause) {
+    }
+
+    public static class Builder {
+
+        private Duration ttl = Duration.ofMinutes(30);
+        private int maxSessions = Integer.MAX_VALUE;
+        private long maxMessages = Long.MAX_VALUE;
+        private Duration tickDuration = Duration.ofSeconds(1);
+        private int wheelSize = 512;
+        private ChatMemoryStore spillStore;
+
+        /**
+         * 会话空闲多久后过期，默认 30 分钟
+         */
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public Builder maxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+            return this;
+        }
+
+        /**
+         * 所有会话合计最多保留多少条消息
+         */
+        public Builder maxMessages(long maxMessages) {
+            this.maxMessages = maxMessages;
+            return this;
+        }
+
+        /**
+         * 时间轮每个槽的时间跨度，也就是过期时间的精度，默认 1 秒
+         */
+        public Builder tickDuration(Duration tickDuration) {
+            this.tickDuration = tickDuration;
+            return this;
+        }
+
+        /**
+         * 时间轮的槽数（会向上取整为 2 的幂），默认 512
+         */
+        public Builder wheelSize(int wheelSize) {
+            this.wheelSize = wheelSize;
+            return this;
+        }
+
+        /**
+         * 被淘汰的会话写到这里，再次访问时从这里读回
+         */
+        public Builder spillStore(ChatMemoryStore spillStore) {
+            this.spillStore = spillStore;
+            return this;
+        }
+
+        public ExpiringChatMemoryStore build() {
+            if (ttl.isNegative() || ttl.isZero() || tickDuration.isNegative() || tickDuration.isZero()) {
+                throw new IllegalArgumentException("ttl and tickDuration must be positive");
+            }
+            if (maxSessions < 1 || maxMessages < 1) {
+                throw new IllegalArgumentException("maxSessions and maxMessages must be positive");
+            }
+            return new ExpiringChatMemoryStore(this);
+        }
+    }
+}
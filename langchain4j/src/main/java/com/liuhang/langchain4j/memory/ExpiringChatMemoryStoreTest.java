@@ -0,0 +1,89 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 大量短会话下的过期淘汰
+ */
+public class ExpiringChatMemoryStoreTest {
+
+    /**
+     * 100 万个只说一句话的会话，空闲 500ms 后过期；过期后堆内会话数回落到 0
+     */
+    @Test
+    public void idleExpiry() throws InterruptedException {
+        AtomicLong expired = new AtomicLong();
+        try (ExpiringChatMemoryStore store = ExpiringChatMemoryStore.builder()
+                .ttl(Duration.ofMillis(500))
+                .tickDuration(Duration.ofMillis(10))
+                .build()) {
+            store.addEvictionListener((memoryId, messages, cause) -> expired.incrementAndGet());
+
+            long start = System.nanoTime();
+            for (int session = 0; session < 1_000_000; session++) {
+                store.updateMessages(session, List.of(UserMessage.from("Hello"), AiMessage.from("Hi!")));
+            }
+            System.out.printf("写入耗时 %dms，当前会话数 %d，消息数 %d%n",
+                    (System.nanoTime() - start) / 1_000_000, store.sessionCount(), store.messageCount());
+
+            Thread.sleep(1500);
+            System.out.printf("过期回调 %d 次，当前会话数 %d，消息数 %d%n", expired.get(), store.sessionCount(), store.messageCount());
+        }
+    }
+
+    /**
+     * 全局上限：超过 1000 个会话时淘汰最久未使用的，淘汰的会话落到 spillStore，再次访问时读回
+     */
+    @Test
+    public void spill() {
+        InMemoryChatMemoryStore disk = new InMemoryChatMemoryStore();
+        try (ExpiringChatMemoryStore store = ExpiringChatMemoryStore.builder()
+                .maxSessions(1000)
+                .spillStore(disk)
+                .build()) {
+            for (int session = 0; session < 1500; session++) {
+                store.updateMessages(session, List.of(UserMessage.from("my id is " + session)));
+            }
+            System.out.println("堆内会话数: " + store.sessionCount());
+            System.out.println("会话 0 从磁盘读回: " + store.getMessages(0));
+        }
+    }
+
+    /**
+     * spillStore 很慢（每次写 200ms）：会话 0 被挤出去的同时读它，读到的仍是完整历史，而不是空列表
+     */
+    @Test
+    public void readWhileSpilling() throws Exception {
+        InMemoryChatMemoryStore disk = new InMemoryChatMemoryStore() {
+            @Override
+            public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.updateMessages(memoryId, messages);
+            }
+        };
+        try (ExpiringChatMemoryStore store = ExpiringChatMemoryStore.builder()
+                .maxSessions(1)
+                .spillStore(disk)
+                .build()) {
+            store.updateMessages(0, List.of(UserMessage.from("my id is 0"), AiMessage.from("ok")));
+            Thread writer = new Thread(() -> store.updateMessages(1, List.of(UserMessage.from("my id is 1"))));
+            writer.start();
+            Thread.sleep(50);
+            System.out.println("淘汰过程中读会话 0: " + store.getMessages(0));
+            writer.join();
+            System.out.println("回调失败次数: " + store.listenerFailureCount());
+        }
+    }
+}
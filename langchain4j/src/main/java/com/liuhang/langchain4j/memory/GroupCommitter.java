@@ -0,0 +1,230 @@
+package com.liuhang.langchain4j.memory;
+
+import org.mapdb.DB;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MapDB 组提交（group commit）
+ *
+ * transactionEnable() 的文件库每次 db.commit() 都要落盘（fsync），
+ * 每轮对话都同步提交一次时，并发会话一多，fsync 就成了吞吐上限。
+ *
+ * GroupCommitter 让多个线程的更新共享同一次 db.commit()：
+ *      调用方照常写 map，然后调用 commit() 登记"有一条更新待提交"
+ *      后台线程在 攒够 maxBatchSize 条更新 或 第一条更新已等待 maxDelayMillis 时，统一提交一次
+ *
+ * 两种持久化语义：
+ *      waitForDurable = true ：commit() 阻塞到所在批次真正落盘后才返回，语义和同步提交一致，只是多个线程共享一次 fsync
+ *      waitForDurable = false：commit() 立即返回（write-behind），进程崩溃时最多丢失最近 maxDelayMillis 内的更新
+ */
+public class GroupCommitter implements AutoCloseable {
+
+    private final DB db;
+    private final long maxDelayNanos;
+    private final int maxBatchSize;
+    private final boolean waitForDurable;
+
+    private final Object lock = new Object();
+    private final Thread flusher;
+
+    // 以下字段都由 lock 保护
+    private long requestedSeq;
+    private long committedSeq;
+    private long failedSeq;
+    private RuntimeException failure;
+    private int pending;
+    private long firstPendingAt;
+    private boolean flushRequested;
+    private boolean closed;
+
+    // 统计
+    private long batchCount;
+    private long updateCount;
+    private int maxBatch;
+    private long totalCommitNanos;
+    private long maxCommitNanos;
+
+    public GroupCommitter(DB db, long maxDelayMillis, int maxBatchSize, boolean waitForDurable) {
+        if (maxDelayMillis < 0 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxDelayMillis must be >= 0 and maxBatchSize must be >= 1");
+        }
+        this.db = db;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.maxBatchSize = maxBatchSize;
+        this.waitForDurable = waitForDurable;
+        this.flusher = new Thread(this::flushLoop, "mapdb-group-commit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 登记一条已经写入 map、等待提交的更新
+     */
+    public void commit() {
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("GroupCommitter is closed");
+            }
+            long seq = ++requestedSeq;
+            if (pending++ == 0) {
+                firstPendingAt = System.nanoTime();
+            }
+            lock.notifyAll();
+            if (waitForDurable) {
+                awaitCommitted(seq);
+            }
+        }
+    }
+
+    /**
+     * 立即提交目前登记的所有更新，并等待落盘
+     */
+    public void flush() {
+        synchronized (lock) {
+            long seq = requestedSeq;
+            if (committedSeq >= seq) {
+                return;
+            }
+            flushRequested = true;
+            lock.notifyAll();
+            awaitCommitted(seq);
+        }
+    }
+
+    /**
+     * 注册 JVM 关闭钩子，进程正常退出时把 write-behind 模式下还没提交的更新刷到磁盘
+     */
+    public GroupCommitter flushOnShutdown() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "mapdb-group-commit-shutdown"));
+        return this;
+    }
+
+    /**
+     * 提交剩余更新并停止后台线程（不会关闭 DB）
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long batchCount() {
+        synchronized (lock) {
+            return batchCount;
+        }
+    }
+
+    public double averageBatchSize() {
+        synchronized (lock) {
+            return batchCount == 0 ? 0 : (double) updateCount / batchCount;
+        }
+    }
+
+    public int maxBatchSize() {
+        synchronized (lock) {
+            return maxBatch;
+        }
+    }
+
+    public double averageCommitMillis() {
+        synchronized (lock) {
+            return batchCount == 0 ? 0 : totalCommitNanos / 1e6 / batchCount;
+        }
+    }
+
+    public double maxCommitMillis() {
+        synchronized (lock) {
+            return maxCommitNanos / 1e6;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GroupCommitter{batches=%d, avgBatchSize=%.1f, maxBatchSize=%d, avgCommit=%.2fms, maxCommit=%.2fms}",
+                batchCount(), averageBatchSize(), maxBatchSize(), averageCommitMillis(), maxCommitMillis());
+    }
+
+    private void awaitCommitted(long seq) {
+        boolean interrupted = false;
+        while (committedSeq < seq && failedSeq < seq) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (committedSeq < seq) {
+            throw new IllegalStateException("group commit failed", failure);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long upTo;
+            int batch;
+            synchronized (lock) {
+                try {
+                    while (pending == 0 && !closed) {
+                        lock.wait();
+                    }
+                    // 攒批：直到 批次已满 / 等待超时 / 有人要求立即刷盘 / 关闭
+                    long remaining;
+                    while (pending < maxBatchSize && !flushRequested && !closed
+                            && (remaining = firstPendingAt + maxDelayNanos - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                if (pending == 0) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                upTo = requestedSeq;
+                batch = pending;
+                pending = 0;
+                flushRequested = false;
+            }
+
+            long start = System.nanoTime();
+            RuntimeException error = null;
+            try {
+                db.commit();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            synchronized (lock) {
+                if (error == null) {
+                    committedSeq = upTo;
+                    batchCount++;
+                    updateCount += batch;
+                    maxBatch = Math.max(maxBatch, batch);
+                    totalCommitNanos += elapsed;
+                    maxCommitNanos = Math.max(maxCommitNanos, elapsed);
+                } else {
+                    failedSeq = upTo;
+                    failure = error;
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import org.junit.jupiter.api.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
+import static org.mapdb.Serializer.INTEGER;
+import static org.mapdb.Serializer.STRING;
+
+/**
+ * 组提交与逐条同步提交的吞吐对比
+ */
+public class GroupCommitterTest {
+
+    private static final int SESSIONS = 200;
+    private static final int TURNS = 20;
+
+    @Test
+    public void benchmark() throws Exception {
+        // 1. 每次更新都同步 commit
+        DB db = DBMaker.fileDB(tempFile("sync")).transactionEnable().make();
+        long syncMillis = run(db, db::commit);
+        db.close();
+        System.out.println("逐条提交: " + syncMillis + "ms");
+
+        // 2. 组提交，commit 阻塞到落盘（持久化语义不变）
+        db = DBMaker.fileDB(tempFile("group")).transactionEnable().make();
+        GroupCommitter durable = new GroupCommitter(db, 5, 64, true);
+        long durableMillis = run(db, durable::commit);
+        durable.close();
+        db.close();
+        System.out.println("组提交(等待落盘): " + durableMillis + "ms, " + durable);
+
+        // 3. write-behind，commit 立即返回，关闭时刷盘
+        db = DBMaker.fileDB(tempFile("write-behind")).transactionEnable().make();
+        GroupCommitter writeBehind = new GroupCommitter(db, 20, 256, false);
+        long writeBehindMillis = run(db, writeBehind::commit);
+        writeBehind.close();
+        db.close();
+        System.out.println("write-behind: " + writeBehindMillis + "ms, " + writeBehind);
+    }
+
+    /**
+     * SESSIONS 个会话并发，每个会话 TURNS 轮，每轮覆盖写一次自己的消息列表
+     */
+    private static long run(DB db, Runnable commit) throws InterruptedException {
+        Map<Integer, String> map = db.hashMap("messages", INTEGER, STRING).createOrOpen();
+        ExecutorService executor = Executors.newFixedThreadPool(SESSIONS);
+        long start = System.nanoTime();
+        for (int session = 0; session < SESSIONS; session++) {
+            int memoryId = session;
+            executor.execute(() -> {
+                List<ChatMessage> messages = new ArrayList<>();
+                for (int turn = 0; turn < TURNS; turn++) {
+                    messages.add(UserMessage.from("question " + turn));
+                    messages.add(AiMessage.from("answer " + turn));
+                    map.put(memoryId, messagesToJson(messages));
+                    commit.run();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.MINUTES);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static File tempFile(String name) throws IOException {
+        File file = File.createTempFile(name, ".db");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+}
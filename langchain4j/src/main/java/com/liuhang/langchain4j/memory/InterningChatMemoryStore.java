@@ -0,0 +1,258 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.mapdb.DB;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.mapdb.Serializer.INTEGER;
+import static org.mapdb.Serializer.STRING;
+
+/**
+ * 共享 SystemMessage 的聊天记忆
+ *
+ * AIServiceTest.test3 里 systemMessageProvider 给所有用户返回同样的几条系统提示，
+ * 但每个会话的记忆里都存着一份自己的 SystemMessage，会话一多，堆上和磁盘上大部分都是重复的文本。
+ *
+ * 这里包在任意 ChatMemoryStore 外面：
+ *      写入时把会话中的 SystemMessage 换成一条只带内容哈希的引用消息，正文只在字典里存一份
+ *      字典记录每条正文被多少个会话引用，引用数归零时删除；读出时把引用换回同一个 SystemMessage 实例，
+ *      上层的堆内缓存（TieredChatMemoryStore、ExpiringChatMemoryStore）里所有会话共享这一个对象
+ * 只有渲染后完全相同的文本才能共享，模板里带 {{userName}} 这类变量时，只有变量值相同的会话才会共用一条。
+ *
+ * 传入 MapDB 的 DB 时字典也会持久化：先提交新的引用，再写会话，最后释放旧的引用，
+ * 中途崩溃最多留下没人引用的字典项，可以用 collectGarbage() 按会话映射重新计数清理掉。
+ * 同一个会话的读、写、删除在同一把分段锁里完成：会话映射和 delegate 里的引用总是一致，
+ * 释放旧引用时不会有同会话的读者还拿着指向它的列表。
+ */
+public class InterningChatMemoryStore implements ChatMemoryStore {
+
+    static final String REFERENCE_PREFIX = "\u0000interned-system-message:";
+    private static final int STRIPES = 64;
+
+    private final ChatMemoryStore delegate;
+    // 为 null 时字典只在内存里
+    private final DB db;
+
+    // 以下三个 map 由 this 保护
+    // 内容哈希 -> 正文
+    private final Map<String, String> texts;
+    // 内容哈希 -> 引用它的会话数
+    private final Map<String, Integer> refCounts;
+    // memoryId -> 该会话引用的内容哈希
+    private final Map<String, String> sessions;
+
+    // 内容哈希 -> 所有会话共享的 SystemMessage 实例
+    private final Map<String, SystemMessage> canonical = new ConcurrentHashMap<>();
+    // 内容哈希 -> 写入 delegate 的引用消息，每次写入复用同一个实例
+    private final Map<String, SystemMessage> references = new ConcurrentHashMap<>();
+
+    // 按会话分段的锁，先于 this 获取
+    private final Object[] locks = new Object[STRIPES];
+
+    public InterningChatMemoryStore(ChatMemoryStore delegate) {
+        this(delegate, null, new HashMap<>(), new HashMap<>(), new HashMap<>());
+    }
+
+    /**
+     * 字典存放在 db 中，可以和 PersistentChatMemoryStore 用同一个文件
+     */
+    public InterningChatMemoryStore(ChatMemoryStore delegate, DB db) {
+        this(delegate, db,
+                db.hashMap("system-message-texts", STRING, STRING).createOrOpen(),
+                db.hashMap("system-message-refs", STRING, INTEGER).createOrOpen(),
+                db.hashMap("system-message-sessions", STRING, STRING).createOrOpen());
+    }
+
+    private InterningChatMemoryStore(ChatMemoryStore delegate, DB db,
+                                     Map<String, String> texts, Map<String, Integer> refCounts, Map<String, String> sessions) {
+        this.delegate = delegate;
+        this.db = db;
+        this.texts = texts;
+        this.refCounts = refCounts;
+        this.sessions = sessions;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        synchronized (lock(memoryId.toString())) {
+            List<ChatMessage> stored = delegate.getMessages(memoryId);
+            List<ChatMessage> messages = new ArrayList<>(stored.size());
+            for (ChatMessage message : stored) {
+                String hash = referencedHash(message);
+                messages.add(hash == null ? message : resolve(hash));
+            }
+            return messages;
+        }
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        List<ChatMessage> stored = new ArrayList<>(messages.size());
+        String hash = null;
+        String text = null;
+        for (ChatMessage message : messages) {
+            // 一个会话只有一条 SystemMessage，多出来的原样存储
+            if (hash == null && message instanceof SystemMessage systemMessage && referencedHash(message) == null) {
+                text = systemMessage.text();
+                hash = hash(text);
+                stored.add(references.computeIfAbsent(hash, h -> SystemMessage.from(REFERENCE_PREFIX + h)));
+            } else {
+                stored.add(message);
+            }
+        }
+
+        String key = memoryId.toString();
+        synchronized (lock(key)) {
+            String previous;
+            synchronized (this) {
+                previous = sessions.get(key);
+                if (!Objects.equals(previous, hash)) {
+                    if (hash != null) {
+                        acquire(hash, text);
+                        sessions.put(key, hash);
+                    } else {
+                        sessions.remove(key);
+                    }
+                    commit();
+                }
+            }
+
+            delegate.updateMessages(memoryId, stored);
+
+            if (previous != null && !previous.equals(hash)) {
+                synchronized (this) {
+                    release(previous);
+                    commit();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        String key = memoryId.toString();
+        synchronized (lock(key)) {
+            delegate.deleteMessages(memoryId);
+            synchronized (this) {
+                String previous = sessions.remove(key);
+                if (previous != null) {
+                    release(previous);
+                    commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * 字典中的正文条数
+     */
+    public synchronized int dictionarySize() {
+        return texts.size();
+    }
+
+    /**
+     * 按会话映射重新计算引用数，删掉没有会话引用的字典项，返回删除的条数
+     */
+    public synchronized int collectGarbage() {
+        Map<String, Integer> counted = new HashMap<>();
+        for (String hash : sessions.values()) {
+            counted.merge(hash, 1, Integer::sum);
+        }
+        int removed = 0;
+        Iterator<String> it = texts.keySet().iterator();
+        while (it.hasNext()) {
+            String hash = it.next();
+            if (!counted.containsKey(hash)) {
+                it.remove();
+                canonical.remove(hash);
+                references.remove(hash);
+                removed++;
+            }
+        }
+        refCounts.clear();
+        refCounts.putAll(counted);
+        commit();
+        return removed;
+    }
+
+    private void acquire(String hash, String text) {
+        Integer count = refCounts.get(hash);
+        if (count == null) {
+            texts.put(hash, text);
+            count = 0;
+        }
+        refCounts.put(hash, count + 1);
+    }
+
+    private void release(String hash) {
+        Integer count = refCounts.get(hash);
+        if (count == null || count <= 1) {
+            refCounts.remove(hash);
+            texts.remove(hash);
+            canonical.remove(hash);
+            references.remove(hash);
+        } else {
+            refCounts.put(hash, count - 1);
+        }
+    }
+
+    private SystemMessage resolve(String hash) {
+        SystemMessage message = canonical.get(hash);
+        if (message != null) {
+            return message;
+        }
+        String text;
+        synchronized (this) {
+            text = texts.get(hash);
+        }
+        if (text == null) {
+            throw new IllegalStateException("interned system message not found: " + hash);
+        }
+        return canonical.computeIfAbsent(hash, h -> SystemMessage.from(text));
+    }
+
+    private Object lock(String key) {
+        return locks[(key.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    private void commit() {
+        if (db != null) {
+            db.commit();
+        }
+    }
+
+    private static String referencedHash(ChatMessage message) {
+        if (message instanceof SystemMessage systemMessage && systemMessage.text().startsWith(REFERENCE_PREFIX)) {
+            return systemMessage.text().substring(REFERENCE_PREFIX.length());
+        }
+        return null;
+    }
+
+    /**
+     * SHA-256 的前 16 个字节
+     */
+    private static String hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 共享 SystemMessage 前后存储体积的对比
+ */
+public class InterningChatMemoryStoreTest {
+
+    private static final String VIP = "你是 VIP 客户的专属管家，请提供高端服务。".repeat(20);
+    private static final String GUEST = "你是普通用户的客服助手，请友好回答。".repeat(20);
+
+    /**
+     * 统计写入底层存储的编码后字节数，和 PersistentChatMemoryStore 用 BinaryChatMessagesCodec 时落盘的大小一致
+     */
+    static class SizeCountingStore implements ChatMemoryStore {
+
+        private final ChatMessagesCodec codec = new BinaryChatMessagesCodec();
+        private final Map<Object, byte[]> map = new HashMap<>();
+
+        @Override
+        public List<ChatMessage> getMessages(Object memoryId) {
+            byte[] bytes = map.get(memoryId);
+            return bytes == null ? List.of() : codec.decode(bytes);
+        }
+
+        @Override
+        public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+            map.put(memoryId, codec.encode(messages));
+        }
+
+        @Override
+        public void deleteMessages(Object memoryId) {
+            map.remove(memoryId);
+        }
+
+        long bytes() {
+            return map.values().stream().mapToLong(b -> b.length).sum();
+        }
+    }
+
+    @Test
+    public void footprint() throws Exception {
+        SizeCountingStore plain = new SizeCountingStore();
+        SizeCountingStore backing = new SizeCountingStore();
+        InterningChatMemoryStore interning = new InterningChatMemoryStore(backing);
+
+        for (int session = 0; session < 10_000; session++) {
+            List<ChatMessage> messages = history(session);
+            plain.updateMessages(session, messages);
+            interning.updateMessages(session, messages);
+        }
+        System.out.printf("不共享: %.1f KB, 共享: %.1f KB, 字典 %d 条%n",
+                plain.bytes() / 1024.0, backing.bytes() / 1024.0, interning.dictionarySize());
+
+        // 读出来的 SystemMessage 是同一个实例
+        System.out.println("同一实例: " + (interning.getMessages(0).get(0) == interning.getMessages(2).get(0)));
+        System.out.println("内容一致: " + interning.getMessages(1).equals(history(1)));
+    }
+
+    /**
+     * 会话删除或换了系统提示后，不再被引用的正文从字典中移除
+     */
+    @Test
+    public void refCounting() throws Exception {
+        InterningChatMemoryStore store = new InterningChatMemoryStore(new SizeCountingStore());
+        store.updateMessages("vip_user", List.of(SystemMessage.from(VIP), UserMessage.from("你好")));
+        store.updateMessages("guest_001", List.of(SystemMessage.from(GUEST), UserMessage.from("你好")));
+        System.out.println("字典条数: " + store.dictionarySize());
+
+        store.updateMessages("guest_001", List.of(SystemMessage.from(VIP), UserMessage.from("你好")));
+        System.out.println("guest_001 换成 VIP 提示后: " + store.dictionarySize());
+
+        store.deleteMessages("vip_user");
+        store.deleteMessages("guest_001");
+        System.out.println("全部删除后: " + store.dictionarySize() + ", 清理: " + store.collectGarbage());
+    }
+
+    /**
+     * 同一个会话被两个线程交替换成不同的系统提示，同时有线程在读：
+     * 写入 delegate 和释放旧引用都在会话锁里，读到的引用总能在字典里找到，最后字典里只剩会话正在用的那一条
+     */
+    @Test
+    public void concurrentUpdatesOfOneSession() throws Exception {
+        ChatMemoryStore slow = new ChatMemoryStore() {
+            private final Map<Object, List<ChatMessage>> map = new ConcurrentHashMap<>();
+
+            @Override
+            public List<ChatMessage> getMessages(Object memoryId) {
+                return map.getOrDefault(memoryId, List.of());
+            }
+
+            @Override
+            public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+                LockSupport.parkNanos(ThreadLocalRandom.current().nextInt(200_000));
+                map.put(memoryId, messages);
+            }
+
+            @Override
+            public void deleteMessages(Object memoryId) {
+                map.remove(memoryId);
+            }
+        };
+        InterningChatMemoryStore store = new InterningChatMemoryStore(slow);
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            int id = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    store.updateMessages("user", List.of(SystemMessage.from((i + id) % 2 == 0 ? VIP : GUEST), UserMessage.from("你好")));
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        while (writers.get(0).isAlive() || writers.get(1).isAlive()) {
+            try {
+                store.getMessages("user");
+            } catch (IllegalStateException e) {
+                failures.incrementAndGet();
+            }
+        }
+        int lastFailures = 0;
+        try {
+            store.getMessages("user");
+        } catch (IllegalStateException e) {
+            lastFailures = 1;
+        }
+        System.out.println("读取失败次数: " + failures.get() + "，结束后读取失败: " + lastFailures + "，字典条数: " + store.dictionarySize());
+    }
+
+    private static List<ChatMessage> history(int session) {
+        return List.of(
+                SystemMessage.from(session % 2 == 0 ? VIP : GUEST),
+                UserMessage.from("user " + session + ": 你好"),
+                AiMessage.from("你好，有什么可以帮你的？"));
+    }
+}
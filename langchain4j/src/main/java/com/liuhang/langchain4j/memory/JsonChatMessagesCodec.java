@@ -0,0 +1,25 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+
+import java.util.List;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messagesFromJson;
+import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * 和 PersistentChatMemoryStore 原来的格式一致：ChatMessageSerializer 生成的 JSON，按 UTF-8 存储
+ */
+public class JsonChatMessagesCodec implements ChatMessagesCodec {
+
+    @Override
+    public byte[] encode(List<ChatMessage> messages) {
+        return messagesToJson(messages).getBytes(UTF_8);
+    }
+
+    @Override
+    public List<ChatMessage> decode(byte[] bytes) {
+        return messagesFromJson(new String(bytes, UTF_8));
+    }
+}
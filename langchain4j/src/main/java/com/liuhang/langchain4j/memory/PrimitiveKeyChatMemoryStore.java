@@ -0,0 +1,335 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * memoryId 为 int / long 时专用的聊天记忆
+ *
+ * ServiceWithPersistentMemoryForEachUserExample 和 day4 ChatMemoryTest.test2 都用 @MemoryId int，
+ * 而 Map<Integer, ...> 每个会话都要一个 Integer 键对象和一个 Node 对象，所有会话还挤在同一个 map（同一把锁）里。
+ *
+ * 这里按 memoryId 的哈希分成若干段，每段是一个开放寻址（线性探测）的哈希表：
+ *      键直接存在 long[] 里，没有装箱的键对象，也没有 Node 对象；删除用 backward shift，不留墓碑
+ *      堆内模式：值为不可变的消息列表，存在 Object[] 里
+ *      堆外模式：值用 ChatMessagesCodec 编码后写进每段一块的堆外内存（direct ByteBuffer），
+ *              槽位里只存 (偏移 << 32 | 长度)；被覆盖或删除的旧值累计超过内存块的一半，或者内存块写满时整理一次
+ * 各段有自己的锁，不同段的会话可以并行读写。
+ */
+public class PrimitiveKeyChatMemoryStore implements ChatMemoryStore {
+
+    private static final int DEFAULT_SEGMENTS = 16;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int INITIAL_ARENA_BYTES = 64 * 1024;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    // 为 null 时为堆内模式
+    private final ChatMessagesCodec codec;
+
+    private PrimitiveKeyChatMemoryStore(int segments, ChatMessagesCodec codec) {
+        this.codec = codec;
+        int size = Integer.highestOneBit(Math.max(1, segments) - 1) << 1;
+        if (size == 0) {
+            size = 1;
+        }
+        this.segments = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            this.segments[i] = new Segment();
+        }
+        this.segmentMask = size - 1;
+    }
+
+    /**
+     * 堆内模式，值为反序列化好的消息列表
+     */
+    public static PrimitiveKeyChatMemoryStore onHeap() {
+        return new PrimitiveKeyChatMemoryStore(DEFAULT_SEGMENTS, null);
+    }
+
+    /**
+     * 堆外模式，值以 BinaryChatMessagesCodec 编码后存放在堆外内存
+     */
+    public static PrimitiveKeyChatMemoryStore offHeap() {
+        return offHeap(DEFAULT_SEGMENTS, new BinaryChatMessagesCodec());
+    }
+
+    public static PrimitiveKeyChatMemoryStore offHeap(int segments, ChatMessagesCodec codec) {
+        return new PrimitiveKeyChatMemoryStore(segments, codec);
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        return getMessages(key(memoryId));
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        updateMessages(key(memoryId), messages);
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        deleteMessages(key(memoryId));
+    }
+
+    public List<ChatMessage> getMessages(long memoryId) {
+        long hash = mix(memoryId);
+        Segment segment = segments[(int) (hash >>> 58) & segmentMask];
+        synchronized (segment) {
+            int index = segment.find(memoryId, hash);
+            if (index < 0) {
+                return new ArrayList<>();
+            }
+            if (codec == null) {
+                @SuppressWarnings("unchecked")
+                List<ChatMessage> messages = (List<ChatMessage>) segment.values[index];
+                return messages;
+            }
+            return codec.decode(segment.read(index));
+        }
+    }
+
+    public void updateMessages(long memoryId, List<ChatMessage> messages) {
+        long hash = mix(memoryId);
+        Segment segment = segments[(int) (hash >>> 58) & segmentMask];
+        // 编码放在锁外
+        Object value = codec == null ? List.copyOf(messages) : codec.encode(messages);
+        synchronized (segment) {
+            segment.put(memoryId, hash, value);
+        }
+    }
+
+    public void deleteMessages(long memoryId) {
+        long hash = mix(memoryId);
+        Segment segment = segments[(int) (hash >>> 58) & segmentMask];
+        synchronized (segment) {
+            segment.remove(memoryId, hash);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 堆外模式下已分配的堆外内存字节数
+     */
+    public long offHeapBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.arena == null ? 0 : segment.arena.capacity();
+            }
+        }
+        return bytes;
+    }
+
+    private static long key(Object memoryId) {
+        if (memoryId instanceof Integer || memoryId instanceof Long || memoryId instanceof Short || memoryId instanceof Byte) {
+            return ((Number) memoryId).longValue();
+        }
+        throw new IllegalArgumentException("memoryId must be an integer or a long, but was: " + memoryId);
+    }
+
+    /**
+     * murmur3 的 fmix64，连续的 memoryId 也能均匀分布；高 6 位选段，低位选槽
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private final class Segment {
+
+        long[] keys = new long[INITIAL_CAPACITY];
+        boolean[] used = new boolean[INITIAL_CAPACITY];
+        // 堆内模式
+        Object[] values;
+        // 堆外模式：偏移 << 32 | 长度
+        long[] slots;
+        ByteBuffer arena;
+        int arenaPosition;
+        long garbage;
+        int size;
+
+        Segment() {
+            if (codec == null) {
+                values = new Object[INITIAL_CAPACITY];
+            } else {
+                slots = new long[INITIAL_CAPACITY];
+                arena = ByteBuffer.allocateDirect(INITIAL_ARENA_BYTES);
+            }
+        }
+
+        int find(long key, long hash) {
+            int mask = keys.length - 1;
+            for (int i = (int) hash & mask; used[i]; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void put(long key, long hash, Object value) {
+            int mask = keys.length - 1;
+            int i = (int) hash & mask;
+            while (used[i] && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (!used[i]) {
+                used[i] = true;
+                keys[i] = key;
+                size++;
+            } else if (codec != null) {
+                // 旧值先作废，写入时如果触发整理就不会再被当成有效数据拷贝
+                garbage += (int) slots[i];
+                slots[i] = 0;
+            }
+            if (codec == null) {
+                values[i] = value;
+            } else {
+                slots[i] = write((byte[]) value);
+            }
+            if (size > keys.length * 3 / 4) {
+                resize();
+            }
+        }
+
+        void remove(long key, long hash) {
+            int index = find(key, hash);
+            if (index < 0) {
+                return;
+            }
+            if (codec != null) {
+                garbage += (int) slots[index];
+            }
+            size--;
+
+            // backward shift：把后面探测链上的元素往前挪，保持线性探测的不变式
+            int mask = keys.length - 1;
+            int hole = index;
+            int i = (index + 1) & mask;
+            while (used[i]) {
+                int home = (int) mix(keys[i]) & mask;
+                // home 不在 (hole, i] 区间内，说明它可以挪到 hole
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    move(i, hole);
+                    hole = i;
+                }
+                i = (i + 1) & mask;
+            }
+            used[hole] = false;
+            if (codec == null) {
+                values[hole] = null;
+            } else {
+                slots[hole] = 0;
+                if (garbage > arena.capacity() / 2) {
+                    compactArena(0);
+                }
+            }
+        }
+
+        byte[] read(int index) {
+            long slot = slots[index];
+            byte[] bytes = new byte[(int) slot];
+            arena.get((int) (slot >>> 32), bytes);
+            return bytes;
+        }
+
+        private void move(int from, int to) {
+            keys[to] = keys[from];
+            used[to] = true;
+            if (codec == null) {
+                values[to] = values[from];
+            } else {
+                slots[to] = slots[from];
+            }
+        }
+
+        private long write(byte[] bytes) {
+            if (arenaPosition + bytes.length > arena.capacity() || garbage > arena.capacity() / 2) {
+                compactArena(bytes.length);
+            }
+            int offset = arenaPosition;
+            arena.put(offset, bytes);
+            arenaPosition += bytes.length;
+            return ((long) offset << 32) | bytes.length;
+        }
+
+        /**
+         * 只拷贝仍然有效的值到新的内存块；有效数据较多时顺便扩容
+         */
+        private void compactArena(int extra) {
+            long live = arenaPosition - garbage;
+            long needed = live + extra;
+            int capacity = arena.capacity();
+            if (needed > capacity / 2) {
+                capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) capacity * 2, needed * 2));
+            }
+            ByteBuffer fresh = ByteBuffer.allocateDirect(capacity);
+            int position = 0;
+            for (int i = 0; i < slots.length; i++) {
+                if (!used[i]) {
+                    continue;
+                }
+                int offset = (int) (slots[i] >>> 32);
+                int length = (int) slots[i];
+                fresh.put(position, arena, offset, length);
+                slots[i] = ((long) position << 32) | length;
+                position += length;
+            }
+            arena = fresh;
+            arenaPosition = position;
+            garbage = 0;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            boolean[] oldUsed = used;
+            Object[] oldValues = values;
+            long[] oldSlots = slots;
+
+            int capacity = oldKeys.length * 2;
+            keys = new long[capacity];
+            used = new boolean[capacity];
+            if (codec == null) {
+                values = new Object[capacity];
+            } else {
+                slots = new long[capacity];
+            }
+            int mask = capacity - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (!oldUsed[j]) {
+                    continue;
+                }
+                int i = (int) mix(oldKeys[j]) & mask;
+                while (used[i]) {
+                    i = (i + 1) & mask;
+                }
+                used[i] = true;
+                keys[i] = oldKeys[j];
+                if (codec == null) {
+                    values[i] = oldValues[j];
+                } else {
+                    slots[i] = oldSlots[j];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * int 键专用存储与 Map<Integer, ...> 的内存占用和读写延迟对比
+ */
+public class PrimitiveKeyChatMemoryStoreTest {
+
+    private static final int SESSIONS = 1_000_000;
+
+    /**
+     * 100 万个会话，每个会话一问一答；比较写满后的堆占用、堆外占用和随机读延迟
+     * 建议单独运行并加上 -Xmx4g
+     */
+    @Test
+    public void footprint() throws Exception {
+        measure("InMemoryChatMemoryStore", InMemoryChatMemoryStore::new);
+        measure("PrimitiveKeyChatMemoryStore(heap)", PrimitiveKeyChatMemoryStore::onHeap);
+        measure("PrimitiveKeyChatMemoryStore(off-heap)", PrimitiveKeyChatMemoryStore::offHeap);
+    }
+
+    @Test
+    public void deleteKeepsOtherSessions() throws Exception {
+        for (PrimitiveKeyChatMemoryStore store : List.of(PrimitiveKeyChatMemoryStore.onHeap(), PrimitiveKeyChatMemoryStore.offHeap())) {
+            for (int session = 0; session < 10_000; session++) {
+                store.updateMessages(session, history(session));
+            }
+            // 删掉一半，再覆盖写剩下的一半，探测链和堆外内存整理都要保持正确
+            for (int session = 0; session < 10_000; session += 2) {
+                store.deleteMessages(session);
+            }
+            for (int session = 1; session < 10_000; session += 2) {
+                store.updateMessages(session, history(session + 1));
+            }
+            for (int session = 0; session < 10_000; session++) {
+                List<ChatMessage> expected = session % 2 == 0 ? List.of() : history(session + 1);
+                if (!store.getMessages(session).equals(expected)) {
+                    throw new AssertionError("session " + session + " mismatch");
+                }
+            }
+            System.out.println(store.getClass().getSimpleName() + " size: " + store.size());
+        }
+    }
+
+    /**
+     * 同一个会话的历史不断变长、反复覆盖写：旧值都是垃圾，整理后堆外内存只跟有效数据的大小相关
+     */
+    @Test
+    public void overwriteKeepsArenaSmall() {
+        PrimitiveKeyChatMemoryStore store = PrimitiveKeyChatMemoryStore.offHeap(1, new BinaryChatMessagesCodec());
+        for (int turn = 1; turn <= 2000; turn++) {
+            store.updateMessages(1, history(turn % 50));
+        }
+        System.out.printf("覆盖写 2000 次后堆外 %d KB，内容一致: %s%n", store.offHeapBytes() / 1024, store.getMessages(1).equals(history(0)));
+    }
+
+    private static void measure(String name, Supplier<ChatMemoryStore> factory) throws Exception {
+        long before = usedHeap();
+        ChatMemoryStore store = factory.get();
+        for (int session = 0; session < SESSIONS; session++) {
+            store.updateMessages(session, history(session));
+        }
+        long heap = usedHeap() - before;
+
+        Random random = new Random(42);
+        int reads = 1_000_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            store.getMessages(random.nextInt(SESSIONS));
+        }
+        long nanos = System.nanoTime() - start;
+
+        String offHeap = store instanceof PrimitiveKeyChatMemoryStore primitive && primitive.offHeapBytes() > 0
+                ? String.format(", 堆外 %.1f MB", primitive.offHeapBytes() / 1024.0 / 1024.0)
+                : "";
+        System.out.printf("%s: 堆 %.1f MB%s, 随机读 %.2fμs/次%n", name, heap / 1024.0 / 1024.0, offHeap, nanos / 1000.0 / reads);
+        store = null;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static List<ChatMessage> history(int session) {
+        return List.of(
+                UserMessage.from("user " + session + ": 你好"),
+                AiMessage.from("你好，有什么可以帮你的？"));
+    }
+}
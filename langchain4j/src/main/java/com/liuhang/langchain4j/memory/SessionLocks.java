@@ -0,0 +1,184 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.service.MemoryId;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 按 memoryId 分段加锁，串行化同一个会话的对话轮次
+ *
+ * chatMemoryProvider(memoryId -> MessageWindowChatMemory.builder()...) 里，ChatMemory.add 是
+ * “从 store 读出 -> 追加 -> 整体写回”，同一个 @MemoryId 的两次 Assistant.chat 并发时，
+ * 后写回的会覆盖先写回的，消息就丢了；给整个服务加一把全局锁又会让所有会话排队。
+ *
+ * 这里用固定数量的 ReentrantLock（分段锁），memoryId 哈希到其中一把：
+ *      chatMemoryProvider(...)：包装 ChatMemory，每次 add / messages / clear 都持有该会话的锁，保证不丢消息
+ *      serialize(...)：包装 AI 服务接口，带 @MemoryId 参数的方法整轮持锁，
+ *                    同一会话的“读历史 -> 调模型 -> 写回”不会交错；不同会话大概率落在不同的锁上，完全并行
+ * 锁是可重入的，两者可以同时使用。返回 TokenStream 的流式方法在调用返回时还没有生成完，serialize 只覆盖到发起调用，
+ * 这种情况下用 chatMemoryProvider(...) 保证不丢消息。
+ */
+public class SessionLocks {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private final Map<Method, Integer> memoryIdIndexes = new ConcurrentHashMap<>();
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+
+    public SessionLocks() {
+        this(256);
+    }
+
+    /**
+     * @param stripes 锁的数量（会向上取整为 2 的幂），越多不同会话撞到同一把锁的概率越小
+     */
+    public SessionLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(2, stripes) - 1) << 1;
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    public ReentrantLock lockFor(Object memoryId) {
+        int h = memoryId.hashCode();
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return locks[h & mask];
+    }
+
+    public <T> T call(Object memoryId, Supplier<T> action) {
+        ReentrantLock lock = lockFor(memoryId);
+        acquire(lock);
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void run(Object memoryId, Runnable action) {
+        call(memoryId, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * 包装 ChatMemoryProvider，返回的 ChatMemory 在该会话的锁内读写
+     */
+    public ChatMemoryProvider chatMemoryProvider(ChatMemoryProvider delegate) {
+        return memoryId -> new LockedChatMemory(delegate.get(memoryId));
+    }
+
+    /**
+     * 包装 AI 服务：带 @MemoryId 参数的方法在该会话的锁内执行，其他方法直接调用
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T serialize(Class<T> serviceType, T service) {
+        return (T) Proxy.newProxyInstance(serviceType.getClassLoader(), new Class<?>[]{serviceType}, (proxy, method, args) -> {
+            int index = method.getDeclaringClass() == Object.class
+                    ? -1
+                    : memoryIdIndexes.computeIfAbsent(method, SessionLocks::memoryIdIndex);
+            if (index < 0 || args[index] == null) {
+                return invoke(service, method, args);
+            }
+            ReentrantLock lock = lockFor(args[index]);
+            acquire(lock);
+            try {
+                return invoke(service, method, args);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    public long acquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * 需要等待其他线程释放锁的次数
+     */
+    public long contended() {
+        return contended.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "SessionLocks{stripes=" + locks.length + ", acquisitions=" + acquisitions() + ", contended=" + contended() + "}";
+    }
+
+    private void acquire(ReentrantLock lock) {
+        acquisitions.increment();
+        if (!lock.tryLock()) {
+            contended.increment();
+            lock.lock();
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static int memoryIdIndex(Method method) {
+        Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof MemoryId) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private final class LockedChatMemory implements ChatMemory {
+
+        private final ChatMemory delegate;
+
+        LockedChatMemory(ChatMemory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object id() {
+            return delegate.id();
+        }
+
+        @Override
+        public void add(ChatMessage message) {
+            SessionLocks.this.run(delegate.id(), () -> delegate.add(message));
+        }
+
+        @Override
+        public List<ChatMessage> messages() {
+            return call(delegate.id(), delegate::messages);
+        }
+
+        @Override
+        public void clear() {
+            SessionLocks.this.run(delegate.id(), delegate::clear);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.liuhang.langchain4j.memory;
+
+import com.liuhang.langchain4j.Assistant;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一会话并发对话时是否丢消息，以及不同加锁方式的吞吐量
+ */
+public class SessionLocksTest {
+
+    /**
+     * 模拟 AiServices：每个 memoryId 缓存一个 ChatMemory，一轮对话 = 写入用户消息 -> 调模型 -> 写入回复
+     */
+    static class FakeAssistant implements Assistant {
+
+        private final ChatMemoryProvider provider;
+        private final Map<Object, ChatMemory> memories = new ConcurrentHashMap<>();
+        private final long modelMillis;
+
+        FakeAssistant(ChatMemoryProvider provider, long modelMillis) {
+            this.provider = provider;
+            this.modelMillis = modelMillis;
+        }
+
+        @Override
+        public String chat(String sessionId, String userMessage) {
+            ChatMemory memory = memories.computeIfAbsent(sessionId, provider::get);
+            memory.add(UserMessage.from(userMessage));
+            List<ChatMessage> context = memory.messages();
+            if (modelMillis > 0) {
+                try {
+                    Thread.sleep(modelMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            String answer = "reply to " + userMessage + " with " + context.size() + " messages of context";
+            memory.add(AiMessage.from(answer));
+            return answer;
+        }
+
+        int messageCount(String sessionId) {
+            return memories.get(sessionId).messages().size();
+        }
+    }
+
+    /**
+     * 16 个线程对同一个会话各发 500 轮，应该正好留下 16000 条消息
+     */
+    @Test
+    public void noLostMessages() throws Exception {
+        int threads = 16;
+        int turns = 500;
+        SessionLocks locks = new SessionLocks();
+
+        ChatMemoryProvider raw = memoryId -> MessageWindowChatMemory.builder()
+                .id(memoryId)
+                .maxMessages(Integer.MAX_VALUE)
+                .chatMemoryStore(new InMemoryChatMemoryStore())
+                .build();
+
+        FakeAssistant unlocked = new FakeAssistant(raw, 0);
+        FakeAssistant locked = new FakeAssistant(locks.chatMemoryProvider(raw), 0);
+
+        for (FakeAssistant assistant : List.of(unlocked, locked)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                executor.submit(() -> {
+                    for (int i = 0; i < turns; i++) {
+                        assistant.chat("session", "message " + thread + "-" + i);
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            System.out.printf("%s: %d / %d%n", assistant == unlocked ? "不加锁" : "分段锁",
+                    assistant.messageCount("session"), 2 * threads * turns);
+        }
+        if (locked.messageCount("session") != 2 * threads * turns) {
+            throw new AssertionError("lost messages: " + locked.messageCount("session"));
+        }
+    }
+
+    /**
+     * 64 个线程，200 个会话，每轮模型耗时 2ms：全局锁 vs 分段锁（整轮串行化）
+     */
+    @Test
+    public void contention() throws Exception {
+        InMemoryChatMemoryStore store = new InMemoryChatMemoryStore();
+        ChatMemoryProvider provider = memoryId -> MessageWindowChatMemory.builder()
+                .id(memoryId)
+                .maxMessages(20)
+                .chatMemoryStore(store)
+                .build();
+
+        Object globalLock = new Object();
+        Assistant global = new FakeAssistant(provider, 2);
+        Assistant globallyLocked = (sessionId, userMessage) -> {
+            synchronized (globalLock) {
+                return global.chat(sessionId, userMessage);
+            }
+        };
+        SessionLocks locks = new SessionLocks();
+        Assistant striped = locks.serialize(Assistant.class, new FakeAssistant(provider, 2));
+
+        run("全局锁", globallyLocked);
+        run("分段锁", striped);
+        System.out.println(locks);
+    }
+
+    private static void run(String name, Assistant assistant) throws Exception {
+        int threads = 64;
+        int turnsPerThread = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < turnsPerThread; i++) {
+                    assistant.chat("session-" + (thread * 31 + i) % 200, "hi " + i);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %.0f 轮/秒%n", name, threads * turnsPerThread / seconds);
+    }
+}
@@ -0,0 +1,397 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 后台摘要压缩的聊天记忆
+ *
+ * MessageWindowChatMemory 窗口满了就直接丢掉最旧的消息，早期对话里的信息（比如用户的名字）也就丢了。
+ * 这里改为：
+ *      存储中保留完整的原始消息，请求路径上 messages() 只返回 SystemMessage + 摘要 + 最近 maxMessages 条（裁剪后的窗口），
+ *      与 MessageWindowChatMemory 的行为一致，不等待任何模型调用
+ *      存储中的消息超过 compactAt 条时，在后台线程里用一个便宜的模型（例如 ConnectAIService 里的 glm-4-flash）
+ *      把较早的消息连同上一次的摘要合并成一条新的摘要消息，再把压缩后的列表写回 ChatMemoryStore
+ *      同一个 memoryId 同时最多只有一个压缩任务在排队或执行（防抖），压缩失败时存储长度也不会超过 2 * compactAt
+ * 摘要是紧跟在 SystemMessage（没有时是第一条）之后、name 为 SUMMARY_NAME 的 UserMessage，按位置和 name 识别，
+ * 用户自己发的消息内容和摘要前缀一样也不会被当成摘要。
+ * 摘要模型调用失败的次数和最近一次异常可以通过 summarizerFailureCount / lastSummarizerFailure 查看。
+ */
+public class SummarizingChatMemory implements ChatMemory {
+
+    static final String SUMMARY_NAME = "conversation_summary";
+    static final String SUMMARY_PREFIX = "Summary of the earlier conversation:\n";
+
+    private static final ScheduledExecutorService DEFAULT_EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chat-memory-summarizer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object id;
+    private final ChatMemoryStore store;
+    private final ChatModel summarizer;
+    private final int maxMessages;
+    private final int compactAt;
+    private final int keepRecent;
+    private final long debounceMillis;
+    private final ScheduledExecutorService executor;
+
+    // 由 this 保护
+    private boolean compactionPending;
+
+    private final LongAdder summarizerFailures = new LongAdder();
+    private volatile RuntimeException lastSummarizerFailure;
+
+    private SummarizingChatMemory(Builder builder) {
+        this.id = builder.id;
+        this.store = builder.store;
+        this.summarizer = builder.summarizer;
+        this.maxMessages = builder.maxMessages;
+        this.compactAt = builder.compactAt;
+        this.keepRecent = builder.keepRecent;
+        this.debounceMillis = builder.debounce.toMillis();
+        this.executor = builder.executor;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public void add(ChatMessage message) {
+        synchronized (this) {
+            List<ChatMessage> messages = new ArrayList<>(store.getMessages(id));
+            if (message instanceof SystemMessage) {
+                int index = indexOfSystemMessage(messages);
+                if (index >= 0 && messages.get(index).equals(message)) {
+                    return;
+                }
+                if (index >= 0) {
+                    messages.remove(index);
+                }
+                messages.add(0, message);
+            } else {
+                messages.add(message);
+            }
+
+            // 兜底：摘要模型一直失败时，存储也不会无限增长
+            int hardLimit = 2 * compactAt;
+            while (rawCount(messages) > hardLimit) {
+                removeOldestRaw(messages);
+            }
+            store.updateMessages(id, messages);
+
+            if (rawCount(messages) <= compactAt || compactionPending) {
+                return;
+            }
+            compactionPending = true;
+        }
+        executor.schedule(this::compact, debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 请求路径：SystemMessage + 摘要 + 最近 maxMessages 条，压缩没完成时就是裁剪后的原始窗口
+     */
+    @Override
+    public List<ChatMessage> messages() {
+        List<ChatMessage> messages;
+        synchronized (this) {
+            messages = store.getMessages(id);
+        }
+        List<ChatMessage> window = new ArrayList<>();
+        int summary = summaryIndex(messages);
+        int start = messages.size();
+        int raw = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            if (!isRaw(messages, i, summary)) {
+                window.add(messages.get(i));
+            }
+        }
+        for (int i = messages.size() - 1; i >= 0 && raw < maxMessages; i--) {
+            if (isRaw(messages, i, summary)) {
+                raw++;
+                start = i;
+            }
+        }
+        // 窗口不能以工具执行结果开头，否则它对应的工具调用已经不在窗口里了
+        while (start < messages.size() && messages.get(start) instanceof ToolExecutionResultMessage) {
+            start++;
+        }
+        for (int i = start; i < messages.size(); i++) {
+            if (isRaw(messages, i, summary)) {
+                window.add(messages.get(i));
+            }
+        }
+        return window;
+    }
+
+    @Override
+    public synchronized void clear() {
+        store.deleteMessages(id);
+    }
+
+    /**
+     * 后台压缩：调用摘要模型时不持有锁，写回前再确认被压缩的那一段仍然原样在存储里
+     */
+    private void compact() {
+        List<ChatMessage> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(store.getMessages(id));
+        }
+
+        int summaryIndex = summaryIndex(snapshot);
+        ChatMessage previousSummary = summaryIndex >= 0 ? snapshot.get(summaryIndex) : null;
+        List<ChatMessage> raw = rawMessages(snapshot);
+        int fold = raw.size() - keepRecent;
+        // 不能把工具调用和它的执行结果拆开
+        while (fold < raw.size() && raw.get(fold) instanceof ToolExecutionResultMessage) {
+            fold++;
+        }
+        if (fold <= 0) {
+            finishCompaction();
+            return;
+        }
+        List<ChatMessage> folded = raw.subList(0, fold);
+
+        UserMessage summary;
+        try {
+            summary = UserMessage.from(SUMMARY_NAME, SUMMARY_PREFIX + summarizer.chat(prompt(previousSummary, folded)));
+        } catch (RuntimeException e) {
+            // 摘要失败就保持原样，请求路径仍然使用裁剪后的原始窗口
+            summarizerFailures.increment();
+            lastSummarizerFailure = e;
+            finishCompaction();
+            return;
+        }
+
+        synchronized (this) {
+            List<ChatMessage> current = new ArrayList<>(store.getMessages(id));
+            List<ChatMessage> currentRaw = rawMessages(current);
+            // 压缩期间被 clear 或被兜底裁剪过，这次的摘要作废
+            if (currentRaw.size() >= folded.size() && currentRaw.subList(0, folded.size()).equals(folded)) {
+                List<ChatMessage> compacted = new ArrayList<>();
+                int systemIndex = indexOfSystemMessage(current);
+                if (systemIndex >= 0) {
+                    compacted.add(current.get(systemIndex));
+                }
+                compacted.add(summary);
+                compacted.addAll(currentRaw.subList(folded.size(), currentRaw.size()));
+                store.updateMessages(id, compacted);
+            }
+        }
+        finishCompaction();
+    }
+
+    /**
+     * 摘要模型调用失败的次数
+     */
+    public long summarizerFailureCount() {
+        return summarizerFailures.sum();
+    }
+
+    /**
+     * 最近一次摘要模型调用失败的异常，没有失败过时为 null
+     */
+    public RuntimeException lastSummarizerFailure() {
+        return lastSummarizerFailure;
+    }
+
+    private void finishCompaction() {
+        boolean again;
+        synchronized (this) {
+            again = rawCount(store.getMessages(id)) > compactAt;
+            compactionPending = again;
+        }
+        if (again) {
+            executor.schedule(this::compact, debounceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static String prompt(ChatMessage previousSummary, List<ChatMessage> messages) {
+        StringBuilder sb = new StringBuilder("""
+                Summarize the following conversation in a few sentences.
+                Keep every fact about the user (name, preferences, decisions) and any unfinished task.
+                Reply with the summary only.
+                """);
+        if (previousSummary != null) {
+            sb.append("\nPrevious summary:\n").append(((UserMessage) previousSummary).singleText().substring(SUMMARY_PREFIX.length())).append('\n');
+        }
+        sb.append("\nConversation:\n");
+        for (ChatMessage message : messages) {
+            if (message instanceof UserMessage userMessage && userMessage.hasSingleText()) {
+                sb.append("User: ").append(userMessage.singleText()).append('\n');
+            } else if (message instanceof AiMessage aiMessage && aiMessage.text() != null) {
+                sb.append("AI: ").append(aiMessage.text()).append('\n');
+            } else if (message instanceof ToolExecutionResultMessage result) {
+                sb.append("Tool ").append(result.toolName()).append(": ").append(result.text()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 摘要的位置：紧跟在 SystemMessage 之后（没有 SystemMessage 时是第一条），不是摘要时返回 -1
+     */
+    static int summaryIndex(List<ChatMessage> messages) {
+        int index = !messages.isEmpty() && messages.get(0) instanceof SystemMessage ? 1 : 0;
+        return index < messages.size()
+                && messages.get(index) instanceof UserMessage userMessage
+                && SUMMARY_NAME.equals(userMessage.name()) ? index : -1;
+    }
+
+    private static boolean isRaw(List<ChatMessage> messages, int index, int summaryIndex) {
+        return index != summaryIndex && !(messages.get(index) instanceof SystemMessage);
+    }
+
+    private static List<ChatMessage> rawMessages(List<ChatMessage> messages) {
+        int summary = summaryIndex(messages);
+        List<ChatMessage> raw = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            if (isRaw(messages, i, summary)) {
+                raw.add(messages.get(i));
+            }
+        }
+        return raw;
+    }
+
+    private static int indexOfSystemMessage(List<ChatMessage> messages) {
+        for (int i = 0; i < messages.size(); i++) {
+            if (messages.get(i) instanceof SystemMessage) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int rawCount(List<ChatMessage> messages) {
+        int summary = summaryIndex(messages);
+        int count = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            if (isRaw(messages, i, summary)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void removeOldestRaw(List<ChatMessage> messages) {
+        int summary = summaryIndex(messages);
+        for (int i = 0; i < messages.size(); i++) {
+            if (isRaw(messages, i, summary)) {
+                messages.remove(i);
+                // 连带移除紧随其后、已经失去工具调用的执行结果
+                while (i < messages.size() && messages.get(i) instanceof ToolExecutionResultMessage) {
+                    messages.remove(i);
+                }
+                return;
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private Object id = "default";
+        private ChatMemoryStore store;
+        private ChatModel summarizer;
+        private Integer maxMessages;
+        private Integer compactAt;
+        private Integer keepRecent;
+        private Duration debounce = Duration.ofSeconds(1);
+        private ScheduledExecutorService executor = DEFAULT_EXECUTOR;
+
+        public Builder id(Object id) {
+            this.id = id;
+            return this;
+        }
+
+        public Builder chatMemoryStore(ChatMemoryStore store) {
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * 生成摘要用的模型，建议用便宜、快速的模型
+         */
+        public Builder summarizer(ChatModel summarizer) {
+            this.summarizer = summarizer;
+            return this;
+        }
+
+        /**
+         * 请求路径上最多返回多少条原始消息（不含 SystemMessage 和摘要）
+         */
+        public Builder maxMessages(int maxMessages) {
+            this.maxMessages = maxMessages;
+            return this;
+        }
+
+        /**
+         * 存储中的原始消息超过多少条时触发压缩，默认 2 * maxMessages
+         */
+        public Builder compactAt(int compactAt) {
+            this.compactAt = compactAt;
+            return this;
+        }
+
+        /**
+         * 压缩后保留多少条最近的原始消息，默认 maxMessages
+         */
+        public Builder keepRecent(int keepRecent) {
+            this.keepRecent = keepRecent;
+            return this;
+        }
+
+        /**
+         * 触发压缩后延迟多久执行，期间的多次触发只会执行一次，默认 1 秒
+         */
+        public Builder debounce(Duration debounce) {
+            this.debounce = debounce;
+            return this;
+        }
+
+        public Builder executor(ScheduledExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public SummarizingChatMemory build() {
+            if (summarizer == null || maxMessages == null || maxMessages < 1) {
+                throw new IllegalArgumentException("summarizer and a positive maxMessages are required");
+            }
+            if (store == null) {
+                store = new InMemoryChatMemoryStore();
+            }
+            if (compactAt == null) {
+                compactAt = 2 * maxMessages;
+            }
+            if (keepRecent == null) {
+                keepRecent = maxMessages;
+            }
+            if (keepRecent >= compactAt) {
+                throw new IllegalArgumentException("keepRecent must be smaller than compactAt");
+            }
+            return new SummarizingChatMemory(this);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.liuhang.langchain4j.memory;
+
+import com.liuhang.langchain4j.ModelRegistry;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 后台摘要压缩
+ */
+public class SummarizingChatMemoryTest {
+
+    /**
+     * 用一个耗时 500ms 的假摘要模型演示：压缩完成前请求路径拿到的是裁剪后的原始窗口，完成后变为 摘要 + 最近消息
+     */
+    @Test
+    public void compaction() throws InterruptedException {
+        ChatModel slowSummarizer = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest chatRequest) {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ChatResponse.builder()
+                        .aiMessage(AiMessage.from("The user is called Klaus and asked " + chatRequest.messages().size() + " batch of questions."))
+                        .build();
+            }
+        };
+
+        InMemoryChatMemoryStore store = new InMemoryChatMemoryStore();
+        ChatMemoryProvider memoryProvider = memoryId -> SummarizingChatMemory.builder()
+                .id(memoryId)
+                .chatMemoryStore(store)
+                .maxMessages(10)
+                .summarizer(slowSummarizer)
+                .debounce(Duration.ofMillis(100))
+                .build();
+
+        ChatMemory memory = memoryProvider.get(1);
+        memory.add(SystemMessage.from("You are a helpful assistant."));
+        memory.add(UserMessage.from("Hello, my name is Klaus"));
+        memory.add(AiMessage.from("Hi Klaus, how can I help you?"));
+        for (int i = 0; i < 12; i++) {
+            memory.add(UserMessage.from("Question " + i));
+            memory.add(AiMessage.from("Answer " + i));
+        }
+
+        print("压缩前", memory.messages());
+        Thread.sleep(1000);
+        print("压缩后", memory.messages());
+        System.out.println("存储中的消息条数: " + store.getMessages(1).size());
+    }
+
+    /**
+     * 用户自己发的消息以摘要前缀开头也只是普通消息；摘要模型一直失败时存储仍然不超过 2 * compactAt，失败次数可以查看
+     */
+    @Test
+    public void failingSummarizer() throws InterruptedException {
+        ChatModel failing = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest chatRequest) {
+                throw new IllegalStateException("summarizer unavailable");
+            }
+        };
+        InMemoryChatMemoryStore store = new InMemoryChatMemoryStore();
+        SummarizingChatMemory memory = SummarizingChatMemory.builder()
+                .id(1)
+                .chatMemoryStore(store)
+                .maxMessages(4)
+                .summarizer(failing)
+                .debounce(Duration.ofMillis(10))
+                .build();
+        memory.add(UserMessage.from(SummarizingChatMemory.SUMMARY_PREFIX + "I am not a summary"));
+        for (int i = 0; i < 20; i++) {
+            memory.add(AiMessage.from("Answer " + i));
+        }
+        Thread.sleep(200);
+        print("窗口", memory.messages());
+        System.out.println("存储中的消息条数: " + store.getMessages(1).size() + "，摘要失败次数: " + memory.summarizerFailureCount()
+                + "，最近一次: " + memory.lastSummarizerFailure().getMessage());
+    }
+
+    /**
+     * 实际使用：用 ConnectAIService 里便宜的 glm-4-flash 做摘要
+     */
+    @Test
+    public void withGlm4Flash() {
+        ChatModel flash = ModelRegistry.zhipu("glm-4-flash");
+
+        InMemoryChatMemoryStore store = new InMemoryChatMemoryStore();
+        ChatMemoryProvider memoryProvider = memoryId -> SummarizingChatMemory.builder()
+                .id(memoryId)
+                .chatMemoryStore(store)
+                .maxMessages(10)
+                .summarizer(flash)
+                .build();
+        System.out.println(memoryProvider.get("user-001").messages());
+    }
+
+    private static void print(String title, List<ChatMessage> messages) {
+        System.out.println("--- " + title + "（" + messages.size() + " 条）---");
+        messages.forEach(System.out::println);
+    }
+}
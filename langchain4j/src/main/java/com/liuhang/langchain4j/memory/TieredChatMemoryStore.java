@@ -0,0 +1,327 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 两级聊天记忆：堆内热点缓存 + 持久化存储（例如 MapDB 的 PersistentChatMemoryStore）
+ *
+ * 正在对话中的会话每轮都会 getMessages，每次都从 MapDB 读 JSON 再反序列化并不划算。
+ * 这里在前面加一层按权重（消息条数）限界的缓存，缓存的是已经反序列化好的消息列表：
+ *      淘汰策略：LRU 顺序 + TinyLFU 准入。从存储加载回来的冷数据，只有访问频率高于将被淘汰的条目时才进入缓存，
+ *               避免一次性扫描把热点会话挤出去
+ *      写策略：writeBehindMillis = 0 时为 write-through，先写存储再更新缓存；
+ *             大于 0 时为 write-behind，只更新缓存并记为脏数据，由后台线程按间隔合并写入存储
+ */
+public class TieredChatMemoryStore implements ChatMemoryStore, AutoCloseable {
+
+    private static final int STRIPES = 64;
+
+    private final ChatMemoryStore backing;
+    private final long maxWeight;
+
+    // 以下三个字段由 this 保护
+    private final LinkedHashMap<Object, List<ChatMessage>> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long weight;
+
+    // write-behind 模式下尚未写入存储的会话
+    private final Map<Object, List<ChatMessage>> dirty = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    // 同一会话的 更新、刷盘 与 删除 互斥：避免刷盘把刚删除的会话又写回去，也避免缓存和存储停在不同的版本
+    // 加锁顺序：先分段锁，再 this
+    private final Object[] locks = new Object[STRIPES];
+    // 每个分段的写入次数，用于发现"加载期间被更新"的情况，防止把旧数据放进缓存；
+    // 写完存储之后，和更新缓存在同一次 this 锁里加一：在这之前准入的旧值会被这次更新覆盖，之后的准入会看到新的次数
+    private final AtomicLongArray writeStamps = new AtomicLongArray(STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    /**
+     * write-through 模式
+     *
+     * @param backing   持久化存储
+     * @param maxWeight 缓存中最多保留多少条消息（所有会话合计）
+     */
+    public TieredChatMemoryStore(ChatMemoryStore backing, long maxWeight) {
+        this(backing, maxWeight, 0);
+    }
+
+    /**
+     * @param writeBehindMillis 大于 0 时启用 write-behind，每隔这么久把脏数据写入存储
+     */
+    public TieredChatMemoryStore(ChatMemoryStore backing, long maxWeight, long writeBehindMillis) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        this.backing = backing;
+        this.maxWeight = maxWeight;
+        this.sketch = new FrequencySketch((int) Math.min(maxWeight, 1 << 20));
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        if (writeBehindMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "chat-memory-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, writeBehindMillis, writeBehindMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        synchronized (this) {
+            sketch.increment(memoryId);
+            List<ChatMessage> cached = cache.get(memoryId);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+
+        List<ChatMessage> pending = dirty.get(memoryId);
+        if (pending != null) {
+            return pending;
+        }
+
+        int stripe = stripe(memoryId);
+        long stamp = writeStamps.get(stripe);
+        long start = System.nanoTime();
+        List<ChatMessage> messages = List.copyOf(backing.getMessages(memoryId));
+        loadNanos.add(System.nanoTime() - start);
+
+        synchronized (this) {
+            // 加载期间该分段有写入，加载到的可能是旧数据，这次就不缓存了
+            if (writeStamps.get(stripe) == stamp && !cache.containsKey(memoryId)) {
+                admit(memoryId, messages);
+            }
+        }
+        return messages;
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        List<ChatMessage> copy = List.copyOf(messages);
+        int stripe = stripe(memoryId);
+        // 写存储（或记脏）和更新缓存在同一把分段锁里完成，并发的更新和删除不会让缓存和存储各留一个版本
+        synchronized (locks[stripe]) {
+            if (flusher == null) {
+                backing.updateMessages(memoryId, copy);
+            } else {
+                dirty.put(memoryId, copy);
+            }
+            synchronized (this) {
+                put(memoryId, copy);
+                writeStamps.incrementAndGet(stripe);
+            }
+        }
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        int stripe = stripe(memoryId);
+        synchronized (locks[stripe]) {
+            dirty.remove(memoryId);
+            backing.deleteMessages(memoryId);
+            synchronized (this) {
+                List<ChatMessage> removed = cache.remove(memoryId);
+                if (removed != null) {
+                    weight -= weightOf(removed);
+                }
+                writeStamps.incrementAndGet(stripe);
+            }
+        }
+    }
+
+    /**
+     * 把 write-behind 积攒的脏数据写入存储
+     */
+    public void flush() {
+        for (Map.Entry<Object, List<ChatMessage>> entry : dirty.entrySet()) {
+            Object memoryId = entry.getKey();
+            List<ChatMessage> messages = entry.getValue();
+            synchronized (locks[stripe(memoryId)]) {
+                // 拿锁期间可能已被删除或又被更新，只写仍然是当前值的那一份
+                if (dirty.get(memoryId) == messages) {
+                    backing.updateMessages(memoryId, messages);
+                    dirty.remove(memoryId, messages);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flush();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public double hitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        long miss = misses.sum();
+        return String.format("TieredChatMemoryStore{hits=%d, misses=%d, hitRate=%.2f%%, evictions=%d, rejections=%d, weight=%d/%d, avgLoad=%.1fμs}",
+                hits.sum(), miss, hitRate() * 100, evictions.sum(), rejections.sum(), weight(), maxWeight,
+                miss == 0 ? 0 : loadNanos.sum() / 1000.0 / miss);
+    }
+
+    /**
+     * 写入的值总是放进缓存（它是最新值，也最可能马上被读到）
+     */
+    private void put(Object memoryId, List<ChatMessage> messages) {
+        List<ChatMessage> old = cache.put(memoryId, messages);
+        if (old != null) {
+            weight -= weightOf(old);
+        }
+        weight += weightOf(messages);
+        evictWhileOverweight(memoryId);
+    }
+
+    /**
+     * 从存储加载回来的值要经过 TinyLFU 准入：访问频率不高于 LRU 队尾的牺牲者时，不进入缓存
+     */
+    private void admit(Object memoryId, List<ChatMessage> messages) {
+        long needed = weight + weightOf(messages) - maxWeight;
+        if (needed > 0) {
+            int candidateFrequency = sketch.frequency(memoryId);
+            long freed = 0;
+            Iterator<Map.Entry<Object, List<ChatMessage>>> it = cache.entrySet().iterator();
+            while (freed < needed && it.hasNext()) {
+                Map.Entry<Object, List<ChatMessage>> victim = it.next();
+                if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                    rejections.increment();
+                    return;
+                }
+                freed += weightOf(victim.getValue());
+            }
+        }
+        put(memoryId, messages);
+    }
+
+    private void evictWhileOverweight(Object keep) {
+        Iterator<Map.Entry<Object, List<ChatMessage>>> it = cache.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            Map.Entry<Object, List<ChatMessage>> eldest = it.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            weight -= weightOf(eldest.getValue());
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    private static int weightOf(List<ChatMessage> messages) {
+        return Math.max(1, messages.size());
+    }
+
+    private static int stripe(Object memoryId) {
+        return (memoryId.hashCode() & 0x7fffffff) % STRIPES;
+    }
+
+    /**
+     * TinyLFU 使用的频率估计：4 行的 count-min sketch，计数上限 15，
+     * 累计记录次数达到 10 倍表长时所有计数减半，让历史热度逐渐衰减
+     */
+    private static final class FrequencySketch {
+
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final int[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedSize) {
+            int size = Integer.highestOneBit(Math.max(16, expectedSize) - 1) << 1;
+            this.table = new int[size];
+            this.mask = size - 1;
+            this.sampleSize = 10 * size;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            for (int seed : SEEDS) {
+                int index = index(hash, seed);
+                if (table[index] < 15) {
+                    table[index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] >>>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int min = Integer.MAX_VALUE;
+            for (int seed : SEEDS) {
+                min = Math.min(min, table[index(hash, seed)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int seed) {
+            int h = hash * seed;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 17;
+            h *= 0xed5ad4bb;
+            h ^= h >>> 11;
+            return h;
+        }
+    }
+}
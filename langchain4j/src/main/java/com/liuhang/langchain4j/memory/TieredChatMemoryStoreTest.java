@@ -0,0 +1,208 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import org.junit.jupiter.api.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messagesFromJson;
+import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
+import static org.mapdb.Serializer.STRING;
+
+/**
+ * 两级缓存对活跃会话读延迟的影响
+ */
+public class TieredChatMemoryStoreTest {
+
+    /**
+     * 和 PersistentChatMemoryStore 一样以 JSON 存在 MapDB 里（这里用内存库，只比较反序列化的开销）
+     */
+    static class MapDbChatMemoryStore implements ChatMemoryStore {
+
+        private final DB db = DBMaker.memoryDB().make();
+        private final Map<String, String> map = db.hashMap("messages", STRING, STRING).createOrOpen();
+
+        @Override
+        public List<ChatMessage> getMessages(Object memoryId) {
+            String json = map.get(memoryId.toString());
+            return json == null ? new ArrayList<>() : messagesFromJson(json);
+        }
+
+        @Override
+        public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+            map.put(memoryId.toString(), messagesToJson(messages));
+        }
+
+        @Override
+        public void deleteMessages(Object memoryId) {
+            map.remove(memoryId.toString());
+        }
+    }
+
+    /**
+     * 1000 个会话，其中 50 个活跃会话占 90% 的访问，缓存只放得下约 100 个会话
+     */
+    @Test
+    public void benchmark() throws Exception {
+        MapDbChatMemoryStore backing = new MapDbChatMemoryStore();
+        for (int session = 0; session < 1000; session++) {
+            backing.updateMessages(session, history(session));
+        }
+
+        TieredChatMemoryStore tiered = new TieredChatMemoryStore(backing, 100 * 21);
+        Random random = new Random(42);
+        int reads = 200_000;
+
+        for (ChatMemoryStore store : List.of(backing, tiered)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reads; i++) {
+                int session = random.nextInt(10) < 9 ? random.nextInt(50) : 50 + random.nextInt(950);
+                store.getMessages(session);
+            }
+            System.out.printf("%s: %.2fμs/次%n", store.getClass().getSimpleName(), (System.nanoTime() - start) / 1000.0 / reads);
+        }
+        System.out.println(tiered);
+    }
+
+    /**
+     * write-behind：写入只进缓存，关闭时刷回存储
+     */
+    @Test
+    public void writeBehind() throws Exception {
+        MapDbChatMemoryStore backing = new MapDbChatMemoryStore();
+        TieredChatMemoryStore tiered = new TieredChatMemoryStore(backing, 1000, 50);
+
+        List<ChatMessage> messages = history(1);
+        tiered.updateMessages(1, messages);
+        System.out.println("刷盘前存储中的条数: " + backing.getMessages(1).size());
+        tiered.close();
+        System.out.println("刷盘后存储中的条数: " + backing.getMessages(1).size());
+    }
+
+    /**
+     * write-through 下 8 个线程同时更新 / 删除同一个会话，存储写完后随机停顿放大竞争窗口：
+     * 每一轮结束后缓存都必须和存储一致
+     */
+    @Test
+    public void concurrentWritesStayConsistent() throws Exception {
+        MapDbChatMemoryStore slow = new MapDbChatMemoryStore() {
+            @Override
+            public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+                synchronized (this) {
+                    super.updateMessages(memoryId, messages);
+                }
+                pause();
+            }
+
+            @Override
+            public void deleteMessages(Object memoryId) {
+                synchronized (this) {
+                    super.deleteMessages(memoryId);
+                }
+                pause();
+            }
+
+            // 写完存储之后、更新缓存之前停一下
+            private void pause() {
+                if (ThreadLocalRandom.current().nextInt(4) == 0) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        TieredChatMemoryStore tiered = new TieredChatMemoryStore(slow, 100_000);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        int mismatches = 0;
+        for (int round = 0; round < 200; round++) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                int r = round;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    if (thread == r % 8) {
+                        tiered.deleteMessages(0);
+                    } else {
+                        tiered.updateMessages(0, List.of(UserMessage.from("round " + r + " thread " + thread)));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            String stored = slow.map.get("0");
+            List<ChatMessage> expected = stored == null ? List.of() : messagesFromJson(stored);
+            if (!tiered.getMessages(0).equals(expected)) {
+                mismatches++;
+            }
+        }
+        pool.shutdown();
+        System.out.println("200 轮中缓存与存储不一致的轮数: " + mismatches);
+    }
+
+    /**
+     * 缓存未命中的加载和删除同时进行：存储删除前先停 2ms，加载在这期间读到旧数据，删除完成后不能留在缓存里
+     */
+    @Test
+    public void loadRacingDelete() throws Exception {
+        MapDbChatMemoryStore slow = new MapDbChatMemoryStore() {
+            @Override
+            public void deleteMessages(Object memoryId) {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.deleteMessages(memoryId);
+            }
+        };
+        TieredChatMemoryStore tiered = new TieredChatMemoryStore(slow, 100_000);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        int resurrected = 0;
+        for (int session = 0; session < 200; session++) {
+            int id = session;
+            // 直接写进存储，缓存里没有
+            slow.updateMessages(id, history(id));
+            Future<?> delete = pool.submit(() -> tiered.deleteMessages(id));
+            Thread.sleep(1);
+            Future<?> load = pool.submit(() -> tiered.getMessages(id));
+            delete.get();
+            load.get();
+            if (!tiered.getMessages(id).isEmpty()) {
+                resurrected++;
+            }
+        }
+        pool.shutdown();
+        System.out.println("200 个会话中删除后又从缓存读到的: " + resurrected);
+    }
+
+    private static List<ChatMessage> history(int session) {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(SystemMessage.from("You are a helpful assistant."));
+        for (int turn = 0; turn < 10; turn++) {
+            messages.add(UserMessage.from("session " + session + " question " + turn));
+            messages.add(AiMessage.from("session " + session + " answer " + turn));
+        }
+        return messages;
+    }
+}
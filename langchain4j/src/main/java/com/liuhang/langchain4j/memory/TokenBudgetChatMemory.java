@@ -0,0 +1,189 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.ToolExecutionResultMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * 按 token 预算限制长度的聊天记忆
+ *
+ * MessageWindowChatMemory 按消息条数截断，消息长短不一，实际发给 LLM 的上下文大小波动很大；
+ * 内置的 TokenWindowChatMemory 每次 add 都要对整段历史重新估算 token 数。
+ *
+ * 这里每条消息只在加入时估算一次 token 数并缓存下来，同时维护总数：
+ *      add：总数加上新消息的 token 数，超出预算时从最旧的非 SystemMessage 开始淘汰，总数减去被淘汰消息的 token 数
+ *      SystemMessage 永远保留；和 MessageWindowChatMemory 一样，淘汰带工具调用的 AiMessage 时，紧随其后的工具执行结果一并淘汰
+ * 估算器可以用 OpenAiTokenCountEstimator，它基于本地词表，不需要网络请求。
+ *
+ * 和 MessageWindowChatMemory 一样可以直接用在 chatMemoryProvider 里：
+ *      memoryId -> TokenBudgetChatMemory.builder().id(memoryId).maxTokens(2000, estimator).chatMemoryStore(store).build()
+ * 同一个 memoryId 的消息只能由这一个 ChatMemory 实例写入（AiServices 会为每个 memoryId 缓存一个实例）。
+ */
+public class TokenBudgetChatMemory implements ChatMemory {
+
+    private final Object id;
+    private final int maxTokens;
+    private final TokenCountEstimator estimator;
+    private final ChatMemoryStore store;
+
+    // 以下字段由 this 保护
+    private final LinkedList<Counted> messages = new LinkedList<>();
+    private int totalTokens;
+
+    private TokenBudgetChatMemory(Builder builder) {
+        this.id = builder.id;
+        this.maxTokens = builder.maxTokens;
+        this.estimator = builder.estimator;
+        this.store = builder.store;
+
+        // 从存储恢复的历史只在这里估算一次
+        for (ChatMessage message : store.getMessages(id)) {
+            Counted counted = new Counted(message, estimator.estimateTokenCountInMessage(message));
+            messages.add(counted);
+            totalTokens += counted.tokens;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static TokenBudgetChatMemory withMaxTokens(int maxTokens, TokenCountEstimator estimator) {
+        return builder().maxTokens(maxTokens, estimator).build();
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public synchronized void add(ChatMessage message) {
+        if (message instanceof SystemMessage) {
+            Counted existing = systemMessage();
+            if (existing != null) {
+                if (existing.message.equals(message)) {
+                    return;
+                }
+                messages.remove(existing);
+                totalTokens -= existing.tokens;
+            }
+            // SystemMessage 始终放在最前面
+            Counted counted = new Counted(message, estimator.estimateTokenCountInMessage(message));
+            messages.addFirst(counted);
+            totalTokens += counted.tokens;
+        } else {
+            Counted counted = new Counted(message, estimator.estimateTokenCountInMessage(message));
+            messages.addLast(counted);
+            totalTokens += counted.tokens;
+        }
+
+        evictToBudget();
+        store.updateMessages(id, snapshot());
+    }
+
+    @Override
+    public synchronized List<ChatMessage> messages() {
+        return snapshot();
+    }
+
+    @Override
+    public synchronized void clear() {
+        messages.clear();
+        totalTokens = 0;
+        store.deleteMessages(id);
+    }
+
+    /**
+     * 当前记忆中所有消息的 token 总数（不会重新估算）
+     */
+    public synchronized int tokenCount() {
+        return totalTokens;
+    }
+
+    private void evictToBudget() {
+        Iterator<Counted> it = messages.iterator();
+        boolean evictingToolResults = false;
+        while (it.hasNext()) {
+            Counted counted = it.next();
+            if (counted.message instanceof SystemMessage) {
+                continue;
+            }
+            // 被淘汰的 AiMessage 留下的工具执行结果已经没有对应的调用，必须一起淘汰
+            boolean orphan = evictingToolResults && counted.message instanceof ToolExecutionResultMessage;
+            if (totalTokens <= maxTokens && !orphan) {
+                break;
+            }
+            it.remove();
+            totalTokens -= counted.tokens;
+            evictingToolResults = true;
+        }
+    }
+
+    private Counted systemMessage() {
+        for (Counted counted : messages) {
+            if (counted.message instanceof SystemMessage) {
+                return counted;
+            }
+        }
+        return null;
+    }
+
+    private List<ChatMessage> snapshot() {
+        List<ChatMessage> result = new ArrayList<>(messages.size());
+        for (Counted counted : messages) {
+            result.add(counted.message);
+        }
+        return result;
+    }
+
+    private record Counted(ChatMessage message, int tokens) {
+    }
+
+    public static class Builder {
+
+        private Object id = "default";
+        private Integer maxTokens;
+        private TokenCountEstimator estimator;
+        private ChatMemoryStore store;
+
+        public Builder id(Object id) {
+            this.id = id;
+            return this;
+        }
+
+        /**
+         * @param maxTokens 记忆中所有消息合计最多多少 token
+         * @param estimator token 数估算器，例如 new OpenAiTokenCountEstimator(GPT_4_O_MINI)
+         */
+        public Builder maxTokens(int maxTokens, TokenCountEstimator estimator) {
+            this.maxTokens = maxTokens;
+            this.estimator = estimator;
+            return this;
+        }
+
+        public Builder chatMemoryStore(ChatMemoryStore store) {
+            this.store = store;
+            return this;
+        }
+
+        public TokenBudgetChatMemory build() {
+            if (maxTokens == null || maxTokens < 1 || estimator == null) {
+                throw new IllegalArgumentException("maxTokens must be positive and estimator must be set");
+            }
+            if (store == null) {
+                store = new InMemoryChatMemoryStore();
+            }
+            return new TokenBudgetChatMemory(this);
+        }
+    }
+}
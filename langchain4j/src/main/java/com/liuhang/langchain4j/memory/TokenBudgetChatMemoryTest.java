@@ -0,0 +1,68 @@
+package com.liuhang.langchain4j.memory;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.memory.chat.TokenWindowChatMemory;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.openai.OpenAiTokenCountEstimator;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static dev.langchain4j.model.openai.OpenAiChatModelName.GPT_4_O_MINI;
+
+/**
+ * token 预算记忆：增量计数 vs 每次全量重算
+ */
+public class TokenBudgetChatMemoryTest {
+
+    private final TokenCountEstimator estimator = new OpenAiTokenCountEstimator(GPT_4_O_MINI);
+
+    /**
+     * 和 MessageWindowChatMemory 一样用在 ChatMemoryProvider 里，窗口大小由 token 数决定
+     */
+    @Test
+    public void provider() {
+        InMemoryChatMemoryStore store = new InMemoryChatMemoryStore();
+        ChatMemoryProvider memoryProvider = memoryId -> TokenBudgetChatMemory.builder()
+                .id(memoryId)
+                .maxTokens(100, estimator)
+                .chatMemoryStore(store)
+                .build();
+
+        ChatMemory memory = memoryProvider.get("user-001");
+        memory.add(SystemMessage.from("You are a helpful assistant."));
+        for (int i = 0; i < 20; i++) {
+            memory.add(UserMessage.from("This is question number " + i + ", a short one."));
+            memory.add(AiMessage.from("And this is answer number " + i + "."));
+        }
+        List<?> messages = store.getMessages("user-001");
+        System.out.println(messages.size() + " 条消息, " + ((TokenBudgetChatMemory) memory).tokenCount() + " tokens");
+        System.out.println(messages.get(0));
+    }
+
+    @Test
+    public void benchmark() {
+        for (int round = 0; round < 2; round++) { // 第一轮为预热
+            run("TokenWindowChatMemory", TokenWindowChatMemory.withMaxTokens(4000, estimator));
+            run("TokenBudgetChatMemory", TokenBudgetChatMemory.withMaxTokens(4000, estimator));
+        }
+    }
+
+    private static void run(String name, ChatMemory memory) {
+        int turns = 2000;
+        memory.add(SystemMessage.from("You are a helpful assistant."));
+        long start = System.nanoTime();
+        for (int i = 0; i < turns; i++) {
+            memory.add(UserMessage.from("Which services do you provide? I am asking for the " + i + "th time."));
+            memory.add(AiMessage.from("At Miles of Smiles, we provide a wide range of services, including travel planning, "
+                    + "car rentals and customer support."));
+        }
+        System.out.printf("%s: %.1fμs/条, 保留 %d 条%n", name, (System.nanoTime() - start) / 1000.0 / (turns * 2),
+                memory.messages().size());
+    }
+}
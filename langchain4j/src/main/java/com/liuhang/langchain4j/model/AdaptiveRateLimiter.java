@@ -0,0 +1,679 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialThinkingContext;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.PartialToolCallContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
+
+/**
+ * 客户端限流：自适应并发上限 + 每分钟请求数 / token 数的令牌桶 + 按优先级和截止时间排队
+ *
+ * 项目里没有任何东西控制调用速度，超过服务商的配额就收到 429，各处的重试又一起涌上来。
+ *
+ * 每次调用先拿许可：
+ *      令牌桶：请求数和 token 数各一个桶，按每分钟配额匀速补充，桶的容量是 burst 时长内的配额（服务商按秒级窗口统计，
+ *      一分钟的配额一口气发出去照样 429）；token 先按估算扣（输入按消息长度，
+ *      输出取最近的平均值或 maxOutputTokens），返回后按 tokenUsage 的实际值多退少补
+ *      并发上限（AIMD）：收到 429 时减半并暂停 backoff；延迟超过最低延迟的 latencyTolerance 倍时减 10%，
+ *      说明服务端在排队；否则在并发用满时每轮加 1，逼近服务商的上限而不是来回振荡。
+ *      端到端延迟主要取决于输出长度，长短回答混在一起时不能和同一个最低延迟比：
+ *      流式调用用首个分块（文本、思考或工具调用）的延迟；阻塞调用按输出 token 数分桶（相邻桶相差约 1.4 倍），
+ *      和同样长度的请求的最低延迟比
+ *      排队：许可不够时按 优先级高 -> 截止时间早 -> 先来 的顺序等待，过了截止时间的请求直接失败，不再占用配额
+ * 收到 429 的请求重新排队，最多 maxRetries 次（模型自己的 maxRetries 建议设为 0）。
+ *
+ * 同一个服务商的 ChatModel 和 StreamingChatModel 用同一个限流器包装，共享配额：
+ *      limiter.chatModel(model)、limiter.streamingChatModel(streamingModel)
+ * 单次调用的优先级和截止时间用 withPriority 指定。
+ */
+public class AdaptiveRateLimiter {
+
+    private static final double EWMA_ALPHA = 0.1;
+    // 0 号桶是流式调用的首个分块延迟，其余按输出 token 数分桶
+    private static final int LATENCY_BUCKETS = 32;
+
+    private final double requestsPerNano;
+    private final double tokensPerNano;
+    private final double requestCapacity;
+    private final double tokenCapacity;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final long backoffNanos;
+    private final long defaultTimeoutNanos;
+    private final int maxRetries;
+    private final TokenCountEstimator estimator;
+
+    private final ThreadLocal<Priority> priority = new ThreadLocal<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // 以下字段都由 lock 保护
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>();
+    private long sequence;
+    private double requestTokens;
+    private double tokenTokens;
+    private long refilledAt = System.nanoTime();
+    private long pausedUntil;
+    private double limit;
+    private int inFlight;
+    private final double[] minLatencyNanos = new double[LATENCY_BUCKETS];
+    private double outputTokensEwma = 256;
+
+    // 统计，由 lock 保护
+    private long admitted;
+    private long expired;
+    private long rateLimited;
+    private long tokensUsed;
+    private long waitNanos;
+
+    private AdaptiveRateLimiter(Builder builder) {
+        this.requestsPerNano = builder.requestsPerMinute / 60e9;
+        this.tokensPerNano = builder.tokensPerMinute / 60e9;
+        this.requestCapacity = Math.max(1, requestsPerNano * builder.burst.toNanos());
+        this.tokenCapacity = Math.max(1, tokensPerNano * builder.burst.toNanos());
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.latencyTolerance = builder.latencyTolerance;
+        this.backoffNanos = builder.backoff.toNanos();
+        this.defaultTimeoutNanos = builder.defaultTimeout.toNanos();
+        this.maxRetries = builder.maxRetries;
+        this.estimator = builder.estimator;
+        this.requestTokens = requestCapacity;
+        this.tokenTokens = tokenCapacity;
+        this.limit = builder.initialLimit;
+        Arrays.fill(minLatencyNanos, Double.MAX_VALUE);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 在当前线程里用指定的优先级和截止时间执行一次调用，例如
+     * limiter.withPriority(10, Duration.ofSeconds(5), () -> assistant.chat(id, text))
+     *
+     * @param priority 越大越先执行，默认 0
+     * @param timeout  排队超过这段时间就放弃
+     */
+    public <T> T withPriority(int priority, Duration timeout, Supplier<T> call) {
+        Priority previous = this.priority.get();
+        this.priority.set(new Priority(priority, timeout.toNanos()));
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                this.priority.remove();
+            } else {
+                this.priority.set(previous);
+            }
+        }
+    }
+
+    public ChatModel chatModel(ChatModel delegate) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse chat(ChatRequest chatRequest) {
+                for (int attempt = 0; ; attempt++) {
+                    Permit permit = acquire(chatRequest);
+                    try {
+                        ChatResponse response = delegate.chat(chatRequest);
+                        permit.succeeded(response.tokenUsage());
+                        return response;
+                    } catch (RuntimeException e) {
+                        boolean limited = isRateLimited(e);
+                        permit.failed(limited);
+                        if (!limited || attempt >= maxRetries) {
+                            throw e;
+                        }
+                    } catch (Error e) {
+                        // 许可照样归还，否则并发名额会一直被占着
+                        permit.failed(false);
+                        throw e;
+                    }
+                }
+            }
+
+            @Override
+            public ChatRequestParameters defaultRequestParameters() {
+                return delegate.defaultRequestParameters();
+            }
+
+            @Override
+            public Set<Capability> supportedCapabilities() {
+                return delegate.supportedCapabilities();
+            }
+        };
+    }
+
+    /**
+     * 流式调用在调用线程上排队拿许可，流结束（完成、出错或被取消）时归还；流式调用出错不重试
+     */
+    public StreamingChatModel streamingChatModel(StreamingChatModel delegate) {
+        return new StreamingChatModel() {
+            @Override
+            public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                Permit permit;
+                try {
+                    permit = acquire(chatRequest);
+                } catch (RuntimeException e) {
+                    handler.onError(e);
+                    return;
+                }
+                try {
+                    delegate.chat(chatRequest, new StreamingChatResponseHandler() {
+                        @Override
+                        public void onPartialResponse(String partialResponse) {
+                            permit.firstEvent();
+                            handler.onPartialResponse(partialResponse);
+                        }
+
+                        @Override
+                        public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                            permit.firstEvent();
+                            handler.onPartialResponse(partialResponse, new PartialResponseContext(permit.handle(context.streamingHandle())));
+                        }
+
+                        @Override
+                        public void onPartialThinking(PartialThinking partialThinking) {
+                            permit.firstEvent();
+                            handler.onPartialThinking(partialThinking);
+                        }
+
+                        @Override
+                        public void onPartialThinking(PartialThinking partialThinking, PartialThinkingContext context) {
+                            permit.firstEvent();
+                            handler.onPartialThinking(partialThinking, new PartialThinkingContext(permit.handle(context.streamingHandle())));
+                        }
+
+                        @Override
+                        public void onPartialToolCall(PartialToolCall partialToolCall) {
+                            permit.firstEvent();
+                            handler.onPartialToolCall(partialToolCall);
+                        }
+
+                        @Override
+                        public void onPartialToolCall(PartialToolCall partialToolCall, PartialToolCallContext context) {
+                            permit.firstEvent();
+                            handler.onPartialToolCall(partialToolCall, new PartialToolCallContext(permit.handle(context.streamingHandle())));
+                        }
+
+                        @Override
+                        public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+                            permit.firstEvent();
+                            handler.onCompleteToolCall(completeToolCall);
+                        }
+
+                        @Override
+                        public void onCompleteResponse(ChatResponse completeResponse) {
+                            permit.succeeded(completeResponse.tokenUsage());
+                            handler.onCompleteResponse(completeResponse);
+                        }
+
+                        @Override
+                        public void onError(Throwable error) {
+                            permit.failed(isRateLimited(error));
+                            handler.onError(error);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // 在调用线程上直接抛出（例如请求参数不合法）时不会再有回调，这里归还许可并转给 onError
+                    permit.failed(isRateLimited(e));
+                    handler.onError(e);
+                } catch (Error e) {
+                    permit.failed(false);
+                    throw e;
+                }
+            }
+
+            @Override
+            public ChatRequestParameters defaultRequestParameters() {
+                return delegate.defaultRequestParameters();
+            }
+
+            @Override
+            public Set<Capability> supportedCapabilities() {
+                return delegate.supportedCapabilities();
+            }
+        };
+    }
+
+    /**
+     * 当前的并发上限
+     */
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 收到 429 的次数
+     */
+    public long rateLimited() {
+        lock.lock();
+        try {
+            return rateLimited;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 排队超过截止时间而放弃的请求数
+     */
+    public long expired() {
+        lock.lock();
+        try {
+            return expired;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("AdaptiveRateLimiter{limit=%.1f, inFlight=%d, queued=%d, admitted=%d, expired=%d, rateLimited=%d, tokens=%d, avgWait=%.0fms}",
+                    limit, inFlight, queue.size(), admitted, expired, rateLimited, tokensUsed,
+                    admitted == 0 ? 0 : waitNanos / 1e6 / admitted);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Permit acquire(ChatRequest chatRequest) {
+        int inputTokens = estimator != null
+                ? estimator.estimateTokenCountInMessages(chatRequest.messages())
+                : messagesToJson(chatRequest.messages()).length() / 4;
+        Integer maxOutputTokens = chatRequest.parameters() == null ? null : chatRequest.parameters().maxOutputTokens();
+        Priority requested = priority.get();
+        long now = System.nanoTime();
+
+        lock.lock();
+        try {
+            double outputTokens = maxOutputTokens != null ? Math.min(maxOutputTokens, outputTokensEwma) : outputTokensEwma;
+            Waiter waiter = new Waiter(requested == null ? 0 : requested.priority,
+                    now + (requested == null ? defaultTimeoutNanos : requested.timeoutNanos),
+                    sequence++, inputTokens + outputTokens, lock.newCondition());
+            queue.add(waiter);
+            try {
+                while (true) {
+                    long now2 = System.nanoTime();
+                    if (queue.peek() == waiter) {
+                        long waitNanos = tryAdmit(waiter, now2);
+                        if (waitNanos == 0) {
+                            queue.poll();
+                            signalHead();
+                            this.admitted++;
+                            this.waitNanos += now2 - now;
+                            return new Permit(waiter.estimatedTokens, outputTokens, now2);
+                        }
+                        waiter.condition.awaitNanos(Math.min(waitNanos, waiter.deadline - now2));
+                    } else {
+                        waiter.condition.awaitNanos(waiter.deadline - now2);
+                    }
+                    if (System.nanoTime() >= waiter.deadline) {
+                        queue.remove(waiter);
+                        signalHead();
+                        expired++;
+                        throw new IllegalStateException("rate limiter queue timeout after " + (System.nanoTime() - now) / 1_000_000 + "ms");
+                    }
+                }
+            } catch (InterruptedException e) {
+                queue.remove(waiter);
+                signalHead();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for rate limiter", e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 能放行就扣掉配额并返回 0，否则返回建议的等待时间；等待并发名额时返回一个较长的时间，由 release 唤醒
+     */
+    private long tryAdmit(Waiter waiter, long now) {
+        refill(now);
+        if (now < pausedUntil) {
+            return pausedUntil - now;
+        }
+        if (inFlight >= (int) limit) {
+            return TimeUnit.SECONDS.toNanos(1);
+        }
+        // 单个请求比桶还大时，等桶满就放行，避免永远等不到
+        double tokensNeeded = Math.min(waiter.estimatedTokens, tokenCapacity);
+        if (requestTokens < 1) {
+            return (long) ((1 - requestTokens) / requestsPerNano) + 1;
+        }
+        if (tokenTokens < tokensNeeded) {
+            return (long) ((tokensNeeded - tokenTokens) / tokensPerNano) + 1;
+        }
+        requestTokens -= 1;
+        tokenTokens -= waiter.estimatedTokens;
+        inFlight++;
+        return 0;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - refilledAt;
+        refilledAt = now;
+        requestTokens = Math.min(requestCapacity, requestTokens + elapsed * requestsPerNano);
+        tokenTokens = Math.min(tokenCapacity, tokenTokens + elapsed * tokensPerNano);
+    }
+
+    private void signalHead() {
+        Waiter head = queue.peek();
+        if (head != null) {
+            head.condition.signal();
+        }
+    }
+
+    /**
+     * 1 + 2 * log2(输出 token 数 + 1)，相邻桶的长度相差约 1.4 倍
+     */
+    private static int lengthBucket(double outputTokens) {
+        int bucket = 1 + (int) (2 * Math.log(outputTokens + 1) / Math.log(2));
+        return Math.min(LATENCY_BUCKETS - 1, bucket);
+    }
+
+    private static boolean isRateLimited(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e.getClass().getSimpleName().contains("RateLimit")
+                    || (e.getMessage() != null && (e.getMessage().contains("429") || e.getMessage().contains("rate limit")))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private record Priority(int priority, long timeoutNanos) {
+    }
+
+    private record Waiter(int priority, long deadline, long sequence, double estimatedTokens,
+                          Condition condition) implements Comparable<Waiter> {
+
+        @Override
+        public int compareTo(Waiter other) {
+            if (priority != other.priority) {
+                return Integer.compare(other.priority, priority);
+            }
+            if (deadline != other.deadline) {
+                return Long.compare(deadline, other.deadline);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * 一次放行，调用结束时调用 succeeded、failed 或 cancelled，重复调用会被忽略
+     */
+    private class Permit {
+
+        private final double estimatedTokens;
+        private final double estimatedOutputTokens;
+        private final long startedAt;
+        // 流式调用收到第一个分块的时间，只在回调线程上写
+        private volatile long firstEventAt;
+        private volatile boolean firstEventSeen;
+        // 由 lock 保护，保证只归还一次
+        private boolean released;
+
+        Permit(double estimatedTokens, double estimatedOutputTokens, long startedAt) {
+            this.estimatedTokens = estimatedTokens;
+            this.estimatedOutputTokens = estimatedOutputTokens;
+            this.startedAt = startedAt;
+        }
+
+        void firstEvent() {
+            if (!firstEventSeen) {
+                firstEventAt = System.nanoTime();
+                firstEventSeen = true;
+            }
+        }
+
+        /**
+         * 下游取消后上游不会再回调完成或出错，取消时就归还许可
+         */
+        StreamingHandle handle(StreamingHandle upstream) {
+            return new StreamingHandle() {
+                @Override
+                public void cancel() {
+                    cancelled();
+                    upstream.cancel();
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return upstream.isCancelled();
+                }
+            };
+        }
+
+        void succeeded(TokenUsage usage) {
+            long latency;
+            int bucket;
+            if (firstEventSeen) {
+                latency = firstEventAt - startedAt;
+                bucket = 0;
+            } else {
+                latency = System.nanoTime() - startedAt;
+                Integer outputTokens = usage == null ? null : usage.outputTokenCount();
+                bucket = lengthBucket(outputTokens != null ? outputTokens : estimatedOutputTokens);
+            }
+            lock.lock();
+            try {
+                if (released) {
+                    return;
+                }
+                if (usage != null && usage.totalTokenCount() != null) {
+                    // 多退少补
+                    tokenTokens = Math.min(tokenCapacity, tokenTokens + estimatedTokens - usage.totalTokenCount());
+                    tokensUsed += usage.totalTokenCount();
+                    if (usage.outputTokenCount() != null) {
+                        outputTokensEwma += EWMA_ALPHA * (usage.outputTokenCount() - outputTokensEwma);
+                    }
+                } else {
+                    tokensUsed += (long) estimatedTokens;
+                }
+                if (latency < minLatencyNanos[bucket]) {
+                    minLatencyNanos[bucket] = latency;
+                } else {
+                    // 最低延迟缓慢上浮，服务端变慢后能重新校准
+                    minLatencyNanos[bucket] += 0.001 * (latency - minLatencyNanos[bucket]);
+                }
+                if (latency > minLatencyNanos[bucket] * latencyTolerance) {
+                    limit = Math.max(minLimit, limit * 0.9);
+                } else if (inFlight >= limit - 1) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+                release();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void failed(boolean limited) {
+            lock.lock();
+            try {
+                if (released) {
+                    return;
+                }
+                if (limited) {
+                    rateLimited++;
+                    limit = Math.max(minLimit, limit / 2);
+                    pausedUntil = Math.max(pausedUntil, System.nanoTime() + backoffNanos);
+                }
+                release();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 下游主动取消：只归还并发名额，不影响并发上限
+         */
+        void cancelled() {
+            lock.lock();
+            try {
+                if (!released) {
+                    tokensUsed += (long) estimatedTokens;
+                    release();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release() {
+            released = true;
+            inFlight--;
+            signalHead();
+        }
+    }
+
+    public static class Builder {
+
+        private double requestsPerMinute = 500;
+        private double tokensPerMinute = 200_000;
+        private Duration burst = Duration.ofSeconds(10);
+        private int initialLimit = 8;
+        private int minLimit = 1;
+        private int maxLimit = 256;
+        private double latencyTolerance = 2.0;
+        private Duration backoff = Duration.ofSeconds(1);
+        private Duration defaultTimeout = Duration.ofSeconds(60);
+        private int maxRetries = 2;
+        private TokenCountEstimator estimator;
+
+        /**
+         * 服务商的每分钟请求数配额（RPM），默认 500
+         */
+        public Builder requestsPerMinute(double requestsPerMinute) {
+            this.requestsPerMinute = requestsPerMinute;
+            return this;
+        }
+
+        /**
+         * 服务商的每分钟 token 配额（TPM），默认 200000
+         */
+        public Builder tokensPerMinute(double tokensPerMinute) {
+            this.tokensPerMinute = tokensPerMinute;
+            return this;
+        }
+
+        /**
+         * 允许突发多长时间的配额，默认 10 秒
+         */
+        public Builder burst(Duration burst) {
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * 并发上限的初始值和范围，默认从 8 开始，在 1 ~ 256 之间调整
+         */
+        public Builder concurrency(int initialLimit, int minLimit, int maxLimit) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * 延迟超过最低延迟的多少倍时降低并发上限，默认 2
+         */
+        public Builder latencyTolerance(double latencyTolerance) {
+            this.latencyTolerance = latencyTolerance;
+            return this;
+        }
+
+        /**
+         * 收到 429 后暂停放行多久，默认 1 秒
+         */
+        public Builder backoff(Duration backoff) {
+            this.backoff = backoff;
+            return this;
+        }
+
+        /**
+         * 没有用 withPriority 指定时的排队超时，默认 60 秒
+         */
+        public Builder defaultTimeout(Duration defaultTimeout) {
+            this.defaultTimeout = defaultTimeout;
+            return this;
+        }
+
+        /**
+         * 收到 429 后重新排队的次数，默认 2
+         */
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * 输入 token 的估算器，例如 new OpenAiTokenCountEstimator(GPT_4_O_MINI)；默认按消息长度粗略估算
+         */
+        public Builder tokenCountEstimator(TokenCountEstimator estimator) {
+            this.estimator = estimator;
+            return this;
+        }
+
+        public AdaptiveRateLimiter build() {
+            if (requestsPerMinute <= 0 || tokensPerMinute <= 0) {
+                throw new IllegalArgumentException("requestsPerMinute and tokensPerMinute must be positive");
+            }
+            if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException("concurrency limits must satisfy 1 <= min <= initial <= max");
+            }
+            return new AdaptiveRateLimiter(this);
+        }
+    }
+}
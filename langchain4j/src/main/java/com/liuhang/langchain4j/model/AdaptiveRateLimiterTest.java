@@ -0,0 +1,265 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 没有限流时的 429 重试风暴 和 自适应限流对比，用一个有配额的假服务商代替 OpenAI
+ */
+public class AdaptiveRateLimiterTest {
+
+    /**
+     * 假服务商：每秒最多 requestsPerSecond 个请求、最多 maxConcurrency 个并发，超出返回 429；
+     * 基础延迟 100ms，并发超过一半后每多一个请求慢 10ms（服务端排队）
+     * mixedLengths 时回答长度在 10 ~ 500 个 token 之间随机，每个 token 再加 0.5ms 生成时间
+     */
+    static class FakeProvider implements ChatModel {
+
+        private final int requestsPerSecond;
+        private final int maxConcurrency;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong window = new AtomicLong();
+        private final AtomicInteger windowCount = new AtomicInteger();
+        final AtomicInteger accepted = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        private final boolean mixedLengths;
+
+        FakeProvider(int requestsPerSecond, int maxConcurrency) {
+            this(requestsPerSecond, maxConcurrency, false);
+        }
+
+        FakeProvider(int requestsPerSecond, int maxConcurrency, boolean mixedLengths) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.maxConcurrency = maxConcurrency;
+            this.mixedLengths = mixedLengths;
+        }
+
+        @Override
+        public ChatResponse doChat(ChatRequest chatRequest) {
+            long second = System.nanoTime() / 1_000_000_000L;
+            if (window.getAndSet(second) != second) {
+                windowCount.set(0);
+            }
+            int concurrent = inFlight.incrementAndGet();
+            try {
+                if (windowCount.incrementAndGet() > requestsPerSecond || concurrent > maxConcurrency) {
+                    rejected.incrementAndGet();
+                    throw new IllegalStateException("429 Too Many Requests");
+                }
+                accepted.incrementAndGet();
+                int outputTokens = mixedLengths ? ThreadLocalRandom.current().nextInt(10, 500) : 100;
+                Thread.sleep(100 + Math.max(0, concurrent - maxConcurrency / 2) * 10L + (mixedLengths ? outputTokens / 2 : 0));
+                return ChatResponse.builder()
+                        .aiMessage(AiMessage.from("Hello World"))
+                        .tokenUsage(new TokenUsage(20, outputTokens))
+                        .build();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    static ChatRequest request(int i) {
+        return ChatRequest.builder().messages(UserMessage.from("Which services do you provide? #" + i)).build();
+    }
+
+    /**
+     * 50 个线程各发 6 个请求：直接调用时按模型默认的习惯立即重试两次；经过限流器时按配额排队
+     */
+    @Test
+    public void retryStormVersusLimiter() {
+        FakeProvider direct = new FakeProvider(50, 20);
+        ChatModel naive = new ChatModel() {
+            @Override
+            public ChatResponse chat(ChatRequest chatRequest) {
+                for (int attempt = 0; ; attempt++) {
+                    try {
+                        return direct.chat(chatRequest);
+                    } catch (IllegalStateException e) {
+                        if (attempt >= 2) {
+                            throw e;
+                        }
+                    }
+                }
+            }
+        };
+        run("直接调用 + 立即重试", naive, direct);
+
+        FakeProvider provider = new FakeProvider(50, 20);
+        AdaptiveRateLimiter limiter = AdaptiveRateLimiter.builder()
+                .requestsPerMinute(50 * 60)
+                .tokensPerMinute(1_000_000)
+                .burst(Duration.ofSeconds(1))
+                .build();
+        run("自适应限流", limiter.chatModel(provider), provider);
+        System.out.println(limiter);
+    }
+
+    /**
+     * 长短回答混在一起、服务端没有排队：端到端延迟相差好几倍，但和同样长度的请求比并没有变慢，并发上限不应该被压到最低
+     */
+    @Test
+    public void mixedLengthsKeepTheLimit() {
+        FakeProvider provider = new FakeProvider(1000, 100, true);
+        AdaptiveRateLimiter limiter = AdaptiveRateLimiter.builder()
+                .requestsPerMinute(1000 * 60)
+                .tokensPerMinute(10_000_000)
+                .build();
+        run("长短混合", limiter.chatModel(provider), provider);
+        System.out.println(limiter);
+    }
+
+    /**
+     * 先排进 100 个低优先级请求，再来 10 个高优先级请求：高优先级的插到队首
+     */
+    @Test
+    public void priorityJumpsTheQueue() throws Exception {
+        FakeProvider provider = new FakeProvider(20, 20);
+        AdaptiveRateLimiter limiter = AdaptiveRateLimiter.builder()
+                .requestsPerMinute(20 * 60)
+                .burst(Duration.ofSeconds(1))
+                .concurrency(4, 1, 16)
+                .build();
+        ChatModel model = limiter.chatModel(provider);
+        ExecutorService pool = Executors.newFixedThreadPool(110);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Long>> low = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int n = i;
+            low.add(CompletableFuture.supplyAsync(() -> {
+                model.chat(request(n));
+                return (System.nanoTime() - start) / 1_000_000;
+            }, pool));
+        }
+        Thread.sleep(200);
+        List<CompletableFuture<Long>> high = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            high.add(CompletableFuture.supplyAsync(() -> limiter.withPriority(10, Duration.ofSeconds(30), () -> {
+                model.chat(request(n));
+                return (System.nanoTime() - start) / 1_000_000;
+            }), pool));
+        }
+        System.out.println("高优先级完成时间(ms): " + high.stream().map(CompletableFuture::join).toList());
+        System.out.println("低优先级最后完成(ms): " + low.stream().mapToLong(CompletableFuture::join).max().orElse(0));
+        System.out.println(limiter);
+        pool.shutdown();
+    }
+
+    /**
+     * 截止时间到了还没轮到的请求直接失败，不占服务商的配额
+     */
+    @Test
+    public void expiredRequestsDoNotReachProvider() {
+        FakeProvider provider = new FakeProvider(10, 20);
+        AdaptiveRateLimiter limiter = AdaptiveRateLimiter.builder()
+                .requestsPerMinute(10 * 60)
+                .burst(Duration.ofSeconds(1))
+                .build();
+        ChatModel model = limiter.chatModel(provider);
+        ExecutorService pool = Executors.newFixedThreadPool(50);
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            int n = i;
+            results.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    limiter.withPriority(0, Duration.ofSeconds(2), () -> model.chat(request(n)));
+                    return true;
+                } catch (IllegalStateException e) {
+                    return false;
+                }
+            }, pool));
+        }
+        long succeeded = results.stream().filter(CompletableFuture::join).count();
+        System.out.printf("成功 %d, 超时放弃 %d, 服务商收到 %d, 429 %d%n",
+                succeeded, limiter.expired(), provider.accepted.get() + provider.rejected.get(), provider.rejected.get());
+        pool.shutdown();
+    }
+
+    /**
+     * 流式模型在调用线程上直接抛出异常、阻塞模型抛出 Error：许可都要归还，否则并发名额很快被占满
+     */
+    @Test
+    public void synchronousFailuresReleasePermits() {
+        AdaptiveRateLimiter limiter = AdaptiveRateLimiter.builder()
+                .concurrency(2, 1, 2)
+                .defaultTimeout(Duration.ofMillis(200))
+                .build();
+        StreamingChatModel streaming = limiter.streamingChatModel(new StreamingChatModel() {
+            @Override
+            public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                throw new IllegalArgumentException("messages must not be empty");
+            }
+        });
+        ChatModel blocking = limiter.chatModel(new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest chatRequest) {
+                throw new StackOverflowError();
+            }
+        });
+
+        AtomicInteger errors = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            streaming.chat(request(i), new StreamingChatResponseHandler() {
+                @Override
+                public void onCompleteResponse(ChatResponse completeResponse) {
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    errors.incrementAndGet();
+                }
+            });
+            try {
+                blocking.chat(request(i));
+            } catch (StackOverflowError e) {
+                errors.incrementAndGet();
+            }
+        }
+        System.out.printf("20 次同步失败, 收到错误 %d 次, 排队超时 %d, 仍占用的许可 %d%n",
+                errors.get(), limiter.expired(), limiter.inFlight());
+    }
+
+    private static void run(String name, ChatModel model, FakeProvider provider) {
+        ExecutorService pool = Executors.newFixedThreadPool(50);
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            int n = i;
+            calls.add(CompletableFuture.runAsync(() -> {
+                try {
+                    model.chat(request(n));
+                } catch (IllegalStateException e) {
+                    failed.incrementAndGet();
+                }
+            }, pool));
+        }
+        calls.forEach(CompletableFuture::join);
+        System.out.printf("%s: 300 个请求, 成功 %d, 失败 %d, 服务商返回 429 %d 次, 耗时 %.0fms%n",
+                name, 300 - failed.get(), failed.get(), provider.rejected.get(), (System.nanoTime() - start) / 1e6);
+        pool.shutdown();
+    }
+}
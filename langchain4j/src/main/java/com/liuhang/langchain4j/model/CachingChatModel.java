@@ -0,0 +1,249 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.FinishReason;
+import org.mapdb.DB;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import static dev.langchain4j.data.message.ChatMessageDeserializer.messageFromJson;
+import static dev.langchain4j.data.message.ChatMessageSerializer.messageToJson;
+import static org.mapdb.Serializer.STRING;
+
+/**
+ * 精确匹配的响应缓存
+ *
+ * ConnectAIService.GreetingExpert.isGreeting、AIServiceResult 里的 SentimentAnalyzer / PriorityAnalyzer 这类分类服务，
+ * 线上反复收到同样的输入，每次都是一次完整的 LLM 往返。
+ *
+ * 包装任意 ChatModel，可以直接传给 AiServices.builder(...).chatModel(...)：
+ *      缓存键见 ChatRequestKeys，同样的请求（模型名、参数、消息都相同）得到同一个键
+ *      内存中按 LRU 淘汰，最多 maxEntries 条；每条在 ttl 后过期
+ *      配置了 MapDB 的 DB 时，未命中内存的请求再查一次持久层，重启后缓存仍然有效
+ * 只适合输出确定的调用（分类、抽取，temperature 设为 0）；闲聊类服务缓存后每次回答都会一样。
+ */
+public class CachingChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final DB db;
+    private final Map<String, String> persistent;
+
+    // 由 this 保护，按访问顺序排列
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder persistentHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder hitNanos = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+
+    private CachingChatModel(Builder builder) {
+        this.delegate = builder.delegate;
+        this.maxEntries = builder.maxEntries;
+        this.ttlMillis = builder.ttl.toMillis();
+        this.db = builder.db;
+        this.persistent = db == null ? null : db.hashMap("chat-response-cache", STRING, STRING).createOrOpen();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest chatRequest) {
+        long start = System.nanoTime();
+        String key = ChatRequestKeys.of(delegate.defaultRequestParameters(), chatRequest);
+        long now = System.currentTimeMillis();
+
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt <= now) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null && persistent != null) {
+            entry = loadPersistent(key, now);
+            if (entry != null) {
+                persistentHits.increment();
+                put(key, entry);
+            }
+        }
+        if (entry != null) {
+            hits.increment();
+            hitNanos.add(System.nanoTime() - start);
+            savedNanos.add(entry.latencyNanos);
+            return entry.response;
+        }
+
+        misses.increment();
+        long callStart = System.nanoTime();
+        ChatResponse response = delegate.chat(chatRequest);
+        if (response.aiMessage() != null) {
+            entry = new Entry(response, now + ttlMillis, System.nanoTime() - callStart);
+            put(key, entry);
+            if (persistent != null) {
+                storePersistent(key, entry);
+            }
+        }
+        return response;
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public double hitRate() {
+        long total = hits() + misses();
+        return total == 0 ? 0 : (double) hits() / total;
+    }
+
+    /**
+     * 命中时的平均耗时（微秒）
+     */
+    public double averageHitMicros() {
+        long hits = hits();
+        return hits == 0 ? 0 : hitNanos.sum() / 1000.0 / hits;
+    }
+
+    /**
+     * 命中的请求原本需要的模型调用耗时之和（毫秒）
+     */
+    public double savedMillis() {
+        return savedNanos.sum() / 1_000_000.0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        if (persistent != null) {
+            persistent.clear();
+            db.commit();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CachingChatModel{size=%d, hits=%d (persistent %d), misses=%d, hitRate=%.1f%%, avgHit=%.1fμs, saved=%.0fms}",
+                size(), hits(), persistentHits.sum(), misses(), hitRate() * 100, averageHitMicros(), savedMillis());
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        entries.put(key, entry);
+        if (entries.size() > maxEntries) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * 持久层的格式：过期时间,原调用耗时,结束原因,模型名 换行 AiMessage 的 JSON
+     */
+    private Entry loadPersistent(String key, long now) {
+        String value = persistent.get(key);
+        if (value == null) {
+            return null;
+        }
+        int newline = value.indexOf('\n');
+        String[] header = value.substring(0, newline).split(",", 4);
+        long expiresAt = Long.parseLong(header[0]);
+        if (expiresAt <= now) {
+            persistent.remove(key);
+            db.commit();
+            return null;
+        }
+        ChatResponse response = ChatResponse.builder()
+                .aiMessage((AiMessage) messageFromJson(value.substring(newline + 1)))
+                .finishReason(header[2].isEmpty() ? null : FinishReason.valueOf(header[2]))
+                .modelName(header[3].isEmpty() ? null : header[3])
+                .build();
+        return new Entry(response, expiresAt, Long.parseLong(header[1]));
+    }
+
+    private void storePersistent(String key, Entry entry) {
+        ChatResponse response = entry.response;
+        String header = entry.expiresAt + "," + entry.latencyNanos + ","
+                + (response.finishReason() == null ? "" : response.finishReason().name()) + ","
+                + (response.modelName() == null ? "" : response.modelName());
+        persistent.put(key, header + "\n" + messageToJson(response.aiMessage()));
+        db.commit();
+    }
+
+    private record Entry(ChatResponse response, long expiresAt, long latencyNanos) {
+    }
+
+    public static class Builder {
+
+        private ChatModel delegate;
+        private int maxEntries = 10_000;
+        private Duration ttl = Duration.ofHours(1);
+        private DB db;
+
+        public Builder chatModel(ChatModel delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * 内存中最多缓存多少条响应，默认 10000
+         */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * 缓存多久后过期，默认 1 小时
+         */
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * 持久层，例如 DBMaker.fileDB("chat-response-cache.db").transactionEnable().make()
+         */
+        public Builder persistent(DB db) {
+            this.db = db;
+            return this;
+        }
+
+        public CachingChatModel build() {
+            if (delegate == null) {
+                throw new IllegalArgumentException("chatModel is required");
+            }
+            if (maxEntries < 1 || ttl.isNegative() || ttl.isZero()) {
+                throw new IllegalArgumentException("maxEntries and ttl must be positive");
+            }
+            return new CachingChatModel(this);
+        }
+    }
+}
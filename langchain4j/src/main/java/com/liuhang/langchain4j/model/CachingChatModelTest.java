@@ -0,0 +1,115 @@
+package com.liuhang.langchain4j.model;
+
+import com.liuhang.langchain4j.ApiKeys;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.UserMessage;
+import org.junit.jupiter.api.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 精确匹配缓存对重复分类请求的效果
+ */
+public class CachingChatModelTest {
+
+    interface GreetingExpert {
+
+        @UserMessage("Is the following text a greeting? Text: {{it}}")
+        boolean isGreeting(String text);
+    }
+
+    /**
+     * 假的分类模型：每次调用耗时 200ms
+     */
+    static ChatModel slowClassifier(AtomicInteger calls) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest chatRequest) {
+                calls.incrementAndGet();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                String text = chatRequest.messages().get(chatRequest.messages().size() - 1).toString();
+                return ChatResponse.builder()
+                        .aiMessage(AiMessage.from(text.contains("Hello") ? "true" : "false"))
+                        .build();
+            }
+        };
+    }
+
+    /**
+     * 20 种输入反复出现 200 次：只有前 20 次真正调用模型
+     */
+    @Test
+    public void repeatedInputs() {
+        AtomicInteger calls = new AtomicInteger();
+        CachingChatModel model = CachingChatModel.builder()
+                .chatModel(slowClassifier(calls))
+                .maxEntries(1000)
+                .build();
+
+        List<String> inputs = List.of("Hello", "Which services do you provide?", "I want a refund", "Good morning");
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            model.chat(inputs.get(random.nextInt(inputs.size())) + " #" + random.nextInt(5));
+        }
+        System.out.println("模型调用次数: " + calls.get());
+        System.out.println(model);
+    }
+
+    /**
+     * 持久层：换一个新的缓存实例（模拟重启）仍然命中
+     */
+    @Test
+    public void persistentTier() {
+        DB db = DBMaker.memoryDB().make();
+        AtomicInteger calls = new AtomicInteger();
+
+        CachingChatModel first = CachingChatModel.builder().chatModel(slowClassifier(calls)).persistent(db).build();
+        first.chat("Hello");
+
+        CachingChatModel restarted = CachingChatModel.builder().chatModel(slowClassifier(calls)).persistent(db).build();
+        System.out.println(restarted.chat("Hello") + ", 模型调用次数: " + calls.get());
+        System.out.println(restarted);
+    }
+
+    @Test
+    public void ttl() throws InterruptedException {
+        AtomicInteger calls = new AtomicInteger();
+        CachingChatModel model = CachingChatModel.builder()
+                .chatModel(slowClassifier(calls))
+                .ttl(Duration.ofMillis(300))
+                .build();
+        model.chat("Hello");
+        model.chat("Hello");
+        Thread.sleep(400);
+        model.chat("Hello");
+        System.out.println("模型调用次数: " + calls.get() + " (期望 2)");
+    }
+
+    /**
+     * 实际使用：直接传给 AiServices
+     */
+    @Test
+    public void withAiServices() {
+        CachingChatModel model = CachingChatModel.builder()
+                .chatModel(ApiKeys.model)
+                .build();
+        GreetingExpert greetingExpert = AiServices.create(GreetingExpert.class, model);
+        for (int i = 0; i < 3; i++) {
+            System.out.println(greetingExpert.isGreeting("Hello"));
+        }
+        System.out.println(model);
+    }
+}
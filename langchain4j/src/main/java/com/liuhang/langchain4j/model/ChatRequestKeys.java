@@ -0,0 +1,46 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
+
+/**
+ * 请求的规范化键：模型名 + 请求参数 + 全部消息（ChatMessageSerializer 的 JSON）拼起来的 SHA-256，同样的请求得到同一个键
+ */
+final class ChatRequestKeys {
+
+    private ChatRequestKeys() {
+    }
+
+    /**
+     * 模型名和参数取自合并了默认参数之后的请求，换模型或改参数都会得到不同的键
+     */
+    static String of(ChatRequestParameters defaults, ChatRequest chatRequest) {
+        ChatRequestParameters parameters = defaults.overrideWith(chatRequest.parameters());
+        StringBuilder sb = new StringBuilder()
+                .append(parameters.modelName()).append('\u0001')
+                .append(parameters.temperature()).append('\u0001')
+                .append(parameters.topP()).append('\u0001')
+                .append(parameters.topK()).append('\u0001')
+                .append(parameters.frequencyPenalty()).append('\u0001')
+                .append(parameters.presencePenalty()).append('\u0001')
+                .append(parameters.maxOutputTokens()).append('\u0001')
+                .append(parameters.stopSequences()).append('\u0001')
+                .append(parameters.toolSpecifications()).append('\u0001')
+                .append(parameters.toolChoice()).append('\u0001')
+                .append(parameters.responseFormat()).append('\u0001')
+                .append(messagesToJson(chatRequest.messages()));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 合并同时在途的相同请求（single-flight）
+ *
+ * 一波用户同时发来同样的 "Hello" 打到 GreetingExpert，或者同一段文本的 Translator.translate，
+ * 每个请求都会单独发给模型提供方。
+ *
+ * 这里按 ChatRequestKeys 判断请求是否相同：第一个请求真正调用模型，在它返回之前到达的相同请求
+ * 都挂在它的 CompletableFuture 上等同一个结果（包括异常），返回之后的请求重新调用。
+ * 不做缓存，只合并“同时”的请求；和 CachingChatModel 一起用时把它放在缓存里面，缓存未命中的并发请求也只会调用一次。
+ */
+public class CoalescingChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final Map<String, CompletableFuture<ChatResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder upstreamCalls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public CoalescingChatModel(ChatModel delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest chatRequest) {
+        String key = ChatRequestKeys.of(delegate.defaultRequestParameters(), chatRequest);
+        CompletableFuture<ChatResponse> mine = new CompletableFuture<>();
+        CompletableFuture<ChatResponse> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        upstreamCalls.increment();
+        try {
+            ChatResponse response = delegate.chat(chatRequest);
+            mine.complete(response);
+            return response;
+        } catch (Throwable e) {
+            // Error 也要通知等在 join() 上的调用方，否则它们永远等下去
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    public long upstreamCalls() {
+        return upstreamCalls.sum();
+    }
+
+    /**
+     * 挂在别的请求上、没有调用模型的请求数
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CoalescingChatModel{upstreamCalls=" + upstreamCalls() + ", coalesced=" + coalesced() + "}";
+    }
+}
@@ -0,0 +1,240 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.agent.tool.ToolExecutionRequest;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialThinkingContext;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.PartialToolCallContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * N 个并发的相同请求只产生 1 次上游调用
+ */
+public class CoalescingChatModelTest {
+
+    @Test
+    public void concurrentCallersShareOneCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ChatModel slow = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest chatRequest) {
+                calls.incrementAndGet();
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ChatResponse.builder().aiMessage(AiMessage.from("true")).build();
+            }
+        };
+        CoalescingChatModel model = new CoalescingChatModel(slow);
+
+        int callers = 100;
+        CountDownLatch start = new CountDownLatch(1);
+        Set<String> answers = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        for (int i = 0; i < callers; i++) {
+            executor.submit(() -> {
+                start.await();
+                answers.add(model.chat("Is the following text a greeting? Text: Hello"));
+                return null;
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        System.out.printf("%d 个调用方, 上游调用 %d 次, 结果 %s, 耗时 %dms%n",
+                callers, calls.get(), answers, (System.nanoTime() - begin) / 1_000_000);
+        System.out.println(model);
+        if (calls.get() != 1) {
+            throw new AssertionError("expected 1 upstream call but was " + calls.get());
+        }
+    }
+
+    /**
+     * 流式：中途加入的调用方也能收到完整的文本
+     */
+    @Test
+    public void streamingLateJoiners() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        StreamingChatModel slow = new StreamingChatModel() {
+            @Override
+            public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                calls.incrementAndGet();
+                new Thread(() -> {
+                    StringBuilder text = new StringBuilder();
+                    for (String token : List.of("Why ", "did ", "the ", "chicken ", "cross ", "the ", "road?")) {
+                        try {
+                            Thread.sleep(50);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        text.append(token);
+                        handler.onPartialResponse(token);
+                    }
+                    handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from(text.toString())).build());
+                }).start();
+            }
+        };
+        CoalescingStreamingChatModel model = new CoalescingStreamingChatModel(slow);
+
+        int callers = 20;
+        CountDownLatch done = new CountDownLatch(callers);
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < callers; i++) {
+            // 每 10ms 加入一个调用方，后面的调用方是在流中途加入的
+            Thread.sleep(10);
+            StringBuilder text = new StringBuilder();
+            model.chat("Tell me a joke", new StreamingChatResponseHandler() {
+                @Override
+                public void onPartialResponse(String partialResponse) {
+                    text.append(partialResponse);
+                }
+
+                @Override
+                public void onCompleteResponse(ChatResponse completeResponse) {
+                    received.add(text.toString());
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    error.printStackTrace();
+                    done.countDown();
+                }
+            });
+        }
+        done.await(10, TimeUnit.SECONDS);
+        System.out.println("上游调用 " + calls.get() + " 次, 收到的文本: " + received);
+        System.out.println(model);
+        if (calls.get() != 1 || received.size() != 1) {
+            throw new AssertionError("expected 1 upstream call and 1 distinct text");
+        }
+    }
+
+    /**
+     * 流式：思考过程和工具调用也会转发和补发；一个调用方取消不影响其他调用方，全部取消后才取消上游
+     */
+    @Test
+    public void streamingToolCallsAndCancellation() throws Exception {
+        for (int cancelling : new int[]{1, 2}) {
+            AtomicBoolean upstreamCancelled = new AtomicBoolean();
+            StreamingChatModel model = new StreamingChatModel() {
+                @Override
+                public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+                    StreamingHandle handle = new StreamingHandle() {
+                        @Override
+                        public void cancel() {
+                            upstreamCancelled.set(true);
+                        }
+
+                        @Override
+                        public boolean isCancelled() {
+                            return upstreamCancelled.get();
+                        }
+                    };
+                    new Thread(() -> {
+                        handler.onPartialThinking(new PartialThinking("The user wants the weather."), new PartialThinkingContext(handle));
+                        handler.onPartialToolCall(PartialToolCall.builder()
+                                .index(0).id("call-1").name("getWeather").partialArguments("{\"city\":").build(), new PartialToolCallContext(handle));
+                        handler.onCompleteToolCall(new CompleteToolCall(0, ToolExecutionRequest.builder()
+                                .id("call-1").name("getWeather").arguments("{\"city\":\"Beijing\"}").build()));
+                        for (int i = 0; i < 6 && !handle.isCancelled(); i++) {
+                            sleep(30);
+                            handler.onPartialResponse(new PartialResponse("token" + i + " "), new PartialResponseContext(handle));
+                        }
+                        if (!handle.isCancelled()) {
+                            handler.onCompleteResponse(ChatResponse.builder().aiMessage(AiMessage.from("done")).build());
+                        }
+                    }).start();
+                }
+            };
+            CoalescingStreamingChatModel coalescing = new CoalescingStreamingChatModel(model);
+
+            CountDownLatch finished = new CountDownLatch(2 - cancelling + 1);
+            List<StringBuilder> logs = new ArrayList<>();
+            for (int caller = 0; caller < 2; caller++) {
+                boolean cancels = caller < cancelling;
+                StringBuilder log = new StringBuilder();
+                logs.add(log);
+                coalescing.chat("What is the weather in Beijing?", new StreamingChatResponseHandler() {
+                    int partials;
+
+                    @Override
+                    public void onPartialThinking(PartialThinking partialThinking) {
+                        log.append("[thinking]");
+                    }
+
+                    @Override
+                    public void onPartialToolCall(PartialToolCall partialToolCall) {
+                        log.append("[partial ").append(partialToolCall.name()).append("]");
+                    }
+
+                    @Override
+                    public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+                        log.append("[call ").append(completeToolCall.toolExecutionRequest().arguments()).append("]");
+                    }
+
+                    @Override
+                    public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+                        log.append(partialResponse.text());
+                        if (cancels && ++partials == 2) {
+                            context.streamingHandle().cancel();
+                            log.append("[cancelled]");
+                            finished.countDown();
+                        }
+                    }
+
+                    @Override
+                    public void onCompleteResponse(ChatResponse completeResponse) {
+                        log.append("[complete]");
+                        finished.countDown();
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        log.append("[error]");
+                        finished.countDown();
+                    }
+                });
+                // 第二个调用方在流中途加入，补发前面的事件
+                sleep(50);
+            }
+            finished.await(5, TimeUnit.SECONDS);
+            sleep(100);
+            System.out.println(cancelling + " 个调用方取消, 上游被取消: " + upstreamCancelled.get());
+            logs.forEach(log -> System.out.println("  " + log));
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
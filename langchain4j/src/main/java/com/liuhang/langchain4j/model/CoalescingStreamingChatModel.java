@@ -0,0 +1,309 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.CompleteToolCall;
+import dev.langchain4j.model.chat.response.PartialResponse;
+import dev.langchain4j.model.chat.response.PartialResponseContext;
+import dev.langchain4j.model.chat.response.PartialThinking;
+import dev.langchain4j.model.chat.response.PartialThinkingContext;
+import dev.langchain4j.model.chat.response.PartialToolCall;
+import dev.langchain4j.model.chat.response.PartialToolCallContext;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.model.chat.response.StreamingHandle;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 流式版本的 CoalescingChatModel
+ *
+ * 第一个请求真正发起流式调用，之后到达的相同请求挂到同一个流上：
+ * 先补发已经生成的部分（按原来的分块），再和其他调用方一起收后续的 token，最后收到同一个完整响应或同一个错误。
+ *      文本、思考过程、工具调用的分块和完整的工具调用都会转发和补发，带 context 的回调拿到的是各自调用方的 StreamingHandle
+ *      回调不在流的锁里执行：每个调用方有自己的事件队列，保证顺序，某个 handler 处理得慢会拖慢同一个流上的其他调用方
+ *      某个调用方 cancel() 后只是不再收到回调；所有调用方都取消了才取消上游，之后相同的请求重新发起
+ */
+public class CoalescingStreamingChatModel implements StreamingChatModel {
+
+    private final StreamingChatModel delegate;
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder upstreamCalls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public CoalescingStreamingChatModel(StreamingChatModel delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void chat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        String key = ChatRequestKeys.of(delegate.defaultRequestParameters(), chatRequest);
+        while (true) {
+            Flight flight = new Flight(key);
+            Flight existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                flight.join(handler);
+                upstreamCalls.increment();
+                try {
+                    delegate.chat(chatRequest, flight);
+                } catch (RuntimeException e) {
+                    flight.onError(e);
+                }
+                return;
+            }
+            // 刚好结束的流会拒绝新的调用方，这时重新发起一次
+            if (existing.join(handler)) {
+                coalesced.increment();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return delegate.defaultRequestParameters();
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+
+    public long upstreamCalls() {
+        return upstreamCalls.sum();
+    }
+
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CoalescingStreamingChatModel{upstreamCalls=" + upstreamCalls() + ", coalesced=" + coalesced() + "}";
+    }
+
+    /**
+     * 一次上游调用，把回调转发给所有调用方
+     */
+    private final class Flight implements StreamingChatResponseHandler {
+
+        private final String key;
+        // 以下字段由 this 保护
+        private final List<Member> members = new ArrayList<>();
+        private final List<Event> history = new ArrayList<>();
+        private StreamingHandle upstream;
+        private boolean done;
+        // 所有调用方都取消了，但当时还没拿到上游的 StreamingHandle
+        private boolean abandoned;
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        boolean join(StreamingChatResponseHandler handler) {
+            Member member = new Member(this, handler);
+            synchronized (this) {
+                if (done) {
+                    return false;
+                }
+                for (Event event : history) {
+                    member.enqueue(event);
+                }
+                members.add(member);
+            }
+            member.drain();
+            return true;
+        }
+
+        @Override
+        public void onPartialResponse(String partialResponse) {
+            publish(m -> m.handler.onPartialResponse(new PartialResponse(partialResponse), new PartialResponseContext(m)), null);
+        }
+
+        @Override
+        public void onPartialResponse(PartialResponse partialResponse, PartialResponseContext context) {
+            publish(m -> m.handler.onPartialResponse(partialResponse, new PartialResponseContext(m)), context.streamingHandle());
+        }
+
+        @Override
+        public void onPartialThinking(PartialThinking partialThinking) {
+            publish(m -> m.handler.onPartialThinking(partialThinking, new PartialThinkingContext(m)), null);
+        }
+
+        @Override
+        public void onPartialThinking(PartialThinking partialThinking, PartialThinkingContext context) {
+            publish(m -> m.handler.onPartialThinking(partialThinking, new PartialThinkingContext(m)), context.streamingHandle());
+        }
+
+        @Override
+        public void onPartialToolCall(PartialToolCall partialToolCall) {
+            publish(m -> m.handler.onPartialToolCall(partialToolCall, new PartialToolCallContext(m)), null);
+        }
+
+        @Override
+        public void onPartialToolCall(PartialToolCall partialToolCall, PartialToolCallContext context) {
+            publish(m -> m.handler.onPartialToolCall(partialToolCall, new PartialToolCallContext(m)), context.streamingHandle());
+        }
+
+        @Override
+        public void onCompleteToolCall(CompleteToolCall completeToolCall) {
+            publish(m -> m.handler.onCompleteToolCall(completeToolCall), null);
+        }
+
+        @Override
+        public void onCompleteResponse(ChatResponse completeResponse) {
+            finish(m -> m.handler.onCompleteResponse(completeResponse));
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            finish(m -> m.handler.onError(error));
+        }
+
+        /**
+         * 记进补发列表并放进每个调用方的队列，然后在锁外投递
+         */
+        private void publish(Event event, StreamingHandle handle) {
+            List<Member> targets;
+            synchronized (this) {
+                if (handle != null) {
+                    upstream = handle;
+                }
+                if (done) {
+                    if (!abandoned || handle == null) {
+                        return;
+                    }
+                    targets = null;
+                } else {
+                    history.add(event);
+                    targets = new ArrayList<>(members);
+                    for (Member member : targets) {
+                        member.enqueue(event);
+                    }
+                }
+            }
+            if (targets == null) {
+                handle.cancel();
+                return;
+            }
+            for (Member member : targets) {
+                member.drain();
+            }
+        }
+
+        /**
+         * 先从在途表里移除并拒绝新的调用方，再在锁外通知，handler 在回调里再发起相同的请求也不会挂回这个已结束的流
+         */
+        private void finish(Event event) {
+            inFlight.remove(key, this);
+            List<Member> targets;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                targets = new ArrayList<>(members);
+                for (Member member : targets) {
+                    member.enqueue(event);
+                }
+            }
+            for (Member member : targets) {
+                member.drain();
+            }
+        }
+
+        /**
+         * 最后一个调用方取消时取消上游
+         */
+        private void leave(Member member) {
+            StreamingHandle handle;
+            synchronized (this) {
+                if (!members.remove(member) || done || !members.isEmpty()) {
+                    return;
+                }
+                done = true;
+                handle = upstream;
+                abandoned = handle == null;
+            }
+            inFlight.remove(key, this);
+            if (handle != null) {
+                handle.cancel();
+            }
+        }
+    }
+
+    private interface Event {
+        void deliver(Member member);
+    }
+
+    /**
+     * 一个调用方：按顺序投递自己队列里的事件，同一时刻只有一个线程在投递
+     */
+    private static final class Member implements StreamingHandle {
+
+        private final Flight flight;
+        private final StreamingChatResponseHandler handler;
+        // 以下字段由 this 保护
+        private final ArrayDeque<Event> queue = new ArrayDeque<>();
+        private boolean draining;
+        private volatile boolean cancelled;
+
+        Member(Flight flight, StreamingChatResponseHandler handler) {
+            this.flight = flight;
+            this.handler = handler;
+        }
+
+        synchronized void enqueue(Event event) {
+            queue.add(event);
+        }
+
+        void drain() {
+            synchronized (this) {
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            try {
+                while (true) {
+                    Event event;
+                    synchronized (this) {
+                        event = queue.poll();
+                        if (event == null) {
+                            draining = false;
+                            return;
+                        }
+                    }
+                    if (!cancelled) {
+                        event.deliver(this);
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    draining = false;
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            flight.leave(this);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.liuhang.langchain4j.model;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * 最近 N 次耗时的滑动窗口，用来算 p50 / p95 / p99
+ *
+ * 记录只是往环形数组里写一个 long；算分位数时复制一份排序，窗口很小（默认 1024），
+ * 适合打印统计或者每隔一段时间取一次阈值，不适合每个请求都算。
+ */
+public class LatencyStats {
+
+    private final long[] samples;
+    private int next;
+    private long count;
+    private long totalNanos;
+
+    public LatencyStats() {
+        this(1024);
+    }
+
+    /**
+     * @param window 保留最近多少次耗时
+     */
+    public LatencyStats(int window) {
+        this.samples = new long[window];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count++;
+        totalNanos += nanos;
+    }
+
+    /**
+     * 窗口内的分位数，还没有记录时返回 Duration.ZERO
+     *
+     * @param quantile 0 ~ 1，例如 0.99
+     */
+    public Duration percentile(double quantile) {
+        long[] sorted;
+        synchronized (this) {
+            int size = (int) Math.min(count, samples.length);
+            if (size == 0) {
+                return Duration.ZERO;
+            }
+            sorted = Arrays.copyOf(samples, size);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return Duration.ofNanos(sorted[Math.max(0, Math.min(index, sorted.length - 1))]);
+    }
+
+    /**
+     * 全部记录（不只是窗口内）的次数
+     */
+    public synchronized long count() {
+        return count;
+    }
+
+    public synchronized Duration mean() {
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos / count);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("p50=%dms, p99=%dms", percentile(0.5).toMillis(), percentile(0.99).toMillis());
+    }
+}
@@ -0,0 +1,325 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.model.chat.ChatModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 短分类请求的微批处理
+ *
+ * GreetingExpert.isGreeting、SentimentAnalyzer、PriorityAnalyzer 每次只问一条很短的文本，
+ * 大部分开销花在每个请求固定的往返和提示词上。
+ *
+ * 和 GroupCommitter 一样攒批：
+ *      调用方 submit(text) 拿到一个 CompletableFuture，后台线程在 攒够 maxBatchSize 条 或 第一条已等待 maxDelay 时发出一批
+ *      一批只发一个提示词，要求模型按 "序号: 答案" 每行回答一条，解析后把结果分发回各自的 future
+ *      回答的行数、序号或答案不合法时，这一批退回为逐条调用原来的 AI 服务方法（single）
+ * 单条的批次直接走 single。批次在线程池里并行发出，攒批线程不会被模型调用阻塞。
+ * 增加的延迟最多 maxDelay，适合吞吐量比单次延迟更重要的场景。
+ */
+public class MicroBatcher<R> implements AutoCloseable {
+
+    private static final Pattern ANSWER_LINE = Pattern.compile("^\\s*(\\d+)\\s*[:.)]\\s*(.+?)\\s*$");
+
+    private final ChatModel model;
+    private final String question;
+    private final List<String> choices;
+    private final Function<String, R> answerParser;
+    private final Function<String, R> single;
+    private final long maxDelayNanos;
+    private final int maxBatchSize;
+
+    private final Object lock = new Object();
+    private final Thread batcher;
+    private final ExecutorService executor;
+
+    // 以下字段都由 lock 保护
+    private List<Pending<R>> pending = new ArrayList<>();
+    private long firstPendingAt;
+    private boolean closed;
+
+    // 统计，由 lock 保护
+    private long batchCount;
+    private long itemCount;
+    private long fallbackCount;
+
+    private MicroBatcher(ChatModel model, String question, List<String> choices, Function<String, R> answerParser,
+                         Function<String, R> single, Duration maxDelay, int maxBatchSize) {
+        this.model = model;
+        this.question = question;
+        this.choices = choices;
+        this.answerParser = answerParser;
+        this.single = single;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "micro-batch-call");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batcher = new Thread(this::batchLoop, "micro-batcher");
+        this.batcher.setDaemon(true);
+        this.batcher.start();
+    }
+
+    /**
+     * 是非题，例如 GreetingExpert：
+     * MicroBatcher.booleans(model, "Is the text a greeting?", greetingExpert::isGreeting, Duration.ofMillis(5), 32)
+     *
+     * @param single 原来的 AI 服务方法，批量回答解析失败时逐条调用
+     */
+    public static MicroBatcher<Boolean> booleans(ChatModel model, String question, Function<String, Boolean> single,
+                                                 Duration maxDelay, int maxBatchSize) {
+        return new MicroBatcher<>(model, question, List.of("true", "false"), MicroBatcher::parseBoolean,
+                single, maxDelay, maxBatchSize);
+    }
+
+    /**
+     * 枚举分类，例如 PriorityAnalyzer：
+     * MicroBatcher.enums(model, Priority.class, "What is the priority of the issue?", priorityAnalyzer::analyzePriority, ...)
+     */
+    public static <E extends Enum<E>> MicroBatcher<E> enums(ChatModel model, Class<E> type, String question, Function<String, E> single,
+                                                           Duration maxDelay, int maxBatchSize) {
+        List<String> choices = Arrays.stream(type.getEnumConstants()).map(Enum::name).collect(Collectors.toList());
+        return new MicroBatcher<>(model, question, choices,
+                answer -> Enum.valueOf(type, answer.toUpperCase(Locale.ROOT)), single, maxDelay, maxBatchSize);
+    }
+
+    public CompletableFuture<R> submit(String text) {
+        Pending<R> item = new Pending<>(text, new CompletableFuture<>());
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("MicroBatcher is closed");
+            }
+            if (pending.isEmpty()) {
+                firstPendingAt = System.nanoTime();
+            }
+            pending.add(item);
+            lock.notifyAll();
+        }
+        return item.future;
+    }
+
+    /**
+     * 同步调用，签名和原来的 AI 服务方法一致，可以直接当作 GreetingExpert 的实现：batcher::classify
+     */
+    public R classify(String text) {
+        try {
+            return submit(text).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 发出剩余的请求并停止攒批线程
+     * 线程池关闭后仍在进行的批次如果要退回逐条调用，就在批次自己的线程里逐条执行，future 总会完成
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            batcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdown();
+    }
+
+    public long batchCount() {
+        synchronized (lock) {
+            return batchCount;
+        }
+    }
+
+    public double averageBatchSize() {
+        synchronized (lock) {
+            return batchCount == 0 ? 0 : (double) itemCount / batchCount;
+        }
+    }
+
+    /**
+     * 解析失败、退回逐条调用的批次数
+     */
+    public long fallbackCount() {
+        synchronized (lock) {
+            return fallbackCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MicroBatcher{batches=%d, avgBatchSize=%.1f, fallbacks=%d}",
+                batchCount(), averageBatchSize(), fallbackCount());
+    }
+
+    private void batchLoop() {
+        while (true) {
+            List<Pending<R>> batch;
+            synchronized (lock) {
+                try {
+                    while (pending.isEmpty() && !closed) {
+                        lock.wait();
+                    }
+                    // 攒批：直到 批次已满 / 等待超时 / 关闭
+                    long remaining;
+                    while (pending.size() < maxBatchSize && !closed
+                            && (remaining = firstPendingAt + maxDelayNanos - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                if (pending.isEmpty()) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                if (pending.size() <= maxBatchSize) {
+                    batch = pending;
+                    pending = new ArrayList<>();
+                } else {
+                    batch = new ArrayList<>(pending.subList(0, maxBatchSize));
+                    pending = new ArrayList<>(pending.subList(maxBatchSize, pending.size()));
+                    firstPendingAt = System.nanoTime();
+                }
+                batchCount++;
+                itemCount += batch.size();
+            }
+            execute(() -> dispatch(batch));
+        }
+    }
+
+    private void dispatch(List<Pending<R>> batch) {
+        try {
+            if (batch.size() == 1) {
+                callSingle(batch.get(0));
+                return;
+            }
+            List<R> results;
+            try {
+                results = parse(model.chat(prompt(batch)), batch.size());
+            } catch (RuntimeException e) {
+                results = null;
+            }
+            if (results == null) {
+                synchronized (lock) {
+                    fallbackCount++;
+                }
+                for (Pending<R> item : batch) {
+                    execute(() -> callSingle(item));
+                }
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(results.get(i));
+            }
+        } catch (Throwable e) {
+            // Error 等意外异常也要让调用方返回，不能让 classify 一直等下去；已经完成的 future 不受影响
+            for (Pending<R> item : batch) {
+                item.future.completeExceptionally(e);
+            }
+            throw e;
+        }
+    }
+
+    private void callSingle(Pending<R> item) {
+        try {
+            item.future.complete(single.apply(item.text));
+        } catch (Throwable e) {
+            item.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * close() 之后线程池不再接受任务，这时在当前线程里直接执行
+     */
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private String prompt(List<Pending<R>> batch) {
+        StringBuilder sb = new StringBuilder()
+                .append(question).append('\n')
+                .append("Answer this question for each of the following ").append(batch.size()).append(" texts.\n")
+                .append("Reply with exactly ").append(batch.size()).append(" lines and nothing else. ")
+                .append("Line i must be \"i: <answer>\" where <answer> is one of: ").append(String.join(", ", choices)).append(".\n\n");
+        for (int i = 0; i < batch.size(); i++) {
+            // 文本里的换行会打乱编号，统一换成空格
+            sb.append(i + 1).append(". ").append(batch.get(i).text.replaceAll("\\s+", " ")).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 每个序号恰好出现一次且答案都合法才算成功，否则返回 null
+     */
+    private List<R> parse(String answer, int size) {
+        List<R> results = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            results.add(null);
+        }
+        int parsed = 0;
+        for (String line : answer.split("\\R")) {
+            Matcher matcher = ANSWER_LINE.matcher(line);
+            if (!matcher.matches()) {
+                continue;
+            }
+            int index = Integer.parseInt(matcher.group(1)) - 1;
+            if (index < 0 || index >= size || results.get(index) != null) {
+                return null;
+            }
+            R result;
+            try {
+                result = answerParser.apply(matcher.group(2).replaceAll("[\"'`*.]", ""));
+            } catch (RuntimeException e) {
+                return null;
+            }
+            if (result == null) {
+                return null;
+            }
+            results.set(index, result);
+            parsed++;
+        }
+        return parsed == size ? results : null;
+    }
+
+    private static Boolean parseBoolean(String answer) {
+        return switch (answer.toLowerCase(Locale.ROOT)) {
+            case "true", "yes" -> true;
+            case "false", "no" -> false;
+            default -> null;
+        };
+    }
+
+    private record Pending<R>(String text, CompletableFuture<R> future) {
+    }
+}
@@ -0,0 +1,157 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 逐条调用和微批处理的模型调用次数、耗时对比
+ */
+public class MicroBatcherTest {
+
+    interface GreetingExpert {
+
+        boolean isGreeting(String text);
+    }
+
+    private static final Pattern ITEM = Pattern.compile("(?m)^(\\d+)\\. (.*)$");
+
+    /**
+     * 假模型：每次调用耗时 300ms，按编号逐行回答
+     */
+    static ChatModel fakeBatchModel(AtomicInteger calls, boolean garbled) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest chatRequest) {
+                calls.incrementAndGet();
+                sleep(300);
+                if (garbled) {
+                    return ChatResponse.builder().aiMessage(AiMessage.from("Sure! Here are the answers: mostly greetings.")).build();
+                }
+                String prompt = ((UserMessage) chatRequest.messages().get(0)).singleText();
+                StringBuilder answer = new StringBuilder();
+                Matcher matcher = ITEM.matcher(prompt);
+                while (matcher.find()) {
+                    answer.append(matcher.group(1)).append(": ").append(isGreeting(matcher.group(2))).append('\n');
+                }
+                return ChatResponse.builder().aiMessage(AiMessage.from(answer.toString())).build();
+            }
+        };
+    }
+
+    static boolean isGreeting(String text) {
+        return text.toLowerCase().startsWith("hello") || text.toLowerCase().startsWith("hi");
+    }
+
+    @Test
+    public void throughput() {
+        AtomicInteger singleCalls = new AtomicInteger();
+        GreetingExpert single = text -> {
+            singleCalls.incrementAndGet();
+            sleep(300);
+            return isGreeting(text);
+        };
+
+        AtomicInteger batchCalls = new AtomicInteger();
+        MicroBatcher<Boolean> batcher = MicroBatcher.booleans(fakeBatchModel(batchCalls, false),
+                "Is the text a greeting?", single::isGreeting, Duration.ofMillis(5), 32);
+        GreetingExpert batched = batcher::classify;
+
+        run("逐条调用", single, singleCalls);
+        singleCalls.set(0);
+        run("微批处理", batched, batchCalls);
+        System.out.println(batcher + ", 逐条兜底调用: " + singleCalls.get());
+        batcher.close();
+    }
+
+    /**
+     * 模型没有按格式回答时，整批退回逐条调用
+     */
+    @Test
+    public void fallback() {
+        AtomicInteger singleCalls = new AtomicInteger();
+        Function<String, Boolean> single = text -> {
+            singleCalls.incrementAndGet();
+            return isGreeting(text);
+        };
+        MicroBatcher<Boolean> batcher = MicroBatcher.booleans(fakeBatchModel(new AtomicInteger(), true),
+                "Is the text a greeting?", single, Duration.ofMillis(20), 8);
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (String text : List.of("Hello", "hi there", "Which services do you provide?", "I want a refund")) {
+            futures.add(batcher.submit(text));
+        }
+        System.out.println(futures.stream().map(CompletableFuture::join).toList() + ", 逐条调用 " + singleCalls.get() + " 次");
+        System.out.println(batcher);
+        batcher.close();
+    }
+
+    /**
+     * 批次还在等模型回答时就 close()：回答解析失败后的逐条调用不能因为线程池已关闭而丢掉
+     */
+    @Test
+    public void closeWhileFallingBack() throws Exception {
+        MicroBatcher<Boolean> batcher = MicroBatcher.booleans(fakeBatchModel(new AtomicInteger(), true),
+                "Is the text a greeting?", MicroBatcherTest::isGreeting, Duration.ofMillis(5), 8);
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (String text : List.of("Hello", "hi there", "Which services do you provide?", "I want a refund")) {
+            futures.add(batcher.submit(text));
+        }
+        Thread.sleep(50);
+        batcher.close();
+        List<Boolean> results = new ArrayList<>();
+        for (CompletableFuture<Boolean> future : futures) {
+            results.add(future.get(5, TimeUnit.SECONDS));
+        }
+        System.out.println("close() 之后完成的结果: " + results + ", " + batcher);
+    }
+
+    /**
+     * 200 条文本，50 个并发调用方
+     */
+    private static void run(String name, GreetingExpert expert, AtomicInteger calls) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            texts.add(i % 3 == 0 ? "Hello #" + i : "Question #" + i + ": where is my order?");
+        }
+        long start = System.nanoTime();
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(50);
+        for (String text : texts) {
+            futures.add(CompletableFuture.supplyAsync(() -> expert.isGreeting(text), executor));
+        }
+        int correct = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            if (futures.get(i).join() == isGreeting(texts.get(i))) {
+                correct++;
+            }
+        }
+        executor.shutdown();
+        System.out.printf("%s: 模型调用 %d 次, 耗时 %dms, 正确 %d / %d%n",
+                name, calls.get(), (System.nanoTime() - start) / 1_000_000, correct, texts.size());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
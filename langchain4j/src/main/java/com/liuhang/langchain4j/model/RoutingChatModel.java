@@ -0,0 +1,424 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.request.ChatRequestParameters;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static dev.langchain4j.data.message.ChatMessageSerializer.messagesToJson;
+
+/**
+ * 按延迟和成本在多个模型之间路由，慢请求发对冲请求
+ *
+ * ConnectAIService 里 GreetingExpert 固定用 glm-4-flash，ChatBot 固定用 ApiKeys.model（gpt-4o-mini），
+ * 哪个后端慢了、出错了都只能改代码。
+ *
+ * 包装若干个后端，可以直接传给 AiServices.builder(...).chatModel(...)：
+ *      每个后端维护延迟和错误率的 EWMA，以及最近延迟的 p95
+ *      每次请求先估算各后端的成本（输入 token 按消息长度估算，输出 token 取该后端最近的 EWMA），
+ *      只在成本不超过预算的后端里挑期望延迟最低的（延迟 / 成功率），都超预算时用最便宜的
+ *      首选后端超过自己的 p95（每 32 个新样本刷新一次）还没返回，就向次选后端发一个对冲请求，谁先成功用谁，另一个被取消
+ *      首选后端出错时直接改用次选后端
+ * 对冲会多花钱，最多占请求数的 maxHedgeRate。预算默认对所有请求生效，单次调用可以用 withBudget 覆盖。
+ * 请求可能落到任何一个后端，supportedCapabilities 只报告所有后端都支持的能力。对冲请求跑在自己的线程池里，不用时 close()。
+ */
+public class RoutingChatModel implements ChatModel, AutoCloseable {
+
+    private static final double EWMA_ALPHA = 0.2;
+    private static final int MIN_SAMPLES_FOR_HEDGE = 20;
+    // 对冲阈值（p95）每攒够这么多个新样本才重新算一次，请求路径上只读缓存的值
+    private static final int HEDGE_REFRESH_SAMPLES = 32;
+
+    private final List<Backend> backends;
+    private final double defaultBudget;
+    private final double maxHedgeRate;
+    private final double exploreRate;
+    private final ExecutorService executor;
+    private final ThreadLocal<Double> budget = new ThreadLocal<>();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    private RoutingChatModel(Builder builder) {
+        this.backends = List.copyOf(builder.backends);
+        this.defaultBudget = builder.maxCostPerRequest;
+        this.maxHedgeRate = builder.maxHedgeRate;
+        this.exploreRate = builder.exploreRate;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "routing-chat-model");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 在当前线程里用单独的预算执行一次调用，例如 router.withBudget(0.0005, () -> chatBot.reply(text))
+     *
+     * @param maxCost 单次请求最多花多少（和 backend 的价格同一单位）
+     */
+    public <T> T withBudget(double maxCost, Supplier<T> call) {
+        Double previous = budget.get();
+        budget.set(maxCost);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                budget.remove();
+            } else {
+                budget.set(previous);
+            }
+        }
+    }
+
+    @Override
+    public ChatResponse chat(ChatRequest chatRequest) {
+        requests.increment();
+        List<Backend> candidates = rank(chatRequest);
+        Backend primary = candidates.get(0);
+        Backend secondary = candidates.size() > 1 ? candidates.get(1) : null;
+
+        long hedgeAfter = primary.hedgeAfterNanos();
+        if (secondary == null || hedgeAfter <= 0 || !hedgeAllowed()) {
+            try {
+                return primary.call(chatRequest);
+            } catch (RuntimeException e) {
+                if (secondary == null) {
+                    throw e;
+                }
+                failovers.increment();
+                return secondary.call(chatRequest);
+            }
+        }
+
+        Future<ChatResponse> first = executor.submit(() -> primary.call(chatRequest));
+        try {
+            return first.get(hedgeAfter, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            hedges.increment();
+        } catch (ExecutionException e) {
+            failovers.increment();
+            return secondary.call(chatRequest);
+        } catch (InterruptedException e) {
+            first.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for " + primary.name, e);
+        }
+
+        // 对冲：两个请求谁先成功用谁
+        Race race = new Race();
+        Future<ChatResponse> second = executor.submit(() -> secondary.call(chatRequest));
+        executor.execute(() -> complete(first, race, false));
+        executor.execute(() -> complete(second, race, true));
+        try {
+            return race.winner.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        } finally {
+            first.cancel(true);
+            second.cancel(true);
+        }
+    }
+
+    /**
+     * 每个后端负责把自己的默认参数（模型名、温度等）合并进请求，这里不提供默认参数
+     */
+    @Override
+    public ChatRequestParameters defaultRequestParameters() {
+        return ChatRequestParameters.builder().build();
+    }
+
+    /**
+     * 所有后端都支持的能力
+     */
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        Set<Capability> capabilities = new HashSet<>(backends.get(0).model.supportedCapabilities());
+        for (int i = 1; i < backends.size(); i++) {
+            capabilities.retainAll(backends.get(i).model.supportedCapabilities());
+        }
+        return capabilities;
+    }
+
+    /**
+     * 关闭对冲用的线程池，已经发出的请求继续跑完
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    public List<Backend> backends() {
+        return backends;
+    }
+
+    public long hedges() {
+        return hedges.sum();
+    }
+
+    /**
+     * 对冲请求比首选后端先返回的次数
+     */
+    public long hedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    public long failovers() {
+        return failovers.sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("RoutingChatModel{requests=%d, hedges=%d (won %d), failovers=%d",
+                requests.sum(), hedges(), hedgeWins(), failovers()));
+        for (Backend backend : backends) {
+            sb.append(",\n    ").append(backend);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * 预算内的后端按期望延迟排序；都超预算时只用最便宜的一个。
+     * 偶尔随机把一个后端提到最前，让冷门后端也有机会更新统计
+     */
+    private List<Backend> rank(ChatRequest chatRequest) {
+        int inputTokens = messagesToJson(chatRequest.messages()).length() / 4;
+        Integer maxOutputTokens = chatRequest.parameters() == null ? null : chatRequest.parameters().maxOutputTokens();
+        Double requestBudget = budget.get();
+        double maxCost = requestBudget != null ? requestBudget : defaultBudget;
+
+        // 统计随时在变，先取快照再排序
+        List<Candidate> affordable = new ArrayList<>();
+        Candidate cheapest = null;
+        for (Backend backend : backends) {
+            Candidate candidate = new Candidate(backend, backend.expectedLatency(), backend.estimateCost(inputTokens, maxOutputTokens));
+            if (candidate.cost <= maxCost) {
+                affordable.add(candidate);
+            }
+            if (cheapest == null || candidate.cost < cheapest.cost) {
+                cheapest = candidate;
+            }
+        }
+        if (affordable.isEmpty()) {
+            return List.of(cheapest.backend);
+        }
+        affordable.sort(Comparator.comparingDouble(Candidate::expectedLatency));
+        if (affordable.size() > 1 && ThreadLocalRandom.current().nextDouble() < exploreRate) {
+            affordable.add(0, affordable.remove(ThreadLocalRandom.current().nextInt(1, affordable.size())));
+        }
+        List<Backend> ranked = new ArrayList<>();
+        for (Candidate candidate : affordable) {
+            ranked.add(candidate.backend);
+        }
+        return ranked;
+    }
+
+    private record Candidate(Backend backend, double expectedLatency, double cost) {
+    }
+
+    private boolean hedgeAllowed() {
+        return hedges.sum() < maxHedgeRate * requests.sum();
+    }
+
+    private void complete(Future<ChatResponse> future, Race race, boolean hedge) {
+        try {
+            if (race.winner.complete(future.get()) && hedge) {
+                hedgeWins.increment();
+            }
+        } catch (ExecutionException e) {
+            race.failed(e.getCause());
+        } catch (Exception e) {
+            race.failed(e);
+        }
+    }
+
+    /**
+     * 首选和对冲请求的竞争：先成功的一方胜出，两方都失败才算失败
+     */
+    private static class Race {
+
+        final CompletableFuture<ChatResponse> winner = new CompletableFuture<>();
+        final AtomicInteger remaining = new AtomicInteger(2);
+
+        void failed(Throwable error) {
+            if (remaining.decrementAndGet() == 0) {
+                winner.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * 一个后端及其统计。价格的单位由使用方决定，例如 美元 / 百万 token
+     */
+    public static class Backend {
+
+        private final String name;
+        private final ChatModel model;
+        private final double inputPricePerMillion;
+        private final double outputPricePerMillion;
+        private final LatencyStats latency = new LatencyStats(256);
+
+        // 以下字段由 this 保护
+        private double latencyEwmaNanos;
+        private double errorEwma;
+        private double outputTokensEwma = 256;
+        private long calls;
+        private long errors;
+        // 缓存的 p95，由 record 定期刷新；为 0 时不对冲
+        private volatile long hedgeAfterNanos;
+
+        Backend(String name, ChatModel model, double inputPricePerMillion, double outputPricePerMillion) {
+            this.name = name;
+            this.model = model;
+            this.inputPricePerMillion = inputPricePerMillion;
+            this.outputPricePerMillion = outputPricePerMillion;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public LatencyStats latency() {
+            return latency;
+        }
+
+        public synchronized double errorRate() {
+            return errorEwma;
+        }
+
+        public synchronized long calls() {
+            return calls;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s{calls=%d, errors=%d, latencyEwma=%.0fms, errorEwma=%.2f, p95=%dms, outputTokens≈%.0f}",
+                    name, calls, errors, latencyEwmaNanos / 1_000_000, errorEwma, latency.percentile(0.95).toMillis(), outputTokensEwma);
+        }
+
+        ChatResponse call(ChatRequest chatRequest) {
+            long start = System.nanoTime();
+            try {
+                ChatResponse response = model.chat(chatRequest);
+                record(System.nanoTime() - start, false, response.tokenUsage());
+                return response;
+            } catch (RuntimeException e) {
+                // 被对冲的另一方取消时线程被中断，不算这个后端的错误
+                if (!Thread.currentThread().isInterrupted()) {
+                    record(System.nanoTime() - start, true, null);
+                }
+                throw e;
+            }
+        }
+
+        private synchronized void record(long nanos, boolean error, TokenUsage usage) {
+            calls++;
+            if (error) {
+                errors++;
+            } else {
+                latency.record(nanos);
+                long samples = latency.count();
+                if (samples >= MIN_SAMPLES_FOR_HEDGE && (samples - MIN_SAMPLES_FOR_HEDGE) % HEDGE_REFRESH_SAMPLES == 0) {
+                    hedgeAfterNanos = latency.percentile(0.95).toNanos();
+                }
+                latencyEwmaNanos = calls == 1 ? nanos : latencyEwmaNanos + EWMA_ALPHA * (nanos - latencyEwmaNanos);
+                if (usage != null && usage.outputTokenCount() != null) {
+                    outputTokensEwma += EWMA_ALPHA * (usage.outputTokenCount() - outputTokensEwma);
+                }
+            }
+            errorEwma += EWMA_ALPHA * ((error ? 1 : 0) - errorEwma);
+        }
+
+        /**
+         * 期望的成功耗时：按失败后重试估算为 延迟 / 成功率。没有样本的后端为 0，会被优先尝试
+         */
+        synchronized double expectedLatency() {
+            return latencyEwmaNanos / Math.max(0.01, 1 - errorEwma);
+        }
+
+        synchronized double estimateCost(int inputTokens, Integer maxOutputTokens) {
+            double outputTokens = maxOutputTokens != null ? Math.min(maxOutputTokens, outputTokensEwma) : outputTokensEwma;
+            return (inputTokens * inputPricePerMillion + outputTokens * outputPricePerMillion) / 1_000_000;
+        }
+
+        /**
+         * 样本足够时返回最近一次刷新的 p95，否则返回 0 表示不对冲
+         */
+        long hedgeAfterNanos() {
+            return hedgeAfterNanos;
+        }
+    }
+
+    public static class Builder {
+
+        private final List<Backend> backends = new ArrayList<>();
+        private double maxCostPerRequest = Double.MAX_VALUE;
+        private double maxHedgeRate = 0.1;
+        private double exploreRate = 0.02;
+
+        /**
+         * @param inputPricePerMillion  每百万输入 token 的价格
+         * @param outputPricePerMillion 每百万输出 token 的价格
+         */
+        public Builder backend(String name, ChatModel model, double inputPricePerMillion, double outputPricePerMillion) {
+            backends.add(new Backend(name, model, inputPricePerMillion, outputPricePerMillion));
+            return this;
+        }
+
+        /**
+         * 单次请求的默认预算，默认不限制
+         */
+        public Builder maxCostPerRequest(double maxCostPerRequest) {
+            this.maxCostPerRequest = maxCostPerRequest;
+            return this;
+        }
+
+        /**
+         * 对冲请求最多占请求数的比例，默认 0.1；设为 0 关闭对冲
+         */
+        public Builder maxHedgeRate(double maxHedgeRate) {
+            this.maxHedgeRate = maxHedgeRate;
+            return this;
+        }
+
+        /**
+         * 随机尝试非首选后端的概率，默认 0.02
+         */
+        public Builder exploreRate(double exploreRate) {
+            this.exploreRate = exploreRate;
+            return this;
+        }
+
+        public RoutingChatModel build() {
+            if (backends.isEmpty()) {
+                throw new IllegalArgumentException("at least one backend is required");
+            }
+            return new RoutingChatModel(this);
+        }
+    }
+}
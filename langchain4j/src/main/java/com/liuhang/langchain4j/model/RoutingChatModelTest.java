@@ -0,0 +1,166 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntConsumer;
+
+/**
+ * 路由选择、对冲请求和故障转移
+ */
+public class RoutingChatModelTest {
+
+    /**
+     * 假模型：通常耗时 latencyMillis，slowRate 的请求耗时 10 倍，errorRate 的请求失败
+     */
+    static ChatModel fakeModel(String name, long latencyMillis, double slowRate, double errorRate, int outputTokens) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest chatRequest) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    Thread.sleep(random.nextDouble() < slowRate ? latencyMillis * 10 : latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(name + " cancelled");
+                }
+                if (random.nextDouble() < errorRate) {
+                    throw new IllegalStateException(name + " 503 Service Unavailable");
+                }
+                return ChatResponse.builder()
+                        .aiMessage(AiMessage.from("answer from " + name))
+                        .tokenUsage(new TokenUsage(50, outputTokens))
+                        .modelName(name)
+                        .build();
+            }
+        };
+    }
+
+    static ChatRequest request(int i) {
+        return ChatRequest.builder().messages(UserMessage.from("Which services do you provide? #" + i)).build();
+    }
+
+    /**
+     * 预算排除了贵的 gpt-4o，剩下的两个里挑更快的 glm-4-flash
+     */
+    @Test
+    public void routesToFastestAffordable() {
+        RoutingChatModel router = RoutingChatModel.builder()
+                .backend("glm-4-flash", fakeModel("glm-4-flash", 50, 0, 0, 200), 0.1, 0.1)
+                .backend("gpt-4o-mini", fakeModel("gpt-4o-mini", 120, 0, 0, 200), 0.15, 0.6)
+                .backend("gpt-4o", fakeModel("gpt-4o", 30, 0, 0, 200), 2.5, 10)
+                .maxCostPerRequest(0.0005)
+                .build();
+        for (int i = 0; i < 40; i++) {
+            router.chat(request(i));
+        }
+        System.out.println(router);
+
+        // 单次放宽预算，gpt-4o 更快
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            router.withBudget(1.0, () -> router.chat(request(n)));
+        }
+        System.out.println(router);
+    }
+
+    /**
+     * glm-4-flash 有 5% 的请求慢 10 倍；超过 p95 时向 gpt-4o-mini 发对冲请求
+     */
+    @Test
+    public void hedgingCutsTailLatency() {
+        ChatModel flaky = fakeModel("glm-4-flash", 50, 0.05, 0, 200);
+        LatencyStats direct = new LatencyStats();
+        run(400, i -> {
+            long start = System.nanoTime();
+            flaky.chat(request(i));
+            direct.record(System.nanoTime() - start);
+        });
+        System.out.println("只用 glm-4-flash: " + direct);
+
+        RoutingChatModel router = RoutingChatModel.builder()
+                .backend("glm-4-flash", flaky, 0.1, 0.1)
+                .backend("gpt-4o-mini", fakeModel("gpt-4o-mini", 80, 0, 0, 200), 0.15, 0.6)
+                .maxHedgeRate(0.1)
+                .exploreRate(0)
+                .build();
+        LatencyStats routed = new LatencyStats();
+        run(400, i -> {
+            long start = System.nanoTime();
+            router.chat(request(i));
+            routed.record(System.nanoTime() - start);
+        });
+        System.out.println("路由 + 对冲: " + routed);
+        System.out.println(router);
+        router.close();
+    }
+
+    /**
+     * 出错的后端错误率 EWMA 升高，流量转到另一个后端，失败的请求由次选后端补上
+     */
+    @Test
+    public void failover() {
+        RoutingChatModel router = RoutingChatModel.builder()
+                .backend("glm-4-flash", fakeModel("glm-4-flash", 30, 0, 0.5, 200), 0.1, 0.1)
+                .backend("gpt-4o-mini", fakeModel("gpt-4o-mini", 60, 0, 0, 200), 0.15, 0.6)
+                .build();
+        int failed = 0;
+        for (int i = 0; i < 60; i++) {
+            try {
+                router.chat(request(i));
+            } catch (RuntimeException e) {
+                failed++;
+            }
+        }
+        System.out.println("失败 " + failed + " 次");
+        System.out.println(router);
+    }
+
+    /**
+     * 请求可能落到任何一个后端，只报告所有后端都支持的能力
+     */
+    @Test
+    public void capabilitiesOfAllBackends() {
+        ChatModel withSchema = new ChatModel() {
+            @Override
+            public ChatResponse doChat(ChatRequest chatRequest) {
+                return ChatResponse.builder().aiMessage(AiMessage.from("{}")).build();
+            }
+
+            @Override
+            public Set<Capability> supportedCapabilities() {
+                return Set.of(Capability.RESPONSE_FORMAT_JSON_SCHEMA);
+            }
+        };
+        try (RoutingChatModel router = RoutingChatModel.builder()
+                .backend("gpt-4o-mini", withSchema, 0.15, 0.6)
+                .backend("glm-4-flash", fakeModel("glm-4-flash", 50, 0, 0, 200), 0.1, 0.1)
+                .build()) {
+            System.out.println("gpt-4o-mini 支持 " + withSchema.supportedCapabilities() + ", 路由支持 " + router.supportedCapabilities());
+        }
+    }
+
+    private static void run(int count, IntConsumer call) {
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int n = i;
+            futures.add(CompletableFuture.runAsync(() -> call.accept(n), callers));
+        }
+        futures.forEach(CompletableFuture::join);
+        callers.shutdown();
+    }
+}
@@ -0,0 +1,265 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 语义缓存：意思相近的输入复用之前的回答
+ *
+ * CachingChatModel 只认完全相同的请求，"Hello"、"hello!"、"hi there" 进到 MilesOfSmiles.handle 还是各算一次。
+ * 这里用进程内的向量模型（默认 AllMiniLmL6V2，ONNX 本地推理，不需要网络）把输入转成向量，
+ * 和已经回答过的输入逐个算余弦相似度，最相近的一条超过 threshold 就直接返回它的答案。
+ *      向量归一化后和答案一起存成不可变的条目，查找就是一遍点积，1 万条以内暴力扫描足够快
+ *      所有条目放在一个写时复制的数组里：查找不加锁，扫描读到的那一份快照；
+ *      写入时才加锁，复制一份引用数组（1 万条约 40KB）再发布，慢的扫描不会挡住其他线程
+ *      满了以后淘汰最久没有命中的一条（LRU）；配置了 ttl 的话过期的条目也会被替换
+ * 缓存的是服务方法的原始输入（模板渲染之前），例如包在 ChatBot.reply、GreetingExpert.isGreeting 外面：
+ *      ChatBot cached = message -> cache.get(message, chatBot::reply);
+ * 只适合没有会话记忆、同样意思的问题答案也一样的服务，threshold 太低会把不同的问题当成同一个。
+ */
+public class SemanticCache<V> {
+
+    private final EmbeddingModel embeddingModel;
+    private final double threshold;
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // 只在持有 this 时替换，替换后不再修改
+    private volatile Entry[] entries = new Entry[0];
+    private final AtomicLong clock = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder embedNanos = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+
+    private SemanticCache(Builder<V> builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.threshold = builder.threshold;
+        this.maxEntries = builder.maxEntries;
+        this.ttlMillis = builder.ttl == null ? 0 : builder.ttl.toMillis();
+    }
+
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * 有足够相近的输入就返回它的答案，否则调用 loader 并缓存结果
+     */
+    public V get(String prompt, Function<String, V> loader) {
+        float[] vector = embed(prompt);
+        V value = lookup(vector);
+        if (value != null) {
+            return value;
+        }
+        value = loader.apply(prompt);
+        if (value != null) {
+            put(vector, value);
+        }
+        return value;
+    }
+
+    /**
+     * 只查不写，没有足够相近的输入时返回 null
+     */
+    public V lookup(String prompt) {
+        return lookup(embed(prompt));
+    }
+
+    public void put(String prompt, V value) {
+        put(embed(prompt), value);
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * 平均每次计算向量的耗时（微秒）
+     */
+    public double averageEmbedMicros() {
+        long count = hits() + misses();
+        return count == 0 ? 0 : embedNanos.sum() / 1000.0 / count;
+    }
+
+    /**
+     * 平均每次最近邻查找的耗时（微秒），不含计算向量
+     */
+    public double averageSearchMicros() {
+        long count = hits() + misses();
+        return count == 0 ? 0 : searchNanos.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SemanticCache{size=%d, hits=%d, misses=%d, embed=%.1fμs, search=%.1fμs}",
+                size(), hits(), misses(), averageEmbedMicros(), averageSearchMicros());
+    }
+
+    private float[] embed(String prompt) {
+        long start = System.nanoTime();
+        float[] vector = embeddingModel.embed(prompt).content().vector().clone();
+        double norm = 0;
+        for (float x : vector) {
+            norm += x * x;
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= norm;
+            }
+        }
+        embedNanos.add(System.nanoTime() - start);
+        return vector;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V lookup(float[] vector) {
+        long start = System.nanoTime();
+        try {
+            Entry[] snapshot = entries;
+            long now = System.currentTimeMillis();
+            Entry best = null;
+            double bestSimilarity = threshold;
+            for (Entry entry : snapshot) {
+                double similarity = dot(vector, entry.vector);
+                if (similarity >= bestSimilarity && entry.expiresAt > now) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+            if (best == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            best.lastUsed = clock.incrementAndGet();
+            return (V) best.value;
+        } finally {
+            searchNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private synchronized void put(float[] vector, V value) {
+        Entry entry = new Entry(vector, value, ttlMillis == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + ttlMillis);
+        entry.lastUsed = clock.incrementAndGet();
+        Entry[] current = entries;
+        int slot = slotForInsert(current);
+        Entry[] next = Arrays.copyOf(current, Math.max(current.length, slot + 1));
+        next[slot] = entry;
+        entries = next;
+    }
+
+    /**
+     * 优先复用过期的条目，其次追加，满了就替换最久没有命中的条目
+     */
+    private int slotForInsert(Entry[] current) {
+        long now = System.currentTimeMillis();
+        int oldest = 0;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].expiresAt <= now) {
+                return i;
+            }
+            if (current[i].lastUsed < current[oldest].lastUsed) {
+                oldest = i;
+            }
+        }
+        return current.length < maxEntries ? current.length : oldest;
+    }
+
+    /**
+     * 四路累加，减少循环里前后依赖的加法
+     */
+    private static double dot(float[] a, float[] b) {
+        int dimension = a.length;
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < dimension; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < dimension; i++) {
+            s0 += a[i] * b[i];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    private static final class Entry {
+
+        final float[] vector;
+        final Object value;
+        final long expiresAt;
+        // 命中时不加锁更新，只用来挑淘汰对象，偶尔丢一次更新没有关系
+        volatile long lastUsed;
+
+        Entry(float[] vector, Object value, long expiresAt) {
+            this.vector = vector;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public static class Builder<V> {
+
+        private EmbeddingModel embeddingModel;
+        private double threshold = 0.9;
+        private int maxEntries = 10_000;
+        private Duration ttl;
+
+        /**
+         * 默认 AllMiniLmL6V2EmbeddingModel
+         */
+        public Builder<V> embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * 余弦相似度至少多少才算命中，默认 0.9
+         */
+        public Builder<V> threshold(double threshold) {
+            this.threshold = threshold;
+            return this;
+        }
+
+        public Builder<V> maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * 缓存多久后过期，默认不过期
+         */
+        public Builder<V> ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public SemanticCache<V> build() {
+            if (maxEntries < 1 || threshold <= 0 || threshold > 1) {
+                throw new IllegalArgumentException("maxEntries must be positive and threshold must be in (0, 1]");
+            }
+            if (embeddingModel == null) {
+                embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+            }
+            return new SemanticCache<>(this);
+        }
+    }
+}
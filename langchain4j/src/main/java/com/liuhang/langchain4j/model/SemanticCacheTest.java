@@ -0,0 +1,86 @@
+package com.liuhang.langchain4j.model;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 语义缓存的命中情况和查找耗时
+ */
+public class SemanticCacheTest {
+
+    /**
+     * 同义的问候语命中同一条缓存，业务问题不会被误判成问候
+     */
+    @Test
+    public void paraphrases() {
+        SemanticCache<Boolean> cache = SemanticCache.<Boolean>builder()
+                .embeddingModel(new AllMiniLmL6V2EmbeddingModel())
+                .threshold(0.8)
+                .build();
+
+        // 第一次由“模型”判断，之后同义的输入直接命中
+        cache.get("Hello", text -> true);
+        cache.get("Which services do you provide?", text -> false);
+        for (String text : List.of("hello!", "Hello there", "What services do you offer?", "I want a refund")) {
+            System.out.println(text + " -> " + cache.lookup(text));
+        }
+        System.out.println(cache);
+    }
+
+    /**
+     * 查找耗时随缓存条数的变化，用随机向量代替真实的向量模型，只测最近邻查找本身
+     */
+    @Test
+    public void lookupLatency() {
+        EmbeddingModel random = new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+                return Response.from(textSegments.stream().map(segment -> {
+                    Random r = new Random(segment.text().hashCode());
+                    float[] vector = new float[384];
+                    for (int i = 0; i < vector.length; i++) {
+                        vector[i] = (float) r.nextGaussian();
+                    }
+                    return Embedding.from(vector);
+                }).toList());
+            }
+        };
+
+        for (int size : new int[]{100, 1_000, 10_000, 50_000}) {
+            SemanticCache<String> cache = SemanticCache.<String>builder()
+                    .embeddingModel(random)
+                    .maxEntries(size)
+                    .build();
+            for (int i = 0; i < size; i++) {
+                cache.put("prompt " + i, "answer " + i);
+            }
+            for (int i = 0; i < 2_000; i++) {
+                cache.lookup(i % 2 == 0 ? "prompt " + (i * 7919 % size) : "unknown " + i);
+            }
+            System.out.printf("%6d 条: 查找 %.1fμs, 命中 %d / %d%n", size, cache.averageSearchMicros(), cache.hits(), cache.hits() + cache.misses());
+        }
+    }
+
+    /**
+     * 满了以后淘汰最久没有命中的条目
+     */
+    @Test
+    public void eviction() {
+        SemanticCache<String> cache = SemanticCache.<String>builder()
+                .embeddingModel(new AllMiniLmL6V2EmbeddingModel())
+                .maxEntries(2)
+                .build();
+        cache.put("Hello", "greeting");
+        cache.put("Which services do you provide?", "services");
+        cache.lookup("Hello");
+        cache.put("I want a refund", "refund");
+        System.out.println("Hello -> " + cache.lookup("Hello") + ", services -> " + cache.lookup("Which services do you provide?"));
+    }
+}
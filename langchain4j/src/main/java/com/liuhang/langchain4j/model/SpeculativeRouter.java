@@ -0,0 +1,393 @@
+package com.liuhang.langchain4j.model;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * 投机执行的两路路由
+ *
+ * ConnectAIService.MilesOfSmiles.handle 先等 greetingExpert.isGreeting 返回，再调用 chatBot.reply，
+ * 不是问候的输入要付两次串行的 LLM 延迟。
+ *
+ * 这里把分类器和昂贵分支同时发出：
+ *      分类器判定为 matched（例如是问候）时，昂贵分支的结果被丢弃，cancelOnMatch 时还会中断它的线程
+ *      否则直接等昂贵分支已经在跑的结果，总延迟约为 max(分类, 回答) 而不是两者之和
+ * 被丢弃的调用就是浪费的花费，用两道准入控制限制它：
+ *      同时在跑的投机调用最多 maxSpeculative 个，超过时这次退回串行
+ *      最近 matched 的比例（EWMA）超过 maxWasteRate 时不投机，因为投机大概率白做
+ * 投机需要显式开启：speculateAfter 设置分类器超过多久还没返回才投机，Duration.ZERO 为立即投机；
+ * 不设置时就是串行路由。分类器很快（例如本地快速通道）时设置一个略大于它的耗时，按时返回的输入不用投机。
+ * 分类和投机调用跑在路由自己的线程池里，不用时 close()。
+ */
+public class SpeculativeRouter<I, R> implements AutoCloseable {
+
+    private static final double EWMA_ALPHA = 0.1;
+
+    private final Predicate<I> classifier;
+    private final Function<I, R> onMatch;
+    private final Function<I, R> otherwise;
+    private final ToIntFunction<R> tokenCounter;
+    private final long speculateAfterNanos;
+    private final double maxWasteRate;
+    private final boolean cancelOnMatch;
+    private final Semaphore speculativeSlots;
+    private final ExecutorService executor;
+
+    // matched 比例的 EWMA，由 this 保护
+    private double matchRate;
+
+    private final LatencyStats latency = new LatencyStats();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder speculated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder wasted = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder wastedTokens = new LongAdder();
+
+    private SpeculativeRouter(Builder<I, R> builder) {
+        this.classifier = builder.classifier;
+        this.onMatch = builder.onMatch;
+        this.otherwise = builder.otherwise;
+        this.tokenCounter = builder.tokenCounter;
+        // 为负数时不投机
+        this.speculateAfterNanos = builder.speculateAfter == null ? -1 : builder.speculateAfter.toNanos();
+        this.maxWasteRate = builder.maxWasteRate;
+        this.cancelOnMatch = builder.cancelOnMatch;
+        this.speculativeSlots = new Semaphore(builder.maxSpeculative);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "speculative-route");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static <I, R> Builder<I, R> builder() {
+        return new Builder<>();
+    }
+
+    public R route(I input) {
+        long start = System.nanoTime();
+        requests.increment();
+        CompletableFuture<Boolean> decision = CompletableFuture.supplyAsync(() -> classifier.test(input), executor);
+
+        Speculation speculation = null;
+        if (speculateAfterNanos >= 0 && !decidedWithin(decision, speculateAfterNanos)) {
+            speculation = trySpeculate(input);
+        }
+
+        boolean matched;
+        try {
+            matched = decision.join();
+        } catch (CompletionException e) {
+            if (speculation != null) {
+                discard(speculation);
+            }
+            throw unwrap(e);
+        }
+        synchronized (this) {
+            matchRate += EWMA_ALPHA * ((matched ? 1 : 0) - matchRate);
+        }
+
+        R result;
+        if (matched) {
+            if (speculation != null) {
+                discard(speculation);
+            }
+            result = onMatch.apply(input);
+        } else if (speculation != null) {
+            result = await(speculation);
+        } else {
+            result = otherwise.apply(input);
+            tokens.add(tokenCounter.applyAsInt(result));
+        }
+        latency.record(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * 最近 matched 的比例，也就是投机时预计被浪费的比例
+     */
+    public synchronized double matchRate() {
+        return matchRate;
+    }
+
+    public LatencyStats latency() {
+        return latency;
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    /**
+     * 发出了投机调用的请求数
+     */
+    public long speculated() {
+        return speculated.sum();
+    }
+
+    /**
+     * 被准入控制挡下、退回串行的次数
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * 被丢弃或取消的投机调用数
+     */
+    public long wasted() {
+        return wasted.sum();
+    }
+
+    /**
+     * 昂贵分支产生的 token 中被浪费的比例；被中断的调用不知道生成了多少，不计入
+     */
+    public double wastedTokenRate() {
+        long total = tokens.sum();
+        return total == 0 ? 0 : (double) wastedTokens.sum() / total;
+    }
+
+    /**
+     * 关闭线程池：不再接受新的请求，已经发出的分类和投机调用继续跑完
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SpeculativeRouter{requests=%d, speculated=%d, rejected=%d, wasted=%d, wastedTokens=%.1f%%, matchRate=%.2f, %s}",
+                requests(), speculated(), rejected(), wasted(), wastedTokenRate() * 100, matchRate(), latency);
+    }
+
+    private static boolean decidedWithin(CompletableFuture<Boolean> decision, long nanos) {
+        if (nanos <= 0) {
+            return decision.isDone();
+        }
+        try {
+            decision.get(nanos, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    private Speculation trySpeculate(I input) {
+        boolean admitted;
+        synchronized (this) {
+            admitted = matchRate <= maxWasteRate;
+        }
+        if (!admitted || !speculativeSlots.tryAcquire()) {
+            rejected.increment();
+            return null;
+        }
+        speculated.increment();
+        Speculation speculation = new Speculation(input, otherwise);
+        executor.execute(speculation);
+        return speculation;
+    }
+
+    private void discard(Speculation speculation) {
+        speculation.discard();
+        wasted.increment();
+        if (cancelOnMatch) {
+            speculation.cancel(true);
+        }
+    }
+
+    private R await(Speculation speculation) {
+        try {
+            return speculation.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException e) {
+            speculation.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for speculative call");
+        }
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        return e.getCause() instanceof RuntimeException cause ? cause : e;
+    }
+
+    /**
+     * 昂贵分支的一次投机调用
+     *
+     * 任务没开始就被取消时 run 不会执行，名额在 done 里归还；两处都可能归还，用 released 保证只归还一次。
+     * 调用结束和被丢弃的先后不确定，两边都检查一次，由 wasteCounted 保证浪费的 token 只计一次
+     */
+    private class Speculation extends FutureTask<R> {
+
+        final AtomicBoolean started = new AtomicBoolean();
+        final AtomicBoolean discarded = new AtomicBoolean();
+        final AtomicBoolean released = new AtomicBoolean();
+        final AtomicBoolean wasteCounted = new AtomicBoolean();
+        final AtomicInteger producedTokens = new AtomicInteger(-1);
+
+        Speculation(I input, Function<I, R> call) {
+            super(() -> call.apply(input));
+        }
+
+        @Override
+        public void run() {
+            started.set(true);
+            try {
+                super.run();
+            } finally {
+                // 调用真正结束才归还名额，被取消但仍在跑的调用也算在途
+                release();
+            }
+        }
+
+        @Override
+        protected void set(R result) {
+            int count = tokenCounter.applyAsInt(result);
+            tokens.add(count);
+            producedTokens.set(count);
+            if (discarded.get()) {
+                countWaste();
+            }
+            super.set(result);
+        }
+
+        void discard() {
+            discarded.set(true);
+            if (producedTokens.get() >= 0) {
+                countWaste();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (!started.get()) {
+                release();
+            }
+        }
+
+        private void countWaste() {
+            if (wasteCounted.compareAndSet(false, true)) {
+                wastedTokens.add(producedTokens.get());
+            }
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                speculativeSlots.release();
+            }
+        }
+    }
+
+    public static class Builder<I, R> {
+
+        private Predicate<I> classifier;
+        private Function<I, R> onMatch;
+        private Function<I, R> otherwise;
+        // 粗略按 4 个字符一个 token 估算，可以换成 TokenCountEstimator
+        private ToIntFunction<R> tokenCounter = result -> String.valueOf(result).length() / 4;
+        private Duration speculateAfter;
+        private int maxSpeculative = 16;
+        private double maxWasteRate = 0.5;
+        private boolean cancelOnMatch = true;
+
+        /**
+         * 便宜的分类，例如 greetingExpert::isGreeting
+         */
+        public Builder<I, R> classifier(Predicate<I> classifier) {
+            this.classifier = classifier;
+            return this;
+        }
+
+        /**
+         * 分类器判定为 matched 时的结果，例如固定的问候语
+         */
+        public Builder<I, R> onMatch(Function<I, R> onMatch) {
+            this.onMatch = onMatch;
+            return this;
+        }
+
+        /**
+         * 昂贵分支，例如 chatBot::reply
+         */
+        public Builder<I, R> otherwise(Function<I, R> otherwise) {
+            this.otherwise = otherwise;
+            return this;
+        }
+
+        /**
+         * 昂贵分支结果的 token 数，用于统计浪费，例如 text -> estimator.estimateTokenCountInText(text)
+         */
+        public Builder<I, R> tokenCounter(ToIntFunction<R> tokenCounter) {
+            this.tokenCounter = tokenCounter;
+            return this;
+        }
+
+        /**
+         * 分类器超过这段时间还没返回才投机，Duration.ZERO 为立即投机；默认不投机
+         */
+        public Builder<I, R> speculateAfter(Duration speculateAfter) {
+            this.speculateAfter = speculateAfter;
+            return this;
+        }
+
+        /**
+         * 同时在跑的投机调用上限，默认 16
+         */
+        public Builder<I, R> maxSpeculative(int maxSpeculative) {
+            this.maxSpeculative = maxSpeculative;
+            return this;
+        }
+
+        /**
+         * matched 比例超过多少时停止投机，默认 0.5
+         */
+        public Builder<I, R> maxWasteRate(double maxWasteRate) {
+            this.maxWasteRate = maxWasteRate;
+            return this;
+        }
+
+        /**
+         * 丢弃结果时是否中断昂贵分支的线程，默认 true。
+         * 阻塞的 HTTP 调用不一定响应中断，此时结果仍会被丢弃
+         */
+        public Builder<I, R> cancelOnMatch(boolean cancelOnMatch) {
+            this.cancelOnMatch = cancelOnMatch;
+            return this;
+        }
+
+        public SpeculativeRouter<I, R> build() {
+            if (classifier == null || onMatch == null || otherwise == null) {
+                throw new IllegalArgumentException("classifier, onMatch and otherwise are required");
+            }
+            if (maxSpeculative < 1 || (speculateAfter != null && speculateAfter.isNegative())) {
+                throw new IllegalArgumentException("maxSpeculative must be positive and speculateAfter must not be negative");
+            }
+            return new SpeculativeRouter<>(this);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.liuhang.langchain4j.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 串行路由和投机路由的延迟、浪费对比
+ */
+public class SpeculativeRouterTest {
+
+    private static final String GREETING = "Greetings from Miles of Smiles! How can I make your day better?";
+
+    /**
+     * 假 GreetingExpert：耗时 300ms
+     */
+    static Predicate<String> fakeGreetingExpert() {
+        return text -> {
+            sleep(300);
+            return text.startsWith("Hello");
+        };
+    }
+
+    /**
+     * 假 ChatBot：耗时 800ms，被中断时提前结束
+     */
+    static Function<String, String> fakeChatBot(AtomicInteger completed, AtomicInteger interrupted) {
+        return text -> {
+            try {
+                Thread.sleep(800);
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                throw new IllegalStateException("cancelled");
+            }
+            completed.incrementAndGet();
+            return "At Miles of Smiles, we provide a wide range of services to make your day better: " + text;
+        };
+    }
+
+    /**
+     * 每 greetingEvery 条输入里有一条问候
+     */
+    static List<String> inputs(int count, int greetingEvery) {
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            inputs.add(i % greetingEvery == 0 ? "Hello #" + i : "Which services do you provide? #" + i);
+        }
+        return inputs;
+    }
+
+    @Test
+    public void serialVersusSpeculative() {
+        List<String> inputs = inputs(40, 4);
+
+        LatencyStats serial = new LatencyStats();
+        Predicate<String> greetingExpert = fakeGreetingExpert();
+        Function<String, String> chatBot = fakeChatBot(new AtomicInteger(), new AtomicInteger());
+        run(inputs, text -> {
+            long start = System.nanoTime();
+            String reply = greetingExpert.test(text) ? GREETING : chatBot.apply(text);
+            serial.record(System.nanoTime() - start);
+            return reply;
+        });
+        System.out.println("串行: " + serial);
+
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger interrupted = new AtomicInteger();
+        try (SpeculativeRouter<String, String> router = SpeculativeRouter.<String, String>builder()
+                .classifier(fakeGreetingExpert())
+                .onMatch(text -> GREETING)
+                .otherwise(fakeChatBot(completed, interrupted))
+                .speculateAfter(Duration.ZERO)
+                .build()) {
+            run(inputs, router::route);
+            System.out.println("投机: " + router);
+        }
+        System.out.println("ChatBot 完成 " + completed + " 次, 被中断 " + interrupted + " 次");
+    }
+
+    /**
+     * 问候占多数时投机大多白做，matchRate 超过 maxWasteRate 后自动退回串行
+     */
+    @Test
+    public void admissionControlStopsWaste() {
+        AtomicInteger completed = new AtomicInteger();
+        // 五条里只有一条是提问
+        List<String> inputs = new ArrayList<>();
+        for (String input : inputs(60, 5)) {
+            inputs.add(input.startsWith("Hello") ? "Which services do you provide?" : "Hello " + input);
+        }
+        try (SpeculativeRouter<String, String> router = SpeculativeRouter.<String, String>builder()
+                .classifier(fakeGreetingExpert())
+                .onMatch(text -> GREETING)
+                .otherwise(fakeChatBot(completed, new AtomicInteger()))
+                .speculateAfter(Duration.ZERO)
+                .cancelOnMatch(false)
+                .maxWasteRate(0.3)
+                .maxSpeculative(4)
+                .build()) {
+            run(inputs, router::route);
+            System.out.println(router);
+        }
+        System.out.println("ChatBot 完成 " + completed + " 次（没有中断，被丢弃的调用也会跑完）");
+    }
+
+    /**
+     * 分类器很快时设置 speculateAfter，分类器按时返回就不投机
+     */
+    @Test
+    public void speculateAfterSkipsFastClassifier() {
+        try (SpeculativeRouter<String, String> router = SpeculativeRouter.<String, String>builder()
+                .classifier(text -> text.startsWith("Hello"))
+                .onMatch(text -> GREETING)
+                .otherwise(fakeChatBot(new AtomicInteger(), new AtomicInteger()))
+                .speculateAfter(Duration.ofMillis(50))
+                .build()) {
+            run(inputs(8, 2), router::route);
+            System.out.println(router);
+        }
+    }
+
+    private static void run(List<String> inputs, Function<String, String> handler) {
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (String input : inputs) {
+            futures.add(CompletableFuture.supplyAsync(() -> handler.apply(input), callers));
+        }
+        futures.forEach(CompletableFuture::join);
+        callers.shutdown();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.liuhang.langchain4j.prompt;
+
+import dev.langchain4j.spi.prompt.PromptTemplateFactory;
+
+/**
+ * 让 PromptTemplate（以及 AiServices 里的 @UserMessage / @SystemMessage / systemMessageProvider）用 CompiledTemplate 渲染
+ *
+ * PromptTemplate 通过 ServiceLoader 找 PromptTemplateFactory，META-INF/services 里登记了这个类：
+ *      PromptTemplate.from(template) 每次都会调用 create，这里用 indexOf 切一遍，不用正则
+ *      apply(Map) 时按变量名取值直接拼接，不再对每个变量编译正则做 replaceAll
+ * 不走 CompiledTemplate.of 的缓存：AiServices 会把用户原样发来的消息和 systemMessageProvider 的返回值也当模板，
+ * 按文本缓存等于把每条用户消息都留在堆里。按方法缓存的用 MethodPrompt。
+ * 变量缺失或为 null 时和默认实现一样抛 IllegalArgumentException。
+ */
+public class CompiledPromptTemplateFactory implements PromptTemplateFactory {
+
+    @Override
+    public Template create(Input input) {
+        CompiledTemplate compiled = CompiledTemplate.compile(input.getTemplate());
+        return compiled::render;
+    }
+}
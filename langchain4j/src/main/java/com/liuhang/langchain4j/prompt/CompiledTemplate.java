@@ -0,0 +1,188 @@
+package com.liuhang.langchain4j.prompt;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * 预先解析好的提示模板：{{变量}} 之间的文本切成字面量段，渲染时直接拼接
+ *
+ * PromptTemplate.apply 每次调用都要：正则找出所有变量、把参数放进 Map、再对每个变量编译一个正则做 replaceAll。
+ * 模板在 @UserMessage / @SystemMessage 里写死了，这里只解析一次：
+ *      "请将以下文本翻译成{{targetLanguage}}：{{text}}" -> ["请将以下文本翻译成", "：", ""] + [targetLanguage, text]
+ *      bind 把每个变量换成参数下标，渲染时按下标取值，先算出总长度再拼，StringBuilder 不会扩容
+ * 变量名两边的空格忽略；{{current_date}}、{{current_time}}、{{current_date_time}} 和 PromptTemplate 一样取当前时间。
+ * of(template) 按模板文本缓存，只用于写死在注解里的模板（个数有限）；运行时拼出来的文本用 compile(template)，每次重新解析。
+ */
+public final class CompiledTemplate {
+
+    private static final Map<String, CompiledTemplate> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * bind 的结果里表示内置变量的下标
+     */
+    static final int CURRENT_DATE = -1;
+    static final int CURRENT_TIME = -2;
+    static final int CURRENT_DATE_TIME = -3;
+
+    private final String template;
+    // literals.length == variables.length + 1
+    private final String[] literals;
+    private final String[] variables;
+    private final int literalLength;
+    // render(it) 的绑定，第一次用到时生成
+    private volatile int[] itBinding;
+    // render(Map) 的绑定：每个变量对应它第一次出现的位置
+    private volatile int[] namedBinding;
+
+    private CompiledTemplate(String template, String[] literals, String[] variables) {
+        this.template = template;
+        this.literals = literals;
+        this.variables = variables;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    public static CompiledTemplate of(String template) {
+        CompiledTemplate compiled = CACHE.get(template);
+        if (compiled == null) {
+            compiled = compile(template);
+            CompiledTemplate previous = CACHE.putIfAbsent(template, compiled);
+            if (previous != null) {
+                compiled = previous;
+            }
+        }
+        return compiled;
+    }
+
+    public static CompiledTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int from = 0;
+        while (true) {
+            int open = template.indexOf("{{", from);
+            int close = open < 0 ? -1 : template.indexOf("}}", open + 2);
+            if (close < 0) {
+                literals.add(template.substring(from));
+                break;
+            }
+            literals.add(template.substring(from, open));
+            variables.add(template.substring(open + 2, close).trim().intern());
+            from = close + 2;
+        }
+        return new CompiledTemplate(template, literals.toArray(new String[0]), variables.toArray(new String[0]));
+    }
+
+    public String template() {
+        return template;
+    }
+
+    /**
+     * 按出现顺序的变量名，出现几次就有几个
+     */
+    public List<String> variables() {
+        return Arrays.asList(variables.clone());
+    }
+
+    /**
+     * 把每个变量换成参数下标
+     *
+     * @param indexOf 变量名对应的参数下标，不认识时返回负数
+     * @throws IllegalArgumentException 有变量找不到对应的参数
+     */
+    public int[] bind(ToIntFunction<String> indexOf) {
+        int[] binding = new int[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            binding[i] = switch (variables[i]) {
+                case "current_date" -> CURRENT_DATE;
+                case "current_time" -> CURRENT_TIME;
+                case "current_date_time" -> CURRENT_DATE_TIME;
+                default -> {
+                    int index = indexOf.applyAsInt(variables[i]);
+                    if (index < 0) {
+                        throw new IllegalArgumentException("Value for the variable '" + variables[i] + "' is missing in: " + template);
+                    }
+                    yield index;
+                }
+            };
+        }
+        return binding;
+    }
+
+    /**
+     * 按 bind 的结果从 args 里取值渲染
+     *
+     * @throws IllegalArgumentException 有变量的值为 null
+     */
+    public String render(int[] binding, Object[] args) {
+        if (variables.length == 0) {
+            return template;
+        }
+        String[] values = new String[variables.length];
+        int length = literalLength;
+        for (int i = 0; i < variables.length; i++) {
+            Object value = switch (binding[i]) {
+                case CURRENT_DATE -> LocalDate.now();
+                case CURRENT_TIME -> LocalTime.now();
+                case CURRENT_DATE_TIME -> LocalDateTime.now();
+                default -> args[binding[i]];
+            };
+            if (value == null) {
+                throw new IllegalArgumentException("Value for the variable '" + variables[i] + "' is null");
+            }
+            values[i] = value instanceof String s ? s : value.toString();
+            length += values[i].length();
+        }
+        StringBuilder rendered = new StringBuilder(length).append(literals[0]);
+        for (int i = 0; i < variables.length; i++) {
+            rendered.append(values[i]).append(literals[i + 1]);
+        }
+        return rendered.toString();
+    }
+
+    /**
+     * 只有 {{it}} 的模板，例如 "Analyze the priority of the following issue: {{it}}"
+     */
+    public String render(Object it) {
+        int[] binding = itBinding;
+        if (binding == null) {
+            itBinding = binding = bind(name -> "it".equals(name) ? 0 : -1);
+        }
+        return render(binding, new Object[]{it});
+    }
+
+    /**
+     * 按变量名取值渲染，PromptTemplate 经 CompiledPromptTemplateFactory 调到这里
+     *
+     * @throws IllegalArgumentException 有变量没有值或值为 null
+     */
+    public String render(Map<String, ?> values) {
+        int[] binding = namedBinding;
+        if (binding == null) {
+            List<String> names = Arrays.asList(variables);
+            namedBinding = binding = bind(names::indexOf);
+        }
+        Object[] args = new Object[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            args[i] = values.get(variables[i]);
+            if (args[i] == null && binding[i] >= 0) {
+                throw new IllegalArgumentException("Value for the variable '" + variables[i] + "' is missing");
+            }
+        }
+        return render(binding, args);
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledTemplate{literals=" + Arrays.toString(literals) + ", variables=" + Arrays.toString(variables) + "}";
+    }
+}
@@ -0,0 +1,143 @@
+package com.liuhang.langchain4j.prompt;
+
+import dev.langchain4j.model.input.PromptTemplate;
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.SystemMessage;
+import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.V;
+import dev.langchain4j.spi.prompt.PromptTemplateFactory;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * AIServiceTest / AIServiceResult 里的模板渲染结果，以及和 PromptTemplate 每次重新解析的开销对比
+ */
+public class CompiledTemplateTest {
+
+    interface Translator {
+        @UserMessage("请将以下文本翻译成{{targetLanguage}}：{{text}}")
+        String translate(@V("text") String text, @V("targetLanguage") String targetLang);
+    }
+
+    interface PriorityAnalyzer {
+        @UserMessage("Analyze the priority of the following issue: {{it}}")
+        String analyzePriority(String issueDescription);
+    }
+
+    interface Friend {
+        @SystemMessage("You are a good friend of mine. Answer using slang. Today is {{current_date}}.")
+        String chat(String userMessage);
+    }
+
+    interface CustomerService {
+        String chat(@MemoryId String userId, @V("userName") String name, @UserMessage String message);
+    }
+
+    static final String VIP = "你是 VIP 客户 {{userName}} 的专属管家，请提供高端服务。";
+    static final String GUEST = "你是普通用户 {{userName}} 的客服助手，请友好回答。";
+
+    static Method method(Class<?> type) {
+        return type.getDeclaredMethods()[0];
+    }
+
+    @Test
+    public void rendersServiceTemplates() {
+        System.out.println(CompiledTemplate.of("请将以下文本翻译成{{targetLanguage}}：{{text}}"));
+        System.out.println(MethodPrompt.of(method(Translator.class)).userMessage(new Object[]{"Hello", "中文"}));
+        System.out.println(MethodPrompt.of(method(PriorityAnalyzer.class)).messages(new Object[]{"The main payment gateway is down"}));
+        System.out.println(MethodPrompt.of(method(Friend.class)).systemMessage(new Object[]{"Hello"}));
+
+        MethodPrompt customerService = MethodPrompt.of(method(CustomerService.class));
+        for (Object[] args : List.of(new Object[]{"vip_user", "张三", "你好"}, new Object[]{"guest_001", "李四", "你好"})) {
+            String template = "vip_user".equals(args[0]) ? VIP : GUEST;
+            System.out.println(customerService.systemMessage(template, args) + " / " + customerService.userMessage(args));
+        }
+        // 和 PromptTemplate 的结果一致
+        System.out.println(PromptTemplate.from("请将以下文本翻译成{{ targetLanguage }}：{{text}}")
+                .apply(Map.of("text", "Hello", "targetLanguage", "中文")).text()
+                .equals(CompiledTemplate.of("请将以下文本翻译成{{ targetLanguage }}：{{text}}")
+                        .render(new int[]{1, 0}, new Object[]{"Hello", "中文"})));
+    }
+
+    /**
+     * META-INF/services 里登记的工厂：PromptTemplate 和 AiServices 渲染模板时用的是 CompiledTemplate，每次重新切分，不按文本缓存
+     */
+    @Test
+    public void pluggedIntoPromptTemplate() {
+        System.out.println("ServiceLoader 找到: " + ServiceLoader.load(PromptTemplateFactory.class).findFirst()
+                .map(factory -> factory.getClass().getSimpleName()).orElse(null));
+        PromptTemplateFactory.Template template = new CompiledPromptTemplateFactory().create(() -> VIP);
+        System.out.println(template.render(Map.of("userName", "张三")));
+        System.out.println(PromptTemplate.from(GUEST).apply(Map.of("userName", "李四")).text());
+        try {
+            template.render(Map.of());
+        } catch (IllegalArgumentException e) {
+            System.out.println("渲染失败: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsMissingAndNullValues() {
+        try {
+            CompiledTemplate.of("Hello {{userName}}, {{unknown}}").bind(name -> "userName".equals(name) ? 0 : -1);
+        } catch (IllegalArgumentException e) {
+            System.out.println("绑定失败: " + e.getMessage());
+        }
+        try {
+            MethodPrompt.of(method(Translator.class)).userMessage(new Object[]{null, "中文"});
+        } catch (IllegalArgumentException e) {
+            System.out.println("渲染失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * JMH 风格：先预热再计时，结果累加进 sink 防止被优化掉
+     * PromptTemplate：每次调用都 from(template) 解析 + 参数放进 Map 再渲染，也就是 AiServices 的做法；
+     *      classpath 上有 META-INF/services 时经 CompiledPromptTemplateFactory（每次切分、不缓存），否则是每个变量一个正则 replaceAll
+     * MethodPrompt：按方法缓存的模板和绑定，直接拼接
+     */
+    @Test
+    public void renderingOverhead() {
+        int ops = 200_000;
+        MethodPrompt translator = MethodPrompt.of(method(Translator.class));
+        MethodPrompt analyzer = MethodPrompt.of(method(PriorityAnalyzer.class));
+        MethodPrompt customerService = MethodPrompt.of(method(CustomerService.class));
+        Object[] translateArgs = {"Hello", "中文"};
+        Object[] analyzeArgs = {"The main payment gateway is down, and customers cannot process transactions."};
+        Object[] customerArgs = {"vip_user", "张三", "你好"};
+        long sink = 0;
+        for (int round = 0; round < 8; round++) {
+            boolean warmup = round < 3;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                Map<String, Object> variables = new HashMap<>();
+                variables.put("text", translateArgs[0]);
+                variables.put("targetLanguage", translateArgs[1]);
+                sink += PromptTemplate.from("请将以下文本翻译成{{targetLanguage}}：{{text}}").apply(variables).text().length();
+                sink += PromptTemplate.from("Analyze the priority of the following issue: {{it}}").apply(analyzeArgs[0]).text().length();
+                sink += PromptTemplate.from(VIP).apply(Map.of("userName", customerArgs[1])).text().length();
+            }
+            long current = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ops; i++) {
+                sink += translator.userMessage(translateArgs).length();
+                sink += analyzer.userMessage(analyzeArgs).length();
+                sink += customerService.systemMessage(VIP, customerArgs).length();
+            }
+            long compiled = System.nanoTime() - start;
+
+            if (!warmup) {
+                System.out.printf("PromptTemplate %.0f ns/次, 预编译 %.0f ns/次 (每次 3 个模板)%n",
+                        (double) current / ops, (double) compiled / ops);
+            }
+        }
+        System.out.println("sink = " + sink);
+    }
+}
@@ -0,0 +1,187 @@
+package com.liuhang.langchain4j.prompt;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.SystemMessage;
+import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.V;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AI 服务方法的提示：@SystemMessage / @UserMessage 模板解析一次，@V 参数按下标绑定好，调用时只剩渲染
+ *
+ *      interface Translator {
+ *          @UserMessage("请将以下文本翻译成{{targetLanguage}}：{{text}}")
+ *          String translate(@V("text") String text, @V("targetLanguage") String targetLang);
+ *      }
+ *      MethodPrompt prompt = MethodPrompt.of(Translator.class.getMethod("translate", String.class, String.class));
+ *      prompt.userMessage(new Object[]{"Hello", "中文"});   // 请将以下文本翻译成中文：Hello
+ *
+ * 变量和参数的对应规则和 AiServices 一样：
+ *      @V("name") 的参数对应 {{name}}；编译时带了 -parameters 的，没有 @V 的参数也能按参数名对应
+ *      只有一个参数时 {{it}} 就是它
+ *      方法上没有 @UserMessage 时，标了 @UserMessage 的参数（或唯一的参数）原样作为用户消息
+ * systemMessageProvider 返回的模板（例如 AIServiceTest.test3 里的 "你是 VIP 客户 {{userName}} 的专属管家..."）
+ * 用 systemMessage(template, args) 渲染，按模板文本缓存解析结果和绑定，最多缓存 256 个，超出的每次重新解析。
+ */
+public final class MethodPrompt {
+
+    private static final Map<Method, MethodPrompt> CACHE = new ConcurrentHashMap<>();
+    // systemMessageProvider 返回的模板最多缓存这么多个，动态拼出来的模板超出后每次重新解析
+    private static final int MAX_PROVIDED_TEMPLATES = 256;
+
+    private final Method method;
+    private final String[] names;
+    private final CompiledTemplate systemTemplate;
+    private final int[] systemBinding;
+    private final CompiledTemplate userTemplate;
+    private final int[] userBinding;
+    // 方法上没有 @UserMessage 时用作用户消息的参数
+    private final int userMessageParameter;
+    private final Map<String, Binding> provided = new ConcurrentHashMap<>();
+
+    private MethodPrompt(Method method) {
+        this.method = method;
+        Parameter[] parameters = method.getParameters();
+        this.names = new String[parameters.length];
+        int userParameter = -1;
+        for (int i = 0; i < parameters.length; i++) {
+            V v = parameters[i].getAnnotation(V.class);
+            names[i] = v != null ? v.value() : parameters[i].isNamePresent() ? parameters[i].getName() : null;
+            if (parameters[i].isAnnotationPresent(UserMessage.class)) {
+                userParameter = i;
+            }
+        }
+
+        SystemMessage system = method.getAnnotation(SystemMessage.class);
+        if (system == null) {
+            system = method.getDeclaringClass().getAnnotation(SystemMessage.class);
+        }
+        String systemText = system == null ? null : text(system.value(), system.delimiter(), system.fromResource());
+        this.systemTemplate = systemText == null ? null : CompiledTemplate.of(systemText);
+        this.systemBinding = systemTemplate == null ? null : systemTemplate.bind(this::indexOf);
+
+        UserMessage user = method.getAnnotation(UserMessage.class);
+        String userText = user == null ? null : text(user.value(), user.delimiter(), user.fromResource());
+        this.userTemplate = userText == null ? null : CompiledTemplate.of(userText);
+        this.userBinding = userTemplate == null ? null : userTemplate.bind(this::indexOf);
+        if (userTemplate == null && userParameter < 0) {
+            userParameter = soleCandidate(parameters);
+        }
+        if (userTemplate == null && userParameter < 0) {
+            throw new IllegalArgumentException("no user message for " + method.getDeclaringClass().getSimpleName() + "." + method.getName()
+                    + ": annotate the method or a parameter with @UserMessage");
+        }
+        this.userMessageParameter = userParameter;
+    }
+
+    public static MethodPrompt of(Method method) {
+        MethodPrompt prompt = CACHE.get(method);
+        if (prompt == null) {
+            prompt = new MethodPrompt(method);
+            MethodPrompt previous = CACHE.putIfAbsent(method, prompt);
+            if (previous != null) {
+                prompt = previous;
+            }
+        }
+        return prompt;
+    }
+
+    /**
+     * 方法或接口上 @SystemMessage 渲染后的文本，没有时为 null
+     */
+    public String systemMessage(Object[] args) {
+        return systemTemplate == null ? null : systemTemplate.render(systemBinding, args);
+    }
+
+    /**
+     * 渲染 systemMessageProvider 返回的模板
+     */
+    public String systemMessage(String template, Object[] args) {
+        Binding binding = provided.get(template);
+        if (binding == null) {
+            CompiledTemplate compiled = CompiledTemplate.compile(template);
+            binding = new Binding(compiled, compiled.bind(this::indexOf));
+            if (provided.size() < MAX_PROVIDED_TEMPLATES) {
+                provided.putIfAbsent(template, binding);
+            }
+        }
+        return binding.template.render(binding.indices, args);
+    }
+
+    public String userMessage(Object[] args) {
+        if (userTemplate == null) {
+            Object value = args[userMessageParameter];
+            return value instanceof String s ? s : String.valueOf(value);
+        }
+        return userTemplate.render(userBinding, args);
+    }
+
+    /**
+     * [系统消息,] 用户消息
+     */
+    public List<ChatMessage> messages(Object[] args) {
+        List<ChatMessage> messages = new ArrayList<>(2);
+        String system = systemMessage(args);
+        if (system != null) {
+            messages.add(dev.langchain4j.data.message.SystemMessage.from(system));
+        }
+        messages.add(dev.langchain4j.data.message.UserMessage.from(userMessage(args)));
+        return messages;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (name.equals(names[i])) {
+                return i;
+            }
+        }
+        return "it".equals(name) && names.length == 1 ? 0 : -1;
+    }
+
+    /**
+     * 没有 @V、@MemoryId 的参数只有一个时就是它
+     */
+    private static int soleCandidate(Parameter[] parameters) {
+        int candidate = -1;
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i].isAnnotationPresent(V.class) || parameters[i].isAnnotationPresent(MemoryId.class)) {
+                continue;
+            }
+            if (candidate >= 0) {
+                return -1;
+            }
+            candidate = i;
+        }
+        return candidate;
+    }
+
+    private String text(String[] lines, String delimiter, String resource) {
+        if (!resource.isEmpty()) {
+            String path = resource.startsWith("/") ? resource : "/" + resource;
+            try (InputStream in = method.getDeclaringClass().getResourceAsStream(path)) {
+                if (in == null) {
+                    throw new IllegalArgumentException("prompt resource not found: " + resource);
+                }
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        String text = String.join(delimiter, lines);
+        return text.isEmpty() ? null : text;
+    }
+
+    private record Binding(CompiledTemplate template, int[] indices) {
+    }
+}